@@ -14,6 +14,14 @@
 package org.eclipse.cdt.internal.core.model;
 
 
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.IBinaryParser.IBinaryFile;
 import org.eclipse.cdt.core.model.CModelException;
@@ -40,6 +48,14 @@ import org.eclipse.core.runtime.content.IContentTypeManager;
 import org.eclipse.core.runtime.jobs.Job;
 
 public class BinaryRunner {
+	/**
+	 * Maximum number of threads checking the candidate files, can be changed via the system property
+	 * <code>org.eclipse.cdt.core.binaryRunner.threads</code>. A value of <code>1</code> checks the
+	 * files in the thread of the job.
+	 */
+	private static final int SCANNER_THREADS = Integer.getInteger("org.eclipse.cdt.core.binaryRunner.threads", //$NON-NLS-1$
+			Math.min(4, Runtime.getRuntime().availableProcessors())).intValue();
+	private static final int PENDING_PER_THREAD = 16;
 
 	class BinaryRunnerOperation extends CModelOperation {
 
@@ -119,7 +135,24 @@ public class BinaryRunner {
 						// traverse project, but only if at least one binary parser is configured
 						BinaryParserConfig[] parsers = CModelManager.getDefault().getBinaryParser(cproject.getProject());
 						if (parsers.length > 0) {
-							cproject.getProject().accept(new Visitor(monitor), IContainer.INCLUDE_PHANTOMS);
+							// The parsers are created up front, they are used by several threads.
+							for (BinaryParserConfig parser : parsers) {
+								try {
+									parser.getBinaryParser();
+								} catch (CoreException e) {
+								}
+							}
+							BinaryTypeCache cache = BinaryTypeCache.load(cproject.getProject(), parsers);
+							Visitor visitor = new Visitor(monitor, cache);
+							try {
+								cproject.getProject().accept(visitor, IContainer.INCLUDE_PHANTOMS);
+								visitor.finish();
+							} finally {
+								visitor.dispose();
+							}
+							if (!monitor.isCanceled()) {
+								cache.save();
+							}
 						}
 
 						if (!monitor.isCanceled()) {
@@ -170,16 +203,38 @@ public class BinaryRunner {
 		waitIfRunning();
 	}
 
+	/**
+	 * Visits the resources of the project. The candidate files are checked on a pool of threads,
+	 * the binaries are added to the containers in the thread of the job, in the order of the visit.
+	 */
 	private class Visitor implements IResourceProxyVisitor {
 		private IProgressMonitor vMonitor;
 		private IProject project;
 		private IContentType textContentType;
+		private final BinaryTypeCache cache;
+		private final ExecutorService executor;
+		private final LinkedList<Candidate> pending = new LinkedList<Candidate>();
 
-		public Visitor(IProgressMonitor monitor) {
+		public Visitor(IProgressMonitor monitor, BinaryTypeCache cache) {
 			vMonitor = monitor;
 			this.project = cproject.getProject();
+			this.cache = cache;
 			IContentTypeManager mgr = Platform.getContentTypeManager();
 			textContentType = mgr.getContentType("org.eclipse.core.runtime.text"); //$NON-NLS-1$
+			if (SCANNER_THREADS > 1) {
+				final String name = CCorePlugin.getResourceString("CoreModel.BinaryRunner.Binary_Search_Thread"); //$NON-NLS-1$
+				executor = Executors.newFixedThreadPool(SCANNER_THREADS, new ThreadFactory() {
+					private int count;
+
+					public synchronized Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, name + " " + (++count)); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			} else {
+				executor = null;
+			}
 		}
 
 		public boolean visit(IResourceProxy proxy) throws CoreException {
@@ -216,12 +271,7 @@ public class BinaryRunner {
 				for (int i = 0; i < entries.length; ++i) {
 					if (isOnOutputEntry(entries[i], path)) {
 						IFile file = (IFile) proxy.requestResource();
-						CModelManager factory = CModelManager.getDefault();
-						IBinaryFile bin = factory.createBinaryFile(file);
-						if (bin != null) {
-							// Create the file will add it to the {Archive,Binary}Container.
-							factory.create(file, bin, cproject);
-						}
+						check(file);
 						return true;
 					}
 				}
@@ -229,6 +279,54 @@ public class BinaryRunner {
 			return true;
 		}
 		
+		private void check(IFile file) {
+			if (executor == null) {
+				add(file, CModelManager.getDefault().createBinaryFile(file, cache));
+				return;
+			}
+			Candidate candidate = new Candidate(file, cache);
+			executor.execute(candidate);
+			pending.add(candidate);
+			// Bound the number of candidates waiting to be added.
+			while (!pending.isEmpty() && (pending.getFirst().isDone()
+					|| pending.size() > SCANNER_THREADS * PENDING_PER_THREAD)) {
+				add(pending.removeFirst());
+			}
+		}
+
+		/**
+		 * Adds the binaries of the candidates that are still pending.
+		 */
+		void finish() {
+			while (!pending.isEmpty() && !vMonitor.isCanceled()) {
+				add(pending.removeFirst());
+			}
+		}
+
+		void dispose() {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+
+		private void add(Candidate candidate) {
+			try {
+				add(candidate.file, candidate.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				vMonitor.setCanceled(true);
+			} catch (ExecutionException e) {
+				CCorePlugin.log(e.getCause());
+			}
+		}
+
+		private void add(IFile file, IBinaryFile bin) {
+			if (bin != null) {
+				// Create the file will add it to the {Archive,Binary}Container.
+				CModelManager.getDefault().create(file, bin, cproject);
+			}
+		}
+
 		private boolean isOnOutputEntry(IOutputEntry entry, IPath path) {
 			if (entry.getPath().isPrefixOf(path) && !CoreModelUtil.isExcluded(path, entry.fullExclusionPatternChars())) {
 				return true;
@@ -236,4 +334,20 @@ public class BinaryRunner {
 			return false;
 		}
 	}
+
+	/**
+	 * Checks whether a file is a binary, runs in a thread of the pool of the visitor.
+	 */
+	private static class Candidate extends FutureTask<IBinaryFile> {
+		final IFile file;
+
+		Candidate(final IFile file, final BinaryTypeCache cache) {
+			super(new Callable<IBinaryFile>() {
+				public IBinaryFile call() {
+					return CModelManager.getDefault().createBinaryFile(file, cache);
+				}
+			});
+			this.file = file;
+		}
+	}
 }
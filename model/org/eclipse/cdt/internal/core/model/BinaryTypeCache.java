@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.core.resources.IProject;
+
+/**
+ * Remembers for the files of a project whether they are binaries and which binary parser
+ * recognized them. An entry is valid as long as size and modification time of the file are
+ * unchanged. The cache is stored in the state location of the plug-in and is discarded when
+ * the binary parsers of the project change.
+ */
+final class BinaryTypeCache {
+	/**
+	 * Type of the files that are not recognized by any of the binary parsers.
+	 */
+	static final String NOT_BINARY= ""; //$NON-NLS-1$
+
+	private static final int VERSION= 1;
+	private static final String CACHE_FOLDER= "binaryTypes"; //$NON-NLS-1$
+	private static final String CACHE_EXTENSION= ".cache"; //$NON-NLS-1$
+
+	private static final class Entry {
+		final long fSize;
+		final long fModified;
+		final String fType;
+
+		Entry(long size, long modified, String type) {
+			fSize= size;
+			fModified= modified;
+			fType= type;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Entry))
+				return false;
+			final Entry other= (Entry) obj;
+			return fSize == other.fSize && fModified == other.fModified && fType.equals(other.fType);
+		}
+
+		@Override
+		public int hashCode() {
+			return fType.hashCode() + 31 * (int) (fSize ^ fModified);
+		}
+	}
+
+	private final File fFile;
+	private final String fParsers;
+	private final Map<String, Entry> fEntries;
+	private final Map<String, Entry> fVisited= new HashMap<String, Entry>();
+	private final Map<String, String> fTypes= new HashMap<String, String>();
+	private boolean fChanged;
+
+	private BinaryTypeCache(File file, String parsers, Map<String, Entry> entries) {
+		fFile= file;
+		fParsers= parsers;
+		fEntries= entries;
+		fTypes.put(NOT_BINARY, NOT_BINARY);
+	}
+
+	/**
+	 * Reads the cache of the project. An empty cache is returned when there is no valid cache
+	 * for the given binary parsers.
+	 */
+	static BinaryTypeCache load(IProject project, BinaryParserConfig[] parsers) {
+		final StringBuilder ids= new StringBuilder();
+		for (BinaryParserConfig parser : parsers) {
+			if (ids.length() > 0)
+				ids.append(',');
+			ids.append(parser.getId());
+		}
+		final File file= getCacheFile(project);
+		final BinaryTypeCache cache= new BinaryTypeCache(file, ids.toString(), new HashMap<String, Entry>());
+		if (file != null && file.isFile()) {
+			try {
+				DataInputStream in= new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				try {
+					cache.read(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				cache.fEntries.clear();
+			}
+		}
+		return cache;
+	}
+
+	private static File getCacheFile(IProject project) {
+		final CCorePlugin plugin= CCorePlugin.getDefault();
+		if (plugin == null)
+			return null;
+		return plugin.getStateLocation().append(CACHE_FOLDER).append(project.getName() + CACHE_EXTENSION).toFile();
+	}
+
+	private void read(DataInputStream in) throws IOException {
+		if (in.readInt() != VERSION || !fParsers.equals(in.readUTF()))
+			return;
+		final int count= in.readInt();
+		for (int i = 0; i < count; i++) {
+			final String path= in.readUTF();
+			final long size= in.readLong();
+			final long modified= in.readLong();
+			final String type= internType(in.readUTF());
+			fEntries.put(path, new Entry(size, modified, type));
+		}
+	}
+
+	/**
+	 * Returns the type recorded for the file, that is the id of the binary parser that recognized
+	 * it or {@link #NOT_BINARY}. Returns <code>null</code> when the file has not been recorded or
+	 * has changed since.
+	 */
+	synchronized String get(String path, long size, long modified) {
+		Entry entry= fVisited.get(path);
+		if (entry == null) {
+			entry= fEntries.get(path);
+			if (entry == null || entry.fSize != size || entry.fModified != modified)
+				return null;
+			fVisited.put(path, entry);
+		}
+		if (entry.fSize != size || entry.fModified != modified)
+			return null;
+		return entry.fType;
+	}
+
+	/**
+	 * Records the type of the file, the id of a binary parser or {@link #NOT_BINARY}.
+	 */
+	synchronized void put(String path, long size, long modified, String type) {
+		final Entry entry= new Entry(size, modified, internType(type));
+		fVisited.put(path, entry);
+		if (!fChanged && !entry.equals(fEntries.get(path))) {
+			fChanged= true;
+		}
+	}
+
+	private String internType(String type) {
+		String result= fTypes.get(type);
+		if (result == null) {
+			fTypes.put(type, type);
+			result= type;
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the cache after all files of the project have been visited. Only the files visited
+	 * are kept, such that the entries of deleted files are removed.
+	 */
+	synchronized void save() {
+		if (fFile == null || (!fChanged && fVisited.size() == fEntries.size()))
+			return;
+		try {
+			fFile.getParentFile().mkdirs();
+			File tmp= new File(fFile.getPath() + ".tmp"); //$NON-NLS-1$
+			DataOutputStream out= new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(VERSION);
+				out.writeUTF(fParsers);
+				out.writeInt(fVisited.size());
+				for (Map.Entry<String, Entry> e : fVisited.entrySet()) {
+					final Entry entry= e.getValue();
+					out.writeUTF(e.getKey());
+					out.writeLong(entry.fSize);
+					out.writeLong(entry.fModified);
+					out.writeUTF(entry.fType);
+				}
+			} finally {
+				out.close();
+			}
+			fFile.delete();
+			if (!tmp.renameTo(fFile)) {
+				tmp.delete();
+			}
+		} catch (IOException e) {
+			CCorePlugin.log(e);
+		}
+	}
+}
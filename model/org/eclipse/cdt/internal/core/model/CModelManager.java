@@ -17,9 +17,12 @@
 package org.eclipse.cdt.internal.core.model;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -628,6 +631,15 @@ public class CModelManager implements IResourceChangeListener, IContentTypeChang
 	}
 
 	public IBinaryFile createBinaryFile(IFile file) {
+		return createBinaryFile(file, null);
+	}
+
+	/**
+	 * Same as {@link #createBinaryFile(IFile)}, the cache is used to skip the files known not to be
+	 * binaries and to ask the parser that recognized a file before first. The result is recorded in
+	 * the cache. Can be called from any thread once the binary parsers of the project have been created.
+	 */
+	IBinaryFile createBinaryFile(IFile file, BinaryTypeCache cache) {
 		BinaryParserConfig[] parsers = getBinaryParser(file.getProject());
 		if (parsers.length == 0) {
 			return null;
@@ -664,8 +676,20 @@ public class CModelManager implements IResourceChangeListener, IContentTypeChang
 		}
 		
 		URI fileUri = file.getLocationURI();
+		IFileInfo info = null;
+		String cachedType = null;
+		if (cache != null && fileUri != null) {
+			try {
+				info = EFS.getStore(fileUri).fetchInfo();
+				cachedType = cache.get(file.getFullPath().toString(), info.getLength(), info.getLastModified());
+				if (BinaryTypeCache.NOT_BINARY.equals(cachedType)) {
+					return null;
+				}
+			} catch (CoreException e) {
+			}
+		}
 		//Avoid name special devices, empty files and the like
-		if (!Util.isNonZeroLengthFile(fileUri)) {
+		if (info != null ? info.getLength() == EFS.NONE : !Util.isNonZeroLengthFile(fileUri)) {
 			// PR:xxx the EFS does not seem to work for newly created file
 			// so before bailing out give another try?
 			//Avoid name special devices, empty files and the like
@@ -692,53 +716,97 @@ public class CModelManager implements IResourceChangeListener, IContentTypeChang
 		}
 		byte[] bytes = new byte[hints];
 		if (hints > 0) {
-			InputStream is = null;
 			try {
-				is = file.getContents();
-				int count = 0;
-				// Make sure we read up to 'hints' bytes if we possibly can
-				while (count < hints) {
-					int bytesRead = is.read(bytes, count, hints - count);
-					if (bytesRead < 0)
-						break;
-					count += bytesRead;
-				}
-				if (count > 0 && count < bytes.length) {
-					byte[] array = new byte[count];
-					System.arraycopy(bytes, 0, array, 0, count);
-					bytes = array;
-				}
+				bytes = readHints(file, hints);
 			} catch (CoreException e) {
 				return null;
 			} catch (IOException e) {
 				return null;
-			} finally {
-				if (is != null) {
-					try {
-						is.close();
-					} catch (IOException e) {
-						// ignore
+			}
+		}
+
+		IPath location = file.getLocation();
+
+		IBinaryFile binFile = null;
+		String type = BinaryTypeCache.NOT_BINARY;
+		if (cachedType != null) {
+			for (BinaryParserConfig parser2 : parsers) {
+				if (parser2.getId().equals(cachedType)) {
+					binFile = getBinary(parser2, bytes, location);
+					if (binFile != null) {
+						type = cachedType;
 					}
+					break;
 				}
 			}
 		}
+		for (int i = 0; binFile == null && i < parsers.length; i++) {
+			binFile = getBinary(parsers[i], bytes, location);
+			if (binFile != null) {
+				type = parsers[i].getId();
+			}
+		}
+		if (info != null) {
+			cache.put(file.getFullPath().toString(), info.getLength(), info.getLastModified(), type);
+		}
+		return binFile;
+	}
+
+	private static IBinaryFile getBinary(BinaryParserConfig config, byte[] bytes, IPath location) {
+		try {
+			IBinaryParser parser = config.getBinaryParser();
+			if (parser.isBinary(bytes, location)) {
+				return parser.getBinary(bytes, location);
+			}
+		} catch (IOException e) {
+		} catch (CoreException e) {
+		}
+		return null;
+	}
 
+	/**
+	 * Reads up to <code>hints</code> bytes from the start of the file. Files in the local file system
+	 * are read with a file channel, other files through the workspace.
+	 */
+	private static byte[] readHints(IFile file, int hints) throws CoreException, IOException {
+		byte[] bytes = new byte[hints];
+		int count = 0;
 		IPath location = file.getLocation();
-
-		for (BinaryParserConfig parser2 : parsers) {
+		if (location != null) {
+			FileInputStream in = new FileInputStream(location.toFile());
 			try {
-				IBinaryParser parser = parser2.getBinaryParser();
-				if (parser.isBinary(bytes, location)) {
-    			    IBinaryFile binFile = parser.getBinary(bytes, location);
-    			    if (binFile != null) {
-    			    	return binFile;
-    			    }
+				FileChannel channel = in.getChannel();
+				ByteBuffer buffer = ByteBuffer.wrap(bytes);
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				}
+				count = buffer.position();
+			} finally {
+				in.close();
+			}
+		} else {
+			InputStream is = file.getContents();
+			try {
+				// Make sure we read up to 'hints' bytes if we possibly can
+				while (count < hints) {
+					int bytesRead = is.read(bytes, count, hints - count);
+					if (bytesRead < 0)
+						break;
+					count += bytesRead;
+				}
+			} finally {
+				try {
+					is.close();
+				} catch (IOException e) {
+					// ignore
 				}
-			} catch (IOException e) {
-			} catch (CoreException e) {
 			}
 		}
-		return null;
+		if (count > 0 && count < bytes.length) {
+			byte[] array = new byte[count];
+			System.arraycopy(bytes, 0, array, 0, count);
+			bytes = array;
+		}
+		return bytes;
 	}
 
 	public void resetBinaryParser(IProject project) {
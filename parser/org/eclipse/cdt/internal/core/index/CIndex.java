@@ -96,64 +96,37 @@ public class CIndex implements IIndex {
 		return findBindings(new Pattern[] { pattern }, isFullyQualified, filter, monitor);
 	}
 
-	public IIndexBinding[] findBindings(Pattern[] patterns, boolean isFullyQualified, IndexFilter filter,
+	public IIndexBinding[] findBindings(final Pattern[] patterns, final boolean isFullyQualified, IndexFilter filter,
 			IProgressMonitor monitor) throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			 return fFragments[0].findBindings(patterns, isFullyQualified, filter, monitor);
 		} else {
-			List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
-			ILinkage[] linkages = Linkage.getIndexerLinkages();
-			for (ILinkage linkage : linkages) {
-				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
-					for (int i = 0; i < fPrimaryFragmentCount; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindings(patterns, isFullyQualified, retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
-						}
-					}
-					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
-					result.add(factory.getCompositeBindings(fragmentBindings));
+			return findBindings(filter, monitor, 0, new BindingQuery() {
+				@Override
+				IBinding[] find(IIndexFragment fragment, IndexFilter linkageFilter, IProgressMonitor m)
+						throws CoreException {
+					return fragment.findBindings(patterns, isFullyQualified, linkageFilter, m);
 				}
-			}
-			return flatten(result);
+			});
 		}
 	}
 
-	public IIndexBinding[] findMacroContainers(Pattern pattern, IndexFilter filter, IProgressMonitor monitor)
+	public IIndexBinding[] findMacroContainers(final Pattern pattern, IndexFilter filter, IProgressMonitor monitor)
 			throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			 return fFragments[0].findMacroContainers(pattern, filter, monitor);
 		} else {
-			List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
-			ILinkage[] linkages = Linkage.getIndexerLinkages();
-			for (ILinkage linkage : linkages) {
-				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
-					for (int i = 0; i < fPrimaryFragmentCount; i++) {
-						try {
-							IBinding[] part = fFragments[i].findMacroContainers(pattern,
-									retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
-						}
-					}
-					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
-					result.add(factory.getCompositeBindings(fragmentBindings));
+			return findBindings(filter, monitor, 0, new BindingQuery() {
+				@Override
+				IBinding[] find(IIndexFragment fragment, IndexFilter linkageFilter, IProgressMonitor m)
+						throws CoreException {
+					return fragment.findMacroContainers(pattern, linkageFilter, m);
 				}
-			}
-			return flatten(result);
+			});
 		}
 	}
 
-	public IIndexName[] findNames(IBinding binding, int flags) throws CoreException {
+	public IIndexName[] findNames(IBinding binding, final int flags) throws CoreException {
 		LinkedList<IIndexFragmentName> result= new LinkedList<IIndexFragmentName>();
 		if (binding instanceof ICPPUsingDeclaration) {
 			IBinding[] bindings= ((ICPPUsingDeclaration) binding).getDelegates();
@@ -170,9 +143,16 @@ public class CIndex implements IIndex {
 			binding= bindings[0];
 		}
 
+		final IBinding target= binding;
+		List<IIndexFragmentName[]> parts= FragmentQueryRunner.run(fFragments, fPrimaryFragmentCount,
+				new FragmentQueryRunner.Query<IIndexFragmentName[]>() {
+					@Override
+					IIndexFragmentName[] run(IIndexFragment fragment, IProgressMonitor monitor) throws CoreException {
+						return fragment.findNames(target, flags);
+					}
+				}, isParallel(), null, 0);
 		int fragCount= 0;
-		for (int i = 0; i < fPrimaryFragmentCount; i++) {
-			final IIndexFragmentName[] names = fFragments[i].findNames(binding, flags);
+		for (IIndexFragmentName[] names : parts) {
 			if (names.length > 0) {
 				result.addAll(Arrays.asList(names));
 				fragCount++;
@@ -377,7 +357,7 @@ public class CIndex implements IIndex {
 		return result;
 	}
 
-	public IIndexBinding[] findBindings(char[][] names, IndexFilter filter, IProgressMonitor monitor)
+	public IIndexBinding[] findBindings(final char[][] names, IndexFilter filter, IProgressMonitor monitor)
 			throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			try {
@@ -390,30 +370,17 @@ public class CIndex implements IIndex {
 			if (monitor == null) {
 				monitor= new NullProgressMonitor();
 			}
-			List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
 			ILinkage[] linkages = Linkage.getIndexerLinkages();
 			monitor.beginTask(Messages.CIndex_FindBindingsTask_label, fFragments.length * linkages.length);
-			for (ILinkage linkage : linkages) {
-				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
-					for (int i = 0; i < fPrimaryFragmentCount; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindings(names, retargetFilter(linkage, filter),
-									new SubProgressMonitor(monitor, 1));
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
-						}
-					}
-					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
-					result.add(factory.getCompositeBindings(fragmentBindings));
+			IIndexBinding[] result= findBindings(filter, monitor, 1, new BindingQuery() {
+				@Override
+				IBinding[] find(IIndexFragment fragment, IndexFilter linkageFilter, IProgressMonitor m)
+						throws CoreException {
+					return fragment.findBindings(names, linkageFilter, new SubProgressMonitor(m, 1));
 				}
-			}
+			});
 			monitor.done();
-			return flatten(result);
-
+			return result;
 		}
 	}
 
@@ -444,6 +411,67 @@ public class CIndex implements IIndex {
 	 * Non-API
 	 */
 
+	/**
+	 * Query for the bindings of a fragment in a single linkage.
+	 */
+	private static abstract class BindingQuery {
+		abstract IBinding[] find(IIndexFragment fragment, IndexFilter linkageFilter, IProgressMonitor monitor)
+				throws CoreException;
+	}
+
+	/**
+	 * Performs the query on the primary fragments for each linkage accepted by the filter and
+	 * combines the results of the fragments. The fragments are queried in parallel, when possible.
+	 * @param ticksPerLinkage the progress reported per linkage and fragment, when the fragments
+	 * are queried in parallel.
+	 */
+	private IIndexBinding[] findBindings(final IndexFilter filter, IProgressMonitor monitor,
+			int ticksPerLinkage, final BindingQuery query) throws CoreException {
+		final List<ILinkage> linkages= new ArrayList<ILinkage>();
+		for (ILinkage linkage : Linkage.getIndexerLinkages()) {
+			if (filter.acceptLinkage(linkage)) {
+				linkages.add(linkage);
+			}
+		}
+		List<IIndexFragmentBinding[][]> parts= FragmentQueryRunner.run(fFragments, fPrimaryFragmentCount,
+				new FragmentQueryRunner.Query<IIndexFragmentBinding[][]>() {
+					@Override
+					IIndexFragmentBinding[][] run(IIndexFragment fragment, IProgressMonitor m) {
+						IIndexFragmentBinding[][] result= new IIndexFragmentBinding[linkages.size()][];
+						for (int j = 0; j < result.length; j++) {
+							try {
+								IBinding[] part = query.find(fragment, retargetFilter(linkages.get(j), filter), m);
+								result[j] = new IIndexFragmentBinding[part.length];
+								System.arraycopy(part, 0, result[j], 0, part.length);
+							} catch (CoreException e) {
+								CCorePlugin.log(e);
+								result[j] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+							}
+						}
+						return result;
+					}
+				}, isParallel(), monitor, ticksPerLinkage * linkages.size());
+
+		List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
+		for (int j = 0; j < linkages.size(); j++) {
+			IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
+			for (int i = 0; i < fPrimaryFragmentCount; i++) {
+				fragmentBindings[i] = parts.get(i)[j];
+			}
+			ICompositesFactory factory = getCompositesFactory(linkages.get(j).getLinkageID());
+			result.add(factory.getCompositeBindings(fragmentBindings));
+		}
+		return flatten(result);
+	}
+
+	/**
+	 * The fragments can be queried in parallel while the read lock for this index is held. The
+	 * lock is acquired for all fragments, the threads querying them do not acquire any locks.
+	 */
+	protected boolean isParallel() {
+		return fPrimaryFragmentCount > 1 && getReadLockCount() > 0;
+	}
+
 	private IIndexBinding[] flatten(List<IIndexBinding[]> bindingArrays) {
 		int size = 0;
 		for (int i = 0; i<bindingArrays.size(); i++) {
@@ -514,90 +542,48 @@ public class CIndex implements IIndex {
 		};
 	}
 
-	public IIndexBinding[] findBindingsForPrefix(char[] prefix, boolean filescope, IndexFilter filter,
+	public IIndexBinding[] findBindingsForPrefix(final char[] prefix, final boolean filescope, IndexFilter filter,
 			IProgressMonitor monitor) throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			return fFragments[0].findBindingsForPrefix(prefix, filescope, filter, monitor);
 		} else {
-			List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
-			ILinkage[] linkages = Linkage.getIndexerLinkages();
-			for (ILinkage linkage : linkages) {
-				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
-					for (int i = 0; i < fPrimaryFragmentCount; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindingsForPrefix(prefix, filescope,
-									retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
-						}
-					}
-					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
-					result.add(factory.getCompositeBindings(fragmentBindings));
+			return findBindings(filter, monitor, 0, new BindingQuery() {
+				@Override
+				IBinding[] find(IIndexFragment fragment, IndexFilter linkageFilter, IProgressMonitor m)
+						throws CoreException {
+					return fragment.findBindingsForPrefix(prefix, filescope, linkageFilter, m);
 				}
-			}
-			return flatten(result);
+			});
 		}
 	}
 
-	public IIndexBinding[] findBindingsForContentAssist(char[] prefix, boolean filescope,
+	public IIndexBinding[] findBindingsForContentAssist(final char[] prefix, final boolean filescope,
 			IndexFilter filter, IProgressMonitor monitor) throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			return fFragments[0].findBindingsForContentAssist(prefix, filescope, filter, monitor);
 		} else {
-			List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
-			ILinkage[] linkages = Linkage.getIndexerLinkages();
-			for (ILinkage linkage : linkages) {
-				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
-					for (int i = 0; i < fPrimaryFragmentCount; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindingsForContentAssist(prefix,
-									filescope, retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
-						}
-					}
-					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
-					result.add(factory.getCompositeBindings(fragmentBindings));
+			return findBindings(filter, monitor, 0, new BindingQuery() {
+				@Override
+				IBinding[] find(IIndexFragment fragment, IndexFilter linkageFilter, IProgressMonitor m)
+						throws CoreException {
+					return fragment.findBindingsForContentAssist(prefix, filescope, linkageFilter, m);
 				}
-			}
-			return flatten(result);
+			});
 		}
 	}
 
-	public IIndexBinding[] findBindings(char[] name, boolean filescope, IndexFilter filter, IProgressMonitor monitor)
+	public IIndexBinding[] findBindings(final char[] name, final boolean filescope, IndexFilter filter, IProgressMonitor monitor)
 			throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			return fFragments[0].findBindings(name, filescope, filter, monitor);
 		} else {
-			List<IIndexBinding[]> result = new ArrayList<IIndexBinding[]>();
-			ILinkage[] linkages = Linkage.getIndexerLinkages();
-			for (ILinkage linkage : linkages) {
-				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fPrimaryFragmentCount][];
-					for (int i = 0; i < fPrimaryFragmentCount; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindings(name, filescope,
-									retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
-						}
-					}
-					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
-					result.add(factory.getCompositeBindings(fragmentBindings));
+			return findBindings(filter, monitor, 0, new BindingQuery() {
+				@Override
+				IBinding[] find(IIndexFragment fragment, IndexFilter linkageFilter, IProgressMonitor m)
+						throws CoreException {
+					return fragment.findBindings(name, filescope, linkageFilter, m);
 				}
-			}
-			return flatten(result);
+			});
 		}
 	}
 
@@ -610,8 +596,8 @@ public class CIndex implements IIndex {
 		return findMacros(name, true, false, filter, monitor);
 	}
 
-	private IIndexMacro[] findMacros(char[] name, boolean isPrefix, boolean caseSensitive,
-			IndexFilter filter, IProgressMonitor monitor) throws CoreException {
+	private IIndexMacro[] findMacros(final char[] name, final boolean isPrefix, final boolean caseSensitive,
+			final IndexFilter filter, IProgressMonitor monitor) throws CoreException {
 		// macros can be represented multiple times when a header is parsed in c- and c++ context,
 		// so there is no special case for indexes with single fragments.
 		if (monitor == null) {
@@ -620,11 +606,23 @@ public class CIndex implements IIndex {
 		List<IIndexMacro> result = new ArrayList<IIndexMacro>();
 		HashSet<IIndexFileLocation> handledIFLs= new HashSet<IIndexFileLocation>();
 		monitor.beginTask(Messages.CIndex_FindBindingsTask_label, fFragments.length);
-		for (int i = 0; i < fPrimaryFragmentCount; i++) {
+		List<IIndexMacro[]> parts= FragmentQueryRunner.run(fFragments, fPrimaryFragmentCount,
+				new FragmentQueryRunner.Query<IIndexMacro[]>() {
+					@Override
+					IIndexMacro[] run(IIndexFragment fragment, IProgressMonitor m) throws CoreException {
+						return fragment.findMacros(name, isPrefix, caseSensitive, filter, new SubProgressMonitor(m, 1));
+					}
+					@Override
+					IIndexMacro[] handleException(CoreException e) {
+						CCorePlugin.log(e);
+						return null;
+					}
+				}, isParallel(), monitor, 1);
+		for (IIndexMacro[] macros : parts) {
+			if (macros == null)
+				continue;
 			HashSet<IIndexFile> allowedFiles= new HashSet<IIndexFile>();
 			try {
-				IIndexMacro[] macros= fFragments[i].findMacros(name, isPrefix, caseSensitive, filter,
-						new SubProgressMonitor(monitor, 1));
 				for (IIndexMacro indexMacro : macros) {
 					IIndexFile file= indexMacro.getFile();
 					if (!allowedFiles.contains(file)) {
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Runs a query on several fragments of an index in parallel, on a bounded pool of threads shared
+ * by all indexes. The results are returned in the order of the fragments.
+ * <p>
+ * The threads of the pool do not acquire any locks, the caller must hold the read locks of the
+ * fragments for the duration of the query. The method does not return before the query has been
+ * completed for all fragments, such that the locks can safely be released afterwards. When all
+ * threads of the pool are busy, the query is run in the calling thread.
+ */
+final class FragmentQueryRunner {
+	/**
+	 * Maximum number of threads for the queries, can be changed via the system property
+	 * <code>org.eclipse.cdt.core.index.query.threads</code>. A value of <code>1</code> disables
+	 * parallel queries.
+	 */
+	private static final int MAX_THREADS= Integer.getInteger("org.eclipse.cdt.core.index.query.threads", //$NON-NLS-1$
+			Math.min(8, Runtime.getRuntime().availableProcessors())).intValue();
+	private static final int KEEP_ALIVE_SECONDS= 30;
+
+	private static ThreadPoolExecutor sExecutor;
+
+	/**
+	 * A query to be performed on a single fragment.
+	 */
+	static abstract class Query<T> {
+		/**
+		 * Performs the query on the given fragment, called from an arbitrary thread.
+		 */
+		abstract T run(IIndexFragment fragment, IProgressMonitor monitor) throws CoreException;
+
+		/**
+		 * Called in the calling thread when the query failed for a fragment, returns the result
+		 * to be used for the fragment instead. By default the exception is rethrown.
+		 */
+		T handleException(CoreException e) throws CoreException {
+			throw e;
+		}
+	}
+
+	/**
+	 * Monitor for a query running in the pool, it reports cancellation of the monitor passed
+	 * by the caller and ignores the progress.
+	 */
+	private static final class CancellationMonitor extends NullProgressMonitor {
+		private final IProgressMonitor fParent;
+
+		CancellationMonitor(IProgressMonitor parent) {
+			fParent= parent;
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return fParent.isCanceled();
+		}
+
+		@Override
+		public void setCanceled(boolean cancelled) {
+			fParent.setCanceled(cancelled);
+		}
+	}
+
+	private static final class Task<T> implements Runnable {
+		private final Query<T> fQuery;
+		private final IIndexFragment fFragment;
+		private final IProgressMonitor fMonitor;
+		private final CountDownLatch fDone;
+		T fResult;
+		CoreException fException;
+		Throwable fError;
+
+		Task(Query<T> query, IIndexFragment fragment, IProgressMonitor monitor, CountDownLatch done) {
+			fQuery= query;
+			fFragment= fragment;
+			fMonitor= monitor;
+			fDone= done;
+		}
+
+		public void run() {
+			try {
+				fResult= fQuery.run(fFragment, fMonitor);
+			} catch (CoreException e) {
+				fException= e;
+			} catch (RuntimeException e) {
+				fError= e;
+			} catch (Error e) {
+				fError= e;
+			} finally {
+				fDone.countDown();
+			}
+		}
+	}
+
+	private FragmentQueryRunner() {
+	}
+
+	/**
+	 * Runs the query on the first <code>count</code> fragments and returns the results in the
+	 * order of the fragments. The query is run in the calling thread, one fragment after the other,
+	 * unless <code>parallel</code> is set.
+	 * @param monitor the monitor passed to the query when it is run in the calling thread. When run in
+	 * parallel the queries can only observe its cancellation, the progress of <code>ticksPerFragment</code>
+	 * is reported for each fragment when the query has completed.
+	 */
+	static <T> List<T> run(IIndexFragment[] fragments, int count, Query<T> query, boolean parallel,
+			IProgressMonitor monitor, int ticksPerFragment) throws CoreException {
+		if (monitor == null) {
+			monitor= new NullProgressMonitor();
+		}
+		final List<T> result= new ArrayList<T>(count);
+		if (!parallel || count < 2 || MAX_THREADS < 2) {
+			for (int i = 0; i < count; i++) {
+				T part;
+				try {
+					part= query.run(fragments[i], monitor);
+				} catch (CoreException e) {
+					part= query.handleException(e);
+				}
+				result.add(part);
+			}
+			return result;
+		}
+
+		final CountDownLatch done= new CountDownLatch(count);
+		final List<Task<T>> tasks= new ArrayList<Task<T>>(count);
+		for (int i = 0; i < count; i++) {
+			tasks.add(new Task<T>(query, fragments[i], new CancellationMonitor(monitor), done));
+		}
+		// The first fragment is queried by the calling thread.
+		final ThreadPoolExecutor executor= getExecutor();
+		for (int i = 1; i < count; i++) {
+			executor.execute(tasks.get(i));
+		}
+		tasks.get(0).run();
+		awaitUninterruptibly(done);
+
+		for (Task<T> task : tasks) {
+			if (task.fError instanceof RuntimeException)
+				throw (RuntimeException) task.fError;
+			if (task.fError instanceof Error)
+				throw (Error) task.fError;
+		}
+		for (Task<T> task : tasks) {
+			if (task.fException != null) {
+				task.fResult= query.handleException(task.fException);
+			}
+			result.add(task.fResult);
+			monitor.worked(ticksPerFragment);
+		}
+		return result;
+	}
+
+	/**
+	 * The fragments may only be released when all queries have completed, therefore an interrupt
+	 * must not end the wait.
+	 */
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		boolean interrupted= false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted= true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static synchronized ThreadPoolExecutor getExecutor() {
+		if (sExecutor == null) {
+			// Without a queue a task is run by the calling thread when all threads are busy, this
+			// also prevents a deadlock for nested queries.
+			sExecutor= new ThreadPoolExecutor(0, MAX_THREADS - 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(), new ThreadFactory() {
+						private int fCount;
+
+						public synchronized Thread newThread(Runnable r) {
+							Thread thread= new Thread(r, "Index Query " + (++fCount)); //$NON-NLS-1$
+							thread.setDaemon(true);
+							return thread;
+						}
+					}, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return sExecutor;
+	}
+}
@@ -33,6 +33,18 @@ public interface IIndexFragmentFile extends IIndexFile {
 	 */
 	void setContentsHash(long hash) throws CoreException;
 
+	/**
+	 * Returns the hash of the bytes of the file as stored on disk, or <code>0</code> if it
+	 * is unknown. Other than the contents hash it is computed without decoding the file.
+	 */
+	long getRawContentsHash() throws CoreException;
+
+	/**
+	 * Sets the hash of the bytes of the file as stored on disk.
+	 * @param hash the hash or <code>0</code> if it is unknown.
+	 */
+	void setRawContentsHash(long hash) throws CoreException;
+
 	/**
 	 * Sets the hash-code of the scanner configuration.
 	 * @param hashcode a hash-code or <code>0</code> if it is unknown.
@@ -46,6 +58,28 @@ public interface IIndexFragmentFile extends IIndexFile {
 	 */
 	void setEncodingHashcode(int hashcode) throws CoreException;
 
+	/**
+	 * Returns the name of the macro that guards the file against repeated inclusion, or
+	 * <code>null</code> if no include guard is known for the file.
+	 */
+	char[] getIncludeGuard() throws CoreException;
+
+	/**
+	 * Sets the name of the macro that guards the file against repeated inclusion.
+	 * @param macroName the name of the macro or <code>null</code>.
+	 */
+	void setIncludeGuard(char[] macroName) throws CoreException;
+
+	/**
+	 * Returns whether the file contains a '#pragma once' directive.
+	 */
+	boolean hasPragmaOnceSemantics() throws CoreException;
+
+	/**
+	 * Sets whether the file contains a '#pragma once' directive.
+	 */
+	void setPragmaOnceSemantics(boolean value) throws CoreException;
+
 	/**
 	 * Returns whether this file contains content in its
 	 * associated fragment. Files without content are inserted to track includes.
@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Set;
 
 import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.dom.ast.IMacroBinding;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPUsingDirective;
 import org.eclipse.cdt.core.index.IIndex;
 import org.eclipse.cdt.core.index.IIndexFile;
@@ -28,12 +29,14 @@ import org.eclipse.cdt.core.index.IIndexFileLocation;
 import org.eclipse.cdt.core.index.IIndexInclude;
 import org.eclipse.cdt.core.index.IIndexMacro;
 import org.eclipse.cdt.core.parser.IncludeFileContentProvider;
+import org.eclipse.cdt.core.parser.util.CharArrayMap;
 import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent;
 import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent.InclusionKind;
 import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContentProvider;
 import org.eclipse.cdt.internal.core.pdom.ASTFilePathResolver;
 import org.eclipse.cdt.internal.core.pdom.AbstractIndexerTask;
 import org.eclipse.cdt.internal.core.pdom.AbstractIndexerTask.IndexFileContent;
+import org.eclipse.cdt.internal.core.pdom.IndexerInputAdapter;
 import org.eclipse.core.runtime.CoreException;
 
 /**
@@ -103,6 +106,11 @@ public final class IndexBasedFileContentProvider extends InternalFileContentProv
 	
 	@Override
 	public InternalFileContent getContentForInclusion(String path) {
+		return getContentForInclusion(path, null);
+	}
+
+	@Override
+	public InternalFileContent getContentForInclusion(String path, CharArrayMap<? extends IMacroBinding> definedMacros) {
 		IIndexFileLocation ifl= fPathResolver.resolveIncludeFile(path);
 		if (ifl == null) {
 			return null;
@@ -128,6 +136,11 @@ public final class IndexBasedFileContentProvider extends InternalFileContentProv
 					return new InternalFileContent(path, macros, directives, files);
 				} catch (NeedToParseException e) {
 				}
+				// The file has to be parsed, however it need not be read when its include guard is defined.
+				if (definedMacros != null && isGuardDefined(file, ifl, definedMacros)) {
+					fIncludedFiles.remove(ifl);
+					return new InternalFileContent(path, InclusionKind.SKIP_FILE);
+				}
 			}
 		} catch (CoreException e) {
 			CCorePlugin.log(e);
@@ -147,6 +160,19 @@ public final class IndexBasedFileContentProvider extends InternalFileContentProv
 		return null;
 	}
 
+	/**
+	 * Checks whether the include guard stored for the file in the index is defined. The guard is used
+	 * only when the file has not been modified since it was indexed.
+	 */
+	private boolean isGuardDefined(IIndexFile file, IIndexFileLocation ifl,
+			CharArrayMap<? extends IMacroBinding> definedMacros) throws CoreException {
+		if (!(file instanceof IIndexFragmentFile) || !(fPathResolver instanceof IndexerInputAdapter))
+			return false;
+		final char[] guard= ((IIndexFragmentFile) file).getIncludeGuard();
+		return guard != null && definedMacros.get(guard) != null
+				&& file.getTimestamp() == ((IndexerInputAdapter) fPathResolver).getLastModified(ifl);
+	}
+
 	@Override
 	public InternalFileContent getContentForInclusion(IIndexFileLocation ifl, String astPath) {
 		if (fFallBackFactory != null) {
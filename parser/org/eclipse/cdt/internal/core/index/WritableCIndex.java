@@ -152,6 +152,12 @@ public class WritableCIndex extends CIndex implements IWritableIndex {
 		}
 	}
 
+	@Override
+	protected boolean isParallel() {
+		// The read locks of the fragments are given up while the write lock is held.
+		return !fIsWriteLocked && super.isParallel();
+	}
+
 	private void checkThread() {
 		if (fThread == null) {
 			fThread= Thread.currentThread();
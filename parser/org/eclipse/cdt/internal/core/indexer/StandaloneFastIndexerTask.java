@@ -35,10 +35,9 @@ public class StandaloneFastIndexerTask extends StandaloneIndexerTask {
 		super(indexer, added, changed, removed, true);
 	}
 
-	@SuppressWarnings("deprecation")
 	@Override
 	protected IncludeFileContentProvider createReaderFactory() {
-		return IncludeFileContentProvider.adapt(new StandaloneIndexerFallbackReaderFactory());
+		return new StandaloneIndexerFileContentProvider((StandaloneIndexerInputAdapter) getInputAdapter());
 	}
 
 	@Override
@@ -74,6 +74,12 @@ public abstract class StandaloneIndexer {
 	 * has changed.
 	 */
 	public final static int UPDATE_CHECK_TIMESTAMPS= 0x2;
+
+	/**
+	 * Constant for indicating to update translation units only if their contents have changed.
+	 * It shall be used together with {@link #UPDATE_CHECK_TIMESTAMPS}.
+	 */
+	public final static int UPDATE_CHECK_CONTENTS_HASH= 0x10;
 		
 	/**
 	 * Empty list.
@@ -154,6 +160,12 @@ public abstract class StandaloneIndexer {
 	protected String[] fFilesToParseUpFront = new String[0];
 	
 	protected int fUpdateOptions = UPDATE_ALL;
+
+	/**
+	 * The shard of the translation units indexed by this indexer, and the total number of shards.
+	 */
+	protected int fShard = 0;
+	protected int fShardCount = 1;
 	
 	private IndexerProgress fProgress = null;
 	private volatile StandaloneIndexerTask fDelegate;
@@ -457,11 +469,13 @@ public abstract class StandaloneIndexer {
 			if (file.isDirectory()) {
 				String[] files = file.list(filter);
 				for (String file2 : files) {
-					added.add(file2);
+					if (isInShard(file2)) {
+						added.add(file2);
+					}
 				}
 			}
 			else {				
-				if (filter.accept(file.getParentFile(), file.getName())) {
+				if (filter.accept(file.getParentFile(), file.getName()) && isInShard(path)) {
 					added.add(path);
 				}
 			}
@@ -469,6 +483,10 @@ public abstract class StandaloneIndexer {
 		return added;
 	}
 	
+	private boolean isInShard(String path) {
+		return fShardCount <= 1 || (path.hashCode() & Integer.MAX_VALUE) % fShardCount == fShard;
+	}
+
 	/**
 	 * Creates a delegate standalone indexing task
 	 */
@@ -520,6 +538,22 @@ public abstract class StandaloneIndexer {
 		fExclusionFilter = exclusionFilter;
 	}
 
+	/**
+	 * Restricts the translation units that are added to the index to one out of a number of
+	 * disjoint shards. The shard of a translation unit is derived from its path, such that
+	 * indexers running in separate processes with the same input but different shards index
+	 * disjoint sets of translation units. The resulting indexes can be combined with the
+	 * {@link org.eclipse.cdt.internal.core.pdom.PDOMMerger}.
+	 * @param shard the shard to index, between 0 and <code>shardCount - 1</code>.
+	 * @param shardCount the total number of shards, 1 to index all translation units.
+	 */
+	public void setShard(int shard, int shardCount) {
+		if (shardCount < 1 || shard < 0 || shard >= shardCount)
+			throw new IllegalArgumentException();
+		fShard = shard;
+		fShardCount = shardCount;
+	}
+
 
 	public FileEncodingRegistry getFileEncodingRegistry() {
 		return fFileEncodingRegistry;
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.indexer;
+
+import org.eclipse.cdt.core.index.IIndexFileLocation;
+import org.eclipse.cdt.core.parser.FileContent;
+import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent;
+import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContentProvider;
+
+/**
+ * Provides the content of included files for the standalone indexer. The files are read like
+ * the translation units, with the encoding of the file encoding registry.
+ */
+public class StandaloneIndexerFileContentProvider extends InternalFileContentProvider {
+	private final StandaloneIndexerInputAdapter fInputAdapter;
+
+	public StandaloneIndexerFileContentProvider(StandaloneIndexerInputAdapter inputAdapter) {
+		fInputAdapter= inputAdapter;
+	}
+
+	@Override
+	public InternalFileContent getContentForInclusion(String path) {
+		if (!getInclusionExists(path))
+			return null;
+		return (InternalFileContent) FileContent.createForExternalFileLocation(path, fInputAdapter.getFileEncoding(path));
+	}
+
+	@Override
+	public InternalFileContent getContentForInclusion(IIndexFileLocation ifl, String astPath) {
+		return getContentForInclusion(astPath);
+	}
+}
@@ -12,7 +12,8 @@ package org.eclipse.cdt.internal.core.indexer;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.cdt.core.index.IIndexFileLocation;
 import org.eclipse.cdt.core.model.AbstractLanguage;
@@ -33,7 +34,7 @@ import org.eclipse.core.runtime.Path;
  * @since 5.0
  */
 public class StandaloneIndexerInputAdapter extends IndexerInputAdapter {
-	private final HashMap<String, IIndexFileLocation> fIflCache= new HashMap<String, IIndexFileLocation>();
+	private final Map<String, IIndexFileLocation> fIflCache= new ConcurrentHashMap<String, IIndexFileLocation>();
 	private final FileExistsCache fExistsCache;
 	
 	private final StandaloneIndexer fIndexer;
@@ -168,7 +169,7 @@ public class StandaloneIndexerInputAdapter extends IndexerInputAdapter {
 
 	@Override
 	public Object getInputFile(IIndexFileLocation location) {
-		return URIUtil.toPath(location.getURI());
+		return URIUtil.toPath(location.getURI()).toOSString();
 	}
 
 	@Override
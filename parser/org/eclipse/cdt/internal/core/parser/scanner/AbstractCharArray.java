@@ -43,6 +43,17 @@ public abstract class AbstractCharArray {
 	 */
 	public abstract long getContentsHash();
 
+	/**
+	 * Returns the 64-bit hash value of the bytes the characters of the array have been decoded
+	 * from, as computed by {@link StreamHasher#addChunk(byte[], int, int)}. Like
+	 * {@link #getContentsHash()} the method doesn't cause any I/O if called after the array has
+	 * been traversed.
+	 * @return The hash value, or <code>0</code> if the bytes are not known.
+	 */
+	public long getRawContentsHash() {
+		return 0;
+	}
+
 	/**
 	 * Returns the character at the given position, subclasses do not have to do range checks.
 	 */
@@ -46,6 +46,7 @@ import org.eclipse.cdt.core.parser.util.CharArrayUtils;
 import org.eclipse.cdt.internal.core.dom.IIncludeFileResolutionHeuristics;
 import org.eclipse.cdt.internal.core.parser.EmptyFilesProvider;
 import org.eclipse.cdt.internal.core.parser.scanner.ExpressionEvaluator.EvalException;
+import org.eclipse.cdt.internal.core.parser.scanner.HeaderMacroCache.MacroEffect;
 import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent.InclusionKind;
 import org.eclipse.cdt.internal.core.parser.scanner.Lexer.LexerOptions;
 import org.eclipse.cdt.internal.core.parser.scanner.MacroDefinitionParser.InvalidMacroDefinitionException;
@@ -74,6 +75,7 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 	
     private static final char[] EMPTY_CHAR_ARRAY = new char[0];
     private static final char[] ONE = "1".toCharArray(); //$NON-NLS-1$
+    private static final char[] ONCE = "once".toCharArray(); //$NON-NLS-1$
 
 
     // standard built-ins
@@ -99,7 +101,12 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 
 	final private IIncludeFileTester<InternalFileContent> createCodeReaderTester= new IIncludeFileTester<InternalFileContent>() {
     	public InternalFileContent checkFile(String path, boolean isHeuristicMatch, IncludeSearchPathElement onPath) {
-			final InternalFileContent fc= fFileContentProvider.getContentForInclusion(path);
+			final InternalFileContent fc;
+			if (isRepeatedInclusion(path)) {
+				fc= new InternalFileContent(path, InclusionKind.SKIP_FILE);
+			} else {
+				fc= fFileContentProvider.getContentForInclusion(path, fMacroDictionary);
+			}
 			if (fc != null) {
 				fc.setFoundByHeuristics(isHeuristicMatch);
 				fc.setFoundOnPath(onPath);
@@ -175,10 +182,16 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     // state information
     private final CharArrayMap<PreprocessorMacro> fMacroDictionary = new CharArrayMap<PreprocessorMacro>(512);
     private final LocationMap fLocationMap;
+    private final ImageCache fImageCache= new ImageCache();
 
     /** Set of already included files */
     private final HashSet<String> fAllIncludedFiles= new HashSet<String>();
 
+    private final HeaderMacroCache fHeaderMacroCache;
+    private HeaderMacroCache.Recorder fMacroRecorder;
+    private boolean fRecordMacroLookups;
+    private final long fIncludeEnvironment;
+
 	private final Lexer fRootLexer;
 	private final ScannerContext fRootContext;
 	protected ScannerContext fCurrentContext;
@@ -227,11 +240,14 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
         final String filePath= fRootContent.getFileLocation();
         configureIncludeSearchPath(new File(filePath).getParentFile(), info);
         setupMacroDictionary(configuration, info, language);		
+        fHeaderMacroCache= HeaderMacroCache.getSharedInstance();
+        fIncludeEnvironment= fHeaderMacroCache != null ? computeIncludeEnvironment() : 0;
 
         ILocationCtx ctx= fLocationMap.pushTranslationUnit(filePath, fRootContent.getSource());
         fAllIncludedFiles.add(filePath);
     	fFileContentProvider.reportTranslationUnitFile(filePath);
         fRootLexer= new Lexer(fRootContent.getSource(), fLexOptions, this, this);
+        fRootLexer.setImageCache(fImageCache);
         fRootContext= fCurrentContext= new ScannerContext(ctx, null, fRootLexer);
         if (info instanceof IExtendedScannerInfo) {
         	final IExtendedScannerInfo einfo= (IExtendedScannerInfo) info;
@@ -313,6 +329,20 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 		}
 	}
 
+	/**
+	 * Computes a hash of the configuration that affects the inclusions made by headers.
+	 */
+	private long computeIncludeEnvironment() {
+		StringBuilder buf= new StringBuilder();
+		for (IncludeSearchPathElement path : fIncludeSearchPath) {
+			buf.append(path.isForQuoteIncludesOnly() ? '"' : '<').append(path).append('\n');
+		}
+		buf.append(fLexOptions.fSupportDollarInIdentifiers).append(fLexOptions.fSupportAtSignInIdentifiers)
+				.append(fLexOptions.fSupportMinAndMax).append(fLexOptions.fSupportSlashPercentComments)
+				.append(fLexOptions.fSupportUTFLiterals);
+		return StreamHasher.hash(buf.toString());
+	}
+
 	private String makeAbsolute(File directory, String inlcudePath) {
 		if (directory == null || new File(inlcudePath).isAbsolute()) {
 			return inlcudePath;
@@ -715,7 +745,15 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
         			return ppToken;
         		}
             	final ILocationCtx locationCtx = fCurrentContext.getLocationCtx();
+            	final char[] guard= fCurrentContext.getIncludeGuard();
+            	if (guard != null) {
+            		fLocationMap.setIncludeGuard(locationCtx.getFilePath(), guard);
+            	}
             	fLocationMap.popContext(locationCtx);
+            	if (fMacroRecorder != null && fMacroRecorder.getContext() == fCurrentContext) {
+            		fHeaderMacroCache.endRecording(fMacroRecorder);
+            		fMacroRecorder= fMacroRecorder.getParent();
+            	}
         		fCurrentContext= fCurrentContext.getParent();
         		assert fCurrentContext != null;
             	
@@ -1141,6 +1179,9 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     		if (fCurrentContext.getCodeState() == CodeState.eActive) {
     			int endOffset= lexer.currentToken().getEndOffset();
     			fLocationMap.encounterPoundPragma(startOffset, condOffset, condEndOffset, endOffset);
+    			if (CharArrayUtils.equals(lexer.getInputChars(condOffset, condEndOffset), ONCE)) {
+    				fLocationMap.setPragmaOnceSemantics(getCurrentFilename());
+    			}
     		}
     		break;
     	case IPreprocessorDirective.ppIgnore:
@@ -1155,6 +1196,17 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     	}
     }
 
+    /**
+     * Checks whether the file has been included before and is guarded against repeated inclusion
+     * by '#pragma once' or an include guard that is currently defined.
+     */
+    private boolean isRepeatedInclusion(String path) {
+    	if (fLocationMap.hasPragmaOnceSemantics(path))
+    		return true;
+    	final char[] guard= fLocationMap.getIncludeGuard(path);
+    	return guard != null && fMacroDictionary.get(guard) != null;
+    }
+
     private boolean hasFileBeenIncluded(String location) {
     	Boolean itHas= fFileContentProvider.hasFileBeenIncludedInCurrentTranslationUnit(location);
     	if (itHas != null) {
@@ -1197,7 +1249,9 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 			
 		case IToken.tIDENTIFIER:
 			TokenList tl= new TokenList();
+			fRecordMacroLookups= active && fMacroRecorder != null;
 			condEndOffset= nameOffsets[1]= getTokensWithinPPDirective(false, tl, false);
+			fRecordMacroLookups= false;
 			Token t= tl.first();
 			if (t != null) {
 				switch (t.getType()) {
@@ -1258,6 +1312,9 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 				isHeuristic= fi.isFoundByHeuristics();
 				switch (fi.getKind()) {
 				case FOUND_IN_INDEX:
+					if (fMacroRecorder != null) {
+						fMacroRecorder.invalidate();
+					}
 					processInclusionFromIndex(poundOffset, path, fi);
 					break;
 				case USE_SOURCE:
@@ -1267,15 +1324,25 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 						fAllIncludedFiles.add(path);
 						ILocationCtx ctx= fLocationMap.pushInclusion(poundOffset, nameOffsets[0], nameOffsets[1],
 								condEndOffset, source, path, headerName, userInclude, isHeuristic, fi.isSource());
-						ScannerContext fctx= new ScannerContext(ctx, fCurrentContext, new Lexer(source,
-								fLexOptions, this, this));
+						Lexer fileLexer= new Lexer(source, fLexOptions, this, this);
+						fileLexer.setImageCache(fImageCache);
+						ScannerContext fctx= new ScannerContext(ctx, fCurrentContext, fileLexer);
 						fctx.setFoundOnPath(fi.getFoundOnPath(), includeDirective);
+						fctx.startIncludeGuardDetection();
 						fCurrentContext= fctx;
+						if (fHeaderMacroCache != null) {
+							processHeaderMacros(path, fi);
+						}
+					} else if (fMacroRecorder != null) {
+						fMacroRecorder.invalidate();
 					}
 					fLocationMap.replacingFile(fFileContentProvider, fi);
 					break;
 					
 				case SKIP_FILE:
+					if (fMacroRecorder != null) {
+						recordSkippedInclusion(path);
+					}
 					break;
 				}
 			} else {
@@ -1296,6 +1363,22 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 		}
 	}
 
+	/**
+	 * A skipped file does not change the macros when its include guard is defined, in all other
+	 * cases the effect of the current header cannot be recorded.
+	 */
+	private void recordSkippedInclusion(String path) {
+		final char[] guard= fLocationMap.getIncludeGuard(path);
+		if (guard != null && !fLocationMap.hasPragmaOnceSemantics(path)) {
+			final PreprocessorMacro macro= fMacroDictionary.get(guard);
+			if (macro != null) {
+				fMacroRecorder.macroLookedUp(guard, macro);
+				return;
+			}
+		}
+		fMacroRecorder.invalidate();
+	}
+
 	private void processInclusionFromIndex(int offset, String path, InternalFileContent fi) {
 		List<IIndexMacro> mdefs= fi.getMacroDefinitions();
 		for (IIndexMacro macro : mdefs) {
@@ -1304,6 +1387,45 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 		fLocationMap.skippedFile(fLocationMap.getSequenceNumberForOffset(offset), fi);
 	}
 
+	/**
+	 * Starts recording the effect of a header on the macros or, if the content of the header has been
+	 * withheld, restores the macros from the cache.
+	 */
+	private void processHeaderMacros(String path, InternalFileContent fi) {
+		final IncludeSearchPathElement foundOn= fi.getFoundOnPath();
+		final long environment= foundOn == null ? fIncludeEnvironment
+				: fIncludeEnvironment * 31 + StreamHasher.hash(foundOn.toString());
+		if (fi.getSource().isValidOffset(0) || new File(path).length() == 0) {
+			fMacroRecorder= fHeaderMacroCache.startRecording(fMacroRecorder, fCurrentContext, path,
+					fi.getSource(), environment);
+			return;
+		}
+
+		final MacroEffect[] effects= fHeaderMacroCache.findEffects(path, environment, fMacroDictionary, fMacroRecorder);
+		if (effects == null) {
+			if (fMacroRecorder != null) {
+				fMacroRecorder.invalidate();
+			}
+			return;
+		}
+		for (MacroEffect effect : effects) {
+			if (effect.fExpansion == null) {
+				fMacroDictionary.remove(effect.fName);
+			} else {
+				try {
+					PreprocessorMacro result= MacroDefinitionParser.parseMacroDefinition(effect.fName, effect.fParameters, effect.fExpansion);
+					fLocationMap.registerMacroFromIndex(result, null, -1);
+					fMacroDictionary.put(result.getNameCharArray(), result);
+				} catch (Exception e) {
+					fLog.traceLog("Invalid macro definition: '" + String.valueOf(effect.fName) + "'");     //$NON-NLS-1$//$NON-NLS-2$
+				}
+			}
+			if (fMacroRecorder != null) {
+				fMacroRecorder.addEffect(effect);
+			}
+		}
+	}
+
 	private char[] extractHeaderName(final char[] image, final char startDelim, final char endDelim, int[] offsets) {
 		char[] headerName;
 		int start= 0;
@@ -1337,8 +1459,12 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     private void executeDefine(final Lexer lexer, int startOffset, boolean isActive) throws OffsetLimitReachedException {
 		try {
 			ObjectStyleMacro macrodef = fMacroDefinitionParser.parseMacroDefinition(lexer, this);
-			if (isActive)
+			if (isActive) {
 				fMacroDictionary.put(macrodef.getNameCharArray(), macrodef);
+				if (fMacroRecorder != null) {
+					fMacroRecorder.macroDefined(macrodef);
+				}
+			}
 			
 			final Token name= fMacroDefinitionParser.getNameToken();
 			fLocationMap.encounterPoundDefine(startOffset, name.getOffset(), name.getEndOffset(),
@@ -1366,6 +1492,9 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     	PreprocessorMacro definition;
     	if (isActive) {
     		definition= fMacroDictionary.remove(namechars, 0, namechars.length);
+    		if (fMacroRecorder != null) {
+    			fMacroRecorder.macroUndefined(namechars);
+    		}
     	} else {
     		definition= fMacroDictionary.get(namechars);
     	}
@@ -1383,6 +1512,7 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 		boolean isActive= false;
 		PreprocessorMacro macro= null;
 		final Conditional conditional= fCurrentContext.newBranch(BranchKind.eIf, withinExpansion);
+		fCurrentContext.startConditional(conditional, isIfndef && tt == IToken.tIDENTIFIER ? name.getCharImage() : null, offset);
 		if (conditional.canHaveActiveBranch(withinExpansion)) {
 	    	// we need an identifier
 			if (tt != IToken.tIDENTIFIER) {
@@ -1394,6 +1524,9 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 	    	} else {
 	    		final char[] namechars= name.getCharImage();
 	    		macro= fMacroDictionary.get(namechars);
+	    		if (fMacroRecorder != null) {
+	    			fMacroRecorder.macroLookedUp(namechars, macro);
+	    		}
 	    		isActive= (macro == null) == isIfndef;
 	    		if (macro == null) {
 	    			macro = new UndefinedMacro(namechars);
@@ -1425,14 +1558,20 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 
 		if (cond.canHaveActiveBranch(withinExpansion)) {
 			TokenList condition= new TokenList();
+			fRecordMacroLookups= fMacroRecorder != null;
 			condEndOffset= getTokensWithinPPDirective(true, condition, withinExpansion);
+			fRecordMacroLookups= false;
 			endOffset= lexer.currentToken().getEndOffset();
+			if (!isElif) {
+				fCurrentContext.startConditional(cond, getNegatedDefinedMacro(condition), startOffset);
+			}
 			
 			if (condition.first() == null) {
 				handleProblem(IProblem.SCANNER_EXPRESSION_SYNTAX_ERROR, null, startOffset, endOffset);
 			} else {
 				try {
 					fExpressionEvaluator.clearMacrosInDefinedExpression();
+					fExpressionEvaluator.setMacroRecorder(fMacroRecorder);
 					isActive= fExpressionEvaluator.evaluate(condition, fMacroDictionary, fLocationMap);
 					refs = fExpressionEvaluator.clearMacrosInDefinedExpression();
 				} catch (EvalException e) {
@@ -1442,6 +1581,9 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 		} else {
 			condEndOffset= lexer.consumeLine(ORIGIN_PREPROCESSOR_DIRECTIVE);
 			endOffset= lexer.currentToken().getEndOffset();
+			if (!isElif) {
+				fCurrentContext.startConditional(cond, null, startOffset);
+			}
 		}
 
 		if (isElif) {
@@ -1473,9 +1615,38 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 			handleProblem(IProblem.PREPROCESSOR_UNBALANCE_CONDITION, Keywords.cENDIF, startOffset, endOffset);
 		} else {
 			fLocationMap.encounterPoundEndIf(startOffset, endOffset);
+			fCurrentContext.endConditional(cond, endOffset);
 		}
 		return fCurrentContext.setBranchEndState(cond, withinExpansion, startOffset);
 	}
+
+	/**
+	 * Returns the name of the macro for a condition of the form <code>!defined MACRO</code> or
+	 * <code>!defined(MACRO)</code>, or <code>null</code> for all other conditions.
+	 */
+	private char[] getNegatedDefinedMacro(TokenList condition) {
+		Token t= condition.first();
+		if (t == null || t.getType() != IToken.tNOT)
+			return null;
+		t= (Token) t.getNext();
+		if (t == null || t.getType() != tDEFINED)
+			return null;
+		t= (Token) t.getNext();
+		final boolean inParenthesis= t != null && t.getType() == IToken.tLPAREN;
+		if (inParenthesis) {
+			t= (Token) t.getNext();
+		}
+		if (t == null || t.getType() != IToken.tIDENTIFIER)
+			return null;
+		final char[] name= t.getCharImage();
+		t= (Token) t.getNext();
+		if (inParenthesis) {
+			if (t == null || t.getType() != IToken.tRPAREN)
+				return null;
+			t= (Token) t.getNext();
+		}
+		return t == null ? name : null;
+	}
 	
     /**
      * Runs the preprocessor on the rest of the line, storing the tokens in the holder supplied.
@@ -1594,6 +1765,9 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 	private boolean expandMacro(final Token identifier, Lexer lexer, int options, boolean withinExpansion) throws OffsetLimitReachedException {
 		final char[] name= identifier.getCharImage();
         PreprocessorMacro macro= fMacroDictionary.get(name);
+        if (fRecordMacroLookups) {
+        	fMacroRecorder.macroLookedUp(name, macro);
+        }
         if (macro == null) {
         	return false;
         }
@@ -1613,6 +1787,7 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
         final ITokenSequence input= stopAtNewline ? fLineInputToMacroExpansion : fInputToMacroExpansion;
 		final MacroExpander expander = withinExpansion ? new MacroExpander(this, fMacroDictionary,
 				fLocationMap, fLexOptions) : fMacroExpander;
+		expander.setMacroRecorder(fRecordMacroLookups ? fMacroRecorder : null);
         TokenList replacement= expander.expand(input, (options & PROTECT_DEFINED) != 0, macro, identifier, contentAssist);
     	final IASTName[] expansions= expander.clearImplicitExpansions();
     	final ImageLocationInfo[] ili= expander.clearImageLocationInfos();
@@ -18,13 +18,22 @@ public final class CharArray extends AbstractCharArray {
 
 	private final char[] fArray;
 	private long hash64;
+	private final long fRawHash64;
 
 	public CharArray(char[] array) {
+		this(array, 0);
+	}
+
+	/**
+	 * Creates a char array for characters decoded from bytes with the given hash value.
+	 */
+	public CharArray(char[] array, long rawContentsHash) {
 		fArray= array;
+		fRawHash64= rawContentsHash;
 	}
 
 	public CharArray(String str) {
-		fArray= str.toCharArray();
+		this(str.toCharArray());
 	}
 	
 	public char[] getArray() {
@@ -65,4 +74,9 @@ public final class CharArray extends AbstractCharArray {
 		}
 		return hash64;
 	}
+
+	@Override
+	public long getRawContentsHash() {
+		return fRawHash64;
+	}
 }
@@ -46,10 +46,18 @@ public class ExpressionEvaluator {
 	private CharArrayMap<PreprocessorMacro> fDictionary;
 	private ArrayList<IASTName> fMacrosInDefinedExpressions= new ArrayList<IASTName>();
 	private LocationMap fLocationMap;
+	private HeaderMacroCache.Recorder fMacroRecorder;
 
 	ExpressionEvaluator() {
 	}
 
+	/**
+	 * Sets the recorder to be notified about the macros looked up, may be <code>null</code>.
+	 */
+	void setMacroRecorder(HeaderMacroCache.Recorder recorder) {
+		fMacroRecorder= recorder;
+	}
+
 	public boolean evaluate(TokenList condition, CharArrayMap<PreprocessorMacro> macroDictionary, LocationMap map) throws EvalException {
 		fTokens= condition.first();
 		fDictionary= macroDictionary;
@@ -300,6 +308,9 @@ public class ExpressionEvaluator {
     		throw new EvalException(IProblem.SCANNER_ILLEGAL_IDENTIFIER, null);
     	}
     	PreprocessorMacro macro= fDictionary.get(fTokens.getCharImage());
+    	if (fMacroRecorder != null) {
+    		fMacroRecorder.macroLookedUp(fTokens.getCharImage(), macro);
+    	}
     	if (macro != null) {
     		fMacrosInDefinedExpressions.add(fLocationMap.encounterDefinedExpression(macro, fTokens.getOffset(), fTokens.getEndOffset()));
     	}
@@ -30,6 +30,13 @@ import org.eclipse.cdt.core.CCorePlugin;
  */
 public class FileCharArray extends LazyCharArray {
 	private static final String UTF8_CHARSET_NAME = "UTF-8"; //$NON-NLS-1$
+	private static final String ASCII_CHARSET_NAME = "US-ASCII"; //$NON-NLS-1$
+	/**
+	 * Files encoded in ASCII or UTF-8 with at least this size are memory mapped. Mapped files
+	 * cannot be modified or deleted on Windows, therefore mapping is not used there.
+	 */
+	private static final long MAP_THRESHOLD = 1 << 20;
+	private static final boolean CAN_MAP_FILES = !System.getProperty("os.name", "").startsWith("Windows"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 
 	public static AbstractCharArray create(String fileName, String charSet, InputStream in) throws IOException {
 		// no support for non-local files
@@ -45,19 +52,64 @@ public class FileCharArray extends LazyCharArray {
 		if (lsize < CHUNK_SIZE) {
 			return decodeSmallFile(channel, (int) lsize, charSet);
 		}
+		if (lsize >= MAP_THRESHOLD && CAN_MAP_FILES) {
+			AbstractCharArray result= mapFile(channel, charSet);
+			if (result != null)
+				return result;
+		}
 
 		return new FileCharArray(fileName, charSet);
 	}
 	
+	/**
+	 * Computes the hash of the bytes of a file, as returned by {@link #getRawContentsHash()}
+	 * for a char array read from the file.
+	 */
+	public static long computeRawContentsHash(String fileName) throws IOException {
+		final FileInputStream fis = new FileInputStream(fileName);
+		try {
+			final FileChannel channel = fis.getChannel();
+			final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(Math.max(channel.size(), 1), CHUNK_SIZE));
+			final StreamHasher hasher = new StreamHasher();
+			while (channel.read(buffer) >= 0) {
+				hasher.addChunk(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			return hasher.computeHash();
+		} finally {
+			fis.close();
+		}
+	}
+
 	private static AbstractCharArray decodeSmallFile(FileChannel channel, int lsize, String charSet) throws IOException {
 		ByteBuffer byteBuffer = ByteBuffer.allocate(lsize);
 		channel.read(byteBuffer);
 		byteBuffer.flip();
+		StreamHasher hasher = new StreamHasher();
+		hasher.addChunk(byteBuffer.array(), 0, byteBuffer.limit());
 		skipUTF8ByteOrderMark(byteBuffer, charSet);
 		
 		CharBuffer charBuffer = Charset.forName(charSet).decode(byteBuffer);
 		char[] buf= extractChars(charBuffer);
-		return new CharArray(buf);
+		return new CharArray(buf, hasher.computeHash());
+	}
+
+	private static AbstractCharArray mapFile(FileChannel channel, String charSet) {
+		final Charset charset= Charset.forName(charSet);
+		final String name= charset.name();
+		if (!name.equals(UTF8_CHARSET_NAME) && !name.equals(ASCII_CHARSET_NAME))
+			return null;
+
+		try {
+			ByteBuffer bom= ByteBuffer.allocate(3);
+			channel.read(bom, 0);
+			bom.flip();
+			skipUTF8ByteOrderMark(bom, name);
+			return MappedFileCharArray.create(channel, charset, bom.position());
+		} catch (IOException e) {
+			// Use the lazy char array instead
+			return null;
+		}
 	}
 
 	private static void skipUTF8ByteOrderMark(ByteBuffer buf, String charset) {
@@ -87,6 +139,9 @@ public class FileCharArray extends LazyCharArray {
 	private long fNextFileOffset= 0;
 	private int fNextCharOffset= 0;
 	private boolean fReachedEOF= false;
+	// Hashes the bytes in the order they are decoded, null when they cannot be hashed.
+	private StreamHasher fRawHasher= new StreamHasher();
+	private long fRawHash64;
 	
 
 	private FileCharArray(String fileName, String charSet) {
@@ -143,6 +198,9 @@ public class FileCharArray extends LazyCharArray {
 					skipUTF8ByteOrderMark(in, fCharSet);
 				}
 				result = decoder.decode(in, dest, eof);
+				if (fRawHasher != null) {
+					fRawHasher.addChunk(in.array(), 0, in.position());
+				}
 				fileOffset+= in.position();
 			} while (result == CoderResult.UNDERFLOW && !eof);
 
@@ -164,10 +222,23 @@ public class FileCharArray extends LazyCharArray {
 			// The file cannot be read
 			CCorePlugin.log(e);
 			fReachedEOF= true;
+			fRawHasher= null;
 			return null;
 		}
 	}
 
+	@Override
+	public long getRawContentsHash() {
+		if (fRawHasher != null) {
+			getLength();
+			if (fRawHasher != null) {
+				fRawHash64= fRawHasher.computeHash();
+				fRawHasher= null;
+			}
+		}
+		return fRawHash64;
+	}
+
 	@Override
 	protected void rereadChunkData(Chunk chunk, char[] dest) {
 		FileInputStream fis;
@@ -0,0 +1,616 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.parser.scanner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.cdt.core.parser.util.CharArrayMap;
+
+/**
+ * Persistent cache for the effect of headers on the macro dictionary. For a header the cache
+ * stores the macros defined and undefined while the header and the files it includes are
+ * preprocessed. An entry is keyed by the location and the raw content hash of the header, it is
+ * valid for all points of inclusion where the significant macros, i.e. the macros looked up
+ * by the conditional directives of the header before the header defines them, have the same
+ * definitions as when the entry was recorded.
+ * <p>
+ * The preprocessor records entries while it reads headers and uses them to restore the
+ * macros of a header whose content is withheld by the file content provider, as it is done
+ * for {@link org.eclipse.cdt.core.model.ITranslationUnit#AST_SKIP_ALL_HEADERS}.
+ * <p>
+ * Entries are validated against the hashes of the bytes of the files that contributed to them,
+ * the hashes of the files are cached together with the time stamps of the files. The files are
+ * examined without holding the lock of the cache, such that preprocessors on other threads are
+ * not blocked by the file system.
+ */
+public final class HeaderMacroCache {
+	private static final int VERSION= 2;
+	private static final int MAX_HEADERS= 10000;
+	private static final int MAX_VARIANTS= 4;
+
+	private static HeaderMacroCache sSharedInstance;
+
+	/**
+	 * Effect of a header on a single macro.
+	 */
+	static final class MacroEffect {
+		final char[] fName;
+		final char[][] fParameters;
+		/** The expansion of the macro, or <code>null</code> for an undef. */
+		final char[] fExpansion;
+
+		MacroEffect(char[] name, char[][] parameters, char[] expansion) {
+			fName= name;
+			fParameters= parameters;
+			fExpansion= expansion;
+		}
+	}
+
+	/**
+	 * The effects of a header for a specific set of significant macros.
+	 */
+	private static final class Variant {
+		final long fEnvironment;
+		final String[] fSignificantNames;
+		/** The definitions of the significant macros, <code>null</code> for undefined macros. */
+		final String[] fSignificantValues;
+		/** The header itself, followed by the files it includes. */
+		final String[] fDependencies;
+		final long[] fDependencyHashes;
+		final MacroEffect[] fEffects;
+
+		Variant(long environment, String[] significantNames, String[] significantValues,
+				String[] dependencies, long[] dependencyHashes, MacroEffect[] effects) {
+			fEnvironment= environment;
+			fSignificantNames= significantNames;
+			fSignificantValues= significantValues;
+			fDependencies= dependencies;
+			fDependencyHashes= dependencyHashes;
+			fEffects= effects;
+		}
+
+		boolean isEquivalent(Variant other) {
+			return fEnvironment == other.fEnvironment
+					&& Arrays.equals(fSignificantNames, other.fSignificantNames)
+					&& Arrays.equals(fSignificantValues, other.fSignificantValues)
+					&& Arrays.equals(fDependencies, other.fDependencies)
+					&& Arrays.equals(fDependencyHashes, other.fDependencyHashes);
+		}
+	}
+
+	private static final class FileState {
+		final long fTimestamp;
+		final long fLength;
+		final long fContentsHash;
+
+		FileState(long timestamp, long length, long contentsHash) {
+			fTimestamp= timestamp;
+			fLength= length;
+			fContentsHash= contentsHash;
+		}
+	}
+
+	/**
+	 * Collects the effects of a header on the macro dictionary while it is preprocessed. Recorders
+	 * of nested headers are chained, such that everything recorded for a header is also recorded
+	 * for the headers including it.
+	 */
+	static final class Recorder {
+		private final Recorder fParent;
+		private final Object fContext;
+		private final String fPath;
+		private final AbstractCharArray fSource;
+		private final long fEnvironment;
+		private boolean fValid= true;
+		private final Map<String, String> fSignificant= new HashMap<String, String>();
+		private final Set<String> fDefined= new HashSet<String>();
+		private final List<MacroEffect> fEffects= new ArrayList<MacroEffect>();
+		private final Map<String, Long> fDependencies= new LinkedHashMap<String, Long>();
+
+		Recorder(Recorder parent, Object context, String path, AbstractCharArray source, long environment) {
+			fParent= parent;
+			fContext= context;
+			fPath= path;
+			fSource= source;
+			fEnvironment= environment;
+		}
+
+		Recorder getParent() {
+			return fParent;
+		}
+
+		/**
+		 * Returns the scanner context of the header recorded.
+		 */
+		Object getContext() {
+			return fContext;
+		}
+
+		/**
+		 * Marks the recordings as unusable, e.g. because the header included a file with an
+		 * unknown effect on the macros.
+		 */
+		void invalidate() {
+			for (Recorder r= this; r != null && r.fValid; r= r.fParent) {
+				r.fValid= false;
+			}
+		}
+
+		/**
+		 * Adds a dependency on the given file, a hash of <code>null</code> is supplied when
+		 * the file has been read, see {@link #setContentsHash(long)}.
+		 */
+		void dependsOn(String path, Long contentsHash) {
+			for (Recorder r= this; r != null; r= r.fParent) {
+				if (!r.fDependencies.containsKey(path)) {
+					r.fDependencies.put(path, contentsHash);
+				}
+			}
+		}
+
+		/**
+		 * Supplies the hash of the header recorded after it has been read completely.
+		 */
+		void setContentsHash(long contentsHash) {
+			final Long hash= contentsHash;
+			for (Recorder r= this; r != null; r= r.fParent) {
+				if (r.fDependencies.get(fPath) == null) {
+					r.fDependencies.put(fPath, hash);
+				}
+			}
+		}
+
+		void macroLookedUp(char[] name, PreprocessorMacro macro) {
+			if (macro != null && macro.isDynamic()) {
+				invalidate();
+				return;
+			}
+			final String key= String.valueOf(name);
+			String value= null;
+			for (Recorder r= this; r != null; r= r.fParent) {
+				if (!r.fDefined.contains(key) && !r.fSignificant.containsKey(key)) {
+					if (value == null && macro != null) {
+						value= getSignature(macro);
+					}
+					r.fSignificant.put(key, value);
+				}
+			}
+		}
+
+		void macroDefined(PreprocessorMacro macro) {
+			addEffect(new MacroEffect(macro.getNameCharArray(), macro.getParameterList(), macro.getExpansionImage()));
+		}
+
+		void macroUndefined(char[] name) {
+			addEffect(new MacroEffect(name, null, null));
+		}
+
+		void addEffect(MacroEffect effect) {
+			final String key= String.valueOf(effect.fName);
+			for (Recorder r= this; r != null; r= r.fParent) {
+				r.fEffects.add(effect);
+				r.fDefined.add(key);
+			}
+		}
+	}
+
+	/**
+	 * Returns the cache used by the preprocessors, or <code>null</code> if there is none.
+	 */
+	public static synchronized HeaderMacroCache getSharedInstance() {
+		return sSharedInstance;
+	}
+
+	/**
+	 * Sets the cache to be used by the preprocessors, may be <code>null</code>.
+	 */
+	public static synchronized void setSharedInstance(HeaderMacroCache cache) {
+		sSharedInstance= cache;
+	}
+
+	private final File fFile;
+	private final Map<String, List<Variant>> fHeaders= new HashMap<String, List<Variant>>();
+	private final Map<String, FileState> fFileStates= new ConcurrentHashMap<String, FileState>();
+	private volatile boolean fDirty;
+	private final AtomicLong fHits= new AtomicLong();
+	private final AtomicLong fMisses= new AtomicLong();
+
+	/**
+	 * Creates a cache that is persisted in the given file. If the file exists, the entries are
+	 * read from it, a file that cannot be read is ignored. A corrupt file is deleted.
+	 * @param file the file to persist the cache in, or <code>null</code> for a cache in memory.
+	 */
+	public HeaderMacroCache(File file) {
+		fFile= file;
+		if (file != null && file.exists()) {
+			try {
+				read(file);
+			} catch (IOException e) {
+				fHeaders.clear();
+				fFileStates.clear();
+			} catch (RuntimeException e) {
+				// The content of the file is corrupt, e.g. it has been truncated.
+				fHeaders.clear();
+				fFileStates.clear();
+				file.delete();
+			}
+		}
+	}
+
+	static String getSignature(PreprocessorMacro macro) {
+		return macro.toString() + '=' + String.valueOf(macro.getExpansionImage());
+	}
+
+	/**
+	 * Starts recording the effects of a header.
+	 * @param parent the recorder of the including header, or <code>null</code>.
+	 * @param context the scanner context of the header.
+	 * @param source the content of the header.
+	 * @param environment hash of the include search path used to resolve the inclusions.
+	 */
+	Recorder startRecording(Recorder parent, Object context, String path, AbstractCharArray source, long environment) {
+		Recorder recorder= new Recorder(parent, context, path, source, environment);
+		recorder.dependsOn(path, null);
+		return recorder;
+	}
+
+	/**
+	 * Stores the recordings for a header that has been preprocessed completely.
+	 */
+	void endRecording(Recorder recorder) {
+		final long contentsHash= recorder.fSource.getRawContentsHash();
+		if (contentsHash == 0 && recorder.fSource.getLength() > 0) {
+			// The bytes of the header are not known, e.g. for the content of an editor.
+			recorder.invalidate();
+		}
+		recorder.setContentsHash(contentsHash);
+		if (!recorder.fValid)
+			return;
+
+		final Map<String, String> significant= new TreeMap<String, String>(recorder.fSignificant);
+		final String[] dependencies= recorder.fDependencies.keySet().toArray(new String[recorder.fDependencies.size()]);
+		final long[] dependencyHashes= new long[dependencies.length];
+		for (int i = 0; i < dependencies.length; i++) {
+			final Long hash= recorder.fDependencies.get(dependencies[i]);
+			if (hash == null)
+				return;
+			dependencyHashes[i]= hash;
+		}
+		final Variant variant= new Variant(recorder.fEnvironment,
+				significant.keySet().toArray(new String[significant.size()]),
+				significant.values().toArray(new String[significant.size()]),
+				dependencies, dependencyHashes,
+				recorder.fEffects.toArray(new MacroEffect[recorder.fEffects.size()]));
+
+		synchronized (this) {
+			List<Variant> variants= fHeaders.get(recorder.fPath);
+			if (variants == null) {
+				if (fHeaders.size() >= MAX_HEADERS)
+					return;
+				variants= new ArrayList<Variant>(2);
+				fHeaders.put(recorder.fPath, variants);
+			}
+			for (Iterator<Variant> it = variants.iterator(); it.hasNext();) {
+				Variant other= it.next();
+				if (other.fDependencyHashes[0] != dependencyHashes[0] || other.isEquivalent(variant)) {
+					it.remove();
+				}
+			}
+			variants.add(0, variant);
+			if (variants.size() > MAX_VARIANTS) {
+				variants.remove(variants.size() - 1);
+			}
+			fDirty= true;
+		}
+	}
+
+	/**
+	 * Searches for the effects of a header that apply at a point of inclusion with the given
+	 * macro dictionary. If found, the significant macros and the dependencies of the effects are
+	 * passed to the recorder.
+	 * @param recorder the recorder of the including header, or <code>null</code>.
+	 * @return the effects of the header or <code>null</code>, if there is no such entry.
+	 */
+	MacroEffect[] findEffects(String path, long environment,
+			CharArrayMap<PreprocessorMacro> dictionary, Recorder recorder) {
+		final Variant[] variants;
+		synchronized (this) {
+			final List<Variant> list= fHeaders.get(path);
+			variants= list == null ? null : list.toArray(new Variant[list.size()]);
+		}
+		if (variants != null) {
+			for (Variant variant : variants) {
+				if (variant.fEnvironment == environment && matches(variant, dictionary)
+						&& isUpToDate(variant)) {
+					fHits.incrementAndGet();
+					if (recorder != null) {
+						for (String name : variant.fSignificantNames) {
+							final char[] key= name.toCharArray();
+							recorder.macroLookedUp(key, dictionary.get(key));
+						}
+						for (int i = 0; i < variant.fDependencies.length; i++) {
+							recorder.dependsOn(variant.fDependencies[i], variant.fDependencyHashes[i]);
+						}
+					}
+					return variant.fEffects;
+				}
+			}
+		}
+		fMisses.incrementAndGet();
+		return null;
+	}
+
+	private boolean matches(Variant variant, CharArrayMap<PreprocessorMacro> dictionary) {
+		for (int i = 0; i < variant.fSignificantNames.length; i++) {
+			final PreprocessorMacro macro= dictionary.get(variant.fSignificantNames[i].toCharArray());
+			final String value= variant.fSignificantValues[i];
+			if (macro == null ? value != null : value == null || !value.equals(getSignature(macro)))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean isUpToDate(Variant variant) {
+		for (int i = 0; i < variant.fDependencies.length; i++) {
+			if (getContentsHash(variant.fDependencies[i]) != variant.fDependencyHashes[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the hash of the bytes of a file, the file is read only if its time stamp or length
+	 * has changed since the hash was computed. The time stamp is obtained before the file is
+	 * read, such that a modification in between is detected with the next call.
+	 */
+	private long getContentsHash(String path) {
+		final File file= new File(path);
+		final long timestamp= file.lastModified();
+		final long length= file.length();
+		FileState state= fFileStates.get(path);
+		if (state == null || state.fTimestamp != timestamp || state.fLength != length) {
+			long hash= 0;
+			try {
+				hash= FileCharArray.computeRawContentsHash(path);
+			} catch (IOException e) {
+				// a file that cannot be read does not match any hash
+			}
+			state= new FileState(timestamp, length, hash);
+			fFileStates.put(path, state);
+			fDirty= true;
+		}
+		return state.fContentsHash;
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public synchronized void clear() {
+		fHeaders.clear();
+		fFileStates.clear();
+		fDirty= true;
+	}
+
+	/**
+	 * Returns the number of headers with entries in the cache.
+	 */
+	public synchronized int getHeaderCount() {
+		return fHeaders.size();
+	}
+
+	public long getHits() {
+		return fHits.get();
+	}
+
+	public long getMisses() {
+		return fMisses.get();
+	}
+
+	/**
+	 * Writes the cache to its file, if it has been modified since it was read or written.
+	 */
+	public synchronized void save() throws IOException {
+		if (fFile == null || !fDirty)
+			return;
+
+		final File tmp= new File(fFile.getPath() + ".tmp"); //$NON-NLS-1$
+		final DataOutputStream out= new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			write(out);
+		} finally {
+			out.close();
+		}
+		if (fFile.exists() && !fFile.delete() || !tmp.renameTo(fFile)) {
+			tmp.delete();
+			throw new IOException("Cannot write " + fFile); //$NON-NLS-1$
+		}
+		fDirty= false;
+	}
+
+	private void write(DataOutputStream out) throws IOException {
+		out.writeInt(VERSION);
+		// The file states are modified without holding the lock, write a consistent copy.
+		final List<Map.Entry<String, FileState>> fileStates= new ArrayList<Map.Entry<String, FileState>>(fFileStates.entrySet());
+		out.writeInt(fileStates.size());
+		for (Map.Entry<String, FileState> entry : fileStates) {
+			final FileState state= entry.getValue();
+			out.writeUTF(entry.getKey());
+			out.writeLong(state.fTimestamp);
+			out.writeLong(state.fLength);
+			out.writeLong(state.fContentsHash);
+		}
+
+		// the effects are shared between the headers including each other
+		final Map<MacroEffect, Integer> effects= new IdentityHashMap<MacroEffect, Integer>();
+		final List<MacroEffect> effectList= new ArrayList<MacroEffect>();
+		for (List<Variant> variants : fHeaders.values()) {
+			for (Variant variant : variants) {
+				for (MacroEffect effect : variant.fEffects) {
+					if (!effects.containsKey(effect)) {
+						effects.put(effect, effectList.size());
+						effectList.add(effect);
+					}
+				}
+			}
+		}
+		out.writeInt(effectList.size());
+		for (MacroEffect effect : effectList) {
+			writeChars(out, effect.fName);
+			final char[][] params= effect.fParameters;
+			out.writeInt(params == null ? -1 : params.length);
+			if (params != null) {
+				for (char[] param : params) {
+					writeChars(out, param);
+				}
+			}
+			writeChars(out, effect.fExpansion);
+		}
+
+		out.writeInt(fHeaders.size());
+		for (Map.Entry<String, List<Variant>> entry : fHeaders.entrySet()) {
+			out.writeUTF(entry.getKey());
+			final List<Variant> variants= entry.getValue();
+			out.writeInt(variants.size());
+			for (Variant variant : variants) {
+				out.writeLong(variant.fEnvironment);
+				out.writeInt(variant.fSignificantNames.length);
+				for (int i = 0; i < variant.fSignificantNames.length; i++) {
+					writeChars(out, variant.fSignificantNames[i].toCharArray());
+					final String value= variant.fSignificantValues[i];
+					writeChars(out, value == null ? null : value.toCharArray());
+				}
+				out.writeInt(variant.fDependencies.length);
+				for (int i = 0; i < variant.fDependencies.length; i++) {
+					out.writeUTF(variant.fDependencies[i]);
+					out.writeLong(variant.fDependencyHashes[i]);
+				}
+				out.writeInt(variant.fEffects.length);
+				for (MacroEffect effect : variant.fEffects) {
+					out.writeInt(effects.get(effect));
+				}
+			}
+		}
+	}
+
+	private void read(File file) throws IOException {
+		// No array stored in the file can be longer than the file itself.
+		final long limit= file.length();
+		final DataInputStream in= new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != VERSION)
+				return;
+
+			int count= readLength(in, limit);
+			for (int i = 0; i < count; i++) {
+				final String path= in.readUTF();
+				fFileStates.put(path, new FileState(in.readLong(), in.readLong(), in.readLong()));
+			}
+
+			final MacroEffect[] effects= new MacroEffect[readLength(in, limit)];
+			for (int i = 0; i < effects.length; i++) {
+				final char[] name= readChars(in, limit);
+				char[][] params= null;
+				final int paramCount= readLength(in, limit);
+				if (paramCount >= 0) {
+					params= new char[paramCount][];
+					for (int j = 0; j < paramCount; j++) {
+						params[j]= readChars(in, limit);
+					}
+				}
+				effects[i]= new MacroEffect(name, params, readChars(in, limit));
+			}
+
+			count= readLength(in, limit);
+			for (int i = 0; i < count; i++) {
+				final String path= in.readUTF();
+				final int variantCount= readLength(in, limit);
+				final List<Variant> variants= new ArrayList<Variant>(variantCount);
+				for (int j = 0; j < variantCount; j++) {
+					final long environment= in.readLong();
+					final String[] names= new String[readLength(in, limit)];
+					final String[] values= new String[names.length];
+					for (int k = 0; k < names.length; k++) {
+						names[k]= String.valueOf(readChars(in, limit));
+						final char[] value= readChars(in, limit);
+						values[k]= value == null ? null : String.valueOf(value);
+					}
+					final String[] dependencies= new String[readLength(in, limit)];
+					final long[] dependencyHashes= new long[dependencies.length];
+					for (int k = 0; k < dependencies.length; k++) {
+						dependencies[k]= in.readUTF();
+						dependencyHashes[k]= in.readLong();
+					}
+					final MacroEffect[] variantEffects= new MacroEffect[readLength(in, limit)];
+					for (int k = 0; k < variantEffects.length; k++) {
+						variantEffects[k]= effects[in.readInt()];
+					}
+					variants.add(new Variant(environment, names, values, dependencies, dependencyHashes, variantEffects));
+				}
+				fHeaders.put(path, variants);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeChars(DataOutputStream out, char[] chars) throws IOException {
+		if (chars == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(chars.length);
+			for (char c : chars) {
+				out.writeChar(c);
+			}
+		}
+	}
+
+	/**
+	 * Reads the length of an array or <code>-1</code> for <code>null</code>. A length exceeding
+	 * the given limit stems from a corrupt file.
+	 */
+	private static int readLength(DataInputStream in, long limit) throws IOException {
+		final int length= in.readInt();
+		if (length < -1 || length > limit)
+			throw new IOException("Corrupt header macro cache"); //$NON-NLS-1$
+		return length;
+	}
+
+	private static char[] readChars(DataInputStream in, long limit) throws IOException {
+		final int length= readLength(in, limit);
+		if (length < 0)
+			return null;
+		final char[] result= new char[length];
+		for (int i = 0; i < length; i++) {
+			result[i]= in.readChar();
+		}
+		return result;
+	}
+}
@@ -182,4 +182,24 @@ public interface ILocationResolver {
 	 * Returns the lexer options that have been used by the preprocessor.
 	 */
 	LexerOptions getLexerOptions();
+
+	/**
+	 * Returns the name of the macro that guards the given file against repeated inclusion, or
+	 * <code>null</code> if no include guard was detected for the file.
+	 * @param filePath the absolute path of the file as used in the AST.
+	 */
+	char[] getIncludeGuard(String filePath);
+
+	/**
+	 * Returns whether the given file contains a '#pragma once' directive.
+	 * @param filePath the absolute path of the file as used in the AST.
+	 */
+	boolean hasPragmaOnceSemantics(String filePath);
+
+	/**
+	 * Returns the hash value of the bytes the given file has been parsed from, or <code>0</code>
+	 * if it is not known. See {@link AbstractCharArray#getRawContentsHash()}.
+	 * @param filePath the absolute path of the file as used in the AST.
+	 */
+	long getRawContentsHash(String filePath);
 }
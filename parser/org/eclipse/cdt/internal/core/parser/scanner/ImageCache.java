@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.parser.scanner;
+
+/**
+ * Table of the images of identifiers, used by the lexers of a single preprocessor. Identifiers
+ * with equal images share a single character array, such that the array need not be allocated
+ * for every occurrence of an identifier. The images handed out must not be modified.
+ * <p>
+ * The table is not thread-safe. It stops growing when it reaches its maximum size, further images
+ * are allocated for each occurrence.
+ */
+final class ImageCache {
+	private static final int INITIAL_CAPACITY= 1024;
+	private static final int MAX_SIZE= 1 << 16;
+
+	private char[][] fTable= new char[INITIAL_CAPACITY][];
+	private int fSize;
+
+	/**
+	 * Returns the image for the characters of the input at the given offset.
+	 */
+	public char[] get(AbstractCharArray input, int offset, int length) {
+		int hash= 0;
+		for (int i = 0; i < length; i++) {
+			hash= 31 * hash + input.get(offset + i);
+		}
+		final int mask= fTable.length - 1;
+		int idx= mix(hash) & mask;
+		char[] image;
+		while ((image= fTable[idx]) != null) {
+			if (matches(image, input, offset, length))
+				return image;
+			idx= (idx + 1) & mask;
+		}
+
+		image= new char[length];
+		input.arraycopy(offset, image, 0, length);
+		if (fSize < MAX_SIZE) {
+			fTable[idx]= image;
+			if (++fSize * 2 > fTable.length) {
+				rehash();
+			}
+		}
+		return image;
+	}
+
+	private static boolean matches(char[] image, AbstractCharArray input, int offset, int length) {
+		if (image.length != length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (image[i] != input.get(offset + i))
+				return false;
+		}
+		return true;
+	}
+
+	private void rehash() {
+		final char[][] old= fTable;
+		fTable= new char[old.length * 2][];
+		final int mask= fTable.length - 1;
+		for (char[] image : old) {
+			if (image != null) {
+				int hash= 0;
+				for (char c : image) {
+					hash= 31 * hash + c;
+				}
+				int idx= mix(hash) & mask;
+				while (fTable[idx] != null) {
+					idx= (idx + 1) & mask;
+				}
+				fTable[idx]= image;
+			}
+		}
+	}
+
+	private static int mix(int h) {
+		h^= (h >>> 20) ^ (h >>> 12);
+		return h ^ (h >>> 7) ^ (h >>> 4);
+	}
+}
@@ -59,6 +59,11 @@ final class IncludeSearchPathElement {
 		return ScannerUtility.createReconciledPath(fPath, includeDirective);
 	}
 
+	@Override
+	public String toString() {
+		return fPath;
+	}
+
 	private int firstSeparator(String path) {
 		int firstSep= path.indexOf('/');
 		if (NON_SLASH_SEPARATOR) {
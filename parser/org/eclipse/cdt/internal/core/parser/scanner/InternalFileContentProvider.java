@@ -12,8 +12,10 @@ package org.eclipse.cdt.internal.core.parser.scanner;
 
 import java.io.File;
 
+import org.eclipse.cdt.core.dom.ast.IMacroBinding;
 import org.eclipse.cdt.core.index.IIndexFileLocation;
 import org.eclipse.cdt.core.parser.IncludeFileContentProvider;
+import org.eclipse.cdt.core.parser.util.CharArrayMap;
 import org.eclipse.cdt.internal.core.dom.IIncludeFileResolutionHeuristics;
 import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent.InclusionKind;
 
@@ -38,6 +40,15 @@ public abstract class InternalFileContentProvider extends IncludeFileContentProv
 	 */
 	public abstract InternalFileContent getContentForInclusion(String path);
 
+	/**
+	 * Same as {@link #getContentForInclusion(String)}, however the provider may return content of kind
+	 * {@link InclusionKind#SKIP_FILE} for a file that is known to be guarded by one of the given macros.
+	 * @param definedMacros the macros defined at the point of inclusion.
+	 */
+	public InternalFileContent getContentForInclusion(String path, CharArrayMap<? extends IMacroBinding> definedMacros) {
+		return getContentForInclusion(path);
+	}
+
 	/** 
 	 * Called only when used as a delegate of the index file content provider.
 	 */
@@ -84,6 +84,10 @@ final public class Lexer implements ITokenSequence {
 	private boolean fInsideIncludeDirective= false;
 	private Token fToken;
 	private Token fLastToken;
+	private ImageCache fImageCache;
+	// newline tokens are not stored by the preprocessor, two instances are used alternately
+	private final Token[] fNewlineTokens= new Token[2];
+	private int fNewlineTokenIdx;
 	
 	// for the few cases where we have to lookahead more than one character
 	private int fMarkOffset;
@@ -116,6 +120,13 @@ final public class Lexer implements ITokenSequence {
 		return pos < fLimit;
 	}
 
+	/**
+	 * Sets a table for sharing the images of identifiers with other lexers, may be <code>null</code>.
+	 */
+	void setImageCache(ImageCache cache) {
+		fImageCache= cache;
+	}
+
 	/**
 	 * Returns the source that is attached to the tokens generated by this lexer
 	 */
@@ -317,7 +328,7 @@ final public class Lexer implements ITokenSequence {
 							}
 							restorePhase3();
 						}
-						fLastToken= new Token(tNEWLINE, fSource, 0, start); // offset not significant
+						fLastToken= newlineToken(0, start); // offset not significant
 						fToken= newDigraphToken(IToken.tPOUND, start);
 						return fToken;
 					}
@@ -326,7 +337,7 @@ final public class Lexer implements ITokenSequence {
 
 			case '#':
 				if (hadNL && d != '#') {
-					fLastToken= new Token(tNEWLINE, fSource, 0, start); // offset not significant
+					fLastToken= newlineToken(0, start); // offset not significant
 					fToken= newToken(IToken.tPOUND, start);
 					return fToken;
 				}
@@ -351,7 +362,7 @@ final public class Lexer implements ITokenSequence {
 				return newToken(IToken.tEND_OF_INPUT, start);
 			case '\n':
 				fInsideIncludeDirective= false;
-				return newToken(Lexer.tNEWLINE, start);
+				return newlineToken(start, fOffset);
 			case ' ':
 			case '\t':
 			case 0xb:  // vertical tab
@@ -720,6 +731,16 @@ final public class Lexer implements ITokenSequence {
     	return new Token(kind, fSource, offset, fOffset);
     }
 
+	private Token newlineToken(int offset, int endOffset) {
+		fNewlineTokenIdx^= 1;
+		Token t= fNewlineTokens[fNewlineTokenIdx];
+		if (t == null) {
+			return fNewlineTokens[fNewlineTokenIdx]= new Token(tNEWLINE, fSource, offset, endOffset);
+		}
+		t.setOffset(offset, endOffset);
+		return t;
+	}
+
 	private Token newDigraphToken(int kind, int offset) {
     	return new TokenForDigraph(kind, fSource, offset, fOffset);
     }
@@ -986,6 +1007,9 @@ final public class Lexer implements ITokenSequence {
         	c= nextCharPhase3();
         }
 
+        if (fImageCache != null && tokenKind == IToken.tIDENTIFIER && fOffset - start == length) {
+        	return new TokenWithImage(tokenKind, fSource, start, fOffset, fImageCache.get(fInput, start, length));
+        }
         return newToken(tokenKind, start, length);
 	}
 	
@@ -1242,6 +1266,26 @@ final public class Lexer implements ITokenSequence {
 	AbstractCharArray getInput() {
 		return fInput;
 	}
+
+	/**
+	 * Returns whether the input between the given offsets consists of whitespace and comments, only.
+	 * @param endOffset the end offset or <code>-1</code> for the end of the input of this lexer.
+	 */
+	boolean isBlank(int offset, int endOffset) {
+		if (endOffset < 0) {
+			endOffset= fLimit;
+		}
+		Lexer lexer= new Lexer(fInput, offset, endOffset, fOptions, ILexerLog.NULL, null);
+		try {
+			Token t= lexer.nextToken();
+			while (t.getType() == tNEWLINE) {
+				t= lexer.nextToken();
+			}
+			return t.getType() == IToken.tEND_OF_INPUT;
+		} catch (OffsetLimitReachedException e) {
+			return false;
+		}
+	}
 	
 	/**
 	 * Returns the image with trigraphs replaced and line-splices removed.
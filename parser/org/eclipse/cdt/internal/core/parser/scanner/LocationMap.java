@@ -11,10 +11,14 @@
 package org.eclipse.cdt.internal.core.parser.scanner;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.cdt.core.dom.ast.IASTComment;
 import org.eclipse.cdt.core.dom.ast.IASTFileLocation;
@@ -61,6 +65,9 @@ public class LocationMap implements ILocationResolver {
 	// stuff computed on demand
 	private IdentityHashMap<IBinding, IASTPreprocessorMacroDefinition> fMacroDefinitionMap= null;
 	private List<ISkippedIndexedFilesListener> fSkippedFilesListeners= new ArrayList<ISkippedIndexedFilesListener>();
+	private Map<String, char[]> fIncludeGuards= null;
+	private Set<String> fPragmaOnceFiles= null;
+	private Map<String, AbstractCharArray> fFileSources= new HashMap<String, AbstractCharArray>();
 
 	public LocationMap(LexerOptions lexOptions) {
 		fLexerOptions= lexOptions;
@@ -97,6 +104,7 @@ public class LocationMap implements ILocationResolver {
 		assert fCurrentContext == null;
 		fTranslationUnitPath= filename;
 		fCurrentContext= fRootContext= new LocationCtxFile(null, filename, buffer, 0, 0, 0, null, true);
+		fFileSources.put(filename, buffer);
 		fLastChildInsertionOffset= 0;
 		return fCurrentContext;
 	}
@@ -136,6 +144,9 @@ public class LocationMap implements ILocationResolver {
 			new ASTInclusionStatement(fTranslationUnit, startNumber, nameNumber, nameEndNumber, endNumber, name, filename, userInclude, true, heuristic);
 		fDirectives.add(inclusionStatement);
 		fCurrentContext= new LocationCtxFile((LocationCtxContainer) fCurrentContext, filename, buffer, startOffset, endOffset, endNumber, inclusionStatement, isSource);
+		if (!fFileSources.containsKey(filename)) {
+			fFileSources.put(filename, buffer);
+		}
 		fLastChildInsertionOffset= 0;
 		return fCurrentContext;
 	}
@@ -725,6 +736,39 @@ public class LocationMap implements ILocationResolver {
 	public void cleanup() {
 	}
 
+	/**
+	 * Records the include guard detected for a file.
+	 */
+	public void setIncludeGuard(String filePath, char[] macroName) {
+		if (fIncludeGuards == null) {
+			fIncludeGuards= new HashMap<String, char[]>();
+		}
+		fIncludeGuards.put(filePath, macroName);
+	}
+
+	public char[] getIncludeGuard(String filePath) {
+		return fIncludeGuards == null ? null : fIncludeGuards.get(filePath);
+	}
+
+	/**
+	 * Records that the file contains a '#pragma once' directive.
+	 */
+	public void setPragmaOnceSemantics(String filePath) {
+		if (fPragmaOnceFiles == null) {
+			fPragmaOnceFiles= new HashSet<String>();
+		}
+		fPragmaOnceFiles.add(filePath);
+	}
+
+	public boolean hasPragmaOnceSemantics(String filePath) {
+		return fPragmaOnceFiles != null && fPragmaOnceFiles.contains(filePath);
+	}
+
+	public long getRawContentsHash(String filePath) {
+		final AbstractCharArray source= fFileSources.get(filePath);
+		return source == null ? 0 : source.getRawContentsHash();
+	}
+
 	public void skippedFile(int sequenceNumber, InternalFileContent fi) {
 		for (ISkippedIndexedFilesListener l : fSkippedFilesListeners) {
 			l.skippedFile(sequenceNumber, fi);
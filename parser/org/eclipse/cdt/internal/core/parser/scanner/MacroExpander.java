@@ -36,6 +36,8 @@ public class MacroExpander {
 
 	private static final int ORIGIN = OffsetLimitReachedException.ORIGIN_MACRO_EXPANSION;
 	private static final TokenList EMPTY_TOKEN_LIST = new TokenList();	
+	// macros are rarely nested deeply, avoid allocating the default table for each expansion.
+	private static final int FORBIDDEN_INITIAL_SIZE = 4;
 
 	/** 
 	 * Marks the beginning and the end of the scope of a macro expansion. Necessary to properly
@@ -132,6 +134,7 @@ public class MacroExpander {
 	private boolean fCompletionMode;
 	private int fStartOffset;
 	private int fEndOffset;
+	private HeaderMacroCache.Recorder fMacroRecorder;
 	
 	// for using the expander to track expansions
 	private String fFixedCurrentFilename;
@@ -145,6 +148,13 @@ public class MacroExpander {
 		fLexOptions= lexOptions;
 		fLog= log;
 	}
+
+	/**
+	 * Sets the recorder to be notified about the macros looked up, may be <code>null</code>.
+	 */
+	void setMacroRecorder(HeaderMacroCache.Recorder recorder) {
+		fMacroRecorder= recorder;
+	}
 	
 	/** 
 	 * Expects that the identifier has been consumed, stores the result in the list provided.
@@ -157,7 +167,7 @@ public class MacroExpander {
 		fEndOffset= identifier.getEndOffset();
 		fCompletionMode= completionMode;
 		
-		IdentityHashMap<PreprocessorMacro, PreprocessorMacro> forbidden= new IdentityHashMap<PreprocessorMacro, PreprocessorMacro>();
+		IdentityHashMap<PreprocessorMacro, PreprocessorMacro> forbidden= new IdentityHashMap<PreprocessorMacro, PreprocessorMacro>(FORBIDDEN_INITIAL_SIZE);
 		
 		// setup input sequence
 		TokenSource input= new TokenSource(lexer);
@@ -213,7 +223,7 @@ public class MacroExpander {
 			fStartOffset= identifier.getOffset();
 			fEndOffset= identifier.getEndOffset();
 			fCompletionMode= false;
-			IdentityHashMap<PreprocessorMacro, PreprocessorMacro> forbidden= new IdentityHashMap<PreprocessorMacro, PreprocessorMacro>();
+			IdentityHashMap<PreprocessorMacro, PreprocessorMacro> forbidden= new IdentityHashMap<PreprocessorMacro, PreprocessorMacro>(FORBIDDEN_INITIAL_SIZE);
 
 			// setup input sequence
 			TokenSource input= new TokenSource(lexer);
@@ -347,6 +357,9 @@ public class MacroExpander {
 			case IToken.tIDENTIFIER:
 				final char[] image = t.getCharImage();
 				PreprocessorMacro macro= fDictionary.get(image);
+				if (fMacroRecorder != null) {
+					fMacroRecorder.macroLookedUp(image, macro);
+				}
 				if (protect || (tracker != null && tracker.isDone())) {
 					result.append(t);
 				}
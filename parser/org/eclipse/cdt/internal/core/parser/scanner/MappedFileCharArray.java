@@ -0,0 +1,358 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.parser.scanner;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementation of char array for a large file encoded in ASCII or UTF-8, referencing the
+ * content of a memory mapped file. The file is split into chunks which are examined when they are
+ * accessed for the first time. Characters of chunks consisting of ASCII characters only are read
+ * directly from the mapped file, the other chunks are decoded and referenced via soft references.
+ * <p>
+ * The class is not thread-safe. When the file is truncated while it is mapped, the characters
+ * that are no longer available are returned as zeros.
+ */
+final class MappedFileCharArray extends AbstractCharArray {
+	private static final int CHUNK_BITS= 16;  // 2^16 == 64K
+	private static final int CHUNK_SIZE= 1 << CHUNK_BITS;
+
+	private static final class Chunk {
+		final int fSourceOffset;
+		final int fSourceEndOffset;
+		final int fCharOffset;
+		final int fCharEndOffset;
+		final boolean fIsASCII;
+		SoftReference<char[]> fCharsReference;
+
+		Chunk(int sourceOffset, int sourceEndOffset, int charOffset, int charEndOffset) {
+			fSourceOffset= sourceOffset;
+			fSourceEndOffset= sourceEndOffset;
+			fCharOffset= charOffset;
+			fCharEndOffset= charEndOffset;
+			fIsASCII= true;
+		}
+
+		Chunk(int sourceOffset, int sourceEndOffset, int charOffset, char[] chars) {
+			fSourceOffset= sourceOffset;
+			fSourceEndOffset= sourceEndOffset;
+			fCharOffset= charOffset;
+			fCharEndOffset= charOffset + chars.length;
+			fIsASCII= false;
+			fCharsReference= new SoftReference<char[]>(chars);
+		}
+	}
+
+	/**
+	 * Maps the given file, which must be encoded in ASCII or UTF-8.
+	 * @param channel a channel for the file, may be closed after the method returns.
+	 * @param skip number of bytes to skip at the beginning of the file (byte order mark).
+	 */
+	static MappedFileCharArray create(FileChannel channel, Charset charset, int skip) throws IOException {
+		final long size= channel.size();
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("File too large to be mapped"); //$NON-NLS-1$
+
+		MappedByteBuffer buffer= channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		return new MappedFileCharArray(buffer, charset, skip);
+	}
+
+	private final ByteBuffer fBuffer;
+	private final Charset fCharset;
+	private final int fSize;
+	private final List<Chunk> fChunks= new ArrayList<Chunk>();
+	private int fLength= -1;
+	private int fNextSourceOffset;
+	private int fNextCharOffset;
+	private long fHash64;
+	private boolean fHasHash;
+	private long fRawHash64;
+	private boolean fHasRawHash;
+	// The most recently used chunk, and a reference to its data such that it is not collected.
+	private Chunk fCurrentChunk;
+	private char[] fCurrentChars;
+
+	private MappedFileCharArray(ByteBuffer buffer, Charset charset, int skip) {
+		fBuffer= buffer;
+		fCharset= charset;
+		fSize= buffer.limit();
+		fNextSourceOffset= skip;
+	}
+
+	@Override
+	public int tryGetLength() {
+		return fLength;
+	}
+
+	@Override
+	public int getLength() {
+		readAllChunks();
+		return fLength;
+	}
+
+	@Override
+	public boolean isValidOffset(int offset) {
+		if (offset < 0)
+			return false;
+
+		if (fLength >= 0)
+			return offset < fLength;
+
+		return getChunkForOffset(offset) != null;
+	}
+
+	@Override
+	public long getContentsHash() {
+		if (!fHasHash) {
+			readAllChunks();
+			StreamHasher hasher= new StreamHasher();
+			char[] buf= null;
+			for (Chunk chunk : fChunks) {
+				final int length= chunk.fCharEndOffset - chunk.fCharOffset;
+				if (chunk.fIsASCII) {
+					if (buf == null || buf.length != length) {
+						buf= new char[length];
+					}
+					copyASCII(chunk.fSourceOffset, buf, 0, length);
+					hasher.addChunk(buf);
+				} else {
+					hasher.addChunk(getChunkData(chunk));
+				}
+			}
+			fHash64= hasher.computeHash();
+			fHasHash= true;
+		}
+		return fHash64;
+	}
+
+	@Override
+	public long getRawContentsHash() {
+		if (!fHasRawHash) {
+			final ByteBuffer buffer= fBuffer.duplicate();
+			final byte[] bytes= new byte[Math.min(CHUNK_SIZE, fSize)];
+			final StreamHasher hasher= new StreamHasher();
+			try {
+				for (int offset= 0; offset < fSize; offset+= bytes.length) {
+					final int length= Math.min(bytes.length, fSize - offset);
+					buffer.position(offset);
+					buffer.get(bytes, 0, length);
+					hasher.addChunk(bytes, 0, length);
+				}
+				fRawHash64= hasher.computeHash();
+			} catch (InternalError e) {
+				// The file has been truncated in the meantime
+				fRawHash64= 0;
+			}
+			fHasRawHash= true;
+		}
+		return fRawHash64;
+	}
+
+	@Override
+	public char get(int offset) {
+		Chunk chunk= fCurrentChunk;
+		if (chunk == null || offset < chunk.fCharOffset || offset >= chunk.fCharEndOffset) {
+			chunk= getChunkForOffset(offset);
+			if (chunk == null)
+				return 0;
+		}
+		if (chunk.fIsASCII) {
+			try {
+				return (char) fBuffer.get(chunk.fSourceOffset + offset - chunk.fCharOffset);
+			} catch (InternalError e) {
+				// The file has been truncated in the meantime
+				return 0;
+			}
+		}
+		char[] data= fCurrentChars;
+		if (data == null) {
+			data= getChunkData(chunk);
+		}
+		return data[offset - chunk.fCharOffset];
+	}
+
+	@Override
+	public void arraycopy(int offset, char[] destination, int destinationPos, int length) {
+		while (length > 0) {
+			final Chunk chunk= getChunkForOffset(offset);
+			if (chunk == null)
+				return;
+
+			final int offsetInChunk= offset - chunk.fCharOffset;
+			final int len= Math.min(length, chunk.fCharEndOffset - offset);
+			if (chunk.fIsASCII) {
+				copyASCII(chunk.fSourceOffset + offsetInChunk, destination, destinationPos, len);
+			} else {
+				System.arraycopy(getChunkData(chunk), offsetInChunk, destination, destinationPos, len);
+			}
+			offset+= len;
+			destinationPos+= len;
+			length-= len;
+		}
+	}
+
+	private void copyASCII(int sourceOffset, char[] destination, int destinationPos, int length) {
+		try {
+			for (int i = 0; i < length; i++) {
+				destination[destinationPos + i]= (char) fBuffer.get(sourceOffset + i);
+			}
+		} catch (InternalError e) {
+			// The file has been truncated in the meantime
+		}
+	}
+
+	private void readAllChunks() {
+		if (fLength < 0) {
+			getChunkForOffset(Integer.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * Returns the chunk containing the given offset and makes it the current one, or
+	 * <code>null</code> if the offset is beyond the end of the file.
+	 */
+	private Chunk getChunkForOffset(int offset) {
+		if (offset < 0)
+			return null;
+
+		Chunk chunk= findChunk(offset);
+		while (chunk == null && fLength < 0) {
+			chunk= nextChunk();
+			if (chunk == null) {
+				fLength= fNextCharOffset;
+			} else if (offset >= chunk.fCharEndOffset) {
+				chunk= null;
+			}
+		}
+		if (chunk != fCurrentChunk) {
+			fCurrentChunk= chunk;
+			fCurrentChars= chunk == null || chunk.fIsASCII ? null : getChunkData(chunk);
+		}
+		return chunk;
+	}
+
+	private Chunk findChunk(int offset) {
+		int low= 0;
+		int high= fChunks.size() - 1;
+		while (low <= high) {
+			final int mid= (low + high) >>> 1;
+			final Chunk chunk= fChunks.get(mid);
+			if (offset < chunk.fCharOffset) {
+				high= mid - 1;
+			} else if (offset >= chunk.fCharEndOffset) {
+				low= mid + 1;
+			} else {
+				return chunk;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Examines the next chunk of the file. The chunk is decoded, unless it consists of
+	 * ASCII characters only.
+	 */
+	private Chunk nextChunk() {
+		final int offset= fNextSourceOffset;
+		if (offset >= fSize)
+			return null;
+
+		int endOffset= offset + Math.min(CHUNK_SIZE, fSize - offset);
+		boolean isASCII= true;
+		try {
+			for (int i = offset; i < endOffset; i++) {
+				if (fBuffer.get(i) < 0) {
+					isASCII= false;
+					break;
+				}
+			}
+			if (!isASCII && endOffset < fSize) {
+				// Don't split a multi-byte sequence
+				for (int i = 0; i < 3 && (fBuffer.get(endOffset) & 0xc0) == 0x80; i++) {
+					endOffset--;
+				}
+			}
+		} catch (InternalError e) {
+			// The file has been truncated in the meantime
+			return null;
+		}
+
+		final Chunk chunk;
+		if (isASCII) {
+			chunk= new Chunk(offset, endOffset, fNextCharOffset, fNextCharOffset + endOffset - offset);
+		} else {
+			chunk= new Chunk(offset, endOffset, fNextCharOffset, decode(offset, endOffset));
+		}
+		fChunks.add(chunk);
+		fNextSourceOffset= endOffset;
+		fNextCharOffset= chunk.fCharEndOffset;
+		return chunk;
+	}
+
+	private char[] getChunkData(Chunk chunk) {
+		char[] data= chunk.fCharsReference.get();
+		if (data == null) {
+			data= decode(chunk.fSourceOffset, chunk.fSourceEndOffset);
+			if (data.length != chunk.fCharEndOffset - chunk.fCharOffset) {
+				// The file has been modified in the meantime
+				char[] copy= new char[chunk.fCharEndOffset - chunk.fCharOffset];
+				System.arraycopy(data, 0, copy, 0, Math.min(data.length, copy.length));
+				data= copy;
+			}
+			chunk.fCharsReference= new SoftReference<char[]>(data);
+		}
+		return data;
+	}
+
+	private char[] decode(int offset, int endOffset) {
+		final CharsetDecoder decoder= fCharset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		final ByteBuffer in= fBuffer.duplicate();
+		in.limit(endOffset).position(offset);
+		final CharBuffer dest= CharBuffer.allocate(endOffset - offset);
+		try {
+			decoder.decode(in, dest, true);
+			decoder.flush(dest);
+		} catch (InternalError e) {
+			// The file has been truncated in the meantime
+		}
+		dest.flip();
+		char[] chars= dest.array();
+		if (dest.remaining() != chars.length) {
+			chars= new char[dest.remaining()];
+			dest.get(chars);
+		}
+		return chars;
+	}
+
+	/**
+	 * For testing purposes: Simulates that all the decoded data gets collected.
+	 */
+	public void testClearData() {
+		for (Chunk chunk : fChunks) {
+			if (!chunk.fIsASCII) {
+				chunk.fCharsReference= new SoftReference<char[]>(null);
+			}
+		}
+		fCurrentChunk= null;
+		fCurrentChars= null;
+	}
+}
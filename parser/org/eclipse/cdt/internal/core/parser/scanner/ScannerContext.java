@@ -22,6 +22,7 @@ import org.eclipse.cdt.core.parser.OffsetLimitReachedException;
 final class ScannerContext {
 	enum BranchKind {eIf, eElif, eElse, eEnd}
 	enum CodeState {eActive, eParseInactive, eSkipInactive}
+	enum GuardState {eNone, eUnknown, eOpen, eClosed}
 	final static class Conditional {
 		private CodeState fInitialState;
 		private BranchKind fLast;
@@ -44,6 +45,11 @@ final class ScannerContext {
 	private CodeState fCurrentState= CodeState.eActive;
 	private IncludeSearchPathElement fFoundOnPath;
 	private String fFoundViaDirective;
+	private GuardState fGuardState= GuardState.eNone;
+	private Conditional fGuardConditional;
+	private char[] fGuardMacro;
+	private int fGuardOffset;
+	private int fGuardEndOffset;
 
 	/**
 	 * @param ctx 
@@ -108,6 +114,7 @@ final class ScannerContext {
 		// if we are not inside of an conditional there shouldn't be an #else, #elsif or #end
 		final int pos= fConditionals.size()-1;
 		if (pos < 0) {
+			fGuardState= GuardState.eNone;
 			return null;
 		}
 		
@@ -117,6 +124,11 @@ final class ScannerContext {
 			return result;
 		}
 		
+		// an include guard must not have other branches
+		if (fConditionals.get(pos) == fGuardConditional) {
+			fGuardState= GuardState.eNone;
+		}
+		
 		// #elif or #else cannot appear after another #else
 		result= fConditionals.get(pos);
 		if (result.fLast == BranchKind.eElse)
@@ -283,6 +295,56 @@ final class ScannerContext {
 		return fFoundViaDirective;
 	}
 
+	/**
+	 * Starts the detection of an include guard for the file of this context. The guard is detected
+	 * when the file consists of a single conditional started with <code>#ifndef GUARD</code> or
+	 * <code>#if !defined GUARD</code>, surrounded by whitespace and comments, only.
+	 */
+	public void startIncludeGuardDetection() {
+		fGuardState= GuardState.eUnknown;
+	}
+
+	/**
+	 * The preprocessor has to inform the context about the start of a conditional.
+	 * @param cond the conditional that has been started.
+	 * @param macroName the macro tested for not being defined, or <code>null</code>.
+	 * @param offset the offset of the directive.
+	 */
+	public void startConditional(Conditional cond, char[] macroName, int offset) {
+		if (fGuardState == GuardState.eUnknown && macroName != null) {
+			fGuardState= GuardState.eOpen;
+			fGuardConditional= cond;
+			fGuardMacro= macroName;
+			fGuardOffset= offset;
+		} else if (fGuardState != GuardState.eOpen) {
+			fGuardState= GuardState.eNone;
+		}
+	}
+
+	/**
+	 * The preprocessor has to inform the context about the end of a conditional.
+	 * @param cond the conditional that has been ended.
+	 * @param endOffset the end offset of the directive.
+	 */
+	public void endConditional(Conditional cond, int endOffset) {
+		if (cond == fGuardConditional && fGuardState == GuardState.eOpen) {
+			fGuardState= GuardState.eClosed;
+			fGuardEndOffset= endOffset;
+		}
+	}
+
+	/**
+	 * Returns the name of the macro guarding the file of this context, or <code>null</code>. Must
+	 * not be called before the entire file has been processed.
+	 */
+	public char[] getIncludeGuard() {
+		if (fGuardState == GuardState.eClosed && fLexer != null && fLexer.isBlank(0, fGuardOffset)
+				&& fLexer.isBlank(fGuardEndOffset, -1)) {
+			return fGuardMacro;
+		}
+		return null;
+	}
+
 	/**
 	 * Returns the element of the include search path that was used to find this context, or <code>null</code> if not applicable.
 	 */
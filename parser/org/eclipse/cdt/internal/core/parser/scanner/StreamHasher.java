@@ -84,31 +84,50 @@ public final class StreamHasher {
 	 * @param chunk Contents of the chunk.
 	 */
 	public void addChunk(char[] chunk) {
-		for (int pos = 0; pos < chunk.length; pos++, hashedOffset++) {
-			char cc = chunk[pos];
-			switch (state++) {
-			case -1:
-				throw new IllegalStateException("addChunk is called after computeHash."); //$NON-NLS-1$
-			case 0:
-			case 2:
-			case 4:
-				previousCharacter = cc;
-				break;
-			case 1:
-				a += previousCharacter | (cc << 16);
-				break;
-			case 3:
-				b += previousCharacter | (cc << 16);
-				break;
-			case 5:
-				c += previousCharacter | (cc << 16);
-				mix();
-				state = 0;
-				break;
-			}
+		for (int pos = 0; pos < chunk.length; pos++) {
+			addCharacter(chunk[pos]);
 		}
 	}
 
+	/**
+	 * Adds a chunk of raw bytes to the hasher. Each byte is treated as an unsigned character,
+	 * such that no charset decoding is required. The resulting hash differs from the one
+	 * of the decoded characters, unless the bytes are all ASCII.
+	 * @param chunk an array containing the bytes of the chunk.
+	 * @param offset the offset of the chunk within the array.
+	 * @param length the number of bytes of the chunk.
+	 */
+	public void addChunk(byte[] chunk, int offset, int length) {
+		final int end= offset + length;
+		for (int pos = offset; pos < end; pos++) {
+			addCharacter((char) (chunk[pos] & 0xff));
+		}
+	}
+
+	private void addCharacter(char cc) {
+		switch (state++) {
+		case -1:
+			throw new IllegalStateException("addChunk is called after computeHash."); //$NON-NLS-1$
+		case 0:
+		case 2:
+		case 4:
+			previousCharacter = cc;
+			break;
+		case 1:
+			a += previousCharacter | (cc << 16);
+			break;
+		case 3:
+			b += previousCharacter | (cc << 16);
+			break;
+		case 5:
+			c += previousCharacter | (cc << 16);
+			mix();
+			state = 0;
+			break;
+		}
+		hashedOffset++;
+	}
+
 	/**
 	 * Computes and returns the hash value. Must be called once after the last chunk.
 	 * @return The hash value of the character stream.
@@ -24,6 +24,15 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.dom.IPDOMIndexerTask;
@@ -33,6 +42,7 @@ import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
 import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit.IDependencyTree;
 import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit.IDependencyTree.IASTInclusionNode;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPUsingDirective;
+import org.eclipse.cdt.core.index.IIndex;
 import org.eclipse.cdt.core.index.IIndexFile;
 import org.eclipse.cdt.core.index.IIndexFileLocation;
 import org.eclipse.cdt.core.index.IIndexInclude;
@@ -95,12 +105,12 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	}
 
 	public static class IndexFileContent {
-		private IIndexFile fIndexFile;
+		private volatile IIndexFile fIndexFile;
 		private boolean fRequestUpdate;
 		private boolean fRequestIsCounted= true;
 		private boolean fIsUpdated;
-		private Object[] fPreprocessingDirectives;
-		private ICPPUsingDirective[] fDirectives;
+		private volatile Object[] fPreprocessingDirectives;
+		private volatile ICPPUsingDirective[] fDirectives;
 
 		public IndexFileContent() {
 			fRequestIsCounted = true;
@@ -170,6 +180,37 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		}
 	}
 
+	/**
+	 * A source file parsed by one of the parser threads, waiting to be written to the index.
+	 */
+	private static final class ParsedSource {
+		final Object fTu;
+		final IndexFileContent fInfo;
+		final IPath fPath;
+		final IndexerStatistics fStatistics= new IndexerStatistics();
+		IIndexFileLocation[] fFilesToUpdate;
+		PreparedSymbols fSymbols;
+		long fContentsHash;
+		int fConfigHash;
+		Throwable fError;
+
+		ParsedSource(Object tu, IndexFileContent info, IPath path) {
+			fTu= tu;
+			fInfo= info;
+			fPath= path;
+		}
+	}
+
+	private static final class ParserThreadFactory implements ThreadFactory {
+		private int fCount;
+
+		public synchronized Thread newThread(Runnable r) {
+			Thread thread= new Thread(r, "Indexer Parser " + (++fCount)); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
 	protected enum MessageKind { parsingFileTask, errorWhileParsing, tooManyIndexProblems }
 	
 	private int fUpdateFlags= IIndexManager.UPDATE_ALL;
@@ -182,12 +223,27 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	private List<String> fFilesUpFront= new ArrayList<String>();
 	private int fASTOptions;
 	private int fForceNumberFiles= 0;
+	private IIndexFileLocation[] fPriorityFiles= {};
+	/** Files with priority that have not yet been updated */
+	private HashSet<FileKey> fPendingPriorityFiles= new HashSet<FileKey>();
+	private long fStartTime;
 	
 	protected IWritableIndex fIndex;
 	private ITodoTaskUpdater fTodoTaskUpdater;
 	private final boolean fIsFastIndexer;
 	private long fFileSizeLimit= 0;
-	private InternalFileContentProvider fCodeReaderFactory;
+	private final ThreadLocal<InternalFileContentProvider> fCodeReaderFactory= new ThreadLocal<InternalFileContentProvider>();
+	private int fParserThreadCount= 1;
+	private int fCommitBatchSize= 1;
+	private long fCommitBatchTime= 0;
+	/**
+	 * Parser threads hold the read lock while they read from the index, the index is updated
+	 * with the write lock held. A parser thread acquires the read lock with its first access
+	 * to the index and releases it after the symbols of the file have been prepared.
+	 */
+	private final ReentrantReadWriteLock fParserLock= new ReentrantReadWriteLock(true);
+	/** The index used by the current parser thread, <code>null</code> for the indexer thread. */
+	private final ThreadLocal<ReadLockingIndex> fParserIndex= new ThreadLocal<ReadLockingIndex>();
 	private int fSwallowOutOfMemoryError= 5;
 	/**
 	 * A queue of urgent indexing tasks that contribute additional files to this task.
@@ -234,10 +290,44 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		fForceNumberFiles= number;
 	}
 
+	/**
+	 * Sets the files to be updated first, typically the ones open in editors. The headers they
+	 * include are updated before other headers, also. The time until all of them are up to date
+	 * is reported in the statistics.
+	 */
+	public final void setPriorityFiles(IIndexFileLocation[] files) {
+		fPriorityFiles= files;
+	}
+
 	public final void setFileSizeLimit(long limit) {
 		fFileSizeLimit= limit;
 	}
 
+	/**
+	 * Sets the number of threads used to parse source files. With more than one thread the
+	 * source files are parsed in parallel, while the index is still updated by the thread
+	 * running the task, in the order of the files. 
+	 */
+	public final void setParserThreadCount(int count) {
+		fParserThreadCount= Math.max(1, count);
+	}
+
+	public final int getParserThreadCount() {
+		return fParserThreadCount;
+	}
+
+	/**
+	 * Configures the indexer to store the symbols of multiple source files with a single 
+	 * acquisition of the write lock. The index update waits at most for the given time for
+	 * source files to complete a batch.
+	 * @param size maximum number of source files stored together.
+	 * @param timeLimit time limit in milliseconds.
+	 */
+	public final void setCommitBatch(int size, long timeLimit) {
+		fCommitBatchSize= Math.max(1, size);
+		fCommitBatchTime= Math.max(0, timeLimit);
+	}
+
 	protected abstract IWritableIndex createIndex();
 	protected abstract IIncludeFileResolutionHeuristics createIncludeHeuristics();
 	protected abstract IncludeFileContentProvider createReaderFactory();
@@ -287,35 +377,44 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			}
 			return null;
 		}
-		if (fCodeReaderFactory == null) {
+		final IIndex index= getParserIndex();
+		// Each parser thread uses its own file content provider.
+		InternalFileContentProvider codeReaderFactory= fCodeReaderFactory.get();
+		if (codeReaderFactory == null) {
 			InternalFileContentProvider fileContentProvider = createInternalFileContentProvider();
 			if (fIsFastIndexer) {
-				IndexBasedFileContentProvider ibfcp = new IndexBasedFileContentProvider(fIndex, fResolver,
+				IndexBasedFileContentProvider ibfcp = new IndexBasedFileContentProvider(index, fResolver,
 						language.getLinkageID(), fileContentProvider, this);
 				ibfcp.setSupportFillGapFromContextToHeader(inContext);
 				ibfcp.setFileSizeLimit(fFileSizeLimit);
-				fCodeReaderFactory= ibfcp;
+				codeReaderFactory= ibfcp;
 			} else {
-				fCodeReaderFactory= fileContentProvider;
+				codeReaderFactory= fileContentProvider;
 			}
+			fCodeReaderFactory.set(codeReaderFactory);
 		} else if (fIsFastIndexer) {
-			((IndexBasedFileContentProvider) fCodeReaderFactory).setLinkage(language.getLinkageID());
+			((IndexBasedFileContentProvider) codeReaderFactory).setLinkage(language.getLinkageID());
 		}
-		fCodeReaderFactory.setIncludeResolutionHeuristics(createIncludeHeuristics());
+		codeReaderFactory.setIncludeResolutionHeuristics(createIncludeHeuristics());
 		try {
-			IASTTranslationUnit ast= language.getASTTranslationUnit(codeReader, scanInfo, fCodeReaderFactory,
-					fIndex, options, getLogService());
+			IASTTranslationUnit ast= language.getASTTranslationUnit(codeReader, scanInfo, codeReaderFactory,
+					index, options, getLogService());
 			if (pm.isCanceled()) {
 				return null;
 			}
 			return ast;
 		} finally {
 			if (fIsFastIndexer) {
-				((IndexBasedFileContentProvider) fCodeReaderFactory).cleanupAfterTranslationUnit();
+				((IndexBasedFileContentProvider) codeReaderFactory).cleanupAfterTranslationUnit();
 			}
 		}
 	}
 
+	private IIndex getParserIndex() {
+		final IIndex index= fParserIndex.get();
+		return index != null ? index : fIndex;
+	}
+
 	private InternalFileContentProvider createInternalFileContentProvider() {
 		final IncludeFileContentProvider fileContentProvider = createReaderFactory();
 		if (fileContentProvider instanceof InternalFileContentProvider)
@@ -329,6 +428,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	}
 
 	public final void runTask(IProgressMonitor monitor) throws InterruptedException {
+		fStartTime= System.currentTimeMillis();
 		try {
 			if (!fIndexFilesWithoutConfiguration) {
 				fIndexHeadersWithoutContext= UnusedHeaderStrategy.skip;
@@ -460,13 +560,18 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	}
 
 	private void extractFiles(HashMap<Integer, List<Object>> files, List<IIndexFragmentFile> iFilesToRemove,
-			IProgressMonitor monitor) throws CoreException {
+			IProgressMonitor monitor) throws CoreException, InterruptedException {
 		final boolean forceAll= (fUpdateFlags & IIndexManager.UPDATE_ALL) != 0;
 		final boolean checkTimestamps= (fUpdateFlags & IIndexManager.UPDATE_CHECK_TIMESTAMPS) != 0;
 		final boolean checkFileContentsHash = (fUpdateFlags & IIndexManager.UPDATE_CHECK_CONTENTS_HASH) != 0;
 		final boolean checkConfig= (fUpdateFlags & IIndexManager.UPDATE_CHECK_CONFIGURATION) != 0;
 		final boolean forceInclusion= (fUpdateFlags & IIndexManager.FORCE_INDEX_INCLUSION) != 0;
 
+		Map<IIndexFileLocation, Long> rawHashes= Collections.emptyMap();
+		if (checkTimestamps && checkFileContentsHash && !forceAll) {
+			rawHashes= computeRawContentsHashes(monitor);
+		}
+
 		int count= 0;
 		int forceFirst= fForceNumberFiles;
 		for (final Object tu : fFilesToUpdate) {
@@ -500,7 +605,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 							if (checkConfig) {
 								update= isSourceUnit ? isSourceUnitConfigChange(tu, ifile) : isHeaderConfigChange(tu, ifile);
 							}
-							update= update || force || isModified(checkTimestamps, checkFileContentsHash, ifl, tu, ifile);
+							update= update || force || isModified(checkTimestamps, checkFileContentsHash, rawHashes, ifl, tu, ifile);
 							if (update) {
 								requestUpdate(linkageID, ifl, ifile);
 								store(tu, linkageID, isSourceUnit, files);
@@ -523,7 +628,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 						if (checkConfig) {
 							update= isHeaderConfigChange(tu, ifile);
 						}
-						update= update || force || isModified(checkTimestamps, checkFileContentsHash, ifl, tu, ifile);
+						update= update || force || isModified(checkTimestamps, checkFileContentsHash, rawHashes, ifl, tu, ifile);
 						if (update) {
 							final int linkageID = ifile.getLinkageID();
 							requestUpdate(linkageID, ifl, ifile);
@@ -534,19 +639,51 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 				}
 			}
 		}
+		scheduleFiles(files);
 		synchronized (this) {
 			updateRequestedFiles(count - fFilesToUpdate.length);
 			fFilesToUpdate= null;
 		}
 	}
 
-	private boolean isModified(boolean checkTimestamps, boolean checkFileContentsHash, IIndexFileLocation ifl,
-			Object tu, IIndexFragmentFile file)	throws CoreException {
+	/**
+	 * Orders the files to be parsed, such that the files with priority and the headers they
+	 * include come first. Headers including other headers to be updated are parsed before
+	 * them, such that each header is updated in a single context.
+	 */
+	private void scheduleFiles(HashMap<Integer, List<Object>> files) throws CoreException {
+		final UpdateScheduler scheduler= new UpdateScheduler(fIndex, fResolver, fPriorityFiles);
+		for (int linkageID : getLinkagesToParse()) {
+			final List<IIndexFileLocation> prioritized= new ArrayList<IIndexFileLocation>();
+			final List<Object> sources= files.get(getFileListKey(linkageID, true));
+			if (sources != null) {
+				scheduler.orderSources(sources, prioritized);
+			}
+			final List<Object> headers= files.get(getFileListKey(linkageID, false));
+			if (headers != null) {
+				scheduler.orderHeaders(linkageID, headers, prioritized);
+			}
+			for (IIndexFileLocation ifl : prioritized) {
+				fPendingPriorityFiles.add(new FileKey(linkageID, ifl.getURI()));
+			}
+		}
+	}
+
+	private boolean isModified(boolean checkTimestamps, boolean checkFileContentsHash,
+			Map<IIndexFileLocation, Long> rawHashes, IIndexFileLocation ifl, Object tu, IIndexFragmentFile file)
+			throws CoreException {
 		if (checkTimestamps) {
-			if (fResolver.getLastModified(ifl) != file.getTimestamp() || 
-					fResolver.getEncoding(ifl).hashCode() != file.getEncodingHashcode()) {
-				if (checkFileContentsHash && computeFileContentsHash(tu) == file.getContentsHash()) {
-					return false;
+			final boolean encodingChanged= fResolver.getEncoding(ifl).hashCode() != file.getEncodingHashcode();
+			if (encodingChanged || fResolver.getLastModified(ifl) != file.getTimestamp()) {
+				if (checkFileContentsHash) {
+					// With an unchanged encoding the raw bytes determine whether the file is modified.
+					final Long rawHash= rawHashes.get(ifl);
+					if (rawHash != null && !encodingChanged && file.getRawContentsHash() != 0) {
+						return rawHash.longValue() != file.getRawContentsHash();
+					}
+					if (computeFileContentsHash(tu) == file.getContentsHash()) {
+						return false;
+					}
 				}
 				return true;
 			}
@@ -554,6 +691,73 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		return false;
 	}
 
+	/**
+	 * Hashes the bytes of the files that have a modified timestamp and a raw contents hash in
+	 * the index. Files that have merely been touched, e.g. by switching branches in a version
+	 * control system, can then be sorted out without being decoded. The files are hashed on a
+	 * pool of threads, the method returns after all of them have been processed.
+	 */
+	private Map<IIndexFileLocation, Long> computeRawContentsHashes(IProgressMonitor monitor)
+			throws CoreException, InterruptedException {
+		final List<IIndexFileLocation> candidates= new ArrayList<IIndexFileLocation>();
+		for (Object tu : fFilesToUpdate) {
+			final IIndexFileLocation ifl= fResolver.resolveFile(tu);
+			if (ifl != null && isRawHashCandidate(ifl)) {
+				candidates.add(ifl);
+			}
+		}
+		if (candidates.isEmpty())
+			return Collections.emptyMap();
+
+		final Map<IIndexFileLocation, Long> result= new HashMap<IIndexFileLocation, Long>();
+		final int threadCount= Math.min(candidates.size(),
+				Math.max(fParserThreadCount, Runtime.getRuntime().availableProcessors()));
+		if (threadCount == 1) {
+			for (IIndexFileLocation ifl : candidates) {
+				result.put(ifl, fResolver.computeRawContentsHash(ifl));
+			}
+			return result;
+		}
+
+		final ExecutorService executor= Executors.newFixedThreadPool(threadCount, new ParserThreadFactory());
+		try {
+			final List<Future<Long>> futures= new ArrayList<Future<Long>>(candidates.size());
+			for (final IIndexFileLocation ifl : candidates) {
+				futures.add(executor.submit(new Callable<Long>() {
+					public Long call() {
+						return fResolver.computeRawContentsHash(ifl);
+					}
+				}));
+			}
+			for (int i = 0; i < candidates.size(); i++) {
+				if (monitor.isCanceled())
+					break;
+				try {
+					result.put(candidates.get(i), futures.get(i).get());
+				} catch (ExecutionException e) {
+					// The file is checked without the raw contents hash.
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
+	private boolean isRawHashCandidate(IIndexFileLocation ifl) throws CoreException {
+		long timestamp= 0;
+		for (IIndexFragmentFile ifile : fIndex.getWritableFiles(ifl)) {
+			if (ifile != null && ifile.hasContent() && ifile.getRawContentsHash() != 0) {
+				if (timestamp == 0) {
+					timestamp= fResolver.getLastModified(ifl);
+				}
+				if (timestamp != ifile.getTimestamp())
+					return true;
+			}
+		}
+		return false;
+	}
+
 	private void requestUpdate(int linkageID, IIndexFileLocation ifl, IIndexFragmentFile ifile) {
 		FileKey key= new FileKey(linkageID, ifl.getURI());
 		IndexFileContent info= fFileInfos.get(key);
@@ -577,14 +781,18 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 
 	private IndexFileContent createFileInfo(FileKey key, IIndexFile ifile) {
 		IndexFileContent info = new IndexFileContent();
-		fFileInfos.put(key, info);
+		synchronized (fFileInfos) {
+			fFileInfos.put(key, info);
+		}
 		info.fIndexFile= ifile;
 		return info;
 	}
 
 	private IndexFileContent getFileInfo(int linkageID, IIndexFileLocation ifl) {
 		FileKey key= new FileKey(linkageID, ifl.getURI());
-		return fFileInfos.get(key);
+		synchronized (fFileInfos) {
+			return fFileInfos.get(key);
+		}
 	}
 
 	private boolean isSourceUnitConfigChange(Object tu, IIndexFragmentFile ifile) {
@@ -725,7 +933,11 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			throws CoreException, InterruptedException {
 		// Sources
 		List<Object> files= fileListMap.get(getFileListKey(linkageID, true));
-		if (files != null) {
+		if (files != null && (fParserThreadCount > 1 || fCommitBatchSize > 1)) {
+			parseSourcesInParallel(linkageID, files, monitor);
+			if (monitor.isCanceled() || hasUrgentTasks())
+				return;
+		} else if (files != null) {
 			for (Iterator<Object> iter = files.iterator(); iter.hasNext();) {
 				Object tu = iter.next();
 				if (monitor.isCanceled() || hasUrgentTasks())
@@ -799,6 +1011,264 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		}
 	}
 
+	/**
+	 * Parses the source files on a pool of parser threads. The symbols of each file are
+	 * extracted and resolved by the parser thread, the results are written to the index
+	 * by the calling thread in the order of the files.
+	 */
+	private void parseSourcesInParallel(final int linkageID, List<Object> files, IProgressMonitor monitor)
+			throws CoreException, InterruptedException {
+		final int threadCount= fParserThreadCount;
+		final ExecutorService executor= Executors.newFixedThreadPool(threadCount, new ParserThreadFactory());
+		// Limits the number of ASTs waiting to be written to the index.
+		final int maxPending= Math.max(2 * threadCount, fCommitBatchSize);
+		final LinkedList<Future<ParsedSource>> pending= new LinkedList<Future<ParsedSource>>();
+		try {
+			for (Iterator<Object> iter = files.iterator(); ;) {
+				while (pending.size() < maxPending && iter.hasNext()) {
+					if (monitor.isCanceled() || hasUrgentTasks())
+						break;
+
+					Object tu = iter.next();
+					final IIndexFileLocation ifl = fResolver.resolveFile(tu);
+					if (ifl != null) {
+						final IndexFileContent info= getFileInfo(linkageID, ifl);
+						if (info != null && info.fRequestUpdate && !info.fIsUpdated) {
+							info.fRequestIsCounted= false;
+							Future<ParsedSource> future= submitParseJob(executor, tu, linkageID, ifl, info, monitor);
+							if (future != null) {
+								pending.add(future);
+							}
+						}
+					}
+					iter.remove();
+				}
+				if (pending.isEmpty() || monitor.isCanceled())
+					return;
+
+				writeParsedSources(linkageID, pending, monitor);
+			}
+		} finally {
+			for (Future<ParsedSource> future : pending) {
+				future.cancel(false);
+			}
+			// Don't return while a parser thread may still access the index.
+			executor.shutdown();
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				// Parsing a file cannot be interrupted, keep waiting.
+			}
+		}
+	}
+
+	private Future<ParsedSource> submitParseJob(ExecutorService executor, final Object tu, final int linkageID,
+			final IIndexFileLocation ifl, IndexFileContent info, final IProgressMonitor pm) {
+		final AbstractLanguage lang= getLanguage(tu, linkageID);
+		if (lang == null) {
+			return null;
+		}
+		final IScannerInfo scanInfo= fResolver.getBuildConfiguration(linkageID, tu);
+		final IPath path= getPathForLabel(ifl);
+		pm.subTask(getMessage(MessageKind.parsingFileTask,
+				path.lastSegment(), path.removeLastSegments(1).toString()));
+		final ParsedSource result= new ParsedSource(tu, info, path);
+		return executor.submit(new Callable<ParsedSource>() {
+			public ParsedSource call() {
+				parseSource(result, lang, linkageID, scanInfo, pm);
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * Parses a source file and prepares its symbols for storing them in the index, 
+	 * called on one of the parser threads.
+	 */
+	private void parseSource(ParsedSource result, AbstractLanguage lang, int linkageID,
+			IScannerInfo scanInfo, IProgressMonitor pm) {
+		ReadLockingIndex index= fParserIndex.get();
+		if (index == null) {
+			index= new ReadLockingIndex(fIndex, fParserLock.readLock());
+			fParserIndex.set(index);
+		}
+		try {
+			if (fShowActivity) {
+				trace("Indexer: parsing " + result.fPath.toOSString()); //$NON-NLS-1$
+			}
+			long start= System.currentTimeMillis();
+			FileContent codeReader= fResolver.getCodeReader(result.fTu);
+			IASTTranslationUnit ast= createAST(result.fTu, lang, codeReader, scanInfo, fASTOptions, false, pm);
+			result.fStatistics.fParsingTime += System.currentTimeMillis() - start;
+			if (ast != null) {
+				result.fContentsHash= codeReader.getContentsHash();
+				result.fConfigHash= computeHashCode(scanInfo);
+				index.lock();
+				result.fFilesToUpdate= getFilesToUpdate(linkageID, ast);
+				result.fSymbols= prepareSymbols(ast, result.fFilesToUpdate, result.fStatistics, pm);
+			}
+		} catch (CoreException e) {
+			result.fError= e;
+		} catch (RuntimeException e) {
+			result.fError= e;
+		} catch (StackOverflowError e) {
+			result.fError= e;
+		} catch (AssertionError e) {
+			result.fError= e;
+		} catch (OutOfMemoryError e) {
+			result.fError= e;
+		} finally {
+			// The AST holds objects of the index, which become invalid with the next update.
+			index.unlock();
+			result.fStatistics.fParserWaitTime+= index.resetWaitTime();
+		}
+	}
+
+	/**
+	 * Waits for the first of the pending source files to be parsed and writes it to the index
+	 * together with all subsequent files that have been parsed in the meantime. When committing
+	 * in batches, waits up to the time limit for more files to complete the batch.
+	 */
+	private void writeParsedSources(int linkageID, LinkedList<Future<ParsedSource>> pending,
+			IProgressMonitor monitor) throws CoreException, InterruptedException {
+		final long start= System.currentTimeMillis();
+		final ArrayList<ParsedSource> batch= new ArrayList<ParsedSource>();
+		batch.add(getParsedSource(pending.removeFirst()));
+		final long deadline= start + fCommitBatchTime;
+		while (batch.size() < fCommitBatchSize && !pending.isEmpty() && !monitor.isCanceled()) {
+			final Future<ParsedSource> next= pending.getFirst();
+			if (!next.isDone() && !waitForParsedSource(next, deadline - System.currentTimeMillis()))
+				break;
+			batch.add(getParsedSource(pending.removeFirst()));
+		}
+		fParserLock.writeLock().lock();
+		try {
+			fStatistics.fWriterWaitTime+= System.currentTimeMillis() - start;
+			while (!pending.isEmpty() && pending.getFirst().isDone()) {
+				batch.add(getParsedSource(pending.removeFirst()));
+			}
+			if (fCommitBatchSize > 1) {
+				writeParsedSourcesInBatch(linkageID, batch, monitor);
+			} else {
+				for (ParsedSource result : batch) {
+					if (monitor.isCanceled())
+						break;
+					writeParsedSource(linkageID, result, monitor);
+				}
+			}
+		} finally {
+			fParserLock.writeLock().unlock();
+		}
+	}
+
+	private boolean waitForParsedSource(Future<ParsedSource> future, long millis) throws InterruptedException {
+		if (millis <= 0)
+			return false;
+		try {
+			future.get(millis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			return false;
+		} catch (ExecutionException e) {
+			// Reported by getParsedSource().
+		}
+		return true;
+	}
+
+	private ParsedSource getParsedSource(Future<ParsedSource> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			final Throwable cause= e.getCause();
+			if (cause instanceof Error)
+				throw (Error) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private void writeParsedSource(int linkageID, ParsedSource result, IProgressMonitor pm)
+			throws CoreException, InterruptedException {
+		fStatistics.add(result.fStatistics);
+		Throwable th= result.fError;
+		if (th == null && result.fSymbols != null) {
+			try {
+				writeToIndex(linkageID, result.fSymbols, result.fFilesToUpdate, result.fContentsHash,
+						result.fConfigHash, pm);
+			} catch (CoreException e) {
+				th= e;
+			} catch (RuntimeException e) {
+				th= e;
+			} catch (StackOverflowError e) {
+				th= e;
+			} catch (AssertionError e) {
+				th= e;
+			} catch (OutOfMemoryError e) {
+				th= e;
+			}
+		}
+		finishParsedSource(result, th);
+	}
+
+	/**
+	 * Writes the symbols of several source files to the index with a single acquisition
+	 * of the write lock.
+	 */
+	private void writeParsedSourcesInBatch(int linkageID, List<ParsedSource> batch, IProgressMonitor pm)
+			throws CoreException, InterruptedException {
+		final ArrayList<PreparedSymbols> symbols= new ArrayList<PreparedSymbols>(batch.size());
+		for (ParsedSource result : batch) {
+			fStatistics.add(result.fStatistics);
+			if (result.fError == null && result.fSymbols != null) {
+				IIndexFileLocation[] ifls= selectFilesToStore(linkageID, result.fFilesToUpdate);
+				// mark as updated in any case, to avoid parsing files that caused an exception to be thrown.
+				setUpdated(linkageID, ifls);
+				result.fSymbols.setFilesToStore(ifls, result.fContentsHash, result.fConfigHash);
+				symbols.add(result.fSymbols);
+			}
+		}
+		Throwable th= null;
+		try {
+			storeSymbols(symbols, fIndex, 1, false, fTodoTaskUpdater, pm);
+		} catch (CoreException e) {
+			th= e;
+		} catch (RuntimeException e) {
+			th= e;
+		} catch (StackOverflowError e) {
+			th= e;
+		} catch (AssertionError e) {
+			th= e;
+		} catch (OutOfMemoryError e) {
+			th= e;
+		}
+		for (ParsedSource result : batch) {
+			Throwable error= result.fError;
+			if (error == null && result.fSymbols != null) {
+				if (th != null) {
+					// Report a failure of the batch with the first file, only.
+					error= th;
+					th= null;
+				} else {
+					try {
+						checkStatus(result.fSymbols);
+					} catch (CoreException e) {
+						error= e;
+					}
+				}
+			}
+			finishParsedSource(result, error);
+		}
+	}
+
+	private void finishParsedSource(ParsedSource result, Throwable th) throws CoreException {
+		if (th != null) {
+			if (th instanceof OutOfMemoryError && --fSwallowOutOfMemoryError < 0)
+				throw (OutOfMemoryError) th;
+			swallowError(result.fPath, th);
+		}
+		if (result.fInfo.fIsUpdated) {
+			updateFileCount(1, 0, 0);	// a source file was parsed
+		}
+	}
+
 	private synchronized boolean hasUrgentTasks() {
 		return !fUrgentTasks.isEmpty();
 	}
@@ -849,14 +1319,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	private void parseFile(Object tu, int linkageID, IIndexFileLocation ifl, IScannerInfo scanInfo,
 			boolean inContext, IProgressMonitor pm) throws CoreException, InterruptedException {
 		IPath path= getPathForLabel(ifl);
-		AbstractLanguage[] langs= fResolver.getLanguages(tu, true);
-		AbstractLanguage lang= null;
-		for (AbstractLanguage lang2 : langs) {
-			if (lang2.getLinkageID() == linkageID) {
-				lang= lang2;
-				break;
-			}
-		}
+		AbstractLanguage lang= getLanguage(tu, linkageID);
 		if (lang == null) {
 			return;
 		}
@@ -893,8 +1356,57 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		}
 	}
 	
+	private AbstractLanguage getLanguage(Object tu, int linkageID) {
+		for (AbstractLanguage lang : fResolver.getLanguages(tu, true)) {
+			if (lang.getLinkageID() == linkageID) {
+				return lang;
+			}
+		}
+		return null;
+	}
+
 	private void writeToIndex(final int linkageID, IASTTranslationUnit ast, long fileContentsHash,
 			int configHash, IProgressMonitor pm) throws CoreException, InterruptedException {
+		IIndexFileLocation[] ifls= getFilesToUpdate(linkageID, ast);
+		try {
+			addSymbols(ast, ifls, fIndex, 1, false, fileContentsHash, configHash, fTodoTaskUpdater, pm);
+		} finally {
+			// mark as updated in any case, to avoid parsing files that caused an exception to be thrown.
+			setUpdated(linkageID, ifls);
+		}
+	}
+
+	/**
+	 * Writes symbols prepared by a parser thread to the index. Files that have been updated 
+	 * since the symbols were prepared are skipped. 
+	 */
+	private void writeToIndex(final int linkageID, PreparedSymbols symbols, IIndexFileLocation[] preparedIFLs,
+			long fileContentsHash, int configHash, IProgressMonitor pm) throws CoreException, InterruptedException {
+		IIndexFileLocation[] ifls= selectFilesToStore(linkageID, preparedIFLs);
+		try {
+			storeSymbols(symbols, ifls, fIndex, 1, false, fileContentsHash, configHash, fTodoTaskUpdater, pm);
+		} finally {
+			// mark as updated in any case, to avoid parsing files that caused an exception to be thrown.
+			setUpdated(linkageID, ifls);
+		}
+	}
+
+	/**
+	 * Returns the files that still need to be updated out of the ones symbols have been prepared for.
+	 */
+	private IIndexFileLocation[] selectFilesToStore(final int linkageID, IIndexFileLocation[] preparedIFLs)
+			throws CoreException {
+		ArrayList<IIndexFileLocation> orderedIFLs= new ArrayList<IIndexFileLocation>(preparedIFLs.length);
+		for (IIndexFileLocation ifl : preparedIFLs) {
+			if (needToUpdateHeader(linkageID, ifl)) {
+				orderedIFLs.add(ifl);
+			}
+		}
+		return orderedIFLs.toArray(new IIndexFileLocation[orderedIFLs.size()]);
+	}
+
+	private IIndexFileLocation[] getFilesToUpdate(final int linkageID, IASTTranslationUnit ast)
+			throws CoreException {
 		HashSet<IIndexFileLocation> enteredFiles= new HashSet<IIndexFileLocation>();
 		ArrayList<IIndexFileLocation> orderedIFLs= new ArrayList<IIndexFileLocation>();
 		
@@ -911,15 +1423,21 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			orderedIFLs.add(topIfl);
 		}
 		
-		IIndexFileLocation[] ifls= orderedIFLs.toArray(new IIndexFileLocation[orderedIFLs.size()]);
-		try {
-			addSymbols(ast, ifls, fIndex, 1, false, fileContentsHash, configHash, fTodoTaskUpdater, pm);
-		} finally {
-			// mark as updated in any case, to avoid parsing files that caused an exception to be thrown.
+		return orderedIFLs.toArray(new IIndexFileLocation[orderedIFLs.size()]);
+	}
+
+	private void setUpdated(final int linkageID, IIndexFileLocation[] ifls) {
+		for (IIndexFileLocation ifl : ifls) {
+			IndexFileContent info= getFileInfo(linkageID, ifl);
+			Assert.isNotNull(info);
+			info.fIsUpdated= true;
+		}
+		if (!fPendingPriorityFiles.isEmpty()) {
 			for (IIndexFileLocation ifl : ifls) {
-				info= getFileInfo(linkageID, ifl);
-				Assert.isNotNull(info);
-				info.fIsUpdated= true;
+				fPendingPriorityFiles.remove(new FileKey(linkageID, ifl.getURI()));
+			}
+			if (fPendingPriorityFiles.isEmpty()) {
+				fStatistics.fPriorityFilesTime= (int) (System.currentTimeMillis() - fStartTime);
 			}
 		}
 	}
@@ -941,6 +1459,13 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	}
 
 	public final boolean needToUpdateHeader(int linkageID, IIndexFileLocation ifl) throws CoreException {
+		// Called by the parser threads, also.
+		synchronized (fFileInfos) {
+			return doNeedToUpdateHeader(linkageID, ifl);
+		}
+	}
+
+	private boolean doNeedToUpdateHeader(int linkageID, IIndexFileLocation ifl) throws CoreException {
 		IndexFileContent info= getFileInfo(linkageID, ifl);
 		if (info == null) {
 			IIndexFile ifile= null;
@@ -1084,16 +1609,18 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	}
 
 	public final IndexFileContent getFileContent(int linkageID, IIndexFileLocation ifl) throws CoreException {
-		if (!needToUpdateHeader(linkageID, ifl)) {
-			IndexFileContent info= getFileInfo(linkageID, ifl);
-			Assert.isNotNull(info);
-			if (info.fIndexFile == null) {
-				info.fIndexFile= fIndex.getFile(linkageID, ifl);
+		synchronized (fFileInfos) {
+			if (!doNeedToUpdateHeader(linkageID, ifl)) {
+				IndexFileContent info= getFileInfo(linkageID, ifl);
+				Assert.isNotNull(info);
 				if (info.fIndexFile == null) {
-					return null;
+					info.fIndexFile= fIndex.getFile(linkageID, ifl);
+					if (info.fIndexFile == null) {
+						return null;
+					}
 				}
+				return info;
 			}
-			return info;
 		}
 		return null;
 	}
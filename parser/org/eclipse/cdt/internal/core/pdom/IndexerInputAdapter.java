@@ -10,10 +10,13 @@
  *******************************************************************************/ 
 package org.eclipse.cdt.internal.core.pdom;
 
+import java.io.IOException;
+
 import org.eclipse.cdt.core.index.IIndexFileLocation;
 import org.eclipse.cdt.core.model.AbstractLanguage;
 import org.eclipse.cdt.core.parser.FileContent;
 import org.eclipse.cdt.core.parser.IScannerInfo;
+import org.eclipse.cdt.internal.core.parser.scanner.FileCharArray;
 
 /**
  * Abstract class to obtain information about the input to the indexer. For the 
@@ -22,7 +25,6 @@ import org.eclipse.cdt.core.parser.IScannerInfo;
  * @since 5.0
  */
 public abstract class IndexerInputAdapter extends ASTFilePathResolver {
-
 	/**
 	 * Returns an object representing an input file for the given index location,
 	 * or <code>null</code>, if it does not exist.
@@ -79,4 +81,21 @@ public abstract class IndexerInputAdapter extends ASTFilePathResolver {
 	 * Returns the encoding for the file.
 	 */
 	public abstract String getEncoding(IIndexFileLocation ifl);
+
+	/**
+	 * Computes the hash of the bytes of the file denoted by the index location, without
+	 * decoding its characters. The method may be called from multiple threads.
+	 * @return the hash or <code>0</code>, if the file cannot be read.
+	 */
+	public long computeRawContentsHash(IIndexFileLocation location) {
+		final String path= getASTPath(location);
+		if (path == null)
+			return 0;
+
+		try {
+			return FileCharArray.computeRawContentsHash(path);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
 }
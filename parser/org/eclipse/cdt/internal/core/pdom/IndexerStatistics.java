@@ -22,4 +22,36 @@ public class IndexerStatistics {
 	public int fUnresolvedIncludesCount= 0;
 	public int fPreprocessorProblemCount= 0;
 	public int fSyntaxProblemsCount= 0;
+	/** Time the parser threads waited for the index to become available for reading */
+	public int fParserWaitTime;
+	/** Time the index update waited for the parser threads */
+	public int fWriterWaitTime;
+	public int fWriteLockCount;
+	/** Time spent for acquiring and releasing the write lock */
+	public int fLockHandOffTime;
+	/** Estimated time saved by storing multiple files with a single acquisition of the write lock */
+	public int fLockTimeSaved;
+	/** Time until the files with priority were up to date, or -1 if there were none */
+	public int fPriorityFilesTime= -1;
+
+	/**
+	 * Adds the counters collected by another thread.
+	 */
+	public void add(IndexerStatistics other) {
+		fResolutionTime+= other.fResolutionTime;
+		fParsingTime+= other.fParsingTime;
+		fAddToIndexTime+= other.fAddToIndexTime;
+		fErrorCount+= other.fErrorCount;
+		fReferenceCount+= other.fReferenceCount;
+		fDeclarationCount+= other.fDeclarationCount;
+		fProblemBindingCount+= other.fProblemBindingCount;
+		fUnresolvedIncludesCount+= other.fUnresolvedIncludesCount;
+		fPreprocessorProblemCount+= other.fPreprocessorProblemCount;
+		fSyntaxProblemsCount+= other.fSyntaxProblemsCount;
+		fParserWaitTime+= other.fParserWaitTime;
+		fWriterWaitTime+= other.fWriterWaitTime;
+		fWriteLockCount+= other.fWriteLockCount;
+		fLockHandOffTime+= other.fLockHandOffTime;
+		fLockTimeSaved+= other.fLockTimeSaved;
+	}
 }
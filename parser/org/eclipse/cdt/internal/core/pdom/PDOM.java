@@ -73,6 +73,7 @@ import org.eclipse.cdt.internal.core.pdom.db.DBProperties;
 import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
 import org.eclipse.cdt.internal.core.pdom.dom.BindingCollector;
+import org.eclipse.cdt.internal.core.pdom.dom.BindingRecordCache;
 import org.eclipse.cdt.internal.core.pdom.dom.FindBinding;
 import org.eclipse.cdt.internal.core.pdom.dom.IPDOMLinkageFactory;
 import org.eclipse.cdt.internal.core.pdom.dom.MacroContainerCollector;
@@ -101,6 +102,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 	private static final int BLOCKED_WRITE_LOCK_OUTPUT_INTERVAL = 30000;
 	private static final int LONG_WRITE_LOCK_REPORT_THRESHOLD = 1000;
 	private static final int LONG_READ_LOCK_WAIT_REPORT_THRESHOLD = 1000;
+	private static final long RECORD_CACHE_SIZE = 4*1024*1024;
 	static boolean sDEBUG_LOCKS= false; // initialized in the PDOMManager, because IBM needs PDOM independent of runtime plugin.
 
 	/**
@@ -206,10 +208,13 @@ public class PDOM extends PlatformObject implements IPDOM {
 	 *  113.0 - Changed marshaling of values, bug 327878
 	 *  114.0 - Partial specializations for class template specializations, bug 332884.
 	 *  115.0 - Corrected signatures for function templates, bug 335062.
+	 *  116.0 - Trigram index for searching bindings with patterns.
+	 *  117.0 - Include guards and '#pragma once' stored with files.
+	 *  118.0 - Hash of the raw file contents stored with files.
 	 */
-	private static final int MIN_SUPPORTED_VERSION= version(114, 0);
-	private static final int MAX_SUPPORTED_VERSION= version(114, Short.MAX_VALUE);
-	private static final int DEFAULT_VERSION = version(114, 0);
+	private static final int MIN_SUPPORTED_VERSION= version(118, 0);
+	private static final int MAX_SUPPORTED_VERSION= version(118, Short.MAX_VALUE);
+	private static final int DEFAULT_VERSION = version(118, 0);
 
 	private static int version(int major, int minor) {
 		return (major << 16) + minor;
@@ -298,6 +303,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 	private IIndexLocationConverter locationConverter;
 	private Map<String, IPDOMLinkageFactory> fPDOMLinkageFactoryCache;
 	private HashMap<Object, Object> fResultCache= new HashMap<Object, Object>();
+	private final BindingRecordCache fRecordCache= new BindingRecordCache(RECORD_CACHE_SIZE);
 	private List<IListener> listeners;
 	protected ChangeEvent fEvent= new ChangeEvent();
 
@@ -324,7 +330,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	private void loadDatabase(File dbPath, ChunkCache cache) throws CoreException {
 		fPath= dbPath;
-		final boolean lockDB= db == null || lockCount != 0;
+		final boolean lockDB= db == null || fLock.isLocked();
 
 		clearCaches();
 		db = new Database(fPath, cache, getDefaultVersion(), isPermanentlyReadOnly());
@@ -333,7 +339,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 		if (isSupportedVersion()) {
 			readLinkages();
 		}
-		db.setLocked(lockCount != 0);
+		db.setLocked(fLock.isLocked());
 	}
 
 	public IIndexLocationConverter getLocationConverter() {
@@ -345,6 +351,18 @@ public class PDOM extends PlatformObject implements IPDOM {
 		return version >= MIN_SUPPORTED_VERSION && version <= MAX_SUPPORTED_VERSION;
 	}
 
+	/**
+	 * Returns whether the database should be cleared to switch to the large format for record 
+	 * pointers. This is the case when the large format has been requested, or when the database 
+	 * has used up three quarters of the maximum size of its format.
+	 */
+	public boolean requiresMigration() {
+		if (isPermanentlyReadOnly() || db.getPointerShift() >= Database.LARGE_POINTER_SHIFT)
+			return false;
+		return db.getRequestedPointerShift() > db.getPointerShift() 
+				|| db.getSizeBytes() > db.getMaxSize() / 4 * 3;
+	}
+
 	private void readLinkages() throws CoreException {
 		long record= getFirstLinkageRecord();
 		while (record != 0) {
@@ -463,7 +481,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 	}
 
 	protected void clear() throws CoreException {
-		assert lockCount < 0; // needs write-lock.
+		assert fLock.isWriteLockedByCurrentThread(); // needs write-lock.
 
 		// Clear out the database, everything is set to zero.
 		int vers = getDefaultVersion();
@@ -473,7 +491,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 	}
 
 	void reloadFromFile(File file) throws CoreException {
-		assert lockCount < 0;	// must have write lock.
+		assert fLock.isWriteLockedByCurrentThread();	// must have write lock.
 		File oldFile= fPath;
 		clearCaches();
 		try {
@@ -487,6 +505,29 @@ public class PDOM extends PlatformObject implements IPDOM {
 		fEvent.fReloaded= true;
 	}
 
+	/**
+	 * Compacts the database of this PDOM, see {@link Database#compact()}. The caller needs to 
+	 * hold the write lock.
+	 */
+	public Database.CompactionResult compact() throws CoreException {
+		assert fLock.isWriteLockedByCurrentThread(); // needs write-lock.
+		return db.compact();
+	}
+
+	/**
+	 * Rebuilds the b-trees of the file index and of the linkages with completely filled nodes,
+	 * see {@link BTree#pack()}. The caller needs to hold the write lock.
+	 */
+	public void packIndexes() throws CoreException {
+		assert fLock.isWriteLockedByCurrentThread(); // needs write-lock.
+		getFileIndex().pack();
+		for (PDOMLinkage linkage : getLinkageImpls()) {
+			linkage.getIndex().pack();
+			linkage.getNestedBindingsIndex().pack();
+			linkage.getMacroIndex().pack();
+		}
+	}
+
 	public boolean isEmpty() throws CoreException {
 		return getFirstLinkageRecord() == 0;
 	}
@@ -614,6 +655,14 @@ public class PDOM extends PlatformObject implements IPDOM {
 			}
 		}
 
+		RequiredLiterals literals= extractLiterals(patterns[patterns.length-1]);
+		if (literals != null) {
+			IIndexFragmentBinding[] result= findBindingsForLiterals(patterns, literals, isFullyQualified, filter, monitor);
+			if (result != null) {
+				return result;
+			}
+		}
+
 		BindingFinder finder = new BindingFinder(patterns, isFullyQualified, filter, monitor);
 		for (PDOMLinkage linkage : getLinkageList()) {
 			if (filter.acceptLinkage(linkage)) {
@@ -685,6 +734,250 @@ public class PDOM extends PlatformObject implements IPDOM {
 		return null;
 	}
 
+	/**
+	 * Literals that are contained in every name matching a pattern.
+	 */
+	private static class RequiredLiterals {
+		final char[] fPrefix;
+		final char[][] fLiterals;
+
+		RequiredLiterals(char[] prefix, char[][] literals) {
+			fPrefix= prefix;
+			fLiterals= literals;
+		}
+	}
+
+	/**
+	 * Computes the literals that are required by the given pattern, or returns <code>null</code> when
+	 * the pattern uses constructs that are not understood. The analysis is conservative, literals that
+	 * are subject to a quantifier or are part of a group are not considered.
+	 */
+	private static RequiredLiterals extractLiterals(Pattern pattern) {
+		final String p= pattern.pattern();
+		final int flags= pattern.flags();
+		if ((flags & Pattern.LITERAL) != 0)
+			return new RequiredLiterals(p.toCharArray(), new char[][] { p.toCharArray() });
+		if ((flags & (Pattern.COMMENTS | Pattern.CANON_EQ)) != 0)
+			return null;
+
+		final List<char[]> literals= new ArrayList<char[]>();
+		final StringBuilder run= new StringBuilder();
+		char[] prefix= null;
+		int depth= 0;
+		final int len= p.length();
+		for (int i = 0; i < len; i++) {
+			char c= p.charAt(i);
+			switch (c) {
+			case '\\':
+				if (++i == len)
+					return null;
+				c= p.charAt(i);
+				if (c == 'Q') {
+					int end= p.indexOf("\\E", i); //$NON-NLS-1$
+					if (end < 0)
+						end= len;
+					if (depth == 0)
+						run.append(p, i+1, end);
+					i= end+1;
+				} else if (!Character.isLetterOrDigit(c)) {
+					if (depth == 0)
+						run.append(c);
+				} else if ("dDsSwWbBAGZzntrfae".indexOf(c) >= 0) { //$NON-NLS-1$
+					prefix= addLiteral(literals, run, prefix);
+				} else {
+					// Escapes with arguments or back references.
+					return null;
+				}
+				break;
+			case '[':
+				prefix= addLiteral(literals, run, prefix);
+				i= skipCharacterClass(p, i);
+				if (i < 0)
+					return null;
+				break;
+			case '(':
+				if (i+1 < len && p.charAt(i+1) == '?') {
+					int j= i+2;
+					while (j < len && "idmsuxU-".indexOf(p.charAt(j)) >= 0) { //$NON-NLS-1$
+						if (p.charAt(j) == 'x')
+							return null;
+						j++;
+					}
+					if (j < len && p.charAt(j) == ')') {
+						// Flags for the rest of the pattern
+						i= j;
+						break;
+					}
+				}
+				prefix= addLiteral(literals, run, prefix);
+				depth++;
+				break;
+			case ')':
+				prefix= addLiteral(literals, run, prefix);
+				depth--;
+				break;
+			case '|':
+				if (depth == 0)
+					return null;
+				break;
+			case '?':
+			case '*':
+			case '{':
+			case '+':
+				// Except for '+', the preceding character is optional.
+				if (c != '+' && run.length() > 0)
+					run.setLength(run.length()-1);
+				prefix= addLiteral(literals, run, prefix);
+				if (c == '{') {
+					i= p.indexOf('}', i);
+					if (i < 0)
+						return null;
+				}
+				if (i+1 < len && (p.charAt(i+1) == '?' || p.charAt(i+1) == '+'))
+					i++;
+				break;
+			case '^':
+			case '.':
+			case '$':
+				// A '^' at the start of the pattern does not end a run.
+				if (c != '^' || i > 0)
+					prefix= addLiteral(literals, run, prefix);
+				break;
+			default:
+				if (depth == 0)
+					run.append(c);
+				break;
+			}
+		}
+		prefix= addLiteral(literals, run, prefix);
+		return new RequiredLiterals(prefix, literals.toArray(new char[literals.size()][]));
+	}
+
+	/**
+	 * Adds the current run of characters to the literals, returns the prefix of the pattern.
+	 */
+	private static char[] addLiteral(List<char[]> literals, StringBuilder run, char[] prefix) {
+		if (prefix == null) {
+			// The first run is a prefix of any match.
+			prefix= run.toString().toCharArray();
+		}
+		if (run.length() > 0) {
+			literals.add(run.toString().toCharArray());
+			run.setLength(0);
+		}
+		return prefix;
+	}
+
+	private static int skipCharacterClass(String p, int i) {
+		int nested= 0;
+		i++;
+		if (i < p.length() && p.charAt(i) == '^')
+			i++;
+		if (i < p.length() && p.charAt(i) == ']')
+			i++;
+		for (; i < p.length(); i++) {
+			switch (p.charAt(i)) {
+			case '\\':
+				i++;
+				break;
+			case '[':
+				nested++;
+				break;
+			case ']':
+				if (nested-- == 0)
+					return i;
+				break;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the bindings matching the given patterns, using the trigram index or the prefix of the
+	 * last pattern to determine the candidates. Returns <code>null</code> when the literals of the
+	 * pattern are not suitable for narrowing down the candidates.
+	 */
+	private IIndexFragmentBinding[] findBindingsForLiterals(Pattern[] patterns, RequiredLiterals literals,
+			boolean isFullyQualified, IndexFilter filter, IProgressMonitor monitor) throws CoreException {
+		final List<PDOMLinkage> linkages= new ArrayList<PDOMLinkage>();
+		final List<long[]> candidates= new ArrayList<long[]>();
+		for (PDOMLinkage linkage : getLinkageList()) {
+			if (filter.acceptLinkage(linkage)) {
+				long[] records= linkage.getNameIndex().findCandidates(literals.fLiterals);
+				if (records == null) {
+					if (literals.fPrefix.length == 0)
+						return null;
+					records= getRecordsForPrefix(linkage, literals.fPrefix, monitor);
+				}
+				linkages.add(linkage);
+				candidates.add(records);
+			}
+		}
+
+		final Pattern pattern= patterns[patterns.length-1];
+		final List<IIndexFragmentBinding> result= new ArrayList<IIndexFragmentBinding>();
+		for (int i = 0; i < linkages.size(); i++) {
+			final PDOMLinkage linkage= linkages.get(i);
+			for (long record : candidates.get(i)) {
+				if (monitor.isCanceled())
+					return IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+
+				PDOMBinding binding= linkage.getBinding(record);
+				if (binding != null && pattern.matcher(new String(binding.getNameCharArray())).matches()
+						&& filter.acceptBinding(binding)
+						&& matchesQualifiers(binding.getParentNode(), patterns, patterns.length-1, isFullyQualified)) {
+					result.add(binding);
+				}
+			}
+		}
+		return result.toArray(new IIndexFragmentBinding[result.size()]);
+	}
+
+	private long[] getRecordsForPrefix(PDOMLinkage linkage, char[] prefix, IProgressMonitor monitor) throws CoreException {
+		BindingCollector visitor = new BindingCollector(linkage, prefix, null, true, false, false);
+		visitor.setMonitor(monitor);
+		try {
+			linkage.accept(visitor);
+			visitor.setSkipGlobalEnumerators(true);
+			linkage.getNestedBindingsIndex().accept(visitor);
+		} catch (OperationCanceledException e) {
+		}
+		PDOMBinding[] bindings= visitor.getBindings();
+		long[] records= new long[bindings.length];
+		for (int i = 0; i < bindings.length; i++) {
+			records[i]= bindings[i].getRecord();
+		}
+		return records;
+	}
+
+	/**
+	 * Checks whether the qualifiers of a binding match the given patterns. Mimics the traversal
+	 * of the {@link BindingFinder}, the parent and the ancestors of a binding need to match the
+	 * patterns up to the given level.
+	 */
+	private static boolean matchesQualifiers(PDOMNode parent, Pattern[] patterns, int level,
+			boolean isFullyQualified) throws CoreException {
+		if (parent == null)
+			return level == 0;
+		if (!(parent instanceof PDOMNamedNode))
+			return false;
+
+		final PDOMNode grandParent= parent.getParentNode();
+		if (parent instanceof ICPPEnumeration && !((ICPPEnumeration) parent).isScoped()) {
+			// Enumerators of unscoped enumerations are also children of the enclosing scope.
+			if (matchesQualifiers(grandParent, patterns, level, isFullyQualified))
+				return true;
+		}
+		final PDOMNamedNode nnode= (PDOMNamedNode) parent;
+		if (!nnode.mayHaveChildren())
+			return false;
+		if (level == 0)
+			return !isFullyQualified && matchesQualifiers(grandParent, patterns, 0, false);
+
+		return patterns[level-1].matcher(new String(nnode.getNameCharArray())).matches()
+				&& matchesQualifiers(grandParent, patterns, level-1, isFullyQualified);
+	}
+
 	public IIndexFragmentBinding[] findMacroContainers(Pattern pattern, IndexFilter filter, IProgressMonitor monitor) throws CoreException {
 		if (monitor == null) {
 			monitor= new NullProgressMonitor();
@@ -790,52 +1083,54 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	// Read-write lock rules. Readers don't conflict with other readers,
 	// Writers conflict with readers, and everyone conflicts with writers.
-	private Object mutex = new Object();
-	private int lockCount;
-	private int waitingReaders;
+	private final PDOMLock fLock= new PDOMLock() {
+		@Override
+		protected void lockStateChanged(boolean locked) {
+			db.setLocked(locked);
+		}
+	};
 	private long lastWriteAccess= 0;
 	private long lastReadAccess= 0;
 	private long timeWriteLockAcquired;
 
 	public void acquireReadLock() throws InterruptedException {
 		long t = sDEBUG_LOCKS ? System.nanoTime() : 0;
-		synchronized (mutex) {
-			++waitingReaders;
-			try {
-				while (lockCount < 0)
-					mutex.wait();
-			} finally {
-				--waitingReaders;
+		fLock.acquireReadLock();
+		if (sDEBUG_LOCKS) {
+			t = (System.nanoTime() - t) / 1000000;
+			if (t >= LONG_READ_LOCK_WAIT_REPORT_THRESHOLD) {
+				System.out.println("Acquired index read lock after " + t + " ms wait."); //$NON-NLS-1$//$NON-NLS-2$
+			}
+			synchronized (fLockDebugging) {
+				incReadLock(fLockDebugging);
 			}
-			++lockCount;
-			db.setLocked(true);
+		}
+	}
 
-			if (sDEBUG_LOCKS) {
-				t = (System.nanoTime() - t) / 1000000;
-				if (t >= LONG_READ_LOCK_WAIT_REPORT_THRESHOLD) {
-					System.out.println("Acquired index read lock after " + t + " ms wait."); //$NON-NLS-1$//$NON-NLS-2$
-				}
+	/**
+	 * Attempts to acquire a read lock within the given time.
+	 * @return whether the lock was acquired.
+	 */
+	public boolean tryAcquireReadLock(long timeoutMillis) throws InterruptedException {
+		if (!fLock.tryAcquireReadLock(timeoutMillis))
+			return false;
+		if (sDEBUG_LOCKS) {
+			synchronized (fLockDebugging) {
 				incReadLock(fLockDebugging);
 			}
 		}
+		return true;
 	}
 
 	public void releaseReadLock() {
-		boolean clearCache= false;
-		synchronized (mutex) {
-			assert lockCount > 0: "No lock to release"; //$NON-NLS-1$
-			if (sDEBUG_LOCKS) {
+		if (sDEBUG_LOCKS) {
+			synchronized (fLockDebugging) {
 				decReadLock(fLockDebugging);
 			}
-
-			lastReadAccess= System.currentTimeMillis();
-			if (lockCount > 0)
-				--lockCount;
-			mutex.notifyAll();
-			clearCache= lockCount == 0;
-			db.setLocked(lockCount != 0);
 		}
-		if (clearCache) {
+		lastReadAccess= System.currentTimeMillis();
+		if (fLock.releaseReadLock()) {
+			// When all locks are released we can clear the result cache.
 			clearResultCache();
 		}
 	}
@@ -857,34 +1152,38 @@ public class PDOM extends PlatformObject implements IPDOM {
 	 */
 	public void acquireWriteLock(int giveupReadLocks) throws InterruptedException {
 		assert !isPermanentlyReadOnly();
-		synchronized (mutex) {
-			if (sDEBUG_LOCKS) {
-				incWriteLock(giveupReadLocks);
+		if (sDEBUG_LOCKS) {
+			long start= System.currentTimeMillis();
+			while (!fLock.tryAcquireWriteLock(giveupReadLocks, BLOCKED_WRITE_LOCK_OUTPUT_INTERVAL)) {
+				start = reportBlockedWriteLock(start, giveupReadLocks);
 			}
-
-			if (giveupReadLocks > 0) {
-				// give up on read locks
-				assert lockCount >= giveupReadLocks: "Not enough locks to release"; //$NON-NLS-1$
-				if (lockCount < giveupReadLocks) {
-					giveupReadLocks= lockCount;
-				}
-			} else {
-				giveupReadLocks= 0;
+			timeWriteLockAcquired = System.currentTimeMillis();
+			synchronized (fLockDebugging) {
+				adjustDebugReadLocks(-giveupReadLocks);
 			}
+		} else {
+			fLock.acquireWriteLock(giveupReadLocks);
+		}
+		db.setExclusiveLock();
+	}
 
-			// Let the readers go first
-			long start= sDEBUG_LOCKS ? System.currentTimeMillis() : 0;
-			while (lockCount > giveupReadLocks || waitingReaders > 0) {
-				mutex.wait(BLOCKED_WRITE_LOCK_OUTPUT_INTERVAL);
-				if (sDEBUG_LOCKS) {
-					start = reportBlockedWriteLock(start, giveupReadLocks);
-				}
+	/**
+	 * Attempts to acquire a write lock on this PDOM within the given time. The specified
+	 * number of read locks is given up, only when the write lock is acquired.
+	 * @return whether the lock was acquired.
+	 */
+	public boolean tryAcquireWriteLock(int giveupReadLocks, long timeoutMillis) throws InterruptedException {
+		assert !isPermanentlyReadOnly();
+		if (!fLock.tryAcquireWriteLock(giveupReadLocks, timeoutMillis))
+			return false;
+		if (sDEBUG_LOCKS) {
+			timeWriteLockAcquired = System.currentTimeMillis();
+			synchronized (fLockDebugging) {
+				adjustDebugReadLocks(-giveupReadLocks);
 			}
-			lockCount= -1;
-			if (sDEBUG_LOCKS)
-				timeWriteLockAcquired = System.currentTimeMillis();
-			db.setExclusiveLock();
 		}
+		db.setExclusiveLock();
+		return true;
 	}
 
 	final public void releaseWriteLock() {
@@ -902,33 +1201,71 @@ public class PDOM extends PlatformObject implements IPDOM {
 		} catch (CoreException e) {
 			CCorePlugin.log(e);
 		}
-		assert lockCount == -1;
 		lastWriteAccess= System.currentTimeMillis();
 		final ChangeEvent event= fEvent;
 		fEvent= new ChangeEvent();
-		synchronized (mutex) {
-			if (sDEBUG_LOCKS) {
-				long timeHeld = lastWriteAccess - timeWriteLockAcquired;
-				if (timeHeld >= LONG_WRITE_LOCK_REPORT_THRESHOLD) {
-					System.out.println("Index write lock held for " + timeHeld + " ms");
-				}
-				decWriteLock(establishReadLocks);
+		if (sDEBUG_LOCKS) {
+			long timeHeld = lastWriteAccess - timeWriteLockAcquired;
+			if (timeHeld >= LONG_WRITE_LOCK_REPORT_THRESHOLD) {
+				System.out.println("Index write lock held for " + timeHeld + " ms");
+			}
+			synchronized (fLockDebugging) {
+				adjustDebugReadLocks(establishReadLocks);
 			}
-
-			if (lockCount < 0)
-				lockCount= establishReadLocks;
-			mutex.notifyAll();
-			db.setLocked(lockCount != 0);
 		}
+		fLock.releaseWriteLock(establishReadLocks);
 		fireChange(event);
 	}
 
 	public boolean hasWaitingReaders() {
-		synchronized (mutex) {
-			return waitingReaders > 0;
+		return fLock.hasWaitingReaders();
+	}
+
+	/**
+	 * Hands read locks acquired by the current thread over to the given threads, which will
+	 * release them.
+	 * @param readLocks maps the threads to the number of read locks they take over.
+	 */
+	public void transferReadLocks(Map<Thread, Integer> readLocks) {
+		fLock.transferReadLocks(readLocks);
+	}
+
+	/**
+	 * Acquires a snapshot of this PDOM for the current thread, has to be released via 
+	 * {@link #releaseSnapshot()}. While the snapshot is held, the thread reads the content the
+	 * PDOM had when the write lock was released the last time, without holding a read lock. 
+	 * Therefore long running queries neither block the indexer nor are they blocked by it. 
+	 * Acquiring the snapshot waits for a writer that currently holds the write lock.
+	 * <p>
+	 * A snapshot may be invalidated, when the memory retained for the snapshots of the PDOM 
+	 * exceeds its limit. Further reads from it fail with a CoreException with the code 
+	 * {@link CCorePlugin#STATUS_PDOM_SNAPSHOT_INVALIDATED}, the caller may retry the operation
+	 * with a read lock. 
+	 * @throws InterruptedException
+	 */
+	public void acquireSnapshot() throws InterruptedException {
+		acquireReadLock();
+		try {
+			db.openSnapshot();
+		} finally {
+			releaseReadLock();
 		}
 	}
 
+	/**
+	 * Releases a snapshot acquired by the current thread.
+	 */
+	public void releaseSnapshot() {
+		db.closeSnapshot();
+	}
+
+	/**
+	 * Returns the histograms of wait and hold times collected by the lock of this PDOM.
+	 */
+	public PDOMLock.Statistics getLockStatistics() {
+		return fLock.getStatistics();
+	}
+
 	public long getLastWriteAccess() {
 		return lastWriteAccess;
 	}
@@ -1222,9 +1559,17 @@ public class PDOM extends PlatformObject implements IPDOM {
 	private void clearCaches() {
 		fileIndex= null;
 		fLinkageIDCache.clear();
+		fRecordCache.clear();
 		clearResultCache();
 	}
 
+	/**
+	 * Returns the cache for the decoded node records of this PDOM.
+	 */
+	public BindingRecordCache getRecordCache() {
+		return fRecordCache;
+	}
+
 	public void clearResultCache() {
 		synchronized (fResultCache) {
 			fResultCache.clear();
@@ -1248,6 +1593,9 @@ public class PDOM extends PlatformObject implements IPDOM {
 	}
 
 	public Object getCachedResult(Object key) {
+		// the results may have been computed from a different version of the database.
+		if (db.hasSnapshot())
+			return null;
 		synchronized (fResultCache) {
 			return fResultCache.get(key);
 		}
@@ -1258,6 +1606,8 @@ public class PDOM extends PlatformObject implements IPDOM {
 	}
 
 	public Object putCachedResult(Object key, Object result, boolean replace) {
+		if (db.hasSnapshot())
+			return result;
 		synchronized (fResultCache) {
 			Object old= fResultCache.put(key, result);
 			if (old != null && !replace) {
@@ -1496,27 +1846,10 @@ public class PDOM extends PlatformObject implements IPDOM {
 	}
 
 	// For debugging lock issues
-	@SuppressWarnings("nls")
-	private void incWriteLock(int giveupReadLocks) throws AssertionError {
-		DebugLockInfo info = getLockInfo(fLockDebugging);
-		if (info.fReadLocks != giveupReadLocks) {
-			outputReadLocks(fLockDebugging);
-			throw new AssertionError("write lock with " + giveupReadLocks + " readlocks, expected " + info.fReadLocks);
-		}
-		if (info.fWriteLocks != 0)
-			throw new AssertionError("Duplicate write lock");
-		info.fWriteLocks++;
-	}
-
-	// For debugging lock issues
-	private void decWriteLock(int establishReadLocks) throws AssertionError {
+	private void adjustDebugReadLocks(int delta) {
 		DebugLockInfo info = getLockInfo(fLockDebugging);
-		if (info.fReadLocks != establishReadLocks)
-			throw new AssertionError("release write lock with " + establishReadLocks + " readlocks, expected " + info.fReadLocks); //$NON-NLS-1$ //$NON-NLS-2$
-		if (info.fWriteLocks != 1)
-			throw new AssertionError("Wrong release write lock"); //$NON-NLS-1$
-		info.fWriteLocks= 0;
-		if (info.fReadLocks == 0) {
+		info.fReadLocks+= delta;
+		if (info.fReadLocks <= 0) {
 			fLockDebugging.remove(Thread.currentThread());
 		}
 	}
@@ -1528,8 +1861,10 @@ public class PDOM extends PlatformObject implements IPDOM {
 		if (now >= start + BLOCKED_WRITE_LOCK_OUTPUT_INTERVAL) {
 			System.out.println();
 			System.out.println("Blocked writeLock");
-			System.out.println("  lockcount= " + lockCount + ", giveupReadLocks=" + giveupReadLocks + ", waitingReaders=" + waitingReaders);
-			outputReadLocks(fLockDebugging);
+			System.out.println("  " + fLock + ", giveupReadLocks=" + giveupReadLocks);
+			synchronized (fLockDebugging) {
+				outputReadLocks(fLockDebugging);
+			}
 			start= now;
 		}
 		return start;
@@ -1548,17 +1883,19 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	// For debugging lock issues
 	public void adjustThreadForReadLock(Map<Thread, DebugLockInfo> lockDebugging) {
-		for (Thread th : lockDebugging.keySet()) {
-			DebugLockInfo val= lockDebugging.get(th);
-			if (val.fReadLocks > 0) {
-				DebugLockInfo myval= fLockDebugging.get(th);
-				if (myval == null) {
-					myval= new DebugLockInfo();
-					fLockDebugging.put(th, myval);
-				}
-				myval.inc(val);
-				for (int i = 0; i < val.fReadLocks; i++) {
-					decReadLock(fLockDebugging);
+		synchronized (fLockDebugging) {
+			for (Thread th : lockDebugging.keySet()) {
+				DebugLockInfo val= lockDebugging.get(th);
+				if (val.fReadLocks > 0) {
+					DebugLockInfo myval= fLockDebugging.get(th);
+					if (myval == null) {
+						myval= new DebugLockInfo();
+						fLockDebugging.put(th, myval);
+					}
+					myval.inc(val);
+					for (int i = 0; i < val.fReadLocks; i++) {
+						decReadLock(fLockDebugging);
+					}
 				}
 			}
 		}
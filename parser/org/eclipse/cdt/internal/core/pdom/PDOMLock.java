@@ -0,0 +1,503 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Phase-fair read-write lock used by the PDOM.
+ * <p>
+ * Readers and writers take turns: readers arriving while a writer is waiting are admitted
+ * after this writer has released the lock, a waiting writer is admitted as soon as the readers
+ * admitted before it are done. Writers are served in the order of their arrival. This way
+ * neither readers nor writers can be starved.
+ * <p>
+ * Read locks are counted rather than owned, a thread may release a read lock that has been
+ * acquired by another thread. Still, the lock keeps track of the locks held by each thread:
+ * a thread that already holds a read lock is not blocked by a waiting writer and misuse of
+ * the write lock is reported by an {@link IllegalStateException}. Read locks acquired on behalf
+ * of other threads are handed over with {@link #transferReadLocks(Map)}.
+ * <p>
+ * The lock collects histograms of the time threads waited for the lock and the time the lock
+ * was held.
+ */
+public class PDOMLock {
+	/**
+	 * Histogram of durations with buckets for powers of two milliseconds.
+	 */
+	public static final class Histogram {
+		private static final int BUCKETS= 16;
+		private final long[] fCounts= new long[BUCKETS];
+		private long fTotal;
+		private long fMax;
+
+		void add(long millis) {
+			int bucket= 0;
+			while (bucket < BUCKETS-1 && millis >= (1L << bucket)) {
+				bucket++;
+			}
+			fCounts[bucket]++;
+			fTotal+= millis;
+			if (millis > fMax) {
+				fMax= millis;
+			}
+		}
+
+		private Histogram copy() {
+			Histogram result= new Histogram();
+			System.arraycopy(fCounts, 0, result.fCounts, 0, BUCKETS);
+			result.fTotal= fTotal;
+			result.fMax= fMax;
+			return result;
+		}
+
+		/**
+		 * Returns the number of durations in the bucket with the given index. Bucket
+		 * <code>i</code> counts durations less than <code>2^i</code> milliseconds and at least
+		 * <code>2^(i-1)</code> milliseconds, the last bucket counts all longer durations.
+		 */
+		public long getCount(int bucket) {
+			return fCounts[bucket];
+		}
+
+		public int getBucketCount() {
+			return BUCKETS;
+		}
+
+		public long getCount() {
+			long result= 0;
+			for (long count : fCounts) {
+				result+= count;
+			}
+			return result;
+		}
+
+		/**
+		 * Returns the sum of all durations in milliseconds.
+		 */
+		public long getTotal() {
+			return fTotal;
+		}
+
+		/**
+		 * Returns the longest duration in milliseconds.
+		 */
+		public long getMax() {
+			return fMax;
+		}
+
+		@Override
+		@SuppressWarnings("nls")
+		public String toString() {
+			StringBuilder buf= new StringBuilder();
+			buf.append(getCount()).append(" times, ").append(fTotal).append(" ms total, ");
+			buf.append(fMax).append(" ms max [");
+			int last= BUCKETS-1;
+			while (last > 0 && fCounts[last] == 0) {
+				last--;
+			}
+			for (int i = 0; i <= last; i++) {
+				if (i > 0)
+					buf.append(", ");
+				buf.append(i == BUCKETS-1 ? ">=" : "<").append(i == BUCKETS-1 ? 1L << (i-1) : 1L << i);
+				buf.append("ms: ").append(fCounts[i]);
+			}
+			buf.append(']');
+			return buf.toString();
+		}
+	}
+
+	/**
+	 * Snapshot of the statistics collected by the lock.
+	 */
+	public static final class Statistics {
+		public final Histogram fReadWaitTime;
+		public final Histogram fWriteWaitTime;
+		public final Histogram fReadHoldTime;
+		public final Histogram fWriteHoldTime;
+		public final long fTimeouts;
+
+		Statistics(PDOMLock lock) {
+			fReadWaitTime= lock.fReadWaitTime.copy();
+			fWriteWaitTime= lock.fWriteWaitTime.copy();
+			fReadHoldTime= lock.fReadHoldTime.copy();
+			fWriteHoldTime= lock.fWriteHoldTime.copy();
+			fTimeouts= lock.fTimeouts;
+		}
+
+		@Override
+		@SuppressWarnings("nls")
+		public String toString() {
+			return "read wait: " + fReadWaitTime + "\nread hold: " + fReadHoldTime
+					+ "\nwrite wait: " + fWriteWaitTime + "\nwrite hold: " + fWriteHoldTime
+					+ "\ntimeouts: " + fTimeouts;
+		}
+	}
+
+	/**
+	 * Locks held by a thread.
+	 */
+	private static final class Holds {
+		int fReadLocks;
+		long fReadStart;
+	}
+
+	private final ReentrantLock fMutex= new ReentrantLock();
+	private final Condition fReadersCondition= fMutex.newCondition();
+	private final Condition fWritersCondition= fMutex.newCondition();
+	private final LinkedList<Thread> fWaitingWriters= new LinkedList<Thread>();
+	/** The read locks of the threads holding any, guarded by the mutex. */
+	private final Map<Thread, Holds> fHolds= new HashMap<Thread, Holds>();
+
+	private int fReadLocks;
+	private int fWaitingReaders;
+	private Thread fWriter;
+	private long fWriteStart;
+	/** Incremented whenever a writer leaves, allows the readers of the next phase to proceed. */
+	private long fPhase;
+	/** Number of readers of the current phase, that have not yet been woken up. */
+	private int fPendingReaders;
+
+	private final Histogram fReadWaitTime= new Histogram();
+	private final Histogram fWriteWaitTime= new Histogram();
+	private final Histogram fReadHoldTime= new Histogram();
+	private final Histogram fWriteHoldTime= new Histogram();
+	private long fTimeouts;
+
+	/**
+	 * Called whenever the lock changes between being locked and being unlocked, with the
+	 * internal mutex held.
+	 */
+	protected void lockStateChanged(boolean locked) {
+	}
+
+	/**
+	 * Acquires a read lock, blocks while the write lock is held by another thread or a writer
+	 * is waiting for the readers to finish.
+	 */
+	public void acquireReadLock() throws InterruptedException {
+		acquireReadLock(-1);
+	}
+
+	/**
+	 * Attempts to acquire a read lock within the given time.
+	 * @return whether the lock was acquired.
+	 */
+	public boolean tryAcquireReadLock(long timeoutMillis) throws InterruptedException {
+		return acquireReadLock(Math.max(0, timeoutMillis));
+	}
+
+	private boolean acquireReadLock(long timeoutMillis) throws InterruptedException {
+		final Thread thread= Thread.currentThread();
+		final long start= System.currentTimeMillis();
+		fMutex.lock();
+		try {
+			if (fWriter == thread)
+				throw new IllegalStateException("Read lock requested while holding the write lock"); //$NON-NLS-1$
+
+			// A thread holding a read lock must not wait for a writer, which in turn waits for it.
+			if (getReadLockCount(thread) == 0 && (fWriter != null || !fWaitingWriters.isEmpty())) {
+				final long phase= fPhase;
+				long nanos= TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+				++fWaitingReaders;
+				try {
+					while (fWriter != null || (phase == fPhase && !fWaitingWriters.isEmpty())) {
+						if (timeoutMillis < 0) {
+							fReadersCondition.await();
+						} else if (nanos > 0) {
+							nanos= fReadersCondition.awaitNanos(nanos);
+						} else {
+							fTimeouts++;
+							return false;
+						}
+					}
+				} finally {
+					--fWaitingReaders;
+					if (phase != fPhase && fPendingReaders > 0 && --fPendingReaders == 0) {
+						fWritersCondition.signalAll();
+					}
+				}
+			}
+			final long now= System.currentTimeMillis();
+			fReadWaitTime.add(now - start);
+			if (fReadLocks++ == 0 && fWriter == null) {
+				lockStateChanged(true);
+			}
+			addReadLocks(thread, 1, now);
+			return true;
+		} finally {
+			fMutex.unlock();
+		}
+	}
+
+	/**
+	 * Releases a read lock.
+	 * @return whether the lock is no longer held by anybody.
+	 */
+	public boolean releaseReadLock() {
+		fMutex.lock();
+		try {
+			assert fReadLocks > 0: "No lock to release"; //$NON-NLS-1$
+			if (fReadLocks == 0)
+				return false;
+
+			// Without holds of its own, the thread releases a lock acquired by another thread.
+			removeReadLocks(Thread.currentThread(), 1, System.currentTimeMillis());
+
+			if (--fReadLocks == 0) {
+				lockStateChanged(false);
+			}
+			if (!fWaitingWriters.isEmpty()) {
+				fWritersCondition.signalAll();
+			}
+			return fReadLocks == 0;
+		} finally {
+			fMutex.unlock();
+		}
+	}
+
+	/**
+	 * Acquires the write lock, giving up the specified number of read locks first. Blocks until
+	 * the read locks of all other threads are released and the writers that arrived earlier are
+	 * done.
+	 */
+	public void acquireWriteLock(int giveupReadLocks) throws InterruptedException {
+		acquireWriteLock(giveupReadLocks, -1);
+	}
+
+	/**
+	 * Attempts to acquire the write lock within the given time, giving up the specified number
+	 * of read locks when successful.
+	 * @return whether the lock was acquired.
+	 */
+	public boolean tryAcquireWriteLock(int giveupReadLocks, long timeoutMillis) throws InterruptedException {
+		return acquireWriteLock(giveupReadLocks, Math.max(0, timeoutMillis));
+	}
+
+	private boolean acquireWriteLock(int giveupReadLocks, long timeoutMillis) throws InterruptedException {
+		if (giveupReadLocks < 0)
+			giveupReadLocks= 0;
+
+		final Thread thread= Thread.currentThread();
+		final long start= System.currentTimeMillis();
+		fMutex.lock();
+		try {
+			if (fWriter == thread)
+				throw new IllegalStateException("Write lock is not reentrant"); //$NON-NLS-1$
+			assert fReadLocks >= giveupReadLocks: "Not enough locks to release"; //$NON-NLS-1$
+			if (giveupReadLocks > fReadLocks) {
+				giveupReadLocks= fReadLocks;
+			}
+
+			fWaitingWriters.add(thread);
+			long nanos= TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+			boolean success= false;
+			try {
+				// A writer upgrading from read locks may not wait for writers that arrived
+				// earlier, those writers cannot proceed before the read locks are given up.
+				while (fWriter != null || fReadLocks > giveupReadLocks || fPendingReaders > 0
+						|| (giveupReadLocks == 0 && fWaitingWriters.getFirst() != thread)) {
+					if (timeoutMillis < 0) {
+						fWritersCondition.await();
+					} else if (nanos > 0) {
+						nanos= fWritersCondition.awaitNanos(nanos);
+					} else {
+						fTimeouts++;
+						return false;
+					}
+				}
+				success= true;
+			} finally {
+				fWaitingWriters.remove(thread);
+				if (!success) {
+					// Readers waiting for this writer may proceed.
+					startReaderPhase();
+					fWritersCondition.signalAll();
+				}
+			}
+			final long now= System.currentTimeMillis();
+			fWriteWaitTime.add(now - start);
+			fReadLocks-= giveupReadLocks;
+			removeReadLocks(thread, giveupReadLocks, now);
+			fWriter= thread;
+			fWriteStart= now;
+			lockStateChanged(true);
+			return true;
+		} finally {
+			fMutex.unlock();
+		}
+	}
+
+	/**
+	 * Releases the write lock and establishes the given number of read locks for the
+	 * current thread.
+	 */
+	public void releaseWriteLock(int establishReadLocks) {
+		final Thread thread= Thread.currentThread();
+		fMutex.lock();
+		try {
+			if (fWriter != thread)
+				throw new IllegalStateException("Write lock is not held by the current thread"); //$NON-NLS-1$
+
+			final long now= System.currentTimeMillis();
+			fWriteHoldTime.add(now - fWriteStart);
+			fWriter= null;
+			if (establishReadLocks > 0) {
+				fReadLocks+= establishReadLocks;
+				addReadLocks(thread, establishReadLocks, now);
+			}
+			lockStateChanged(fReadLocks != 0);
+
+			startReaderPhase();
+			if (!fWaitingWriters.isEmpty()) {
+				fWritersCondition.signalAll();
+			}
+		} finally {
+			fMutex.unlock();
+		}
+	}
+
+	/**
+	 * Hands read locks held by the current thread over to other threads, which are responsible
+	 * for releasing them. Used when locks have been acquired on behalf of other threads.
+	 * @param readLocks maps the threads to the number of read locks they take over.
+	 */
+	public void transferReadLocks(Map<Thread, Integer> readLocks) {
+		final Thread thread= Thread.currentThread();
+		fMutex.lock();
+		try {
+			final long now= System.currentTimeMillis();
+			for (Map.Entry<Thread, Integer> entry : readLocks.entrySet()) {
+				final int count= entry.getValue().intValue();
+				assert getReadLockCount(thread) >= count: "Not enough locks to transfer"; //$NON-NLS-1$
+				removeReadLocks(thread, count, now);
+				addReadLocks(entry.getKey(), count, now);
+			}
+		} finally {
+			fMutex.unlock();
+		}
+	}
+
+	private int getReadLockCount(Thread thread) {
+		final Holds holds= fHolds.get(thread);
+		return holds == null ? 0 : holds.fReadLocks;
+	}
+
+	private void addReadLocks(Thread thread, int count, long now) {
+		Holds holds= fHolds.get(thread);
+		if (holds == null) {
+			holds= new Holds();
+			holds.fReadStart= now;
+			fHolds.put(thread, holds);
+		}
+		holds.fReadLocks+= count;
+	}
+
+	private void removeReadLocks(Thread thread, int count, long now) {
+		final Holds holds= fHolds.get(thread);
+		if (holds != null && count > 0) {
+			holds.fReadLocks-= count;
+			if (holds.fReadLocks <= 0) {
+				fReadHoldTime.add(now - holds.fReadStart);
+				fHolds.remove(thread);
+			}
+		}
+	}
+
+	/**
+	 * Admits the readers that have been waiting for a writer, the next writer has to wait until
+	 * they have acquired the lock.
+	 */
+	private void startReaderPhase() {
+		fPhase++;
+		if (fWaitingReaders > 0) {
+			fPendingReaders= fWaitingReaders;
+			fReadersCondition.signalAll();
+		}
+	}
+
+	/**
+	 * Returns whether threads are waiting for a read lock.
+	 */
+	public boolean hasWaitingReaders() {
+		fMutex.lock();
+		try {
+			return fWaitingReaders > 0;
+		} finally {
+			fMutex.unlock();
+		}
+	}
+
+	/**
+	 * Returns whether a read or the write lock is held by any thread.
+	 */
+	public boolean isLocked() {
+		fMutex.lock();
+		try {
+			return fReadLocks != 0 || fWriter != null;
+		} finally {
+			fMutex.unlock();
+		}
+	}
+
+	/**
+	 * Returns whether the write lock is held by the current thread.
+	 */
+	public boolean isWriteLockedByCurrentThread() {
+		fMutex.lock();
+		try {
+			return fWriter == Thread.currentThread();
+		} finally {
+			fMutex.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of read locks held by the current thread.
+	 */
+	public int getReadLockCount() {
+		fMutex.lock();
+		try {
+			return getReadLockCount(Thread.currentThread());
+		} finally {
+			fMutex.unlock();
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the statistics collected by the lock.
+	 */
+	public Statistics getStatistics() {
+		fMutex.lock();
+		try {
+			return new Statistics(this);
+		} finally {
+			fMutex.unlock();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("nls")
+	public String toString() {
+		fMutex.lock();
+		try {
+			return "readLocks=" + fReadLocks + ", writer=" + (fWriter == null ? null : fWriter.getName())
+					+ ", waitingReaders=" + fWaitingReaders + ", waitingWriters=" + fWaitingWriters.size();
+		} finally {
+			fMutex.unlock();
+		}
+	}
+}
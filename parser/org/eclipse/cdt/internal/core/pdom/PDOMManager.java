@@ -68,8 +68,11 @@ import org.eclipse.cdt.internal.core.index.IndexChangeEvent;
 import org.eclipse.cdt.internal.core.index.IndexFactory;
 import org.eclipse.cdt.internal.core.index.IndexerStateEvent;
 import org.eclipse.cdt.internal.core.index.provider.IndexProviderManager;
+import org.eclipse.cdt.internal.core.parser.scanner.HeaderMacroCache;
 import org.eclipse.cdt.internal.core.pdom.PDOM.IListener;
 import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
+import org.eclipse.cdt.internal.core.pdom.db.CompressedDatabaseFile;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.cdt.internal.core.pdom.dom.IPDOMLinkageFactory;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMProjectIndexLocationConverter;
 import org.eclipse.cdt.internal.core.pdom.indexer.AbstractPDOMIndexer;
@@ -115,6 +118,7 @@ import com.ibm.icu.text.MessageFormat;
  */
 public class PDOMManager implements IWritableIndexManager, IListener {
 	private static final String TRACE_INDEXER_SETUP = CCorePlugin.PLUGIN_ID + "/debug/indexer/setup"; //$NON-NLS-1$
+	private static final String HEADER_MACRO_CACHE_FILE = "headerMacros.dat"; //$NON-NLS-1$
 
 	private final class PCL implements IPreferenceChangeListener {
 		private ICProject fProject;
@@ -226,6 +230,7 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 		adjustCacheSize();
 		updatePathCanonicalizationStrategy();
 		fIndexProviderManager.startup();
+		HeaderMacroCache.setSharedInstance(new HeaderMacroCache(fileFromDatabaseName(HEADER_MACRO_CACHE_FILE)));
 		
 		fTraceIndexerSetup= String.valueOf(true).equals(Platform.getDebugOption(TRACE_INDEXER_SETUP));
 		final CoreModel model = CoreModel.getDefault();
@@ -264,6 +269,16 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 			jobToCancel.cancelJobs(null, false);
 		}
 		Job.getJobManager().removeJobChangeListener(fJobChangeListener);
+
+		final HeaderMacroCache headerMacroCache= HeaderMacroCache.getSharedInstance();
+		if (headerMacroCache != null) {
+			HeaderMacroCache.setSharedInstance(null);
+			try {
+				headerMacroCache.save();
+			} catch (IOException e) {
+				CCorePlugin.log(e);
+			}
+		}
 	}
 
 	protected void onPreferenceChange(PreferenceChangeEvent event) {
@@ -363,7 +378,7 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 			}
 
 			WritablePDOM pdom= new WritablePDOM(dbFile, new PDOMProjectIndexLocationConverter(rproject), getLinkageFactories());
-			if (!pdom.isSupportedVersion() || fromScratch) {
+			if (!pdom.isSupportedVersion() || pdom.requiresMigration() || fromScratch) {
 				try {
 					pdom.acquireWriteLock();
 				} catch (InterruptedException e) {
@@ -1182,7 +1197,7 @@ public class PDOMManager implements IWritableIndexManager, IListener {
      * Exports the project PDOM to the specified location, rewriting locations with
      * the specified location converter.
      * <br>
-     * Note. This will acquire a write lock while the pdom is exported
+     * Note. The pdom is copied from a snapshot, the indexer is not blocked while the pdom is exported
 	 * @param targetLocation a location that does not currently exist
 	 * @param newConverter
 	 * @throws CoreException
@@ -1201,16 +1216,14 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 		try {
 			// copy it
 			PDOM pdom= getOrCreatePDOM(cproject);
-			pdom.acquireReadLock();
 			String oldID= null;
 			try {
-				oldID= pdom.getProperty(IIndexFragment.PROPERTY_FRAGMENT_ID);
-				pdom.flush();
-				FileChannel to = new FileOutputStream(targetLocation).getChannel();
-				pdom.getDB().transferTo(to);
-				to.close();
-			} finally {
-				pdom.releaseReadLock();
+				// copy from a snapshot, such that the indexer can continue meanwhile.
+				oldID= copyPDOM(pdom, targetLocation, true);
+			} catch (CoreException e) {
+				if (e.getStatus().getCode() != CCorePlugin.STATUS_PDOM_SNAPSHOT_INVALIDATED)
+					throw e;
+				oldID= copyPDOM(pdom, targetLocation, false);
 			}
 
 			// overwrite internal location representations
@@ -1233,8 +1246,59 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 		}
 	}
 
+	private String copyPDOM(PDOM pdom, File targetLocation, boolean fromSnapshot) 
+			throws CoreException, IOException, InterruptedException {
+		if (fromSnapshot) {
+			pdom.acquireSnapshot();
+		} else {
+			pdom.acquireReadLock();
+		}
+		try {
+			final String id= pdom.getProperty(IIndexFragment.PROPERTY_FRAGMENT_ID);
+			if (!fromSnapshot) {
+				pdom.flush();
+			}
+			FileChannel to = new FileOutputStream(targetLocation).getChannel();
+			try {
+				pdom.getDB().transferTo(to);
+			} finally {
+				to.close();
+			}
+			return id;
+		} finally {
+			if (fromSnapshot) {
+				pdom.releaseSnapshot();
+			} else {
+				pdom.releaseReadLock();
+			}
+		}
+	}
+
+	/**
+	 * Compacts the database of the index for the given project. Free space within the database is
+	 * merged and unused space at the end of the file is removed.
+	 * Note. This will acquire a write lock while the pdom is compacted
+	 * @return the result of the compaction with the number of bytes reclaimed and the time spent.
+	 * @throws CoreException
+	 * @throws OperationCanceledException in case the thread was interrupted
+	 */
+	public Database.CompactionResult compactProjectPDOM(ICProject cproject) throws CoreException {
+		WritablePDOM pdom= (WritablePDOM) getPDOM(cproject);
+		try {
+			pdom.acquireWriteLock();
+		} catch (InterruptedException e) {
+			throw new OperationCanceledException();
+		}
+		try {
+			return pdom.compact();
+		} finally {
+			pdom.releaseWriteLock();
+		}
+	}
+
 	/**
-	 * Resets the pdom for the project with the provided stream. 
+	 * Resets the pdom for the project with the provided stream. The stream may provide the
+	 * database in compressed form, it is stored uncompressed.
 	 * @throws CoreException
 	 * @throws OperationCanceledException in case the thread was interrupted
 	 * @since 4.0
@@ -1243,6 +1307,7 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 		// make a copy of the database
 		String newName= createNewDatabaseName(project);
 		File newFile= fileFromDatabaseName(newName);
+		stream= CompressedDatabaseFile.getUncompressedStream(stream);
 		OutputStream out= new FileOutputStream(newFile);
 		try {
 			int version= 0;
@@ -1251,6 +1316,7 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 				version= (version << 8) + (b & 0xff);
 				out.write(b);
 			}
+			version= Database.versionFromHeader(version);
 			if (version > PDOM.getMaxSupportedVersion()) {
 				final IStatus status = new Status(IStatus.WARNING, CCorePlugin.PLUGIN_ID, 0, CCorePlugin.getResourceString("PDOMManager.unsupportedHigherVersion"), null); //$NON-NLS-1$
 				throw new CoreException(status); 
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.index.IIndexFileLocation;
+import org.eclipse.cdt.core.index.IIndexInclude;
+import org.eclipse.cdt.core.index.IIndexLocationConverter;
+import org.eclipse.cdt.core.model.LanguageManager;
+import org.eclipse.cdt.internal.core.index.IIndexFragment;
+import org.eclipse.cdt.internal.core.index.IIndexFragmentFile;
+import org.eclipse.cdt.internal.core.pdom.db.DBProperties;
+import org.eclipse.cdt.internal.core.pdom.dom.PDOMFile;
+import org.eclipse.cdt.internal.core.pdom.dom.PDOMInclude;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Merges PDOMs into a writable PDOM, typically fragments that have been created by indexing
+ * disjoint sets of translation units in separate processes. Source and target PDOM must use
+ * compatible location converters.
+ * <p>
+ * Files are identified by their location and linkage. A file that already has content in the
+ * target PDOM is not copied again, headers that are shared by the fragments are stored only once.
+ * When neither the timestamp nor the contents hash of such a file matches the one in the target
+ * PDOM, the file has been modified between the indexing runs. The content of the target PDOM is
+ * kept and the file is reported as a conflict.
+ * <p>
+ * The properties of the sources, among them the fragment id, are copied to the target PDOM.
+ * Sources with differing fragment ids cannot be merged.
+ */
+public class PDOMMerger {
+	private final WritablePDOM fTarget;
+	private int fFilesCopied;
+	private int fDuplicates;
+	private int fConflicts;
+	private boolean fHasFragmentID;
+	private String fFragmentID;
+
+	public PDOMMerger(WritablePDOM target) {
+		fTarget= target;
+	}
+
+	/**
+	 * Copies the content of the given PDOM into the target PDOM. The method obtains a read lock
+	 * on the source and a write lock on the target, the caller must not hold any locks.
+	 * @throws CoreException
+	 * @throws InterruptedException
+	 */
+	public void merge(PDOM source, IProgressMonitor monitor) throws CoreException, InterruptedException {
+		if (monitor == null) {
+			monitor= new NullProgressMonitor();
+		}
+		if (!source.isSupportedVersion()) {
+			throw new CoreException(CCorePlugin.createStatus(
+					"Unsupported index version: " + source.getPath())); //$NON-NLS-1$
+		}
+		source.acquireReadLock();
+		try {
+			fTarget.acquireWriteLock();
+			try {
+				mergeProperties(source);
+				fTarget.setMergedPDOM(source);
+				try {
+					mergeFiles(source, monitor);
+				} finally {
+					fTarget.setMergedPDOM(null);
+				}
+			} finally {
+				fTarget.releaseWriteLock(0, true);
+			}
+		} finally {
+			source.releaseReadLock();
+		}
+	}
+
+	/**
+	 * Copies the content of the PDOM stored in the given file into the target PDOM. The file
+	 * is opened for the duration of the merge, only.
+	 * @param converter the location converter for the PDOM, compatible with the one of the target.
+	 * @throws CoreException
+	 * @throws InterruptedException
+	 */
+	public void merge(File source, IIndexLocationConverter converter, IProgressMonitor monitor)
+			throws CoreException, InterruptedException {
+		PDOM pdom= new PDOM(source, converter, LanguageManager.getInstance().getPDOMLinkageFactoryMappings());
+		try {
+			merge(pdom, monitor);
+		} finally {
+			pdom.acquireReadLock();
+			try {
+				pdom.db.setExclusiveLock();	// Nobody else knows about the pdom.
+				pdom.close();
+			} finally {
+				pdom.releaseReadLock();
+			}
+		}
+	}
+
+	/**
+	 * Copies the properties of the source to the target PDOM. All sources must be fragments
+	 * of the same index, the fragment id of the source has to match the ones merged before.
+	 */
+	private void mergeProperties(PDOM source) throws CoreException {
+		final String fragmentID= source.getProperty(IIndexFragment.PROPERTY_FRAGMENT_ID);
+		if (!fHasFragmentID) {
+			fHasFragmentID= true;
+			fFragmentID= fragmentID;
+		} else if (fFragmentID == null ? fragmentID != null : !fFragmentID.equals(fragmentID)) {
+			throw new CoreException(CCorePlugin.createStatus(
+					"Fragment id " + fragmentID + " of " + source.getPath() + //$NON-NLS-1$ //$NON-NLS-2$
+					" does not match " + fFragmentID)); //$NON-NLS-1$
+		}
+		final DBProperties properties= new DBProperties(source.db, PDOM.PROPERTIES);
+		for (String key : properties.getKeySet()) {
+			if (!IIndexFragment.PROPERTY_RESUME_INDEXER.equals(key)) {
+				fTarget.setProperty(key, properties.getProperty(key));
+			}
+		}
+	}
+
+	private void mergeFiles(PDOM source, IProgressMonitor monitor) throws CoreException {
+		IIndexFragmentFile[] sourceFiles= source.getAllFiles();
+		monitor.beginTask("", sourceFiles.length * 2); //$NON-NLS-1$
+		try {
+			// Decide which files are copied and register them with the file index, such that the
+			// includes between the files can be resolved in the second pass.
+			List<PDOMFile> copied= new ArrayList<PDOMFile>();
+			List<PDOMFile> targets= new ArrayList<PDOMFile>();
+			Set<PDOMFile> copiedSet= new HashSet<PDOMFile>();
+			for (IIndexFragmentFile f : sourceFiles) {
+				checkCanceled(monitor);
+				PDOMFile sourceFile= (PDOMFile) f;
+				if (sourceFile.hasContent()) {
+					final int linkageID= sourceFile.getLinkageID();
+					final IIndexFileLocation location= sourceFile.getLocation();
+					PDOMFile targetFile= fTarget.getFile(linkageID, location);
+					if (targetFile != null && targetFile.hasContent()) {
+						if (targetFile.getTimestamp() == sourceFile.getTimestamp()
+								|| targetFile.getContentsHash() == sourceFile.getContentsHash()
+								|| (sourceFile.getRawContentsHash() != 0
+										&& targetFile.getRawContentsHash() == sourceFile.getRawContentsHash())) {
+							fDuplicates++;
+						} else {
+							fConflicts++;
+						}
+					} else {
+						targetFile= (PDOMFile) fTarget.addFile(linkageID, location);
+						copied.add(sourceFile);
+						targets.add(targetFile);
+						copiedSet.add(sourceFile);
+					}
+				}
+				monitor.worked(1);
+			}
+
+			// Copy the contents
+			for (int i = 0; i < copied.size(); i++) {
+				checkCanceled(monitor);
+				final PDOMFile sourceFile= copied.get(i);
+				final PDOMFile targetFile= targets.get(i);
+				IIndexInclude[] includes= sourceFile.getIncludes();
+				PDOMFile[] includeTargets= new PDOMFile[includes.length];
+				boolean[] contexts= new boolean[includes.length];
+				for (int j = 0; j < includes.length; j++) {
+					PDOMInclude include= (PDOMInclude) includes[j];
+					PDOMFile included= (PDOMFile) include.getIncludes();
+					if (included != null) {
+						includeTargets[j]= (PDOMFile) fTarget.addFile(included.getLinkageID(),
+								included.getLocation());
+						if (copiedSet.contains(included)) {
+							PDOMInclude context= (PDOMInclude) included.getParsedInContext();
+							contexts[j]= context != null && context.getRecord() == include.getRecord();
+						}
+					}
+				}
+				targetFile.addContentsFrom(sourceFile, includeTargets, contexts);
+				fFilesCopied++;
+				monitor.worked(1);
+			}
+			monitor.worked(sourceFiles.length - copied.size());
+		} finally {
+			fTarget.clearResultCache();
+			monitor.done();
+		}
+	}
+
+	private void checkCanceled(IProgressMonitor monitor) {
+		if (monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
+
+	/**
+	 * Returns the number of files that have been copied into the target PDOM.
+	 */
+	public int getFilesCopied() {
+		return fFilesCopied;
+	}
+
+	/**
+	 * Returns the number of files that were not copied, because the target PDOM already contained
+	 * the same version of them.
+	 */
+	public int getDuplicates() {
+		return fDuplicates;
+	}
+
+	/**
+	 * Returns the number of files that were not copied, because the target PDOM already contained
+	 * a different version of them.
+	 */
+	public int getConflicts() {
+		return fConflicts;
+	}
+}
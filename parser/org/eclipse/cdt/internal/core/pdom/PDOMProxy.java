@@ -44,7 +44,8 @@ import org.eclipse.core.runtime.IProgressMonitor;
  */
 public class PDOMProxy implements IPDOM {
 	private PDOM fDelegate;
-	private int fReadLockCount;
+	/** Read locks not forwarded to the delegate, by the threads that acquired them. */
+	private final Map<Thread, Integer> fReadLocks= new HashMap<Thread, Integer>();
 	private Set<IListener> fListeners= new HashSet<IListener>();
 	private Map<Thread, DebugLockInfo> fLockDebugging;
 
@@ -57,7 +58,9 @@ public class PDOMProxy implements IPDOM {
 		if (fDelegate != null) {
 			fDelegate.acquireReadLock();
 		} else {
-			fReadLockCount++;
+			final Thread thread= Thread.currentThread();
+			final Integer count= fReadLocks.get(thread);
+			fReadLocks.put(thread, count == null ? 1 : count.intValue() + 1);
 			if (PDOM.sDEBUG_LOCKS) {
 				PDOM.incReadLock(fLockDebugging);
 			}
@@ -189,8 +192,18 @@ public class PDOMProxy implements IPDOM {
 
 	public synchronized void releaseReadLock() {
 		// read-locks not forwarded to delegate need to be released here
-		if (fReadLockCount > 0) {
-			fReadLockCount--;
+		if (!fReadLocks.isEmpty()) {
+			Thread thread= Thread.currentThread();
+			if (!fReadLocks.containsKey(thread)) {
+				// The lock was acquired by another thread.
+				thread= fReadLocks.keySet().iterator().next();
+			}
+			final int count= fReadLocks.get(thread).intValue();
+			if (count > 1) {
+				fReadLocks.put(thread, count - 1);
+			} else {
+				fReadLocks.remove(thread);
+			}
 			if (PDOM.sDEBUG_LOCKS)
 				PDOM.decReadLock(fLockDebugging);
 		} else if (fDelegate != null) {
@@ -240,15 +253,26 @@ public class PDOMProxy implements IPDOM {
 
 	public synchronized void setDelegate(WritablePDOM pdom) {
 		fDelegate= pdom;
+		// The read locks are acquired by the current thread and handed over to the threads
+		// that acquired them from this proxy.
+		int acquired= 0;
 		try {
-			while (fReadLockCount > 0) {
-				pdom.acquireReadLock();
-				fReadLockCount--;
+			for (Integer count : fReadLocks.values()) {
+				for (int i = 0; i < count.intValue(); i++) {
+					pdom.acquireReadLock();
+					acquired++;
+				}
 			}
+			pdom.transferReadLocks(fReadLocks);
+			fReadLocks.clear();
 			if (PDOM.sDEBUG_LOCKS) {
 				pdom.adjustThreadForReadLock(fLockDebugging);
 			}
 		} catch (InterruptedException e) {
+			// The locks remain with this proxy.
+			for (; acquired > 0; acquired--) {
+				pdom.releaseReadLock();
+			}
 			Thread.currentThread().interrupt();
 		}
 		for (IListener listener : fListeners) {
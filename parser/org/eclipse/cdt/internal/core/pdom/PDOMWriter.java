@@ -13,6 +13,7 @@
 package org.eclipse.cdt.internal.core.pdom;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -54,6 +55,7 @@ import org.eclipse.cdt.internal.core.dom.parser.cpp.ICPPUnknownBinding;
 import org.eclipse.cdt.internal.core.index.IIndexFragmentFile;
 import org.eclipse.cdt.internal.core.index.IWritableIndex;
 import org.eclipse.cdt.internal.core.index.IWritableIndex.IncludeInformation;
+import org.eclipse.cdt.internal.core.parser.scanner.ILocationResolver;
 import org.eclipse.cdt.internal.core.parser.scanner.LocationMap;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMASTAdapter;
 import org.eclipse.cdt.internal.core.pdom.indexer.IndexerASTVisitor;
@@ -79,6 +81,39 @@ abstract public class PDOMWriter {
 		ArrayList<IASTName[]> fNames= new ArrayList<IASTName[]>();
 		ArrayList<IASTPreprocessorStatement> fMacros= new ArrayList<IASTPreprocessorStatement>();
 		ArrayList<IASTPreprocessorIncludeStatement> fIncludes= new ArrayList<IASTPreprocessorIncludeStatement>();
+		long fRawContentsHash;
+	}
+
+	/**
+	 * Symbols extracted from an AST with their names resolved, ready to be stored in the index.
+	 * Preparing the symbols does not modify the index, such that it can be done on a thread 
+	 * other than the one storing the symbols.
+	 */
+	protected static final class PreparedSymbols {
+		final IASTTranslationUnit fAST;
+		final Map<IIndexFileLocation, Symbols> fSymbolMap= new HashMap<IIndexFileLocation, Symbols>();
+		final HashSet<IASTPreprocessorIncludeStatement> fContextIncludes= new HashSet<IASTPreprocessorIncludeStatement>();
+		final ArrayList<IStatus> fStati= new ArrayList<IStatus>();
+		IIndexFileLocation[] fFilesToStore;
+		long fFileContentsHash;
+		int fConfigHash;
+
+		PreparedSymbols(IASTTranslationUnit ast) {
+			fAST= ast;
+		}
+
+		public IASTTranslationUnit getAST() {
+			return fAST;
+		}
+
+		/**
+		 * Sets the files to be stored, a subset of the ones the symbols were prepared for.
+		 */
+		public void setFilesToStore(IIndexFileLocation[] ifls, long fileContentsHash, int configHash) {
+			fFilesToStore= ifls;
+			fFileContentsHash= fileContentsHash;
+			fConfigHash= configHash;
+		}
 	}
 	private boolean fShowProblems;
 	protected boolean fShowInclusionProblems;
@@ -86,6 +121,8 @@ abstract public class PDOMWriter {
 	private boolean fShowSyntaxProblems;
 	protected boolean fShowActivity;
 	protected final IndexerStatistics fStatistics;
+	private long fLockHandOffNanos;
+	private long fLockTimeSavedNanos;
 	protected final IndexerInputAdapter fResolver;
 
 	private IndexerProgress fInfo= new IndexerProgress();
@@ -143,36 +180,102 @@ abstract public class PDOMWriter {
 	public void addSymbols(IASTTranslationUnit ast, IIndexFileLocation[] ifls, IWritableIndex index,
 			int readlockCount, boolean flushIndex, long fileContentsHash, int configHash,
 			ITodoTaskUpdater taskUpdater, IProgressMonitor pm) throws InterruptedException, CoreException {
+		PreparedSymbols prepared= prepareSymbols(ast, ifls, fStatistics, pm);
+		storeSymbols(prepared, ifls, index, readlockCount, flushIndex, fileContentsHash, configHash,
+				taskUpdater, pm);
+	}
+
+	/**
+	 * Extracts symbols from the given AST and resolves their names, without modifying the index.
+	 * The caller needs to hold a read lock on the index the AST was created with.
+	 * @param ifls the files for which symbols shall be extracted.
+	 * @param stats the statistics to be updated.
+	 */
+	protected final PreparedSymbols prepareSymbols(IASTTranslationUnit ast, IIndexFileLocation[] ifls,
+			IndexerStatistics stats, IProgressMonitor pm) throws CoreException {
 		if (fShowProblems) {
 			fShowInclusionProblems= true;
 			fShowScannerProblems= true;
 			fShowSyntaxProblems= true;
 		}
-		final Map<IIndexFileLocation, Symbols> symbolMap= new HashMap<IIndexFileLocation, Symbols>();
+		final PreparedSymbols prepared= new PreparedSymbols(ast);
 		for (IIndexFileLocation ifl : ifls) {
-			prepareInMap(symbolMap, ifl);
+			prepareInMap(prepared.fSymbolMap, ifl);
 		}
-		ArrayList<IStatus> stati= new ArrayList<IStatus>();
-
-		HashSet<IASTPreprocessorIncludeStatement> contextIncludes= new HashSet<IASTPreprocessorIncludeStatement>();
-		extractSymbols(ast, symbolMap, contextIncludes);
+		extractSymbols(ast, prepared.fSymbolMap, prepared.fContextIncludes, stats);
+		computeRawContentsHashes(ast, prepared.fSymbolMap);
 
 		// name resolution
-		resolveNames(symbolMap, ifls, stati, pm);
+		resolveNames(prepared.fSymbolMap, ifls, prepared.fStati, stats, pm);
+		return prepared;
+	}
+
+	/**
+	 * Stores symbols prepared by {@link #prepareSymbols} in the index.
+	 * @param ifls the files to be updated, a subset of the ones the symbols were prepared for.
+	 */
+	protected final void storeSymbols(PreparedSymbols prepared, IIndexFileLocation[] ifls, IWritableIndex index,
+			int readlockCount, boolean flushIndex, long fileContentsHash, int configHash,
+			ITodoTaskUpdater taskUpdater, IProgressMonitor pm) throws InterruptedException, CoreException {
+		prepared.setFilesToStore(ifls, fileContentsHash, configHash);
 
 		// index update
-		storeSymbolsInIndex(symbolMap, ifls, ast.getLinkage().getLinkageID(), fileContentsHash,
-				configHash, contextIncludes, index, readlockCount, flushIndex, stati, pm);
+		storeSymbolsInIndex(prepared, index, readlockCount, flushIndex, null, pm);
+
+		if (taskUpdater != null) {
+			taskUpdater.updateTasks(prepared.fAST.getComments(), ifls);
+		}
+		checkStatus(prepared);
+	}
 
+	/**
+	 * Stores the symbols of several translation units in the index while acquiring the write
+	 * lock once, only. The lock is yielded in between the files when readers are waiting for it.
+	 * The files to be stored have to be set with {@link PreparedSymbols#setFilesToStore}, problems 
+	 * that occurred are reported by {@link #checkStatus(PreparedSymbols)}.
+	 */
+	protected final void storeSymbols(List<PreparedSymbols> batch, IWritableIndex index, int readlockCount,
+			boolean flushIndex, ITodoTaskUpdater taskUpdater, IProgressMonitor pm)
+			throws InterruptedException, CoreException {
+		YieldableIndexLock lock = new YieldableIndexLock(index, readlockCount, flushIndex);
+		int fileCount= 0;
+		lock.acquire();
+		try {
+			for (PreparedSymbols prepared : batch) {
+				if (fileCount > 0) {
+					lock.yield();
+				}
+				fileCount+= storeSymbolsInIndex(prepared, index, readlockCount, flushIndex, lock, pm);
+			}
+		} finally {
+			// When the caller holds a read-lock, the result cache of the index is never cleared.
+			// ==> Before releasing the lock for the last time, we clear the result cache.
+			if (readlockCount > 0) {
+				index.clearResultCache();
+			}
+			lock.release();
+			updateLockStatistics(lock, fileCount);
+		}
 		if (taskUpdater != null) {
-			taskUpdater.updateTasks(ast.getComments(), ifls);
+			for (PreparedSymbols prepared : batch) {
+				taskUpdater.updateTasks(prepared.fAST.getComments(), prepared.fFilesToStore);
+			}
 		}
+	}
+
+	/**
+	 * Throws an exception describing the problems that occurred while preparing or storing
+	 * the symbols of a translation unit.
+	 */
+	protected final void checkStatus(PreparedSymbols prepared) throws CoreException {
+		final ArrayList<IStatus> stati= prepared.fStati;
 		if (!stati.isEmpty()) {
+			final IIndexFileLocation[] ifls= prepared.fFilesToStore;
 			String path= null;
-			if (ifls.length > 0) {
+			if (ifls != null && ifls.length > 0) {
 				path= ifls[ifls.length - 1].getURI().getPath();
 			} else {
-				path= ast.getFilePath().toString();
+				path= prepared.fAST.getFilePath().toString();
 			}
 			String msg= NLS.bind(Messages.PDOMWriter_errorWhileParsing, path);
 			if (stati.size() == 1) {
@@ -188,14 +291,35 @@ abstract public class PDOMWriter {
 		}
 	}
 
-	private void storeSymbolsInIndex(final Map<IIndexFileLocation, Symbols> symbolMap, IIndexFileLocation[] ifls,
-			int linkageID, long fileContentsHash, int configHash,
-			HashSet<IASTPreprocessorIncludeStatement> contextIncludes, IWritableIndex index, int readlockCount,
-			boolean flushIndex, ArrayList<IStatus> stati, IProgressMonitor pm)
+	/**
+	 * Stores the files of a translation unit in the index.
+	 * @param sharedLock the write lock held by the caller, or <code>null</code> to acquire
+	 * the write lock for each of the files.
+	 * @return the number of files stored.
+	 */
+	private int storeSymbolsInIndex(PreparedSymbols prepared, IWritableIndex index, int readlockCount,
+			boolean flushIndex, YieldableIndexLock sharedLock, IProgressMonitor pm)
 			throws InterruptedException, CoreException {
+		final IIndexFileLocation[] ifls= prepared.fFilesToStore;
+		final Map<IIndexFileLocation, Symbols> symbolMap= prepared.fSymbolMap;
+		final int linkageID= prepared.fAST.getLinkage().getLinkageID();
+		final ILocationResolver locationResolver= prepared.fAST.getAdapter(ILocationResolver.class);
+		HashSet<IASTPreprocessorIncludeStatement> contextIncludes= prepared.fContextIncludes;
+		if (ifls.length < symbolMap.size()) {
+			// Files that have been updated in the meantime do not provide a context.
+			final Set<IIndexFileLocation> updated= new HashSet<IIndexFileLocation>(Arrays.asList(ifls));
+			contextIncludes= new HashSet<IASTPreprocessorIncludeStatement>();
+			for (IASTPreprocessorIncludeStatement include : prepared.fContextIncludes) {
+				if (updated.contains(fResolver.resolveASTPath(include.getPath()))) {
+					contextIncludes.add(include);
+				}
+			}
+		}
+
+		int fileCount= 0;
 		for (int i= 0; i < ifls.length; i++) {
 			if (pm.isCanceled())
-				return;
+				break;
 
 			final IIndexFileLocation ifl= ifls[i];
 			if (ifl != null) {
@@ -203,11 +327,16 @@ abstract public class PDOMWriter {
 					trace("Indexer: adding " + ifl.getURI());  //$NON-NLS-1$
 				}
 				Throwable th= null;
-				YieldableIndexLock lock = new YieldableIndexLock(index, readlockCount, flushIndex);
-				lock.acquire();
+				YieldableIndexLock lock = sharedLock;
+				if (lock == null) {
+					lock= new YieldableIndexLock(index, readlockCount, flushIndex);
+					lock.acquire();
+				} else if (i > 0) {
+					lock.yield();
+				}
 				try {
-					storeFileInIndex(index, ifl, symbolMap, linkageID, fileContentsHash, configHash,
-							contextIncludes, lock);
+					storeFileInIndex(index, ifl, symbolMap, linkageID, prepared.fFileContentsHash,
+							prepared.fConfigHash, contextIncludes, locationResolver, lock);
 				} catch (RuntimeException e) {
 					th= e;
 				} catch (StackOverflowError e) {
@@ -215,27 +344,47 @@ abstract public class PDOMWriter {
 				} catch (AssertionError e) {
 					th= e;
 				} finally {
-					// When the caller holds a read-lock, the result cache of the index is never cleared.
-					// ==> Before releasing the lock for the last time in this ast, we clear the result cache.
-					if (readlockCount > 0  && i == ifls.length-1) {
-						index.clearResultCache();
+					if (sharedLock == null) {
+						// When the caller holds a read-lock, the result cache of the index is never cleared.
+						// ==> Before releasing the lock for the last time in this ast, we clear the result cache.
+						if (readlockCount > 0  && i == ifls.length-1) {
+							index.clearResultCache();
+						}
+						lock.release();
 					}
-					lock.release();
 				}
 				if (th != null) {
-					stati.add(createStatus(NLS.bind(Messages.PDOMWriter_errorWhileParsing,
+					prepared.fStati.add(createStatus(NLS.bind(Messages.PDOMWriter_errorWhileParsing,
 							ifl.getURI().getPath()), th));
 				}
 				if (i < ifls.length - 1) {
 					updateFileCount(0, 0, 1); // update header count
 				}
-				fStatistics.fAddToIndexTime += lock.getCumulativeLockTime();
+				fileCount++;
+				if (sharedLock == null) {
+					updateLockStatistics(lock, 1);
+				}
 			}
 		}
+		return fileCount;
+	}
+
+	private void updateLockStatistics(YieldableIndexLock lock, int fileCount) {
+		fStatistics.fAddToIndexTime += lock.getCumulativeLockTime();
+		final int acquisitions= lock.getAcquisitionCount();
+		final long handOffTime= lock.getHandOffTime();
+		fLockHandOffNanos+= handOffTime;
+		if (acquisitions > 0 && fileCount > acquisitions) {
+			// Estimate the time for the hand-offs that were avoided by storing multiple files. 
+			fLockTimeSavedNanos+= (fileCount - acquisitions) * (handOffTime / acquisitions);
+		}
+		fStatistics.fWriteLockCount+= acquisitions;
+		fStatistics.fLockHandOffTime= (int) (fLockHandOffNanos / 1000000);
+		fStatistics.fLockTimeSaved= (int) (fLockTimeSavedNanos / 1000000);
 	}
 
 	private void resolveNames(final Map<IIndexFileLocation, Symbols> symbolMap, IIndexFileLocation[] ifls,
-			ArrayList<IStatus> stati, IProgressMonitor pm) {
+			ArrayList<IStatus> stati, IndexerStatistics stats, IProgressMonitor pm) {
 		long start= System.currentTimeMillis();
 		for (IIndexFileLocation path : ifls) {
 			if (pm.isCanceled()) {
@@ -256,7 +405,7 @@ abstract public class PDOMWriter {
 								((IASTName) name.getParent()).getBinding() == binding) {
 								na[0]= null;
 						} else if (binding instanceof IProblemBinding) {
-							fStatistics.fProblemBindingCount++;
+							stats.fProblemBindingCount++;
 							if (fShowProblems) {
 								reportProblem((IProblemBinding) binding);
 							}
@@ -268,13 +417,13 @@ abstract public class PDOMWriter {
 								if (!isRequiredReference(name)) {
 									na[0]= null;
 								} else {
-									fStatistics.fReferenceCount++;
+									stats.fReferenceCount++;
 								}
 							} else {
-								fStatistics.fReferenceCount++;
+								stats.fReferenceCount++;
 							}
 						} else {
-							fStatistics.fDeclarationCount++;
+							stats.fDeclarationCount++;
 						}
 					} catch (RuntimeException e) {
 						th= e;
@@ -292,11 +441,11 @@ abstract public class PDOMWriter {
 				}
 			}
 		}
-		fStatistics.fResolutionTime += System.currentTimeMillis()-start;
+		stats.fResolutionTime += System.currentTimeMillis()-start;
 	}
 
 	private void extractSymbols(IASTTranslationUnit ast, final Map<IIndexFileLocation, Symbols> symbolMap,
-			Collection<IASTPreprocessorIncludeStatement> contextIncludes) throws CoreException {
+			Collection<IASTPreprocessorIncludeStatement> contextIncludes, IndexerStatistics stats) throws CoreException {
 		final HashSet<IIndexFileLocation> contextIFLs= new HashSet<IIndexFileLocation>();
 		final IIndexFileLocation astIFL = fResolver.resolveASTPath(ast.getFilePath());
 
@@ -372,8 +521,8 @@ abstract public class PDOMWriter {
 			}
 		}
 
-		fStatistics.fUnresolvedIncludesCount += unresolvedIncludes;
-		fStatistics.fPreprocessorProblemCount += ast.getPreprocessorProblemsCount() - unresolvedIncludes;
+		stats.fUnresolvedIncludesCount += unresolvedIncludes;
+		stats.fPreprocessorProblemCount += ast.getPreprocessorProblemsCount() - unresolvedIncludes;
 		if (fShowScannerProblems || fShowInclusionProblems) {
 			final boolean reportAll= fShowScannerProblems && fShowInclusionProblems;
 			IASTProblem[] scannerProblems= ast.getPreprocessorProblems();
@@ -385,7 +534,7 @@ abstract public class PDOMWriter {
 		}
 
 		final List<IASTProblem> problems= visitor.getProblems();
-		fStatistics.fSyntaxProblemsCount += problems.size();
+		stats.fSyntaxProblemsCount += problems.size();
 		if (fShowSyntaxProblems) {
 			for (IASTProblem problem : problems) {
 				reportProblem(problem);
@@ -450,10 +599,26 @@ abstract public class PDOMWriter {
 		return false;
 	}
 
+	/**
+	 * Obtains the hashes of the bytes the files have been parsed from, such that they match
+	 * the symbols stored for the files.
+	 */
+	private void computeRawContentsHashes(IASTTranslationUnit ast, Map<IIndexFileLocation, Symbols> symbolMap) {
+		final ILocationResolver locationResolver= ast.getAdapter(ILocationResolver.class);
+		if (locationResolver == null)
+			return;
+		for (Map.Entry<IIndexFileLocation, Symbols> entry : symbolMap.entrySet()) {
+			final String astPath= fResolver.getASTPath(entry.getKey());
+			if (astPath != null) {
+				entry.getValue().fRawContentsHash= locationResolver.getRawContentsHash(astPath);
+			}
+		}
+	}
+
 	private IIndexFragmentFile storeFileInIndex(IWritableIndex index, IIndexFileLocation location,
 			Map<IIndexFileLocation, Symbols> symbolMap, int linkageID, long fileContentsHash,
 			int configHash, Set<IASTPreprocessorIncludeStatement> contextIncludes,
-			YieldableIndexLock lock) throws CoreException, InterruptedException {
+			ILocationResolver locationResolver, YieldableIndexLock lock) throws CoreException, InterruptedException {
 		Set<IIndexFileLocation> clearedContexts= Collections.emptySet();
 		IIndexFragmentFile file;
 		// We create a temporary PDOMFile with zero timestamp, add names to it, then replace contents
@@ -500,6 +665,12 @@ abstract public class PDOMWriter {
 			file.setTimestamp(fResolver.getLastModified(location));
 			file.setEncodingHashcode(fResolver.getEncoding(location).hashCode());
 			file.setContentsHash(fileContentsHash);
+			file.setRawContentsHash(lists != null ? lists.fRawContentsHash : 0);
+			if (locationResolver != null) {
+				final String astPath= fResolver.getASTPath(location);
+				file.setIncludeGuard(locationResolver.getIncludeGuard(astPath));
+				file.setPragmaOnceSemantics(locationResolver.hasPragmaOnceSemantics(astPath));
+			}
 			file = index.commitUncommittedFile();
 		} finally {
 			index.clearUncommittedFile();
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom;
+
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Pattern;
+
+import org.eclipse.cdt.core.dom.IName;
+import org.eclipse.cdt.core.dom.ast.IBinding;
+import org.eclipse.cdt.core.dom.ast.IScope;
+import org.eclipse.cdt.core.index.IIndex;
+import org.eclipse.cdt.core.index.IIndexBinding;
+import org.eclipse.cdt.core.index.IIndexFile;
+import org.eclipse.cdt.core.index.IIndexFileLocation;
+import org.eclipse.cdt.core.index.IIndexFileSet;
+import org.eclipse.cdt.core.index.IIndexInclude;
+import org.eclipse.cdt.core.index.IIndexMacro;
+import org.eclipse.cdt.core.index.IIndexName;
+import org.eclipse.cdt.core.index.IndexFilter;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * The index used by one of the parser threads of the indexer, while the index is modified by
+ * another thread. The read lock is acquired with the first access to the index and held until
+ * {@link #unlock()} is called, such that objects obtained from the index remain valid while
+ * the translation unit is processed. The index may only be used by a single thread.
+ */
+final class ReadLockingIndex implements IIndex {
+	private final IIndex fDelegate;
+	private final Lock fLock;
+	private boolean fIsLocked;
+	private long fWaitTime;
+
+	ReadLockingIndex(IIndex delegate, Lock readLock) {
+		fDelegate= delegate;
+		fLock= readLock;
+	}
+
+	/**
+	 * Acquires the read lock, unless it is already held.
+	 */
+	void lock() {
+		if (!fIsLocked) {
+			final long start= System.currentTimeMillis();
+			fLock.lock();
+			fIsLocked= true;
+			fWaitTime+= System.currentTimeMillis() - start;
+		}
+	}
+
+	/**
+	 * Releases the read lock, if it is held. Objects obtained from the index must no longer
+	 * be used.
+	 */
+	void unlock() {
+		if (fIsLocked) {
+			fIsLocked= false;
+			fLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the time spent for waiting on the lock and resets it.
+	 */
+	long resetWaitTime() {
+		final long result= fWaitTime;
+		fWaitTime= 0;
+		return result;
+	}
+
+	public void acquireReadLock() throws InterruptedException {
+		fDelegate.acquireReadLock();
+	}
+
+	public void releaseReadLock() {
+		fDelegate.releaseReadLock();
+	}
+
+	public boolean hasWaitingReaders() {
+		return fDelegate.hasWaitingReaders();
+	}
+
+	public long getLastWriteAccess() {
+		lock();
+		return fDelegate.getLastWriteAccess();
+	}
+
+	public IIndexFile getFile(int linkageID, IIndexFileLocation location) throws CoreException {
+		lock();
+		return fDelegate.getFile(linkageID, location);
+	}
+
+	public IIndexFile[] getFiles(IIndexFileLocation location) throws CoreException {
+		lock();
+		return fDelegate.getFiles(location);
+	}
+
+	public IIndexInclude[] findIncludes(IIndexFile file) throws CoreException {
+		lock();
+		return fDelegate.findIncludes(file);
+	}
+
+	public IIndexInclude[] findIncludedBy(IIndexFile file) throws CoreException {
+		lock();
+		return fDelegate.findIncludedBy(file);
+	}
+
+	public IIndexInclude[] findIncludes(IIndexFile file, int depth) throws CoreException {
+		lock();
+		return fDelegate.findIncludes(file, depth);
+	}
+
+	public IIndexInclude[] findIncludedBy(IIndexFile file, int depth) throws CoreException {
+		lock();
+		return fDelegate.findIncludedBy(file, depth);
+	}
+
+	public IIndexFile resolveInclude(IIndexInclude include) throws CoreException {
+		lock();
+		return fDelegate.resolveInclude(include);
+	}
+
+	public IIndexMacro[] findMacros(char[] name, IndexFilter filter, IProgressMonitor monitor) throws CoreException {
+		lock();
+		return fDelegate.findMacros(name, filter, monitor);
+	}
+
+	public IIndexMacro[] findMacrosForPrefix(char[] prefix, IndexFilter filter, IProgressMonitor monitor)
+			throws CoreException {
+		lock();
+		return fDelegate.findMacrosForPrefix(prefix, filter, monitor);
+	}
+
+	public IIndexBinding findBinding(IName name) throws CoreException {
+		lock();
+		return fDelegate.findBinding(name);
+	}
+
+	public IIndexBinding[] findBindings(Pattern pattern, boolean isFullyQualified, IndexFilter filter,
+			IProgressMonitor monitor) throws CoreException {
+		lock();
+		return fDelegate.findBindings(pattern, isFullyQualified, filter, monitor);
+	}
+
+	public IIndexBinding[] findBindings(Pattern[] patterns, boolean isFullyQualified, IndexFilter filter,
+			IProgressMonitor monitor) throws CoreException {
+		lock();
+		return fDelegate.findBindings(patterns, isFullyQualified, filter, monitor);
+	}
+
+	public IIndexBinding[] findMacroContainers(Pattern pattern, IndexFilter filter, IProgressMonitor monitor)
+			throws CoreException {
+		lock();
+		return fDelegate.findMacroContainers(pattern, filter, monitor);
+	}
+
+	public IIndexBinding[] findBindings(char[][] names, IndexFilter filter, IProgressMonitor monitor)
+			throws CoreException {
+		lock();
+		return fDelegate.findBindings(names, filter, monitor);
+	}
+
+	public IIndexBinding[] findBindings(char[] name, IndexFilter filter, IProgressMonitor monitor)
+			throws CoreException {
+		lock();
+		return fDelegate.findBindings(name, filter, monitor);
+	}
+
+	public IIndexBinding[] findBindings(char[] name, boolean fileScopeOnly, IndexFilter filter,
+			IProgressMonitor monitor) throws CoreException {
+		lock();
+		return fDelegate.findBindings(name, fileScopeOnly, filter, monitor);
+	}
+
+	public IIndexBinding[] findBindingsForPrefix(char[] prefix, boolean fileScopeOnly, IndexFilter filter,
+			IProgressMonitor monitor) throws CoreException {
+		lock();
+		return fDelegate.findBindingsForPrefix(prefix, fileScopeOnly, filter, monitor);
+	}
+
+	public IIndexBinding[] findBindingsForContentAssist(char[] prefix, boolean fileScopeOnly,
+			IndexFilter filter, IProgressMonitor monitor) throws CoreException {
+		lock();
+		return fDelegate.findBindingsForContentAssist(prefix, fileScopeOnly, filter, monitor);
+	}
+
+	public IIndexName[] findNames(IBinding binding, int flags) throws CoreException {
+		lock();
+		return fDelegate.findNames(binding, flags);
+	}
+
+	public IIndexName[] findReferences(IBinding binding) throws CoreException {
+		lock();
+		return fDelegate.findReferences(binding);
+	}
+
+	public IIndexName[] findDeclarations(IBinding binding) throws CoreException {
+		lock();
+		return fDelegate.findDeclarations(binding);
+	}
+
+	public IIndexName[] findDefinitions(IBinding binding) throws CoreException {
+		lock();
+		return fDelegate.findDefinitions(binding);
+	}
+
+	public IIndexBinding adaptBinding(IBinding binding) {
+		lock();
+		return fDelegate.adaptBinding(binding);
+	}
+
+	public IIndexFileSet createFileSet() {
+		lock();
+		return fDelegate.createFileSet();
+	}
+
+	public IIndexFile[] getAllFiles() throws CoreException {
+		lock();
+		return fDelegate.getAllFiles();
+	}
+
+	public IScope[] getInlineNamespaces() throws CoreException {
+		lock();
+		return fDelegate.getInlineNamespaces();
+	}
+}
@@ -32,6 +32,8 @@ import org.eclipse.cdt.core.index.IIndexLocationConverter;
 import org.eclipse.cdt.core.model.ICProject;
 import org.eclipse.cdt.core.model.LanguageManager;
 import org.eclipse.cdt.internal.core.CCoreInternals;
+import org.eclipse.cdt.internal.core.pdom.db.CompressedDatabaseFile;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMProjectIndexLocationConverter;
 import org.eclipse.cdt.internal.core.pdom.indexer.IndexerPreferences;
 import org.eclipse.cdt.internal.core.resources.ResourceLookup;
@@ -125,6 +127,7 @@ public class TeamPDOMExportOperation implements IWorkspaceRunnable {
 			}
 			
 			// create archive
+			Database.compact(tmpPDOM);
 			createArchive(tmpPDOM, tmpChecksums);
 			
 			// store preferences
@@ -243,8 +246,12 @@ public class TeamPDOMExportOperation implements IWorkspaceRunnable {
 		try {
 			fTargetLocationFile.getParentFile().mkdirs();
 			out= new ZipOutputStream(new FileOutputStream(fTargetLocationFile));
+			// The chunks of the index are compressed in groups, such that it can be read in place.
+			out.setLevel(Deflater.NO_COMPRESSION);
+			out.putNextEntry(new ZipEntry(TeamPDOMImportOperation.INDEX_NAME));
+			CompressedDatabaseFile.compress(tmpPDOM, out);
+			out.closeEntry();
 			out.setLevel(Deflater.BEST_COMPRESSION);
-			writeEntry(out, TeamPDOMImportOperation.INDEX_NAME, tmpPDOM);
 			writeEntry(out, TeamPDOMImportOperation.CHECKSUMS_NAME, tmpChecksums);
 		}
 		catch (IOException e) {
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.cdt.core.index.IIndexFileLocation;
+import org.eclipse.cdt.core.index.IIndexInclude;
+import org.eclipse.cdt.internal.core.index.IIndexFragmentFile;
+import org.eclipse.cdt.internal.core.index.IIndexFragmentInclude;
+import org.eclipse.cdt.internal.core.index.IWritableIndex;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Orders the files of an indexer task by means of the include graph stored in the index.
+ * <p>
+ * Files with priority, typically the ones open in editors, are scheduled first, together with
+ * the headers they include directly or indirectly and the headers to be updated that may serve
+ * as context for those. Among the other headers the ones that are
+ * not included by any header to be updated are scheduled first, the ones that include most
+ * of the headers to be updated come first. When such a header is parsed in its context, the
+ * headers it includes are updated along with it, such that they need not be parsed in a context
+ * of their own.
+ */
+final class UpdateScheduler {
+	private static final class Entry {
+		final Object fTu;
+		final int fPosition;
+		IIndexFragmentFile fFile;
+		boolean fHasPriority;
+		boolean fIsIncludedByUpdatedHeader;
+		int fIncludedUpdatedHeaders;
+
+		Entry(Object tu, int position) {
+			fTu= tu;
+			fPosition= position;
+		}
+	}
+
+	private static final Comparator<Entry> ORDER= new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			if (e1.fHasPriority != e2.fHasPriority)
+				return e1.fHasPriority ? -1 : 1;
+			if (e1.fIsIncludedByUpdatedHeader != e2.fIsIncludedByUpdatedHeader)
+				return e1.fIsIncludedByUpdatedHeader ? 1 : -1;
+			if (e1.fIncludedUpdatedHeaders != e2.fIncludedUpdatedHeaders)
+				return e2.fIncludedUpdatedHeaders - e1.fIncludedUpdatedHeaders;
+			return e1.fPosition - e2.fPosition;
+		}
+	};
+
+	private final IWritableIndex fIndex;
+	private final IndexerInputAdapter fResolver;
+	private final IIndexFileLocation[] fPriorityLocations;
+	private final Set<URI> fPriorityFiles;
+	/** The files with priority and the files included by them, computed on demand. */
+	private Set<IIndexFragmentFile> fIncludedByPriorityFile;
+
+	public UpdateScheduler(IWritableIndex index, IndexerInputAdapter resolver, IIndexFileLocation[] priorityFiles) {
+		fIndex= index;
+		fResolver= resolver;
+		fPriorityLocations= priorityFiles;
+		fPriorityFiles= new HashSet<URI>();
+		for (IIndexFileLocation ifl : priorityFiles) {
+			fPriorityFiles.add(ifl.getURI());
+		}
+	}
+
+	/**
+	 * Moves the source files with priority to the front of the list, the order of the files
+	 * is preserved otherwise. The locations of the files with priority are added to the given
+	 * collection.
+	 */
+	public void orderSources(List<Object> sources, List<IIndexFileLocation> prioritized) {
+		if (fPriorityFiles.isEmpty())
+			return;
+
+		List<Object> first= new ArrayList<Object>();
+		List<Object> rest= new ArrayList<Object>();
+		for (Object tu : sources) {
+			final IIndexFileLocation ifl= fResolver.resolveFile(tu);
+			if (ifl != null && fPriorityFiles.contains(ifl.getURI())) {
+				first.add(tu);
+				prioritized.add(ifl);
+			} else {
+				rest.add(tu);
+			}
+		}
+		if (!first.isEmpty()) {
+			sources.clear();
+			sources.addAll(first);
+			sources.addAll(rest);
+		}
+	}
+
+	/**
+	 * Orders the headers to be updated for the given linkage. The locations of the headers
+	 * with priority are added to the given collection.
+	 */
+	public void orderHeaders(int linkageID, List<Object> headers, List<IIndexFileLocation> prioritized)
+			throws CoreException {
+		final List<Entry> entries= new ArrayList<Entry>(headers.size());
+		final Map<IIndexFragmentFile, Entry> updated= new HashMap<IIndexFragmentFile, Entry>();
+		for (Object header : headers) {
+			final Entry entry= new Entry(header, entries.size());
+			final IIndexFileLocation ifl= fResolver.resolveFile(header);
+			if (ifl != null) {
+				final IIndexFragmentFile file= fIndex.getWritableFile(linkageID, ifl);
+				if (file != null && file.hasContent()) {
+					entry.fFile= file;
+					updated.put(file, entry);
+				}
+			}
+			entries.add(entry);
+		}
+		if (updated.isEmpty())
+			return;
+
+		final Set<IIndexFragmentFile> visited= new HashSet<IIndexFragmentFile>();
+		for (Entry entry : entries) {
+			final IIndexFragmentFile file= entry.fFile;
+			if (file != null && isIncludedByPriorityFile(file)) {
+				entry.fHasPriority= true;
+				prioritized.add(file.getLocation());
+				prioritizeIncludingHeaders(file, updated, visited);
+			}
+		}
+
+		final Set<IIndexFragmentFile> includedByUpdatedHeader= getIncludedFiles(updated.keySet());
+		for (Entry entry : entries) {
+			final IIndexFragmentFile file= entry.fFile;
+			if (file != null) {
+				entry.fIsIncludedByUpdatedHeader= includedByUpdatedHeader.contains(file);
+				if (!entry.fIsIncludedByUpdatedHeader) {
+					entry.fIncludedUpdatedHeaders= countIncludedUpdatedHeaders(file, updated);
+				}
+			}
+		}
+		Collections.sort(entries, ORDER);
+		headers.clear();
+		for (Entry entry : entries) {
+			headers.add(entry.fTu);
+		}
+	}
+
+	/**
+	 * Checks whether the file is a file with priority or is included by one, directly or
+	 * indirectly.
+	 */
+	private boolean isIncludedByPriorityFile(IIndexFragmentFile file) throws CoreException {
+		if (fPriorityFiles.isEmpty())
+			return false;
+
+		if (fIncludedByPriorityFile == null) {
+			final List<IIndexFragmentFile> priorityFiles= new ArrayList<IIndexFragmentFile>();
+			for (IIndexFileLocation ifl : fPriorityLocations) {
+				for (IIndexFragmentFile priorityFile : fIndex.getWritableFiles(ifl)) {
+					priorityFiles.add(priorityFile);
+				}
+			}
+			fIncludedByPriorityFile= getIncludedFiles(priorityFiles);
+			fIncludedByPriorityFile.addAll(priorityFiles);
+		}
+		return fIncludedByPriorityFile.contains(file);
+	}
+
+	/**
+	 * Gives priority to the headers to be updated that include the file, directly or indirectly.
+	 * The file may be parsed in the context of one of them, which is therefore updated first.
+	 */
+	private void prioritizeIncludingHeaders(IIndexFragmentFile file, Map<IIndexFragmentFile, Entry> updated,
+			Set<IIndexFragmentFile> visited) throws CoreException {
+		for (IIndexFragmentFile includer : getIncludedBy(file)) {
+			if (visited.add(includer)) {
+				final Entry entry= updated.get(includer);
+				if (entry != null) {
+					entry.fHasPriority= true;
+				}
+				prioritizeIncludingHeaders(includer, updated, visited);
+			}
+		}
+	}
+
+	/**
+	 * Counts the headers to be updated that are included by the file, directly or indirectly.
+	 */
+	private int countIncludedUpdatedHeaders(IIndexFragmentFile file, Map<IIndexFragmentFile, Entry> updated)
+			throws CoreException {
+		int count= 0;
+		for (IIndexFragmentFile included : getIncludedFiles(Collections.singletonList(file))) {
+			if (updated.containsKey(included)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Computes the files included by the given ones, directly or indirectly, with a breadth-first
+	 * search of the include graph. A given file is part of the result only when it is included by
+	 * one of the files.
+	 */
+	private Set<IIndexFragmentFile> getIncludedFiles(Collection<IIndexFragmentFile> files) throws CoreException {
+		final Set<IIndexFragmentFile> result= new HashSet<IIndexFragmentFile>();
+		final List<IIndexFragmentFile> queue= new ArrayList<IIndexFragmentFile>(files);
+		for (int i= 0; i < queue.size(); i++) {
+			for (IIndexInclude include : queue.get(i).getIncludes()) {
+				final IIndexFragmentFile included= ((IIndexFragmentInclude) include).getIncludes();
+				if (included != null && result.add(included)) {
+					queue.add(included);
+				}
+			}
+		}
+		return result;
+	}
+
+	private List<IIndexFragmentFile> getIncludedBy(IIndexFragmentFile file) throws CoreException {
+		final IIndexInclude[] includes= file.getIndexFragment().findIncludedBy(file);
+		final List<IIndexFragmentFile> result= new ArrayList<IIndexFragmentFile>(includes.length);
+		for (IIndexInclude include : includes) {
+			final IIndexFragmentFile includer= (IIndexFragmentFile) include.getIncludedBy();
+			if (includer != null) {
+				result.add(includer);
+			}
+		}
+		return result;
+	}
+}
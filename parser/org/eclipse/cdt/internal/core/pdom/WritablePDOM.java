@@ -15,8 +15,10 @@ package org.eclipse.cdt.internal.core.pdom;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.cdt.core.dom.ast.IASTName;
 import org.eclipse.cdt.core.dom.ast.IASTPreprocessorStatement;
@@ -46,6 +48,8 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 	private PDOMFile fileBeingUpdated;
 	private PDOMFile uncommittedFile;
 	private IIndexFileLocation uncommittedLocation;
+	private PDOM fMergedPDOM;
+	private final Set<Long> fCreatedByMerge= new HashSet<Long>();
 
 	public WritablePDOM(File dbPath, IIndexLocationConverter locationConverter,
 			Map<String, IPDOMLinkageFactory> linkageFactoryMappings) throws CoreException {
@@ -61,6 +65,38 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 		fPathResolver= resolver;
 	}
 
+	/**
+	 * Sets the PDOM that is currently merged into this one, or <code>null</code>. While a PDOM is
+	 * merged, its file-local bindings may be adapted to this PDOM.
+	 * @see PDOMMerger
+	 */
+	public void setMergedPDOM(PDOM pdom) {
+		fMergedPDOM= pdom;
+		fCreatedByMerge.clear();
+	}
+
+	/**
+	 * Returns whether the given PDOM is currently merged into this one.
+	 */
+	public boolean isMergedPDOM(PDOM pdom) {
+		return pdom != null && pdom == fMergedPDOM;
+	}
+
+	/**
+	 * Records that a binding has been created for a binding of the PDOM that is currently merged.
+	 */
+	public void setCreatedByMerge(PDOMBinding binding) {
+		fCreatedByMerge.add(binding.getRecord());
+	}
+
+	/**
+	 * Returns whether the binding has been created for a binding of the PDOM that is currently
+	 * merged.
+	 */
+	public boolean isCreatedByMerge(PDOMBinding binding) {
+		return fCreatedByMerge.contains(binding.getRecord());
+	}
+
 	@Override
 	public IIndexFragmentFile addFile(int linkageID, IIndexFileLocation location) throws CoreException {
 		if (uncommittedLocation != null && uncommittedLocation.equals(location)) {
@@ -189,15 +225,26 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 
 		clearFileIndex();
 		final List<PDOMFile> notConverted = new ArrayList<PDOMFile>();
+		long[] converted= new long[pdomfiles.size()];
+		int count= 0;
 		for (PDOMFile file : pdomfiles) {
 			String internalFormat = newConverter.toInternalFormat(file.getLocation());
 			if (internalFormat != null) {
 				file.setInternalLocation(internalFormat);
-				getFileIndex().insert(file.getRecord());
+				converted[count++]= file.getRecord();
 			} else {
 				notConverted.add(file);
 			}
 		}
+		// the file index is empty, build it in one go.
+		if (count < converted.length) {
+			long[] tmp= new long[count];
+			System.arraycopy(converted, 0, tmp, 0, count);
+			converted= tmp;
+		}
+		final BTree fileIndex= getFileIndex();
+		fileIndex.sort(converted);
+		fileIndex.bulkLoad(converted);
 
 		// remove content where converter returns null
 		for (PDOMFile file : notConverted) {
@@ -23,6 +23,8 @@ public class YieldableIndexLock {
 	private final boolean flushIndex;
 	private long lastLockTime;
 	private long cumulativeLockTime;
+	private int acquisitionCount;
+	private long handOffTime;
 
 	public YieldableIndexLock(IWritableIndex index, int readlockCount, boolean flushIndex) {
 		this.index = index;
@@ -36,8 +38,11 @@ public class YieldableIndexLock {
 	 * @throws InterruptedException
 	 */
 	public void acquire() throws InterruptedException {
+		final long start = System.nanoTime();
 		index.acquireWriteLock(readlockCount);
 		lastLockTime = System.currentTimeMillis();
+		handOffTime += System.nanoTime() - start;
+		acquisitionCount++;
 	}
 
 	/**
@@ -45,7 +50,9 @@ public class YieldableIndexLock {
 	 */
 	public void release() {
 		if (lastLockTime != 0) {
+			final long start = System.nanoTime();
 			index.releaseWriteLock(readlockCount, flushIndex);
+			handOffTime += System.nanoTime() - start;
 			cumulativeLockTime += System.currentTimeMillis() - lastLockTime;
 			lastLockTime = 0;
 		}
@@ -58,7 +65,9 @@ public class YieldableIndexLock {
 	 */
 	public void yield() throws InterruptedException {
 		if (index.hasWaitingReaders()) {
+			final long start = System.nanoTime();
 			index.releaseWriteLock(readlockCount, false);
+			handOffTime += System.nanoTime() - start;
 			cumulativeLockTime += System.currentTimeMillis() - lastLockTime;
 			lastLockTime = 0;
 			acquire();
@@ -71,4 +80,18 @@ public class YieldableIndexLock {
 	public long getCumulativeLockTime() {
 		return cumulativeLockTime;
 	}
+
+	/**
+	 * @return Number of times the lock was acquired, including re-acquisitions after yielding it.
+	 */
+	public int getAcquisitionCount() {
+		return acquisitionCount;
+	}
+
+	/**
+	 * @return Total time in nanoseconds spent for acquiring and releasing the lock.
+	 */
+	public long getHandOffTime() {
+		return handOffTime;
+	}
 }
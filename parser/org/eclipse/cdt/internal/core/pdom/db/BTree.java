@@ -600,6 +600,205 @@ public class BTree {
 		}
 	}
 
+	/**
+	 * Sorts the records by the comparator of this b-tree, such that they can be passed to
+	 * {@link #bulkLoad(long[])}.
+	 */
+	public void sort(long[] records) throws CoreException {
+		if (records.length > 1) {
+			mergeSort(records, records.clone(), 0, records.length);
+		}
+	}
+
+	private void mergeSort(long[] dest, long[] src, int low, int high) throws CoreException {
+		final int length= high - low;
+		if (length < 7) {
+			// insertion sort on small arrays
+			for (int i= low + 1; i < high; i++) {
+				for (int j= i; j > low && cmp.compare(dest[j-1], dest[j]) > 0; j--) {
+					final long t= dest[j]; dest[j]= dest[j-1]; dest[j-1]= t;
+				}
+			}
+			return;
+		}
+		final int mid= (low + high) >>> 1;
+		mergeSort(src, dest, low, mid);
+		mergeSort(src, dest, mid, high);
+		if (cmp.compare(src[mid-1], src[mid]) <= 0) {
+			System.arraycopy(src, low, dest, low, length);
+			return;
+		}
+		for (int i= low, p= low, q= mid; i < high; i++) {
+			if (q >= high || (p < mid && cmp.compare(src[p], src[q]) <= 0)) {
+				dest[i]= src[p++];
+			} else {
+				dest[i]= src[q++];
+			}
+		}
+	}
+
+	/**
+	 * Fills an empty b-tree with the given records, which must be sorted by the comparator of
+	 * the b-tree. Records that compare equal to their predecessor are not inserted, as with 
+	 * {@link #insert(long)}.
+	 * <p>
+	 * The tree is built bottom-up: The nodes are filled completely (except for the last two 
+	 * nodes of a level, which share the remaining records) and are allocated level by level, 
+	 * starting with the leaves. This is much cheaper than inserting the records one by one and 
+	 * results in a smaller tree with neighboring nodes stored close to each other.
+	 */
+	public void bulkLoad(long[] records) throws CoreException {
+		if (getRoot() != 0) {
+			throw new CoreException(new Status(IStatus.ERROR, CCorePlugin.PLUGIN_ID, 0, 
+					"Bulk load of a non-empty b-tree", null)); //$NON-NLS-1$
+		}
+
+		// remove duplicates
+		long[] items= new long[records.length];
+		int n= 0;
+		for (long record : records) {
+			if (n > 0) {
+				final int c= cmp.compare(items[n-1], record);
+				assert c <= 0 : "records are not sorted"; //$NON-NLS-1$
+				if (c == 0) 
+					continue;
+			}
+			items[n++]= record;
+		}
+		build(items, n);
+	}
+
+	/**
+	 * Builds the tree bottom-up from the first n of the given sorted records.
+	 */
+	private void build(long[] items, int n) throws CoreException {
+		if (n == 0)
+			return;
+
+		long[] children= null;
+		while (true) {
+			final int nodeCount= (n + MAX_RECORDS + 1) / (MAX_RECORDS + 1);
+			final long[] nodes= new long[nodeCount];
+			final long[] separators= new long[nodeCount - 1];
+			int pos= 0;
+			for (int i = 0; i < nodeCount; i++) {
+				final int count= getBulkNodeSize(i, nodeCount, n);
+				final long node= allocateNode();
+				final Chunk chunk= db.getChunk(node);
+				for (int j = 0; j < count; j++) {
+					putRecord(chunk, node, j, items[pos + j]);
+				}
+				if (children != null) {
+					for (int j = 0; j <= count; j++) {
+						putChild(chunk, node, j, children[pos + j]);
+					}
+				}
+				nodes[i]= node;
+				pos+= count;
+				if (i < nodeCount - 1) {
+					separators[i]= items[pos++];
+				}
+			}
+			if (nodeCount == 1) {
+				db.putRecPtr(rootPointer, nodes[0]);
+				return;
+			}
+			items= separators;
+			n= separators.length;
+			children= nodes;
+		}
+	}
+
+	/**
+	 * Returns the number of records for a node created by a bulk load.
+	 * @param i the index of the node on its level
+	 * @param nodeCount the number of nodes on the level
+	 * @param n the number of records to be stored on the level, including separators.
+	 */
+	private int getBulkNodeSize(int i, int nodeCount, int n) {
+		if (nodeCount == 1)
+			return n;
+		final int last= n - (nodeCount - 1) * (MAX_RECORDS + 1);
+		if (last >= MIN_RECORDS) 
+			return i < nodeCount - 1 ? MAX_RECORDS : last;
+
+		// the last two nodes share their records, such that both get at least MIN_RECORDS.
+		final int shared= MAX_RECORDS + last;
+		if (i < nodeCount - 2)
+			return MAX_RECORDS;
+		return i == nodeCount - 2 ? shared - shared / 2 : shared / 2;
+	}
+
+	/**
+	 * Rebuilds this b-tree with a bulk load of its records. The nodes of the tree are freed
+	 * and replaced by completely filled ones, the records are not changed.
+	 * @return the number of records in the b-tree.
+	 */
+	public int pack() throws CoreException {
+		final long root= getRoot();
+		if (root == 0) 
+			return 0;
+
+		final LongArray records= new LongArray();
+		final LongArray nodes= new LongArray();
+		collect(root, records, nodes);
+		for (int i = 0; i < nodes.size(); i++) {
+			db.free(nodes.get(i));
+		}
+		db.putRecPtr(rootPointer, 0);
+		// the records are taken from the tree as they are, without removing duplicates.
+		build(records.toArray(), records.size());
+		return records.size();
+	}
+
+	private void collect(long node, LongArray records, LongArray nodes) throws CoreException {
+		nodes.add(node);
+		final Chunk chunk= db.getChunk(node);
+		int i= 0;
+		for (; i < MAX_RECORDS; i++) {
+			final long record= getRecord(chunk, node, i);
+			if (record == 0)
+				break;
+			final long child= getChild(chunk, node, i);
+			if (child != 0) {
+				collect(child, records, nodes);
+			}
+			records.add(record);
+		}
+		final long child= getChild(chunk, node, i);
+		if (child != 0) {
+			collect(child, records, nodes);
+		}
+	}
+
+	private static final class LongArray {
+		private long[] fArray= new long[64];
+		private int fSize;
+
+		void add(long value) {
+			if (fSize == fArray.length) {
+				long[] newArray= new long[fSize * 2];
+				System.arraycopy(fArray, 0, newArray, 0, fSize);
+				fArray= newArray;
+			}
+			fArray[fSize++]= value;
+		}
+
+		long get(int i) {
+			return fArray[i];
+		}
+
+		int size() {
+			return fSize;
+		}
+
+		long[] toArray() {
+			long[] result= new long[fSize];
+			System.arraycopy(fArray, 0, result, 0, fSize);
+			return result;
+		}
+	}
+
 	/*
 	 * TODO: It would be good to move these into IBTreeVisitor and eliminate
 	 * IBTreeVisitor2 if this is acceptable.
@@ -19,72 +19,185 @@ import org.eclipse.core.runtime.CoreException;
 
 /**
  * Caches the content of a piece of the database.
+ * <p>
+ * The content is held either in a private heap buffer or, when the database is memory mapped,
+ * in a read-only view of the mapping. A mapped chunk is copied to the heap before it is modified,
+ * such that changes reach the file only when the chunk is flushed.
+ * <p>
+ * While snapshots of the database are open, the content read by a snapshot is shared with
+ * a read-only version of the chunk. Before the chunk is modified the version is detached, the
+ * chunk continues with a copy of the content.
  */
 final class Chunk {
-	final private byte[] fBuffer= new byte[Database.CHUNK_SIZE];
+	private ByteBuffer fBuffer;
+	private boolean fMapped;
 
 	final Database fDatabase;
 	final int fSequenceNumber;
 	
 	boolean fCacheHitFlag= false;
 	boolean fDirty= false;
-	boolean fLocked= false;	// locked chunks must not be released from cache.
-	int fCacheIndex= -1;
+	volatile boolean fLocked= false;	// locked chunks must not be released from cache.
+	volatile int fCacheIndex= -1;		// index in the page table of the cache segment.
+
+	// the following fields are guarded by the snapshot lock of the database.
+	int fSnapshotEpoch;			// epoch of the snapshots the content has been preserved for.
+	Chunk fVersion;				// read-only version sharing the content of this chunk.
+	int fSnapshotRefs;			// number of snapshots referencing this version.
+	boolean fRetained;			// whether this version is no longer shared with a chunk in use.
 		
 	Chunk(Database db, int sequenceNumber) {
+		this(db, sequenceNumber, null);
+	}
+
+	/**
+	 * Creates a chunk that reads its content directly from a read-only view of a mapped region
+	 * of the database file. Without a mapping, the content is held in a heap buffer.
+	 */
+	Chunk(Database db, int sequenceNumber, ByteBuffer mapped) {
+		assert mapped == null || mapped.capacity() == Database.CHUNK_SIZE;
 		fDatabase= db;
 		fSequenceNumber= sequenceNumber;
+		if (mapped != null) {
+			fBuffer= mapped;
+			fMapped= true;
+		} else {
+			fBuffer= ByteBuffer.allocate(Database.CHUNK_SIZE);
+		}
 	}
 
 	void read() throws CoreException {
+		if (fMapped)
+			return;
 		try {
-			final ByteBuffer buf= ByteBuffer.wrap(fBuffer);
-			fDatabase.read(buf, (long)fSequenceNumber*Database.CHUNK_SIZE);
+			fDatabase.read(fBuffer.duplicate(), (long)fSequenceNumber*Database.CHUNK_SIZE);
 		} catch (IOException e) {
 			throw new CoreException(new DBStatus(e));
 		}
 	}
 
 	void flush() throws CoreException {
-		try {
-			final ByteBuffer buf= ByteBuffer.wrap(fBuffer);
-			fDatabase.write(buf, (long)fSequenceNumber*Database.CHUNK_SIZE);
-		} catch (IOException e) {
-			throw new CoreException(new DBStatus(e));
+		if (!fMapped) {
+			try {
+				fDatabase.write(fBuffer.duplicate(), (long)fSequenceNumber*Database.CHUNK_SIZE);
+			} catch (IOException e) {
+				throw new CoreException(new DBStatus(e));
+			}
 		}
 		fDirty= false;
 	}
+
+	/**
+	 * Copies the content of this chunk to the given buffer.
+	 */
+	void copyTo(ByteBuffer target) {
+		target.put(fBuffer.duplicate());
+	}
+
+	/**
+	 * Returns whether the content of this chunk is read directly from a memory mapped file.
+	 */
+	boolean isMapped() {
+		return fMapped;
+	}
+
+	/**
+	 * Returns the read-only version of this chunk for snapshots, the content is shared unless
+	 * the chunk is backed by the file mapping. Caller needs to hold the snapshot lock.
+	 */
+	Chunk getVersion() {
+		if (fVersion == null) {
+			if (fMapped) {
+				fVersion= new Chunk(fDatabase, fSequenceNumber, copyContent(), false);
+				fVersion.fRetained= true;
+			} else {
+				fVersion= new Chunk(fDatabase, fSequenceNumber, fBuffer, false);
+			}
+		}
+		return fVersion;
+	}
+
+	/**
+	 * Detaches the version of this chunk, a version referenced by snapshots keeps the current
+	 * content and the chunk continues with a copy. Returns whether the version needs to be
+	 * retained. Caller needs to hold the snapshot lock.
+	 */
+	boolean detachVersion() {
+		final Chunk version= fVersion;
+		if (version == null)
+			return false;
+		
+		fVersion= null;
+		if (version.fSnapshotRefs == 0 || version.fRetained)
+			return false;
+
+		if (!fMapped) {
+			fBuffer= copyContent();
+		}
+		version.fRetained= true;
+		return true;
+	}
+
+	private Chunk(Database db, int sequenceNumber, ByteBuffer content, boolean mapped) {
+		fDatabase= db;
+		fSequenceNumber= sequenceNumber;
+		fBuffer= content;
+		fMapped= mapped;
+	}
+
+	private ByteBuffer copyContent() {
+		final ByteBuffer copy= ByteBuffer.allocate(Database.CHUNK_SIZE);
+		copy.put(fBuffer.duplicate());
+		copy.clear();	// the whole buffer is written when the chunk is flushed.
+		return copy;
+	}
+
+	/**
+	 * Marks the chunk as dirty and returns the buffer that may be modified. A chunk backed
+	 * by the file mapping is copied to the heap first, the content read by open snapshots
+	 * is preserved.
+	 */
+	private ByteBuffer modify() {
+		assert fLocked;
+		if (fVersion != null || (fDatabase.fOpenSnapshots > 0 && fSnapshotEpoch != fDatabase.fSnapshotEpoch)) {
+			fDatabase.preserveForSnapshots(this);
+		}
+		if (fMapped) {
+			fBuffer= copyContent();
+			fMapped= false;
+		}
+		fDirty= true;
+		return fBuffer;
+	}
+
 	private static int recPtrToIndex( final long offset ) {
 		return (int)(offset & Database.OFFSET_IN_CHUNK_MASK );
 	}
 
 	public void putByte(final long offset, final byte value) {
-		assert fLocked;
-		fDirty= true;
-		fBuffer[recPtrToIndex( offset )]= value;
+		modify().put(recPtrToIndex(offset), value);
 	}
 	
 	public byte getByte(final long offset) {
-		return fBuffer[recPtrToIndex( offset )];
+		return fBuffer.get(recPtrToIndex(offset));
 	}
 	
 	public byte[] getBytes(final long offset, final int length) {
 		final byte[] bytes = new byte[length];
-		System.arraycopy(fBuffer, recPtrToIndex( offset ), bytes, 0, length);
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(recPtrToIndex(offset));
+		buf.get(bytes, 0, length);
 		return bytes;
 	}
 	
 	public void putBytes(final long offset, final byte[] bytes) {
-		assert fLocked;
-		fDirty= true;
-		System.arraycopy(bytes, 0, fBuffer, recPtrToIndex( offset ), bytes.length);
+		final ByteBuffer buf= modify().duplicate();
+		buf.position(recPtrToIndex(offset));
+		buf.put(bytes);
 	}
 	
 	public void putInt(final long offset, final int value) {
-		assert fLocked;
-		fDirty= true;
-		int idx= recPtrToIndex( offset );
-		putInt(value, fBuffer, idx);
+		modify().putInt(recPtrToIndex(offset), value);
 	}
 
 	static final void putInt(final int value, final byte[] buffer, int idx) {
@@ -96,7 +209,7 @@ final class Chunk {
 
 	
 	public int getInt(final long offset) {
-		return getInt(fBuffer, recPtrToIndex(offset));
+		return fBuffer.getInt(recPtrToIndex(offset));
 	}
 
 	static final int getInt(final byte[] buffer, int idx) {
@@ -111,10 +224,10 @@ final class Chunk {
 	 * A free Record Pointer is a pointer to a raw block, i.e. the
 	 * pointer is not moved past the BLOCK_HEADER_SIZE.
 	 */
-	private static int compressFreeRecPtr(final long value) {
+	private static int compressFreeRecPtr(final long value, final int shift) {
 		// This assert verifies the alignment. We expect the low bits to be clear.
-		assert (value & (Database.BLOCK_SIZE_DELTA - 1)) == 0;
-		final int dense = (int) (value >> Database.BLOCK_SIZE_DELTA_BITS);
+		assert (value & ((1 << shift) - 1)) == 0;
+		final int dense = (int) (value >> shift);
 		return dense;
 	}
 	
@@ -122,7 +235,7 @@ final class Chunk {
 	 * A free Record Pointer is a pointer to a raw block, i.e. the
 	 * pointer is not moved past the BLOCK_HEADER_SIZE.
 	 */
-	private static long expandToFreeRecPtr(int value) {
+	private static long expandToFreeRecPtr(int value, final int shift) {
 		/*
 		 * We need to properly manage the integer that was read. The value will be sign-extended 
 		 * so if the most significant bit is set, the resulting long will look negative. By 
@@ -131,27 +244,32 @@ final class Chunk {
 		 * stored record pointers.
 		 */
 		long address = value & (((long) 1 << Integer.SIZE) - 1);
-		return address << Database.BLOCK_SIZE_DELTA_BITS;
+		return address << shift;
 	}
 
+	private static int compressRecPtr(final long value, final int shift) {
+		return value == 0 ? 0 : compressFreeRecPtr(value - Database.BLOCK_HEADER_SIZE, shift);
+	}
+
+	private static long expandToRecPtr(int value, final int shift) {
+		long address = expandToFreeRecPtr(value, shift);
+		return address != 0 ? (address + Database.BLOCK_HEADER_SIZE) : address;
+	}
 
 	/**
 	 * A Record Pointer is a pointer as returned by Database.malloc().
 	 * This is a pointer to a block + BLOCK_HEADER_SIZE.
 	 */
-	static void putRecPtr(final long value, byte[] buffer, int idx) {
-		final int denseValue = value == 0 ? 0 : compressFreeRecPtr(value - Database.BLOCK_HEADER_SIZE);
-		putInt(denseValue, buffer, idx);
+	static void putRecPtr(final long value, final int shift, byte[] buffer, int idx) {
+		putInt(compressRecPtr(value, shift), buffer, idx);
 	}
 
 	/**
 	 * A Record Pointer is a pointer as returned by Database.malloc().
 	 * This is a pointer to a block + BLOCK_HEADER_SIZE.
 	 */
-	static long getRecPtr(byte[] buffer, final int idx) {
-		int value = getInt(buffer, idx);
-		long address = expandToFreeRecPtr(value);
-		return address != 0 ? (address + Database.BLOCK_HEADER_SIZE) : address;
+	static long getRecPtr(byte[] buffer, final int idx, final int shift) {
+		return expandToRecPtr(getInt(buffer, idx), shift);
 	}
 
 	/**
@@ -159,10 +277,7 @@ final class Chunk {
 	 * This is a pointer to a block + BLOCK_HEADER_SIZE.
 	 */
 	public void putRecPtr(final long offset, final long value) {
-		assert fLocked;
-		fDirty = true;
-		int idx = recPtrToIndex(offset);
-		putRecPtr(value, fBuffer, idx);
+		modify().putInt(recPtrToIndex(offset), compressRecPtr(value, fDatabase.fPointerShift));
 	}
 
 	
@@ -171,124 +286,81 @@ final class Chunk {
 	 * pointer is not moved past the BLOCK_HEADER_SIZE.
 	 */
 	public void putFreeRecPtr(final long offset, final long value) {
-		assert fLocked;
-		fDirty = true;
-		int idx = recPtrToIndex(offset);
-		putInt(compressFreeRecPtr(value), fBuffer, idx);
+		modify().putInt(recPtrToIndex(offset), compressFreeRecPtr(value, fDatabase.fPointerShift));
 	}
 
 	public long getRecPtr(final long offset) {
-		final int idx = recPtrToIndex(offset);
-		return getRecPtr(fBuffer, idx);
+		return expandToRecPtr(fBuffer.getInt(recPtrToIndex(offset)), fDatabase.fPointerShift);
 	}
 	
 	public long getFreeRecPtr(final long offset) {
-		final int idx = recPtrToIndex(offset);
-		int value = getInt(fBuffer, idx);
-		return expandToFreeRecPtr(value);
+		return expandToFreeRecPtr(fBuffer.getInt(recPtrToIndex(offset)), fDatabase.fPointerShift);
 	}
 	
 	public void put3ByteUnsignedInt(final long offset, final int value) {
-		assert fLocked;
-		fDirty= true;
+		final ByteBuffer buf= modify();
 		int idx= recPtrToIndex( offset );
-		fBuffer[idx]= (byte)(value >> 16);
-		fBuffer[++idx]= (byte)(value >> 8);
-		fBuffer[++idx]= (byte)(value);
+		buf.put(idx, (byte)(value >> 16));
+		buf.put(++idx, (byte)(value >> 8));
+		buf.put(++idx, (byte)(value));
 	}
 	
 	public int get3ByteUnsignedInt(final long offset) {
+		final ByteBuffer buf= fBuffer;
 		int idx= recPtrToIndex( offset );
-		return ((fBuffer[idx] & 0xff) << 16) |
-			((fBuffer[++idx] & 0xff) <<  8) |
-			((fBuffer[++idx] & 0xff) <<  0);
+		return ((buf.get(idx) & 0xff) << 16) |
+			((buf.get(++idx) & 0xff) <<  8) |
+			((buf.get(++idx) & 0xff) <<  0);
 	}
 
 	public void putShort(final long offset, final short value) {
-		assert fLocked;
-		fDirty= true;
-		int idx= recPtrToIndex( offset );
-		fBuffer[idx]= (byte)(value >> 8);
-		fBuffer[++idx]= (byte)(value);
+		modify().putShort(recPtrToIndex(offset), value);
 	}
 	
 	public short getShort(final long offset) {
-		int idx= recPtrToIndex( offset );
-		return (short) (((fBuffer[idx] << 8) | (fBuffer[++idx] & 0xff)));
+		return fBuffer.getShort(recPtrToIndex(offset));
 	}
 
 	public long getLong(final long offset) {
-		int idx= recPtrToIndex( offset );
-		return ((((long)fBuffer[idx] & 0xff) << 56) |
-				(((long)fBuffer[++idx] & 0xff) << 48) |
-				(((long)fBuffer[++idx] & 0xff) << 40) |
-				(((long)fBuffer[++idx] & 0xff) << 32) |
-				(((long)fBuffer[++idx] & 0xff) << 24) |
-				(((long)fBuffer[++idx] & 0xff) << 16) |
-				(((long)fBuffer[++idx] & 0xff) <<  8) |
-				(((long)fBuffer[++idx] & 0xff) <<  0));
+		return fBuffer.getLong(recPtrToIndex(offset));
 	}
 
 	public void putLong(final long offset, final long value) {
-		assert fLocked;
-		fDirty= true;
-		int idx= recPtrToIndex( offset );
-
-		fBuffer[idx]=   (byte)(value >> 56);
-		fBuffer[++idx]= (byte)(value >> 48);
-		fBuffer[++idx]= (byte)(value >> 40);
-		fBuffer[++idx]= (byte)(value >> 32);
-		fBuffer[++idx]= (byte)(value >> 24);
-		fBuffer[++idx]= (byte)(value >> 16);
-		fBuffer[++idx]= (byte)(value >> 8);
-		fBuffer[++idx]= (byte)(value);
+		modify().putLong(recPtrToIndex(offset), value);
 	}
 	
 	public void putChar(final long offset, final char value) {
-		assert fLocked;
-		fDirty= true;
-		int idx= recPtrToIndex( offset );
-		fBuffer[idx]= (byte)(value >> 8);
-		fBuffer[++idx]= (byte)(value);
+		modify().putChar(recPtrToIndex(offset), value);
 	}
 	
 	public char getChar(final long offset) {
-		int idx= recPtrToIndex( offset );
-		return (char) (((fBuffer[idx] << 8) | (fBuffer[++idx] & 0xff)));
+		return fBuffer.getChar(recPtrToIndex(offset));
 	}
 
 	public void getCharArray(final long offset, final char[] result) {
-		final ByteBuffer buf= ByteBuffer.wrap(fBuffer);
+		final ByteBuffer buf= fBuffer.duplicate();
 		buf.position(recPtrToIndex( offset ));
 		buf.asCharBuffer().get(result);
 	}
 	
 	void clear(final long offset, final int length) {
-		assert fLocked;
-		fDirty= true;
+		final ByteBuffer buf= modify();
 		int idx = recPtrToIndex(offset);
 		final int end = idx + length;
 		for (; idx < end; idx++) {
-			fBuffer[idx] = 0;
+			buf.put(idx, (byte) 0);
 		}
 	}
 
 	void put(final long offset, final byte[] data, final int len) {
-		assert fLocked;
-		fDirty= true;
-		int idx = recPtrToIndex(offset);
-		int i=0;
-		while (i<len) {
-			fBuffer[idx++]= data[i++];
-		}
+		final ByteBuffer buf= modify().duplicate();
+		buf.position(recPtrToIndex(offset));
+		buf.put(data, 0, len);
 	}
 	
 	public void get(final long offset, byte[] data) {
-		int idx = recPtrToIndex(offset);
-		final int end= idx + data.length;
-		int i= 0;
-		while (idx < end) {
-			data[i++]= fBuffer[idx++];
-		}
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(recPtrToIndex(offset));
+		buf.get(data);
 	}
 }
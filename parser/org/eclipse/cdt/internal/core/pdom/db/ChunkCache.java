@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2011 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -7,17 +7,171 @@
  *
  * Contributors:
  *    Markus Schorn - initial API and implementation
- *******************************************************************************/ 
+ *******************************************************************************/
 
 package org.eclipse.cdt.internal.core.pdom.db;
 
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache for the chunks of one or more databases.
+ * <p>
+ * The page table is split into segments, a chunk is assigned to a segment by its database and
+ * sequence number. Each segment uses the CLOCK algorithm for replacement and is protected by its
+ * own lock. Chunks that are resident can be looked up by the database without taking any lock,
+ * only insertion and eviction require the lock of the segment.
+ */
 public final class ChunkCache {
+	private static final int MAX_SEGMENTS= 16;
+	private static final int MIN_SEGMENT_LENGTH= 64;
+
 	private static ChunkCache sSharedInstance= new ChunkCache();
-	
-	private Chunk[] fPageTable;
-	private boolean fTableIsFull= false;
-	private int fPointer= 0;
-	
+
+	/**
+	 * A part of the page table with its own lock.
+	 */
+	static final class Segment {
+		private final ReentrantLock fLock= new ReentrantLock();
+		private Chunk[] fPageTable;
+		private boolean fTableIsFull= false;
+		private int fPointer= 0;
+
+		private long fEvictions;
+		private long fContentions;
+		private long fWaitTime;
+
+		Segment(int length) {
+			fPageTable= new Chunk[length];
+		}
+
+		/**
+		 * Acquires the lock of this segment, the time spent waiting is accounted to the
+		 * given database.
+		 */
+		void lock(Database db) {
+			if (fLock.tryLock())
+				return;
+
+			final long start= System.nanoTime();
+			fLock.lock();
+			final long wait= System.nanoTime() - start;
+			fContentions++;
+			fWaitTime+= wait;
+			if (db != null) {
+				db.addCacheWaitTime(wait);
+			}
+		}
+
+		void unlock() {
+			fLock.unlock();
+		}
+
+		/**
+		 * Adds a chunk to this segment, the caller must hold the lock of the segment.
+		 */
+		void add(Chunk chunk, boolean locked) {
+			assert fLock.isHeldByCurrentThread();
+			if (locked) {
+				chunk.fLocked= true;
+			}
+			if (chunk.fCacheIndex >= 0) {
+				chunk.fCacheHitFlag= true;
+				return;
+			}
+			if (fTableIsFull) {
+				evictChunk();
+				chunk.fCacheIndex= fPointer;
+				fPageTable[fPointer]= chunk;
+			}
+			else {
+				chunk.fCacheIndex= fPointer;
+				fPageTable[fPointer]= chunk;
+
+				fPointer++;
+				if (fPointer == fPageTable.length) {
+					fPointer= 0;
+					fTableIsFull= true;
+				}
+			}
+		}
+
+		/**
+		 * Evicts a chunk from the page table and the chunk table.
+		 * After this method returns, {@link #fPointer}  will contain
+		 * the index of the evicted chunk within the page table.
+		 */
+		private void evictChunk() {
+			/*
+			 * Use the CLOCK algorithm to determine which chunk to evict.
+			 * i.e., if the chunk in the current slot of the page table has been
+			 * recently referenced (i.e. the reference flag is set), unset the
+			 * reference flag and move to the next slot.  Otherwise, evict the
+			 * chunk in the current slot.
+			 */
+			while (true) {
+				Chunk chunk = fPageTable[fPointer];
+				if (chunk.fCacheHitFlag) {
+					chunk.fCacheHitFlag= false;
+					fPointer= (fPointer + 1) % fPageTable.length;
+				} else {
+					fEvictions++;
+					chunk.fCacheIndex= -1;
+					chunk.fDatabase.releaseChunk(chunk);
+					fPageTable[fPointer] = null;
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Removes a chunk from this segment, the caller must hold the lock of the segment.
+		 */
+		void remove(Chunk chunk) {
+			assert fLock.isHeldByCurrentThread();
+			final int idx= chunk.fCacheIndex;
+			if (idx >= 0) {
+				if (fTableIsFull) {
+					fPointer= fPageTable.length-1;
+					fTableIsFull= false;
+				}
+				else {
+					fPointer--;
+				}
+				chunk.fCacheIndex= -1;
+				final Chunk move= fPageTable[fPointer];
+				fPageTable[idx]= move;
+				move.fCacheIndex= idx;
+				fPageTable[fPointer]= null;
+			}
+		}
+
+		private void setLength(int newLength) {
+			final int oldLength= fTableIsFull ? fPageTable.length : fPointer;
+			if (newLength > oldLength) {
+				Chunk[] newTable= new Chunk[newLength];
+				System.arraycopy(fPageTable, 0, newTable, 0, oldLength);
+				fTableIsFull= false;
+				fPointer= oldLength;
+				fPageTable= newTable;
+			}
+			else {
+				for (int i=newLength; i<oldLength; i++) {
+					final Chunk chunk= fPageTable[i];
+					chunk.fCacheIndex= -1;
+					chunk.fDatabase.releaseChunk(chunk);
+				}
+				Chunk[] newTable= new Chunk[newLength];
+				System.arraycopy(fPageTable, 0, newTable, 0, newLength);
+				fTableIsFull= true;
+				fPointer= 0;
+				fPageTable= newTable;
+			}
+		}
+	}
+
+	private final Segment[] fSegments;
+	private final int fSegmentMask;
+
 	public static ChunkCache getSharedInstance() {
 		return sSharedInstance;
 	}
@@ -25,116 +179,121 @@ public final class ChunkCache {
 	public ChunkCache() {
 		this(5*1024*1024);
 	}
-	
+
 	public ChunkCache(long maxSize) {
-		fPageTable= new Chunk[computeLength(maxSize)];
-	}
-	
-	public synchronized void add(Chunk chunk, boolean locked) {
-		if (locked) {
-			chunk.fLocked= true;
-		}
-		if (chunk.fCacheIndex >= 0) {
-			chunk.fCacheHitFlag= true;
-			return;
-		}
-		if (fTableIsFull) {
-			evictChunk();
-			chunk.fCacheIndex= fPointer;
-			fPageTable[fPointer]= chunk;
-		}
-		else {
-			chunk.fCacheIndex= fPointer;
-			fPageTable[fPointer]= chunk;
-
-			fPointer++;
-			if (fPointer == fPageTable.length) {
-				fPointer= 0;
-				fTableIsFull= true;
-			}
+		final int length= computeLength(maxSize);
+		int segmentCount= 1;
+		while (segmentCount < MAX_SEGMENTS && segmentCount * 2 * MIN_SEGMENT_LENGTH <= length) {
+			segmentCount*= 2;
+		}
+		fSegments= new Segment[segmentCount];
+		fSegmentMask= segmentCount-1;
+		for (int i = 0; i < segmentCount; i++) {
+			fSegments[i]= new Segment(getSegmentLength(length, i));
 		}
 	}
-	
-	/**                                                                   
-	 * Evicts a chunk from the page table and the chunk table.            
-	 * After this method returns, {@link #fPointer}  will contain
-	 * the index of the evicted chunk within the page table.              
-	 */                                                                   
-	private void evictChunk() {
-		/*
-		 * Use the CLOCK algorithm to determine which chunk to evict.
-		 * i.e., if the chunk in the current slot of the page table has been
-		 * recently referenced (i.e. the reference flag is set), unset the
-		 * reference flag and move to the next slot.  Otherwise, evict the
-		 * chunk in the current slot.
-		 */
-		while (true) {
-			Chunk chunk = fPageTable[fPointer];
-			if (chunk.fCacheHitFlag) {
-				chunk.fCacheHitFlag= false;
-				fPointer= (fPointer + 1) % fPageTable.length;
-			} else {
-				chunk.fDatabase.releaseChunk(chunk);
-				chunk.fCacheIndex= -1;
-				fPageTable[fPointer] = null;
-				return;
-			}
+
+	private int getSegmentLength(int length, int segment) {
+		final int n= fSegments.length;
+		return Math.max(1, length / n + (segment < length % n ? 1 : 0));
+	}
+
+	/**
+	 * Returns the segment responsible for the chunk with the given sequence number.
+	 */
+	Segment getSegment(Database db, int sequenceNumber) {
+		int h= System.identityHashCode(db) * 31 + sequenceNumber;
+		h^= (h >>> 20) ^ (h >>> 12);
+		h^= (h >>> 7) ^ (h >>> 4);
+		return fSegments[h & fSegmentMask];
+	}
+
+	public void add(Chunk chunk, boolean locked) {
+		final Segment segment= getSegment(chunk.fDatabase, chunk.fSequenceNumber);
+		segment.lock(chunk.fDatabase);
+		try {
+			segment.add(chunk, locked);
+		} finally {
+			segment.unlock();
 		}
 	}
 
-	public synchronized void remove(Chunk chunk) {
-		final int idx= chunk.fCacheIndex;
-		if (idx >= 0) {
-			if (fTableIsFull) {
-				fPointer= fPageTable.length-1;
-				fTableIsFull= false;
-			}
-			else {
-				fPointer--;
-			}
-			chunk.fCacheIndex= -1;
-			final Chunk move= fPageTable[fPointer];
-			fPageTable[idx]= move;
-			move.fCacheIndex= idx;
-			fPageTable[fPointer]= null;
-		}	
+	public void remove(Chunk chunk) {
+		final Segment segment= getSegment(chunk.fDatabase, chunk.fSequenceNumber);
+		segment.lock(chunk.fDatabase);
+		try {
+			segment.remove(chunk);
+		} finally {
+			segment.unlock();
+		}
 	}
 
-	/**                                                                           
+	/**
 	 * Returns the maximum size of the chunk cache in bytes.
-	 */                                                                           
-	public synchronized long getMaxSize() {
-		return (long) fPageTable.length * Database.CHUNK_SIZE;
+	 */
+	public long getMaxSize() {
+		long length= 0;
+		for (Segment segment : fSegments) {
+			segment.lock(null);
+			try {
+				length+= segment.fPageTable.length;
+			} finally {
+				segment.unlock();
+			}
+		}
+		return length * Database.CHUNK_SIZE;
 	}
 
-	/**                                                                           
+	/**
 	 * Clears the page table and changes it to hold chunks with
-	 * maximum total memory of <code>maxSize</code>.       
-	 * @param maxSize the total size of the chunks in bytes.                
-	 */                                                                           
-	public synchronized void setMaxSize(long maxSize) {
-		final int newLength= computeLength(maxSize);
-		final int oldLength= fTableIsFull ? fPageTable.length : fPointer;
-		if (newLength > oldLength) {
-			Chunk[] newTable= new Chunk[newLength];
-			System.arraycopy(fPageTable, 0, newTable, 0, oldLength);
-			fTableIsFull= false;
-			fPointer= oldLength;
-			fPageTable= newTable;
-		}
-		else {
-			for (int i=newLength; i<oldLength; i++) {
-				final Chunk chunk= fPageTable[i];
-				chunk.fDatabase.releaseChunk(chunk);
-				chunk.fCacheIndex= -1;
+	 * maximum total memory of <code>maxSize</code>.
+	 * @param maxSize the total size of the chunks in bytes.
+	 */
+	public void setMaxSize(long maxSize) {
+		final int length= computeLength(maxSize);
+		for (int i = 0; i < fSegments.length; i++) {
+			final Segment segment= fSegments[i];
+			segment.lock(null);
+			try {
+				segment.setLength(getSegmentLength(length, i));
+			} finally {
+				segment.unlock();
 			}
-			Chunk[] newTable= new Chunk[newLength];
-			System.arraycopy(fPageTable, 0, newTable, 0, newLength);
-			fTableIsFull= true;
-			fPointer= 0;
-			fPageTable= newTable;
-		}       
-	}                                                                             
+		}
+	}
+
+	/**
+	 * Returns the number of chunks evicted from the cache.
+	 */
+	public long getEvictions() {
+		long result= 0;
+		for (Segment segment : fSegments) {
+			result+= segment.fEvictions;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns how often a thread had to wait for the lock of a segment.
+	 */
+	public long getContentions() {
+		long result= 0;
+		for (Segment segment : fSegments) {
+			result+= segment.fContentions;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the total time in nanoseconds threads had to wait for the lock of a segment.
+	 */
+	public long getWaitTime() {
+		long result= 0;
+		for (Segment segment : fSegments) {
+			result+= segment.fWaitTime;
+		}
+		return result;
+	}
 
 	private int computeLength(long maxSize) {
 		long maxLength= Math.min(maxSize/Database.CHUNK_SIZE, Integer.MAX_VALUE);
@@ -0,0 +1,430 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores the chunks of a database in compressed form, such that the file can be shared
+ * efficiently and still be read by a {@link Database} opened read-only, without decompressing
+ * it as a whole.
+ * <p>
+ * The chunks are compressed in groups of {@link #CHUNKS_PER_GROUP}, independent of each other.
+ * An offset table at the end of the file allows to locate the group of a chunk, the most recently
+ * used group is kept decompressed. Before a group is compressed the unused content of the free
+ * blocks is cleared, it does not contribute to the database.
+ */
+/*
+ * offset            content
+ *                   _____________________________
+ * 0                | MAGIC (the highest bit is never set in the header of an uncompressed database)
+ * INT_SIZE         | FORMAT_VERSION
+ * 2*INT_SIZE       | number of chunks
+ * 3*INT_SIZE       | number of chunks per group
+ * HEADER_SIZE      | for each group: length of the compressed data, compressed data (deflate, no wrap)
+ * table offset     | for each group: offset of the group in the file (8 bytes)
+ * end-12           | table offset (8 bytes)
+ * end-4            | MAGIC
+ */
+public final class CompressedDatabaseFile {
+	public static final int MAGIC= 0xCD7C0DB0;
+	public static final int CHUNKS_PER_GROUP= 16;	// 64 KB
+
+	private static final int FORMAT_VERSION= 1;
+	private static final int HEADER_SIZE= 4 * Database.INT_SIZE;
+	private static final int TRAILER_SIZE= 8 + Database.INT_SIZE;
+	private static final int GROUP_SIZE= CHUNKS_PER_GROUP * Database.CHUNK_SIZE;
+	private static final int FREE_BLOCK_DATA_OFFSET= Database.BLOCK_HEADER_SIZE + 2 * Database.PTR_SIZE;
+
+	/**
+	 * Returns the compressed file stored in the given channel, or <code>null</code> if the channel
+	 * is not a compressed database.
+	 */
+	static CompressedDatabaseFile open(FileChannel channel) throws IOException {
+		final long size= channel.size();
+		if (size < HEADER_SIZE + TRAILER_SIZE)
+			return null;
+
+		ByteBuffer header= ByteBuffer.allocate(HEADER_SIZE);
+		readFully(channel, header, 0);
+		if (header.getInt(0) != MAGIC)
+			return null;
+		if (header.getInt(Database.INT_SIZE) != FORMAT_VERSION)
+			throw new IOException("Unsupported format of compressed database"); //$NON-NLS-1$
+
+		final int chunkCount= header.getInt(2 * Database.INT_SIZE);
+		final int chunksPerGroup= header.getInt(3 * Database.INT_SIZE);
+		ByteBuffer trailer= ByteBuffer.allocate(TRAILER_SIZE);
+		readFully(channel, trailer, size - TRAILER_SIZE);
+		final long tableOffset= trailer.getLong(0);
+		final int groupCount= getGroupCount(chunkCount, chunksPerGroup);
+		if (trailer.getInt(8) != MAGIC || chunksPerGroup <= 0 || chunkCount < 0
+				|| tableOffset < HEADER_SIZE || tableOffset + groupCount * 8L + TRAILER_SIZE != size) {
+			throw new IOException("Corrupted compressed database"); //$NON-NLS-1$
+		}
+
+		ByteBuffer table= ByteBuffer.allocate(groupCount * 8);
+		readFully(channel, table, tableOffset);
+		long[] groupOffsets= new long[groupCount + 1];
+		for (int i = 0; i < groupCount; i++) {
+			groupOffsets[i]= table.getLong(i * 8);
+		}
+		groupOffsets[groupCount]= tableOffset;
+		return new CompressedDatabaseFile(chunkCount, chunksPerGroup, groupOffsets);
+	}
+
+	private final int fChunkCount;
+	private final int fChunksPerGroup;
+	private final long[] fGroupOffsets;
+	private final Inflater fInflater= new Inflater(true);
+	private int fCachedGroup= -1;
+	private byte[] fCachedData;
+
+	private CompressedDatabaseFile(int chunkCount, int chunksPerGroup, long[] groupOffsets) {
+		fChunkCount= chunkCount;
+		fChunksPerGroup= chunksPerGroup;
+		fGroupOffsets= groupOffsets;
+		fCachedData= new byte[chunksPerGroup * Database.CHUNK_SIZE];
+	}
+
+	/**
+	 * Returns the number of chunks of the uncompressed database.
+	 */
+	int getChunkCount() {
+		return fChunkCount;
+	}
+
+	/**
+	 * Reads uncompressed content of the database into the buffer, the position must be the
+	 * start of a chunk.
+	 * @param channel the channel of the compressed file
+	 */
+	synchronized void read(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+		while (buf.hasRemaining()) {
+			final int chunk= (int) (position / Database.CHUNK_SIZE);
+			if (chunk >= fChunkCount)
+				return;
+
+			final int group= chunk / fChunksPerGroup;
+			if (group != fCachedGroup) {
+				fCachedGroup= -1;
+				loadGroup(channel, group);
+				fCachedGroup= group;
+			}
+			final int offsetInGroup= (chunk % fChunksPerGroup) * Database.CHUNK_SIZE
+					+ (int) (position % Database.CHUNK_SIZE);
+			final int length= Math.min(buf.remaining(), Database.CHUNK_SIZE - (int) (position % Database.CHUNK_SIZE));
+			buf.put(fCachedData, offsetInGroup, length);
+			position+= length;
+		}
+	}
+
+	private void loadGroup(FileChannel channel, int group) throws IOException {
+		final long offset= fGroupOffsets[group];
+		final int length= (int) (fGroupOffsets[group + 1] - offset) - Database.INT_SIZE;
+		ByteBuffer compressed= ByteBuffer.allocate(length);
+		readFully(channel, compressed, offset + Database.INT_SIZE);
+		final int expected= Math.min(fChunksPerGroup, fChunkCount - group * fChunksPerGroup) * Database.CHUNK_SIZE;
+		inflate(fInflater, compressed.array(), length, fCachedData, expected);
+	}
+
+	/**
+	 * Checks whether the given file is a compressed database.
+	 */
+	public static boolean isCompressed(File file) throws IOException {
+		RandomAccessFile raf= new RandomAccessFile(file, "r"); //$NON-NLS-1$
+		try {
+			return raf.length() >= HEADER_SIZE && raf.readInt() == MAGIC;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes the compressed form of the database stored in the given file to the output stream.
+	 * The database must not be in use, the stream is not closed. The groups of chunks are
+	 * compressed in parallel.
+	 */
+	public static void compress(File database, OutputStream target) throws IOException {
+		RandomAccessFile raf= new RandomAccessFile(database, "r"); //$NON-NLS-1$
+		final int threads= Math.max(1, Runtime.getRuntime().availableProcessors());
+		ExecutorService executor= Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread= new Thread(r, "Index Compression"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			final FileChannel in= raf.getChannel();
+			final int chunkCount= (int) (in.size() / Database.CHUNK_SIZE);
+			final int groupCount= getGroupCount(chunkCount, CHUNKS_PER_GROUP);
+			DataOutputStream out= new DataOutputStream(new BufferedOutputStream(target, GROUP_SIZE));
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(chunkCount);
+			out.writeInt(CHUNKS_PER_GROUP);
+
+			long position= HEADER_SIZE;
+			long[] groupOffsets= new long[groupCount];
+			List<Future<byte[]>> pending= new ArrayList<Future<byte[]>>();
+			int written= 0;
+			for (int group = 0; group < groupCount; group++) {
+				final int firstChunk= group * CHUNKS_PER_GROUP;
+				final int chunks= Math.min(CHUNKS_PER_GROUP, chunkCount - firstChunk);
+				final byte[] data= new byte[chunks * Database.CHUNK_SIZE];
+				readFully(in, ByteBuffer.wrap(data), (long) firstChunk * Database.CHUNK_SIZE);
+				pending.add(executor.submit(new Callable<byte[]>() {
+					public byte[] call() {
+						for (int i = 0; i < chunks; i++) {
+							if (firstChunk + i > 0) { // the header chunk has no blocks.
+								clearFreeBlocks(data, i * Database.CHUNK_SIZE);
+							}
+						}
+						return deflate(data);
+					}
+				}));
+				// Limit the number of groups held in memory.
+				if (pending.size() - written >= 2 * threads) {
+					position= writeGroup(out, pending, written, groupOffsets, position);
+					written++;
+				}
+			}
+			while (written < pending.size()) {
+				position= writeGroup(out, pending, written, groupOffsets, position);
+				written++;
+			}
+			for (long offset : groupOffsets) {
+				out.writeLong(offset);
+			}
+			out.writeLong(position);
+			out.writeInt(MAGIC);
+			out.flush();
+		} finally {
+			executor.shutdownNow();
+			raf.close();
+		}
+	}
+
+	private static long writeGroup(DataOutputStream out, List<Future<byte[]>> pending, int group,
+			long[] groupOffsets, long position) throws IOException {
+		final byte[] compressed;
+		try {
+			compressed= pending.get(group).get();
+			pending.set(group, null);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing the database"); //$NON-NLS-1$
+		} catch (ExecutionException e) {
+			IOException ioe= new IOException("Cannot compress the database"); //$NON-NLS-1$
+			ioe.initCause(e.getCause());
+			throw ioe;
+		}
+		groupOffsets[group]= position;
+		out.writeInt(compressed.length);
+		out.write(compressed);
+		return position + Database.INT_SIZE + compressed.length;
+	}
+
+	/**
+	 * Returns a stream providing the uncompressed content of the database read from the given
+	 * stream, which may be compressed or not.
+	 */
+	public static InputStream getUncompressedStream(InputStream in) throws IOException {
+		final BufferedInputStream buffered= new BufferedInputStream(in);
+		buffered.mark(Database.INT_SIZE);
+		int magic= 0;
+		for (int i = 0; i < Database.INT_SIZE; i++) {
+			final int b= buffered.read();
+			if (b < 0) {
+				buffered.reset();
+				return buffered;
+			}
+			magic= (magic << 8) | b;
+		}
+		buffered.reset();
+		if (magic != MAGIC)
+			return buffered;
+		return new UncompressingStream(buffered);
+	}
+
+	/**
+	 * Reads the groups of a compressed database sequentially.
+	 */
+	private static final class UncompressingStream extends InputStream {
+		private final DataInputStream fIn;
+		private final Inflater fInflater= new Inflater(true);
+		private final int fChunkCount;
+		private final int fChunksPerGroup;
+		private int fNextGroup;
+		private byte[] fData= {};
+		private int fLength;
+		private int fPosition;
+
+		UncompressingStream(InputStream in) throws IOException {
+			fIn= new DataInputStream(in);
+			fIn.readInt();
+			if (fIn.readInt() != FORMAT_VERSION)
+				throw new IOException("Unsupported format of compressed database"); //$NON-NLS-1$
+			fChunkCount= fIn.readInt();
+			fChunksPerGroup= fIn.readInt();
+			if (fChunkCount < 0 || fChunksPerGroup <= 0)
+				throw new IOException("Corrupted compressed database"); //$NON-NLS-1$
+		}
+
+		private boolean fill() throws IOException {
+			while (fPosition == fLength) {
+				final int firstChunk= fNextGroup * fChunksPerGroup;
+				if (firstChunk >= fChunkCount)
+					return false;
+
+				final int length= fIn.readInt();
+				byte[] compressed= new byte[length];
+				fIn.readFully(compressed);
+				fLength= Math.min(fChunksPerGroup, fChunkCount - firstChunk) * Database.CHUNK_SIZE;
+				if (fData.length < fLength) {
+					fData= new byte[fLength];
+				}
+				inflate(fInflater, compressed, length, fData, fLength);
+				fPosition= 0;
+				fNextGroup++;
+			}
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!fill())
+				return -1;
+			return fData[fPosition++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!fill())
+				return -1;
+			final int n= Math.min(len, fLength - fPosition);
+			System.arraycopy(fData, fPosition, b, off, n);
+			fPosition+= n;
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			fInflater.end();
+			fIn.close();
+		}
+	}
+
+	/**
+	 * Clears the content of the free blocks of the chunk at the given offset, the walk over the
+	 * blocks stops at the first inconsistency.
+	 */
+	static void clearFreeBlocks(byte[] data, int chunkOffset) {
+		int offset= 0;
+		while (offset < Database.CHUNK_SIZE) {
+			final int pos= chunkOffset + offset;
+			final int size= (short) (((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff));
+			final int abs= Math.abs(size);
+			if (abs % Database.BLOCK_SIZE_DELTA != 0 || abs < Database.MIN_BLOCK_DELTAS * Database.BLOCK_SIZE_DELTA
+					|| offset + abs > Database.CHUNK_SIZE) {
+				return;
+			}
+			if (size > 0) {
+				for (int i = FREE_BLOCK_DATA_OFFSET; i < size; i++) {
+					data[pos + i]= 0;
+				}
+			}
+			offset+= abs;
+		}
+	}
+
+	private static byte[] deflate(byte[] data) {
+		Deflater deflater= new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			byte[] buffer= new byte[data.length / 4 + 64];
+			int length= 0;
+			while (!deflater.finished()) {
+				if (length == buffer.length) {
+					byte[] grown= new byte[buffer.length * 2];
+					System.arraycopy(buffer, 0, grown, 0, length);
+					buffer= grown;
+				}
+				length+= deflater.deflate(buffer, length, buffer.length - length);
+			}
+			byte[] result= new byte[length];
+			System.arraycopy(buffer, 0, result, 0, length);
+			return result;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static void inflate(Inflater inflater, byte[] compressed, int length, byte[] target, int expected)
+			throws IOException {
+		inflater.reset();
+		inflater.setInput(compressed, 0, length);
+		try {
+			int n= 0;
+			while (n < expected) {
+				final int count= inflater.inflate(target, n, expected - n);
+				if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				n+= count;
+			}
+			if (n != expected)
+				throw new EOFException("Truncated group in compressed database"); //$NON-NLS-1$
+		} catch (DataFormatException e) {
+			IOException ioe= new IOException("Corrupted compressed database"); //$NON-NLS-1$
+			ioe.initCause(e);
+			throw ioe;
+		}
+	}
+
+	private static int getGroupCount(int chunkCount, int chunksPerGroup) {
+		return (chunkCount + chunksPerGroup - 1) / chunksPerGroup;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+		while (buf.hasRemaining()) {
+			final int n= channel.read(buf, position);
+			if (n < 0)
+				throw new EOFException();
+			position+= n;
+		}
+	}
+}
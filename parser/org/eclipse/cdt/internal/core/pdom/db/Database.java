@@ -17,11 +17,17 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.core.runtime.CoreException;
@@ -45,13 +51,15 @@ import org.eclipse.osgi.util.NLS;
  * 
  * offset            content
  * 	                 _____________________________
- * 0                | version number
+ * 0                | version number and format of record pointers (3)
  * INT_SIZE         | pointer to head of linked list of blocks of size MIN_BLOCK_DELTAS*BLOCK_SIZE_DELTA
  * ..               | ...
  * INT_SIZE * m (1) | pointer to head of linked list of blocks of size (m+MIN_BLOCK_DELTAS) * BLOCK_SIZE_DELTA 
  * DATA_AREA        | undefined (PDOM stores its own house-keeping data in this area) 
  * 
  * (1) where 2 <= m <= CHUNK_SIZE/BLOCK_SIZE_DELTA - MIN_BLOCK_DELTAS + 1
+ * (3) bits 28 to 30 store the number of bits by which record pointers are shifted in addition
+ *     to BLOCK_SIZE_DELTA_BITS, see below.
  * 
  * ===== block structure
  * 
@@ -61,6 +69,50 @@ import org.eclipse.osgi.util.NLS;
  * PREV_OFFSET      | pointer to prev block (of same size) (only in free blocks)
  * NEXT_OFFSET      | pointer to next block (of same size) (only in free blocks)
  * 
+ * ===== record pointers
+ * 
+ * Record pointers are stored in PTR_SIZE bytes, the address of a block is shifted by the 
+ * pointer shift of the database. By default the shift is BLOCK_SIZE_DELTA_BITS which limits
+ * the size of the database to MAX_DB_SIZE. Databases using the large format shift the pointers 
+ * by LARGE_POINTER_SHIFT and align all blocks accordingly. This multiplies the maximum size 
+ * without changing the layout of the records, at the expense of some space wasted by the 
+ * alignment of the blocks.
+ * 
+ * ===== chunk table
+ * 
+ * The chunks that are in memory are stored in a table indexed by their sequence number. Resident
+ * chunks are looked up without locking, a chunk is created, locked or released only while holding
+ * the lock of the segment of the cache it belongs to. The table is grown while holding the lock
+ * on the table, such that a concurrent release of a chunk cannot get lost.
+ * 
+ * ===== memory mapping
+ * 
+ * Optionally the file is mapped read-only in regions of MAPPED_REGION_SIZE bytes. Chunks that 
+ * are not modified read their content directly from the mapping, a chunk is copied to the heap 
+ * before it is changed. Therefore changes still reach the file via flush() only. The mapping is
+ * released explicitly before the file is truncated or closed, a mapped file cannot be truncated 
+ * on Windows.
+ * 
+ * ===== snapshots
+ * 
+ * A thread may read from a snapshot of the database without holding a lock. The snapshot stores
+ * a version for every chunk it reads, which shares the content with the chunk in use. Before
+ * a chunk is modified for the first time after a snapshot has been opened, its version is handed
+ * to all open snapshots that have not read the chunk, yet, and the chunk continues with a copy
+ * of the content. The memory retained for such versions is limited, when the limit is exceeded
+ * the oldest snapshots are invalidated.
+ * 
+ * ===== compressed files
+ * 
+ * A database may be stored in the format of CompressedDatabaseFile, e.g. when it is shared as
+ * part of a team index. Such a file can be opened read-only, only. Its chunks are decompressed
+ * when they are read into the cache, the file is not mapped.
+ * 
+ * ===== compaction
+ * 
+ * Blocks are never split across chunks, each chunk is tiled by a sequence of blocks starting
+ * at its first byte. This allows to walk over all blocks of a chunk to merge adjacent free blocks
+ * and to drop the chunks at the end of the file that do no longer contain any used block.
  */
 public class Database {
 	// public for tests only, you shouldn't need these
@@ -77,32 +129,92 @@ public class Database {
 	public static final int TYPE_SIZE = 2+PTR_SIZE;  // size of a type in the database in bytes
 	public static final int VALUE_SIZE = TYPE_SIZE;  // size of a value in the database in bytes
 	public static final long MAX_DB_SIZE= ((long) 1 << (Integer.SIZE + BLOCK_SIZE_DELTA_BITS));
+	public static final int LARGE_POINTER_SHIFT= BLOCK_SIZE_DELTA_BITS + 1;
+	public static final int MAPPED_REGION_SIZE= CHUNK_SIZE * 1024 * 16;	// 64 MB
+	
+	/**
+	 * Default for memory mapping the database files, can be changed via the system property
+	 * <code>org.eclipse.cdt.core.parser.pdom.mmap</code>.
+	 */
+	private static final boolean MEMORY_MAPPED_DEFAULT= Boolean.getBoolean("org.eclipse.cdt.core.parser.pdom.mmap"); //$NON-NLS-1$
+
+	/**
+	 * Default for the shift of record pointers in new databases, the large format can be requested 
+	 * via the system property <code>org.eclipse.cdt.core.parser.pdom.large</code>.
+	 */
+	private static final int POINTER_SHIFT_DEFAULT= 
+		Boolean.getBoolean("org.eclipse.cdt.core.parser.pdom.large") ? LARGE_POINTER_SHIFT : BLOCK_SIZE_DELTA_BITS; //$NON-NLS-1$
+
+	/**
+	 * Default for the memory in bytes that may be retained for the snapshots of a database, can be 
+	 * changed via the system property <code>org.eclipse.cdt.core.parser.pdom.snapshot.limit</code>.
+	 */
+	private static final long SNAPSHOT_MEMORY_LIMIT_DEFAULT= 
+		Long.getLong("org.eclipse.cdt.core.parser.pdom.snapshot.limit", 64L * 1024 * 1024).longValue(); //$NON-NLS-1$
 
 
 	public static final int VERSION_OFFSET = 0;
+	private static final int POINTER_FORMAT_BITS = 28;
+	private static final int POINTER_FORMAT_MASK = 0x7 << POINTER_FORMAT_BITS;
 	public static final int DATA_AREA = (CHUNK_SIZE / BLOCK_SIZE_DELTA - MIN_BLOCK_DELTAS + 2) * INT_SIZE;
 	
 	private static final int BLOCK_PREV_OFFSET = BLOCK_HEADER_SIZE;
 	private static final int BLOCK_NEXT_OFFSET = BLOCK_HEADER_SIZE + INT_SIZE;
+	/** Number of chunks after which a compaction flushes the database to release the chunks it has read. */
+	private static final int COMPACTION_FLUSH_INTERVAL = 1024 * 4;
 	
 	private final File fLocation;
 	private final boolean fReadOnly;
 	private RandomAccessFile fFile;
+	private final boolean fMemoryMapped;
+	private final CompressedDatabaseFile fCompressedFile;
+	private MappedByteBuffer[] fMappedRegions= {};
+	private final Object fMappingLock= new Object();
 	private boolean fExclusiveLock= false;	// necessary for any write operation
 	private boolean fLocked;				// necessary for any operation.
 	private boolean fIsMarkedIncomplete= false;
 
 	private int fVersion;
+	private final int fRequestedPointerShift;
+	int fPointerShift;
 	private final Chunk fHeaderChunk;
-	private Chunk[] fChunks;
+	private volatile AtomicReferenceArray<Chunk> fChunks;
+	private final Object fChunksLock= new Object();
 	private int fChunksUsed;
 	private int fChunksAllocated;
 	private ChunkCache fCache;
 	
 	private long malloced;
 	private long freed;
-	private long cacheHits;
-	private long cacheMisses;
+	private final AtomicLong cacheHits= new AtomicLong();
+	private final AtomicLong cacheMisses= new AtomicLong();
+	private final AtomicLong cacheEvictions= new AtomicLong();
+	private final AtomicLong cacheWaitTime= new AtomicLong();
+
+	/**
+	 * Snapshot of the database opened by a thread. 
+	 */
+	private static final class Snapshot {
+		/** Versions of the chunks read by the snapshot, <code>null</code> when invalidated. */
+		volatile AtomicReferenceArray<Chunk> fVersions;
+		int fDepth= 1;
+		
+		Snapshot(int chunkCount) {
+			fVersions= new AtomicReferenceArray<Chunk>(chunkCount);
+		}
+	}
+
+	private final Object fSnapshotLock= new Object();
+	private final ThreadLocal<Snapshot> fThreadSnapshot= new ThreadLocal<Snapshot>();
+	// the following fields are guarded by fSnapshotLock.
+	private final ArrayList<Snapshot> fSnapshots= new ArrayList<Snapshot>();  // valid ones, oldest first.
+	volatile int fOpenSnapshots;		// including invalidated ones that have not been closed.
+	volatile int fSnapshotEpoch;		// incremented whenever a snapshot is opened.
+	private long fSnapshotMemoryLimit= SNAPSHOT_MEMORY_LIMIT_DEFAULT;
+	private long fRetainedBytes;
+	private long fPeakRetainedBytes;
+	private long fSnapshotsOpened;
+	private long fSnapshotsInvalidated;
 	
 	/**
 	 * Construct a new Database object, creating a backing file if necessary.
@@ -113,24 +225,65 @@ public class Database {
 	 * @throws CoreException
 	 */
 	public Database(File location, ChunkCache cache, int version, boolean openReadOnly) throws CoreException {
+		this(location, cache, version, openReadOnly, MEMORY_MAPPED_DEFAULT);
+	}
+
+	/**
+	 * Construct a new Database object, creating a backing file if necessary.
+	 * @param location the local file path for the database 
+	 * @param cache the cache to be used optimization
+	 * @param version the version number to store in the database (only applicable for new databases)
+	 * @param openReadOnly whether this Database object will ever need writing to
+	 * @param memoryMapped whether unmodified chunks shall be read from a memory mapping of the file
+	 * @throws CoreException
+	 */
+	public Database(File location, ChunkCache cache, int version, boolean openReadOnly, boolean memoryMapped) throws CoreException {
+		this(location, cache, version, openReadOnly, memoryMapped, POINTER_SHIFT_DEFAULT);
+	}
+
+	/**
+	 * Construct a new Database object, creating a backing file if necessary.
+	 * @param location the local file path for the database 
+	 * @param cache the cache to be used optimization
+	 * @param version the version number to store in the database (only applicable for new databases)
+	 * @param openReadOnly whether this Database object will ever need writing to
+	 * @param memoryMapped whether unmodified chunks shall be read from a memory mapping of the file
+	 * @param pointerShift the shift for record pointers, either {@link #BLOCK_SIZE_DELTA_BITS} or 
+	 * {@link #LARGE_POINTER_SHIFT} (only applicable for new or cleared databases)
+	 * @throws CoreException
+	 */
+	public Database(File location, ChunkCache cache, int version, boolean openReadOnly, boolean memoryMapped, 
+			int pointerShift) throws CoreException {
+		assert pointerShift >= BLOCK_SIZE_DELTA_BITS && pointerShift <= BLOCK_SIZE_DELTA_BITS + 7;
 		try {
 			fLocation = location;
 			fReadOnly= openReadOnly;
+			fRequestedPointerShift= pointerShift;
 			fCache= cache;
 			openFile();
+			fCompressedFile= CompressedDatabaseFile.open(fFile.getChannel());
+			if (fCompressedFile != null && !openReadOnly) {
+				fFile.close();
+				throw new CoreException(new Status(IStatus.ERROR, CCorePlugin.PLUGIN_ID, 0, 
+						"Compressed database can be opened read-only, only: " + location, null)); //$NON-NLS-1$
+			}
+			fMemoryMapped= memoryMapped && fCompressedFile == null;
 			
-			int nChunksOnDisk = (int) (fFile.length() / CHUNK_SIZE);
+			int nChunksOnDisk = fCompressedFile != null ? fCompressedFile.getChunkCount() : (int) (fFile.length() / CHUNK_SIZE);
 			fHeaderChunk= new Chunk(this, 0);
 			fHeaderChunk.fLocked= true;		// never makes it into the cache, needed to satisfy assertions
 			if (nChunksOnDisk <= 0) {
 				fVersion= version;
-				fChunks= new Chunk[1];
-				fChunksUsed = fChunksAllocated = fChunks.length;
+				fPointerShift= pointerShift;
+				fChunks= new AtomicReferenceArray<Chunk>(1);
+				fChunksUsed = fChunksAllocated = fChunks.length();
 			}
 			else {
 				fHeaderChunk.read();
-				fVersion= fHeaderChunk.getInt(VERSION_OFFSET);
-				fChunks = new Chunk[nChunksOnDisk];	// chunk[0] is unused.
+				final int header= fHeaderChunk.getInt(VERSION_OFFSET);
+				fVersion= versionFromHeader(header);
+				fPointerShift= BLOCK_SIZE_DELTA_BITS + ((header & POINTER_FORMAT_MASK) >>> POINTER_FORMAT_BITS);
+				fChunks = new AtomicReferenceArray<Chunk>(nChunksOnDisk);	// chunk[0] is unused.
 				fChunksUsed = fChunksAllocated = nChunksOnDisk;
 			}
 		} catch (IOException e) {
@@ -146,7 +299,11 @@ public class Database {
 		int retries= 0;
 		do {
 			try {
-				fFile.getChannel().read(buf, position);
+				if (fCompressedFile != null) {
+					fCompressedFile.read(fFile.getChannel(), buf, position);
+				} else {
+					fFile.getChannel().read(buf, position);
+				}
 				return;
 			}
 			catch (ClosedChannelException e) {
@@ -170,6 +327,130 @@ public class Database {
 		} while(true);
 	}
 
+	/**
+	 * Returns a read-only view of the given chunk in the mapped file, or <code>null</code> if the
+	 * chunk is not (yet) stored in the file.
+	 */
+	private ByteBuffer getMappedChunk(int index) throws IOException {
+		synchronized (fMappingLock) {
+			return getMappedChunkLocked(index);
+		}
+	}
+
+	private ByteBuffer getMappedChunkLocked(int index) throws IOException {
+		final long position= (long) index * CHUNK_SIZE;
+		final int regionIndex= (int) (position / MAPPED_REGION_SIZE);
+		final int offsetInRegion= (int) (position % MAPPED_REGION_SIZE);
+		if (regionIndex >= fMappedRegions.length) {
+			MappedByteBuffer[] newRegions= new MappedByteBuffer[regionIndex+1];
+			System.arraycopy(fMappedRegions, 0, newRegions, 0, fMappedRegions.length);
+			fMappedRegions= newRegions;
+		}
+		MappedByteBuffer region= fMappedRegions[regionIndex];
+		if (region == null || region.capacity() < offsetInRegion + CHUNK_SIZE) {
+			// the file may have grown since the region was mapped.
+			final long regionStart= (long) regionIndex * MAPPED_REGION_SIZE;
+			final long length= Math.min(MAPPED_REGION_SIZE, fFile.length() - regionStart);
+			if (length < offsetInRegion + CHUNK_SIZE) 
+				return null;
+			region= map(regionStart, length);
+			fMappedRegions[regionIndex]= region;
+		}
+		final ByteBuffer buf= region.duplicate();
+		buf.position(offsetInRegion);
+		buf.limit(offsetInRegion + CHUNK_SIZE);
+		return buf.slice();
+	}
+
+	private MappedByteBuffer map(long position, long length) throws IOException {
+		int retries= 0;
+		do {
+			try {
+				return fFile.getChannel().map(MapMode.READ_ONLY, position, length);
+			}
+			catch (ClosedChannelException e) {
+				// bug 219834 file may have be closed by interrupting a thread during an I/O operation.
+				reopen(e, ++retries);
+			} 
+		} while (true);
+	}
+
+	/**
+	 * Releases the mapped regions, after dropping the chunks that read from them. Caller needs
+	 * to hold the exclusive lock and must have invalidated the snapshots.
+	 */
+	private void unmapRegions() {
+		if (!fMemoryMapped)
+			return;
+
+		final MappedByteBuffer[] regions;
+		final ArrayList<Chunk> mappedChunks= new ArrayList<Chunk>();
+		synchronized (fMappingLock) {
+			regions= fMappedRegions;
+			fMappedRegions= new MappedByteBuffer[0];
+			synchronized (fChunksLock) {
+				final AtomicReferenceArray<Chunk> chunks= fChunks;
+				for (int i= 1; i < chunks.length(); i++) {
+					final Chunk chunk= chunks.get(i);
+					if (chunk != null && chunk.isMapped()) {
+						mappedChunks.add(chunk);
+						chunks.set(i, null);
+					}
+				}
+			}
+		}
+		for (Chunk chunk : mappedChunks) {
+			fCache.remove(chunk);
+		}
+		for (MappedByteBuffer region : regions) {
+			if (region != null) {
+				unmap(region);
+			}
+		}
+	}
+
+	/**
+	 * Releases a mapped region right away, rather than when it is garbage collected. There is
+	 * no API for this, when the attempt fails the region is left to the garbage collector.
+	 */
+	private static void unmap(MappedByteBuffer region) {
+		try {
+			// Java 9 and later
+			final Class<?> unsafeClass= Class.forName("sun.misc.Unsafe"); //$NON-NLS-1$
+			final Method invokeCleaner= unsafeClass.getMethod("invokeCleaner", ByteBuffer.class); //$NON-NLS-1$
+			final Field theUnsafe= unsafeClass.getDeclaredField("theUnsafe"); //$NON-NLS-1$
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), region);
+			return;
+		} catch (Exception e) {
+			// Try the cleaner of older VMs.
+		}
+		try {
+			final Method cleanerMethod= region.getClass().getMethod("cleaner"); //$NON-NLS-1$
+			cleanerMethod.setAccessible(true);
+			final Object cleaner= cleanerMethod.invoke(region);
+			if (cleaner != null) {
+				cleaner.getClass().getMethod("clean").invoke(cleaner); //$NON-NLS-1$
+			}
+		} catch (Exception e) {
+			// Left to the garbage collector.
+		}
+	}
+
+	/**
+	 * Returns whether unmodified chunks are read directly from a memory mapping of the file.
+	 */
+	public boolean isMemoryMapped() {
+		return fMemoryMapped;
+	}
+
+	/**
+	 * Returns whether the database is stored in a compressed file.
+	 */
+	public boolean isCompressed() {
+		return fCompressedFile != null;
+	}
+
 	private void reopen(ClosedChannelException e, int attempt) throws ClosedChannelException, FileNotFoundException {
 		// only if the current thread was not interrupted we try to reopen the file.
 		if (e instanceof ClosedByInterruptException || attempt >= 20) {
@@ -179,7 +460,18 @@ public class Database {
 	}
 
 
-	public void transferTo(FileChannel target) throws IOException {
+	/**
+	 * Copies the content of the database to the given channel. When the current thread reads
+	 * from a snapshot, the content of the snapshot is copied.
+	 */
+	public void transferTo(FileChannel target) throws IOException, CoreException {
+		if (fOpenSnapshots > 0) {
+			final Snapshot snapshot= fThreadSnapshot.get();
+			if (snapshot != null) {
+				transferTo(snapshot, target);
+				return;
+			}
+		}
 		assert fLocked;
         final FileChannel from= fFile.getChannel();
         long nRead = 0;
@@ -201,24 +493,93 @@ public class Database {
 	
 	public void setVersion(int version) throws CoreException {
 		assert fExclusiveLock;
-		fHeaderChunk.putInt(VERSION_OFFSET, version);
+		fHeaderChunk.putInt(VERSION_OFFSET, getHeader(version));
 		fVersion= version;
 	}
 
+	/**
+	 * Returns the version stored in the first four bytes of a database file.
+	 */
+	public static int versionFromHeader(int header) {
+		return header & ~POINTER_FORMAT_MASK;
+	}
+
+	private int getHeader(int version) {
+		return version | ((fPointerShift - BLOCK_SIZE_DELTA_BITS) << POINTER_FORMAT_BITS);
+	}
+
+	/**
+	 * Returns the number of bits by which record pointers are shifted when stored.
+	 */
+	public int getPointerShift() {
+		return fPointerShift;
+	}
+
+	/**
+	 * Returns the shift for record pointers that will be used when the database is cleared.
+	 */
+	public int getRequestedPointerShift() {
+		return fRequestedPointerShift;
+	}
+
+	/**
+	 * Returns the maximum size of the database in bytes, depending on the format of its
+	 * record pointers.
+	 */
+	public long getMaxSize() {
+		return (long) 1 << (Integer.SIZE + fPointerShift);
+	}
+
+	private void transferTo(Snapshot snapshot, FileChannel target) throws IOException, CoreException {
+		final ByteBuffer buf= ByteBuffer.allocate(CHUNK_SIZE);
+		for (int i= 0; ; i++) {
+			buf.clear();
+			synchronized (fSnapshotLock) {
+				final AtomicReferenceArray<Chunk> versions= snapshot.fVersions;
+				if (versions == null) 
+					throw new CoreException(createSnapshotInvalidatedStatus());
+				if (i >= versions.length())
+					break;
+				
+				// without a version the chunk has not been modified since the snapshot was opened.
+				Chunk chunk= versions.get(i);
+				if (chunk == null) {
+					chunk= i == 0 ? fHeaderChunk : fChunks.get(i);
+				}
+				if (chunk != null) {
+					chunk.copyTo(buf);
+				} else {
+					read(buf, (long) i * CHUNK_SIZE);
+				}
+			}
+			buf.flip();
+			while (buf.hasRemaining()) {
+				target.write(buf);
+			}
+		}
+	}
+
 	/**
 	 * Empty the contents of the Database, make it ready to start again
 	 * @throws CoreException
 	 */
 	public void clear(int version) throws CoreException {
 		assert fExclusiveLock;
+		invalidateSnapshots();
 		removeChunksFromCache();
 		
 		fVersion= version;
+		fPointerShift= fRequestedPointerShift;
+		if (getSizeBytes() > MAX_DB_SIZE / 2) {
+			// the previous content came close to the limit of the default format.
+			fPointerShift= Math.max(fPointerShift, LARGE_POINTER_SHIFT);
+		}
 		// clear the first chunk.
 		fHeaderChunk.clear(0, CHUNK_SIZE);
 		// chunks have been removed from the cache, so we may just reset the array of chunks.
-		fChunks = new Chunk[] {null};
-		fChunksUsed = fChunksAllocated = fChunks.length;
+		fChunks = new AtomicReferenceArray<Chunk>(1);
+		fChunksUsed = fChunksAllocated = fChunks.length();
+		unmapRegions();
 		try {
 			fHeaderChunk.flush();	// zero out header chunk
 			fFile.getChannel().truncate(CHUNK_SIZE);	// truncate database
@@ -245,13 +606,12 @@ public class Database {
 	}
 
 	private void removeChunksFromCache() {
-		synchronized (fCache) {
-			for (int i=1; i < fChunks.length; i++) {
-				Chunk chunk= fChunks[i];
-				if (chunk != null) {
-					fCache.remove(chunk);
-					fChunks[i]= null;
-				}
+		final AtomicReferenceArray<Chunk> chunks= fChunks;
+		for (int i=1; i < chunks.length(); i++) {
+			Chunk chunk= chunks.get(i);
+			if (chunk != null) {
+				fCache.remove(chunk);
+				chunks.set(i, null);
 			}
 		}
 	}
@@ -262,29 +622,113 @@ public class Database {
 	 * @throws CoreException 
 	 */
 	public Chunk getChunk(long offset) throws CoreException {
+		if (fOpenSnapshots > 0) {
+			final Snapshot snapshot= fThreadSnapshot.get();
+			if (snapshot != null) {
+				return getChunk(snapshot, offset);
+			}
+		}
 		if (offset < CHUNK_SIZE) {
 			return fHeaderChunk;
 		}
 		long long_index = offset / CHUNK_SIZE;
 		assert long_index < Integer.MAX_VALUE; 
+		assert fLocked;
+
+		final int index = (int)long_index;
+		final Chunk chunk= fChunks.get(index);
+		if (chunk != null && chunk.fCacheIndex >= 0 && (chunk.fLocked || !fExclusiveLock)) {
+			// resident chunk, no need to lock.
+			chunk.fCacheHitFlag= true;
+			cacheHits.incrementAndGet();
+			return chunk;
+		}
+		return getChunkSlow(index);
+	}
 
-		synchronized(fCache) {
-			assert fLocked;
-			final int index = (int)long_index;
-			Chunk chunk= fChunks[index];
+	/**
+	 * Creates, locks or re-adds a chunk while holding the lock of its cache segment. The chunk 
+	 * cannot be released by other threads concurrently.
+	 */
+	private Chunk getChunkSlow(final int index) throws CoreException {
+		final ChunkCache.Segment segment= fCache.getSegment(this, index);
+		segment.lock(this);
+		try {
+			Chunk chunk= fChunks.get(index);
 			if (chunk == null) {
-				cacheMisses++;
-				chunk = fChunks[index] = new Chunk(this, index);
-				chunk.read();
+				cacheMisses.incrementAndGet();
+				if (fMemoryMapped) {
+					// A chunk reading from the mapping must not be added after it was released.
+					synchronized (fMappingLock) {
+						chunk= createChunk(index);
+						fChunks.set(index, chunk);
+					}
+				} else {
+					chunk= createChunk(index);
+					fChunks.set(index, chunk);
+				}
 			}
 			else {
-				cacheHits++;
+				cacheHits.incrementAndGet();
 			}
-			fCache.add(chunk, fExclusiveLock);
+			segment.add(chunk, fExclusiveLock);
 			return chunk;
+		} finally {
+			segment.unlock();
 		}
 	}
 
+	/**
+	 * Returns the version of the chunk as it was when the snapshot was opened.
+	 */
+	private Chunk getChunk(Snapshot snapshot, long offset) throws CoreException {
+		final AtomicReferenceArray<Chunk> versions= snapshot.fVersions;
+		if (versions == null)
+			throw new CoreException(createSnapshotInvalidatedStatus());
+
+		final long longIndex= offset / CHUNK_SIZE;
+		if (longIndex >= versions.length()) {
+			throw new CoreException(new Status(IStatus.ERROR, CCorePlugin.PLUGIN_ID, 0, 
+					"Record " + offset + " beyond the end of the snapshot of " + fLocation, new Exception())); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		final int index= (int) longIndex;
+		Chunk version= versions.get(index);
+		if (version == null) {
+			// a chunk that is not modified before the snapshot takes its version has the
+			// content of the time the snapshot was opened.
+			Chunk chunk= index == 0 ? fHeaderChunk : fChunks.get(index);
+			if (chunk == null) {
+				chunk= getChunkSlow(index);
+			}
+			synchronized (fSnapshotLock) {
+				if (snapshot.fVersions != versions)
+					throw new CoreException(createSnapshotInvalidatedStatus());
+
+				version= versions.get(index);
+				if (version == null) {
+					version= chunk.getVersion();
+					addVersion(versions, index, version);
+					limitSnapshotMemory();
+				}
+			}
+		}
+		return version;
+	}
+
+	private Chunk createChunk(final int index) throws CoreException {
+		ByteBuffer mapped= null;
+		if (fMemoryMapped) {
+			try {
+				mapped= getMappedChunk(index);
+			} catch (IOException e) {
+				throw new CoreException(new DBStatus(e));
+			}
+		}
+		final Chunk chunk= new Chunk(this, index, mapped);
+		chunk.read();
+		return chunk;
+	}
+
 	/**
 	 * Allocate a block out of the database.
 	 */ 
@@ -296,11 +740,14 @@ public class Database {
 		if (needDeltas < MIN_BLOCK_DELTAS) {
 			needDeltas= MIN_BLOCK_DELTAS;
 		}
+		// Blocks are aligned such that their address can be stored as a record pointer.
+		final int alignDeltas= 1 << (fPointerShift - BLOCK_SIZE_DELTA_BITS);
+		needDeltas= (needDeltas + alignDeltas - 1) & ~(alignDeltas - 1);
 
 		// Which block size
 		long freeblock = 0;
 		int useDeltas;
-		for (useDeltas= needDeltas; useDeltas <= MAX_BLOCK_DELTAS; useDeltas++) {
+		for (useDeltas= needDeltas; useDeltas <= MAX_BLOCK_DELTAS; useDeltas+= alignDeltas) {
 			freeblock = getFirstBlock(useDeltas*BLOCK_SIZE_DELTA);
 			if (freeblock != 0)
 				break;
@@ -338,22 +785,22 @@ public class Database {
 	
 	private long createNewChunk() throws CoreException {
 		assert fExclusiveLock;
-		synchronized (fCache) {
+		{
 			final int newChunkIndex = fChunksUsed; // fChunks.length;
 
 			final Chunk chunk = new Chunk(this, newChunkIndex);
 			chunk.fDirty = true;
+			chunk.fLocked = true;
 
-			if (newChunkIndex >= fChunksAllocated) {
-				int increment = Math.max(1024, fChunksAllocated/20);
-				Chunk[] newchunks = new Chunk[fChunksAllocated + increment];
-				System.arraycopy(fChunks, 0, newchunks, 0, fChunksAllocated);
-
-				fChunks = newchunks;
-				fChunksAllocated += increment;
+			synchronized (fChunksLock) {
+				if (newChunkIndex >= fChunksAllocated) {
+					int increment = Math.max(1024, fChunksAllocated/20);
+					fChunks = copyChunks(fChunksAllocated + increment);
+					fChunksAllocated += increment;
+				}
+				fChunksUsed += 1;
+				fChunks.set(newChunkIndex, chunk);
 			}
-			fChunksUsed += 1;
-			fChunks[newChunkIndex] = chunk;
 
 			fCache.add(chunk, true);
 			long address = (long) newChunkIndex * CHUNK_SIZE;
@@ -364,8 +811,9 @@ public class Database {
 			 * special status, the indexing operation should be stopped. This is desired since generally, once
 			 * the max size is exceeded, there are lots of errors.
 			 */
-			if (address >= MAX_DB_SIZE) {
-				Object bindings[] = { this.getLocation().getAbsolutePath(), MAX_DB_SIZE };
+			final long maxSize= getMaxSize();
+			if (address >= maxSize) {
+				Object bindings[] = { this.getLocation().getAbsolutePath(), maxSize };
 				throw new CoreException(new Status(IStatus.ERROR, CCorePlugin.PLUGIN_ID,
 						CCorePlugin.STATUS_PDOM_TOO_LARGE, NLS.bind(CCorePlugin
 								.getResourceString("pdom.DatabaseTooLarge"), bindings), null)); //$NON-NLS-1$
@@ -379,22 +827,30 @@ public class Database {
 	 */
 	private long createNewChunks(int numChunks) throws CoreException {
 		assert fExclusiveLock;
-		synchronized (fCache) {
-			final int oldLen= fChunks.length;
-			Chunk[] newchunks = new Chunk[oldLen+numChunks];
-			System.arraycopy(fChunks, 0, newchunks, 0, oldLen);
-			for( int i = oldLen; i < oldLen + numChunks; i++ ) {
-				newchunks[i]= null;
-			}
-			final Chunk chunk= new Chunk(this, oldLen + numChunks - 1);
-			chunk.fDirty= true;
-			newchunks[ oldLen + numChunks - 1 ] = chunk;
-			fChunks= newchunks;
-			fCache.add(chunk, true);
+		final int oldLen= fChunks.length();
+		final Chunk chunk= new Chunk(this, oldLen + numChunks - 1);
+		chunk.fDirty= true;
+		chunk.fLocked= true;
+		synchronized (fChunksLock) {
+			fChunks= copyChunks(oldLen+numChunks);
+			fChunks.set(oldLen + numChunks - 1, chunk);
 			fChunksAllocated=oldLen+numChunks;
 			fChunksUsed=oldLen+numChunks;
-			return (long)(oldLen + numChunks - 1) * CHUNK_SIZE;
 		}
+		fCache.add(chunk, true);
+		return (long)(oldLen + numChunks - 1) * CHUNK_SIZE;
+	}
+
+	/**
+	 * Copies the chunk table to a larger one, caller needs to hold the lock on {@link #fChunksLock}.
+	 */
+	private AtomicReferenceArray<Chunk> copyChunks(int newLength) {
+		final AtomicReferenceArray<Chunk> oldChunks= fChunks;
+		final AtomicReferenceArray<Chunk> newChunks= new AtomicReferenceArray<Chunk>(newLength);
+		for (int i = 0; i < oldChunks.length(); i++) {
+			newChunks.set(i, oldChunks.get(i));
+		}
+		return newChunks;
 	}
 	
 	private long getFirstBlock(int blocksize) throws CoreException {
@@ -453,6 +909,219 @@ public class Database {
 		freed += blocksize;
 	}
 
+	/**
+	 * Result of the compaction of a database.
+	 */
+	public static final class CompactionResult {
+		private final long fSizeBefore;
+		private final long fSizeAfter;
+		private final int fMergedBlocks;
+		private final long fTime;
+
+		CompactionResult(long sizeBefore, long sizeAfter, int mergedBlocks, long time) {
+			fSizeBefore= sizeBefore;
+			fSizeAfter= sizeAfter;
+			fMergedBlocks= mergedBlocks;
+			fTime= time;
+		}
+
+		/**
+		 * Returns the size of the file before the compaction, in bytes.
+		 */
+		public long getSizeBefore() {
+			return fSizeBefore;
+		}
+
+		/**
+		 * Returns the size of the file after the compaction, in bytes.
+		 */
+		public long getSizeAfter() {
+			return fSizeAfter;
+		}
+
+		/**
+		 * Returns the number of bytes by which the file has shrunk.
+		 */
+		public long getReclaimedBytes() {
+			return fSizeBefore - fSizeAfter;
+		}
+
+		/**
+		 * Returns the number of free blocks that have been merged with adjacent free blocks.
+		 */
+		public int getMergedBlocks() {
+			return fMergedBlocks;
+		}
+
+		/**
+		 * Returns the time spent for the compaction, in milliseconds.
+		 */
+		public long getTime() {
+			return fTime;
+		}
+
+		@SuppressWarnings("nls")
+		@Override
+		public String toString() {
+			return "Reclaimed " + getReclaimedBytes() + " of " + fSizeBefore + " bytes, merged " 
+				+ fMergedBlocks + " free blocks in " + fTime + " ms";
+		}
+	}
+
+	/**
+	 * Compacts the database: Adjacent free blocks are merged, the lists of free blocks are rebuilt
+	 * such that blocks at the beginning of the file are reused first and the chunks at the end of
+	 * the file that do not contain any used block are removed from the file.
+	 * <p>
+	 * Used blocks are not moved, therefore all records of the database remain valid. The database
+	 * is flushed, the caller needs to hold the exclusive lock.
+	 */
+	public CompactionResult compact() throws CoreException {
+		assert fExclusiveLock;
+		invalidateSnapshots();
+		final long start= System.currentTimeMillis();
+		final long sizeBefore= (long) fChunksUsed * CHUNK_SIZE;
+
+		// Find the last chunk that contains a used block.
+		int lastUsedChunk= 0;
+		for (int i= fChunksUsed-1; i > 0 && lastUsedChunk == 0; i--) {
+			if (!isFreeChunk(i)) {
+				lastUsedChunk= i;
+			}
+			flushIfNecessary(fChunksUsed - i);
+		}
+
+		// Rebuild the lists of free blocks, starting at the end such that the blocks at the 
+		// beginning of the file end up at the head of the lists.
+		fHeaderChunk.clear(INT_SIZE, DATA_AREA - INT_SIZE);
+		int mergedBlocks= 0;
+		for (int i= lastUsedChunk; i > 0; i--) {
+			mergedBlocks+= rebuildFreeBlocks(i);
+			flushIfNecessary(lastUsedChunk - i + 1);
+		}
+
+		// Drop the chunks at the end of the file.
+		synchronized (fChunksLock) {
+			for (int i= lastUsedChunk+1; i < fChunksUsed; i++) {
+				final Chunk chunk= fChunks.get(i);
+				if (chunk != null) {
+					chunk.fDirty= false;
+					fCache.remove(chunk);
+					fChunks.set(i, null);
+				}
+			}
+			fChunksUsed= lastUsedChunk+1;
+		}
+		flush();
+		unmapRegions();
+		try {
+			fFile.getChannel().truncate((long) fChunksUsed * CHUNK_SIZE);
+		} catch (IOException e) {
+			CCorePlugin.log(e);
+		}
+		return new CompactionResult(sizeBefore, getSizeBytes(), mergedBlocks, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Chunks read under the exclusive lock are kept in memory until the lock is given up, 
+	 * flush the database from time to time to release them.
+	 */
+	private void flushIfNecessary(int chunksVisited) throws CoreException {
+		if (chunksVisited % COMPACTION_FLUSH_INTERVAL == 0) {
+			flush();
+		}
+	}
+
+	/**
+	 * Returns the size of the block at the given offset of a chunk, negative for a used block.
+	 */
+	private int getBlockSize(Chunk chunk, long block, int offsetInChunk) throws CoreException {
+		final int size= chunk.getShort(block);
+		if (size == 0 && offsetInChunk == 0) {
+			// chunk that has been set aside for testing, it has never been used.
+			return CHUNK_SIZE;
+		}
+		final int abs= Math.abs(size);
+		if (abs % BLOCK_SIZE_DELTA != 0 || abs < MIN_BLOCK_DELTAS*BLOCK_SIZE_DELTA || offsetInChunk + abs > CHUNK_SIZE) {
+			throw new CoreException(new Status(IStatus.ERROR, CCorePlugin.PLUGIN_ID, 0, 
+					"Corrupted block at " + block, new Exception())); //$NON-NLS-1$
+		}
+		return size;
+	}
+
+	private boolean isFreeChunk(int index) throws CoreException {
+		final long address= (long) index * CHUNK_SIZE;
+		final Chunk chunk= getChunk(address);
+		for (int offset= 0; offset < CHUNK_SIZE; ) {
+			final int size= getBlockSize(chunk, address + offset, offset);
+			if (size < 0)
+				return false;
+			offset+= size;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the free blocks of the given chunk to the lists of free blocks, adjacent free blocks are 
+	 * merged. Returns the number of blocks that have been merged into other ones.
+	 */
+	private int rebuildFreeBlocks(int index) throws CoreException {
+		final long address= (long) index * CHUNK_SIZE;
+		final Chunk chunk= getChunk(address);
+		final ArrayList<int[]> freeBlocks= new ArrayList<int[]>();
+		int merged= 0;
+		int freeStart= -1;
+		int offset= 0;
+		while (offset < CHUNK_SIZE) {
+			final int size= getBlockSize(chunk, address + offset, offset);
+			if (size > 0) {
+				if (freeStart < 0) {
+					freeStart= offset;
+				} else {
+					merged++;
+				}
+				offset+= size;
+			} else {
+				if (freeStart >= 0) {
+					freeBlocks.add(new int[] {freeStart, offset - freeStart});
+					freeStart= -1;
+				}
+				offset-= size;
+			}
+		}
+		if (freeStart >= 0) {
+			freeBlocks.add(new int[] {freeStart, CHUNK_SIZE - freeStart});
+		}
+		// add in reverse order, such that the first block ends up at the head of its list.
+		for (int i= freeBlocks.size()-1; i >= 0; i--) {
+			final int[] block= freeBlocks.get(i);
+			addBlock(chunk, block[1], address + block[0]);
+		}
+		return merged;
+	}
+
+	/**
+	 * Compacts the database stored in the given file, which must not be in use.
+	 * @see #compact()
+	 */
+	public static CompactionResult compact(File location) throws CoreException {
+		if (!location.isFile()) {
+			throw new CoreException(new DBStatus(new FileNotFoundException(location.getPath())));
+		}
+		final Database db= new Database(location, new ChunkCache(), 0, false, false);
+		db.setExclusiveLock();
+		try {
+			if (db.getVersion() == 0) {
+				// the file has not been written completely.
+				throw new CoreException(new Status(IStatus.ERROR, CCorePlugin.PLUGIN_ID, 0, 
+						"Incomplete database " + location, null)); //$NON-NLS-1$
+			}
+			return db.compact();
+		} finally {
+			db.close();
+		}
+	}
+
 	public void putByte(long offset, byte value) throws CoreException {
 		getChunk(offset).putByte(offset, value);
 	}
@@ -580,14 +1249,16 @@ public class Database {
 	 */
 	public void close() throws CoreException {
 		assert fExclusiveLock;
+		invalidateSnapshots();
 		flush();
 		removeChunksFromCache();
 		
 		// chunks have been removed from the cache, so we are fine
 		fHeaderChunk.clear(0, CHUNK_SIZE);
 		fHeaderChunk.fDirty= false;
-		fChunks= new Chunk[] {null};
-		fChunksUsed = fChunksAllocated = fChunks.length;
+		fChunks= new AtomicReferenceArray<Chunk>(1);
+		fChunksUsed = fChunksAllocated = fChunks.length();
+		unmapRegions();
 		try {
 			fFile.close();
 		} catch (IOException e) {
@@ -603,14 +1274,25 @@ public class Database {
 	}
 
 	/**
-	 * Called from any thread via the cache, protected by {@link #fCache}.
+	 * Called from any thread via the cache, while holding the lock of the segment the chunk
+	 * belongs to.
 	 */
 	void releaseChunk(final Chunk chunk) {
+		cacheEvictions.incrementAndGet();
 		if (!chunk.fLocked) {
-			fChunks[chunk.fSequenceNumber]= null;
+			synchronized (fChunksLock) {
+				fChunks.compareAndSet(chunk.fSequenceNumber, chunk, null);
+			}
 		}			
 	}
 
+	/**
+	 * Called by the cache to account for the time spent waiting for the lock of a segment.
+	 */
+	void addCacheWaitTime(long nanos) {
+		cacheWaitTime.addAndGet(nanos);
+	}
+
 	/**
 	 * Returns the cache used for this database.
 	 * @since 4.0
@@ -636,10 +1318,12 @@ public class Database {
 		if (fExclusiveLock) {
 			try {
 				ArrayList<Chunk> dirtyChunks= new ArrayList<Chunk>();
-				synchronized (fCache) {
-					for (int i= 1; i < fChunksUsed; i++) {
-						Chunk chunk= fChunks[i];
-						if (chunk != null) {
+				for (int i= 1; i < fChunksUsed; i++) {
+					Chunk chunk= fChunks.get(i);
+					if (chunk != null) {
+						final ChunkCache.Segment segment= fCache.getSegment(this, i);
+						segment.lock(this);
+						try {
 							if (chunk.fCacheIndex < 0) { 	
 								// locked chunk that has been removed from cache.
 								if (chunk.fDirty) {
@@ -647,7 +1331,7 @@ public class Database {
 								}
 								else {
 									chunk.fLocked= false;
-									fChunks[i]= null;
+									fChunks.compareAndSet(i, chunk, null);
 								}
 							}
 							else if (chunk.fLocked) {
@@ -664,6 +1348,8 @@ public class Database {
 							else {
 								assert !chunk.fDirty; // dirty chunks must be locked.
 							}
+						} finally {
+							segment.unlock();
 						}
 					}
 				}
@@ -690,12 +1376,10 @@ public class Database {
 
 		// be careful as other readers may access chunks concurrently
 		ArrayList<Chunk> dirtyChunks= new ArrayList<Chunk>();
-		synchronized (fCache) {
-			for (int i= 1; i < fChunksUsed ; i++) {
-				Chunk chunk= fChunks[i];
-				if (chunk != null && chunk.fDirty) {
-					dirtyChunks.add(chunk);
-				}
+		for (int i= 1; i < fChunksUsed ; i++) {
+			Chunk chunk= fChunks.get(i);
+			if (chunk != null && chunk.fDirty) {
+				dirtyChunks.add(chunk);
 			}
 		}
 
@@ -704,7 +1388,6 @@ public class Database {
 	}
 
 	private void flushAndUnlockChunks(final ArrayList<Chunk> dirtyChunks, boolean isComplete) throws CoreException {
-		assert !Thread.holdsLock(fCache);
 		synchronized(fHeaderChunk) {
 			final boolean haveDirtyChunks = !dirtyChunks.isEmpty();
 			if (haveDirtyChunks || fHeaderChunk.fDirty) {
@@ -718,19 +1401,23 @@ public class Database {
 				}
 
 				// only after the chunks are flushed we may unlock and release them.
-				synchronized (fCache) {
-					for (Chunk chunk : dirtyChunks) {
+				for (Chunk chunk : dirtyChunks) {
+					final ChunkCache.Segment segment= fCache.getSegment(this, chunk.fSequenceNumber);
+					segment.lock(this);
+					try {
 						chunk.fLocked= false;
 						if (chunk.fCacheIndex < 0) {
-							fChunks[chunk.fSequenceNumber]= null;
+							fChunks.compareAndSet(chunk.fSequenceNumber, chunk, null);
 						}
+					} finally {
+						segment.unlock();
 					}
 				}
 			}
 
 			if (isComplete) {
 				if (fHeaderChunk.fDirty || fIsMarkedIncomplete) {
-					fHeaderChunk.putInt(VERSION_OFFSET, fVersion);
+					fHeaderChunk.putInt(VERSION_OFFSET, getHeader(fVersion));
 					fHeaderChunk.flush();
 					fIsMarkedIncomplete= false;
 				}
@@ -742,7 +1429,9 @@ public class Database {
 		if (!fIsMarkedIncomplete) {
 			fIsMarkedIncomplete= true;
 			try {
-				final ByteBuffer buf= ByteBuffer.wrap(new byte[4]);
+				// keep the format of the record pointers.
+				final ByteBuffer buf= ByteBuffer.allocate(4);
+				buf.putInt(0, getHeader(0));
 				fFile.getChannel().write(buf, 0);
 			} catch (IOException e) {
 				throw new CoreException(new DBStatus(e));
@@ -751,15 +1440,218 @@ public class Database {
 	}
 
 	public void resetCacheCounters() {
-		cacheHits= cacheMisses= 0;
+		cacheHits.set(0);
+		cacheMisses.set(0);
+		cacheEvictions.set(0);
+		cacheWaitTime.set(0);
 	}
 	
 	public long getCacheHits() {
-		return cacheHits;
+		return cacheHits.get();
 	}
 	
 	public long getCacheMisses() {
-		return cacheMisses;
+		return cacheMisses.get();
+	}
+
+	/**
+	 * Returns the number of chunks of this database that were evicted from the cache.
+	 */
+	public long getCacheEvictions() {
+		return cacheEvictions.get();
+	}
+
+	/**
+	 * Returns the time in nanoseconds spent waiting for the locks of the cache while accessing 
+	 * this database.
+	 */
+	public long getCacheWaitTime() {
+		return cacheWaitTime.get();
+	}
+
+	/**
+	 * Opens a snapshot of the database for the current thread, nested calls share the snapshot.
+	 * Until the snapshot is closed, the thread reads the content the database had when the 
+	 * snapshot was opened and does not need to hold a lock. The caller needs to hold a lock that 
+	 * is not exclusive while the snapshot is opened.
+	 * <p>
+	 * A snapshot is invalidated when the memory retained for the snapshots exceeds the limit, 
+	 * or when the database is cleared, compacted or closed. Any further read from the snapshot
+	 * throws a CoreException with the code {@link CCorePlugin#STATUS_PDOM_SNAPSHOT_INVALIDATED}.
+	 */
+	public void openSnapshot() {
+		assert fLocked && !fExclusiveLock;
+		Snapshot snapshot= fThreadSnapshot.get();
+		if (snapshot != null) {
+			snapshot.fDepth++;
+			return;
+		}
+		snapshot= new Snapshot(fChunksUsed);
+		synchronized (fSnapshotLock) {
+			fSnapshots.add(snapshot);
+			fOpenSnapshots++;
+			fSnapshotEpoch++;
+			fSnapshotsOpened++;
+		}
+		fThreadSnapshot.set(snapshot);
+	}
+
+	/**
+	 * Closes the snapshot of the current thread, when it has been closed as often as it was opened.
+	 */
+	public void closeSnapshot() {
+		final Snapshot snapshot= fThreadSnapshot.get();
+		assert snapshot != null;
+		if (snapshot == null || --snapshot.fDepth > 0)
+			return;
+
+		fThreadSnapshot.remove();
+		synchronized (fSnapshotLock) {
+			releaseVersions(snapshot);
+			fOpenSnapshots--;
+		}
+	}
+
+	/**
+	 * Returns whether the current thread reads from a snapshot of the database.
+	 */
+	public boolean hasSnapshot() {
+		return fOpenSnapshots > 0 && fThreadSnapshot.get() != null;
+	}
+
+	/**
+	 * Called before a chunk is modified for the first time after a snapshot has been opened. 
+	 * The content of the chunk is handed to the snapshots that do not have a version of it.
+	 */
+	void preserveForSnapshots(Chunk chunk) {
+		synchronized (fSnapshotLock) {
+			chunk.fSnapshotEpoch= fSnapshotEpoch;
+			final int index= chunk.fSequenceNumber;
+			for (Snapshot snapshot : fSnapshots) {
+				final AtomicReferenceArray<Chunk> versions= snapshot.fVersions;
+				if (index < versions.length() && versions.get(index) == null) {
+					addVersion(versions, index, chunk.getVersion());
+				}
+			}
+			if (chunk.detachVersion()) {
+				addRetainedBytes(CHUNK_SIZE);
+			}
+			limitSnapshotMemory();
+		}
+	}
+
+	/**
+	 * Adds a version of a chunk to a snapshot, caller needs to hold the lock on {@link #fSnapshotLock}.
+	 */
+	private void addVersion(AtomicReferenceArray<Chunk> versions, int index, Chunk version) {
+		versions.set(index, version);
+		if (version.fSnapshotRefs++ == 0 && version.fRetained) {
+			addRetainedBytes(CHUNK_SIZE);
+		}
+	}
+
+	private void addRetainedBytes(long bytes) {
+		fRetainedBytes+= bytes;
+		if (fRetainedBytes > fPeakRetainedBytes) {
+			fPeakRetainedBytes= fRetainedBytes;
+		}
+	}
+
+	/**
+	 * Invalidates the oldest snapshots until the retained memory is within the limit, caller 
+	 * needs to hold the lock on {@link #fSnapshotLock}.
+	 */
+	private void limitSnapshotMemory() {
+		while (fRetainedBytes > fSnapshotMemoryLimit && !fSnapshots.isEmpty()) {
+			releaseVersions(fSnapshots.get(0));
+			fSnapshotsInvalidated++;
+		}
+	}
+
+	private void invalidateSnapshots() {
+		synchronized (fSnapshotLock) {
+			while (!fSnapshots.isEmpty()) {
+				releaseVersions(fSnapshots.get(0));
+				fSnapshotsInvalidated++;
+			}
+		}
+	}
+
+	/**
+	 * Releases the versions of the chunks held by a snapshot, caller needs to hold the lock on 
+	 * {@link #fSnapshotLock}.
+	 */
+	private void releaseVersions(Snapshot snapshot) {
+		final AtomicReferenceArray<Chunk> versions= snapshot.fVersions;
+		if (versions != null) {
+			snapshot.fVersions= null;
+			fSnapshots.remove(snapshot);
+			for (int i= 0; i < versions.length(); i++) {
+				final Chunk version= versions.get(i);
+				if (version != null && --version.fSnapshotRefs == 0 && version.fRetained) {
+					fRetainedBytes-= CHUNK_SIZE;
+				}
+			}
+		}
+	}
+
+	private IStatus createSnapshotInvalidatedStatus() {
+		return new Status(IStatus.ERROR, CCorePlugin.PLUGIN_ID, CCorePlugin.STATUS_PDOM_SNAPSHOT_INVALIDATED, 
+				"Snapshot of " + fLocation + " has been invalidated", null); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Sets the limit for the memory in bytes retained for versions of chunks that have been 
+	 * modified while snapshots were open.
+	 */
+	public void setSnapshotMemoryLimit(long bytes) {
+		synchronized (fSnapshotLock) {
+			fSnapshotMemoryLimit= bytes;
+			limitSnapshotMemory();
+		}
+	}
+
+	public long getSnapshotMemoryLimit() {
+		synchronized (fSnapshotLock) {
+			return fSnapshotMemoryLimit;
+		}
+	}
+
+	/**
+	 * Returns the memory in bytes currently retained for versions of chunks that have been 
+	 * modified while snapshots were open.
+	 */
+	public long getSnapshotRetainedBytes() {
+		synchronized (fSnapshotLock) {
+			return fRetainedBytes;
+		}
+	}
+
+	/**
+	 * Returns the maximum of the memory in bytes that has been retained for snapshots.
+	 */
+	public long getPeakSnapshotRetainedBytes() {
+		synchronized (fSnapshotLock) {
+			return fPeakRetainedBytes;
+		}
+	}
+
+	/**
+	 * Returns the number of snapshots that have been opened.
+	 */
+	public long getSnapshotsOpened() {
+		synchronized (fSnapshotLock) {
+			return fSnapshotsOpened;
+		}
+	}
+
+	/**
+	 * Returns the number of snapshots that have been invalidated before they were closed.
+	 */
+	public long getSnapshotsInvalidated() {
+		synchronized (fSnapshotLock) {
+			return fSnapshotsInvalidated;
+		}
 	}
 
 	public long getSizeBytes() {
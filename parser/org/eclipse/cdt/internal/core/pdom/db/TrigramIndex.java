@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Persistent index from the trigrams of names to the records carrying these names. The
+ * index is used to narrow down the candidates for a search with a regular expression before
+ * the expression is matched against each name.
+ * <p>
+ * Trigrams are computed from the names after folding the case of each character, such
+ * that the index can be used for case sensitive and case insensitive searches.
+ * <p>
+ * The index consists of a b-tree of trigram nodes, each of them pointing to a list of blocks
+ * with the records of the names that contain the trigram.
+ */
+public class TrigramIndex {
+	// Trigram node
+	private static final int KEY = 0;
+	private static final int HEAD = 8;
+	private static final int COUNT = 12;
+	private static final int NODE_SIZE = 16;
+
+	// Block of records
+	private static final int NEXT = 0;
+	private static final int SIZE = 4;
+	private static final int CAPACITY = 6;
+	private static final int RECORDS = 8;
+	private static final int MIN_CAPACITY = 4;
+	private static final int MAX_CAPACITY = 128;
+
+	private final Database fDatabase;
+	private final BTree fBTree;
+
+	/**
+	 * Creates an object for accessing the index.
+	 * @param db the database containing the index
+	 * @param rootPointer offset into database of the pointer to the root node of the index
+	 */
+	public TrigramIndex(Database db, long rootPointer) {
+		fDatabase= db;
+		fBTree= new BTree(db, rootPointer, new IBTreeComparator() {
+			public int compare(long record1, long record2) throws CoreException {
+				return compareKeys(fDatabase.getLong(record1 + KEY), fDatabase.getLong(record2 + KEY));
+			}
+		});
+	}
+
+	private static int compareKeys(long key1, long key2) {
+		return key1 < key2 ? -1 : (key1 > key2 ? 1 : 0);
+	}
+
+	/**
+	 * Folds the case of a character, characters that match case-insensitively are folded to the
+	 * same character.
+	 */
+	public static char foldCase(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	/**
+	 * Returns the keys of the distinct trigrams contained in the given text.
+	 */
+	private static Set<Long> getTrigrams(char[] text) {
+		Set<Long> result= new HashSet<Long>();
+		if (text.length >= 3) {
+			long key= ((long) foldCase(text[0]) << 16) | foldCase(text[1]);
+			for (int i = 2; i < text.length; i++) {
+				key= ((key << 16) | foldCase(text[i])) & 0xffffffffffffL;
+				result.add(key);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds a record for the given name to the index.
+	 */
+	public void insert(char[] name, long record) throws CoreException {
+		for (Long key : getTrigrams(name)) {
+			long node= findNode(key);
+			if (node == 0) {
+				node= fDatabase.malloc(NODE_SIZE);
+				fDatabase.putLong(node + KEY, key);
+				fBTree.insert(node);
+			}
+			addToNode(node, record);
+		}
+	}
+
+	/**
+	 * Removes a record for the given name from the index.
+	 */
+	public void remove(char[] name, long record) throws CoreException {
+		for (Long key : getTrigrams(name)) {
+			long node= findNode(key);
+			if (node != 0) {
+				removeFromNode(node, record);
+			}
+		}
+	}
+
+	/**
+	 * Returns the records of the names that may contain all of the given literals, sorted by
+	 * their offset. The result is a superset of the records whose names actually contain the
+	 * literals, the names need to be checked by the caller.
+	 * @return an array of records or <code>null</code>, when the literals are too short to
+	 * narrow down the candidates.
+	 */
+	public long[] findCandidates(char[][] literals) throws CoreException {
+		Set<Long> keys= new HashSet<Long>();
+		for (char[] literal : literals) {
+			keys.addAll(getTrigrams(literal));
+		}
+		if (keys.isEmpty())
+			return null;
+
+		final List<long[]> nodes= new ArrayList<long[]>(keys.size());
+		for (Long key : keys) {
+			long node= findNode(key);
+			if (node == 0)
+				return new long[0];
+			int count= fDatabase.getInt(node + COUNT);
+			if (count == 0)
+				return new long[0];
+			nodes.add(new long[] {node, count});
+		}
+		Collections.sort(nodes, new Comparator<long[]>() {
+			public int compare(long[] o1, long[] o2) {
+				return compareKeys(o1[1], o2[1]);
+			}
+		});
+
+		long[] result= getRecords(nodes.get(0)[0]);
+		Arrays.sort(result);
+		for (int i = 1; i < nodes.size() && result.length > 0; i++) {
+			// Reading lists that are much longer than the candidate set does not pay off,
+			// the caller has to check the names anyhow.
+			if (nodes.get(i)[1] > result.length * 8L)
+				break;
+			long[] other= getRecords(nodes.get(i)[0]);
+			Arrays.sort(other);
+			result= intersect(result, other);
+		}
+		return result;
+	}
+
+	private static long[] intersect(long[] a, long[] b) {
+		long[] result= new long[Math.min(a.length, b.length)];
+		int i= 0, j= 0, k= 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[k++]= a[i];
+				i++; j++;
+			}
+		}
+		return trim(result, k);
+	}
+
+	private static long[] trim(long[] array, int length) {
+		if (length == array.length)
+			return array;
+		long[] result= new long[length];
+		System.arraycopy(array, 0, result, 0, length);
+		return result;
+	}
+
+	private long findNode(final long key) throws CoreException {
+		final long[] result= {0};
+		fBTree.accept(new IBTreeVisitor() {
+			public int compare(long record) throws CoreException {
+				return compareKeys(fDatabase.getLong(record + KEY), key);
+			}
+			public boolean visit(long record) throws CoreException {
+				result[0]= record;
+				return false;
+			}
+		});
+		return result[0];
+	}
+
+	private long[] getRecords(long node) throws CoreException {
+		long[] result= new long[fDatabase.getInt(node + COUNT)];
+		int k= 0;
+		for (long block= fDatabase.getRecPtr(node + HEAD); block != 0; block= fDatabase.getRecPtr(block + NEXT)) {
+			final int size= fDatabase.getShort(block + SIZE);
+			for (int i = 0; i < size && k < result.length; i++) {
+				result[k++]= fDatabase.getRecPtr(block + RECORDS + i * Database.PTR_SIZE);
+			}
+		}
+		return trim(result, k);
+	}
+
+	private void addToNode(long node, long record) throws CoreException {
+		long head= fDatabase.getRecPtr(node + HEAD);
+		int size= 0;
+		if (head != 0) {
+			size= fDatabase.getShort(head + SIZE);
+			final int capacity= fDatabase.getShort(head + CAPACITY);
+			if (size == capacity) {
+				head= newBlock(Math.min(MAX_CAPACITY, capacity * 2), head);
+				fDatabase.putRecPtr(node + HEAD, head);
+				size= 0;
+			}
+		} else {
+			head= newBlock(MIN_CAPACITY, 0);
+			fDatabase.putRecPtr(node + HEAD, head);
+		}
+		fDatabase.putRecPtr(head + RECORDS + size * Database.PTR_SIZE, record);
+		fDatabase.putShort(head + SIZE, (short) (size + 1));
+		fDatabase.putInt(node + COUNT, fDatabase.getInt(node + COUNT) + 1);
+	}
+
+	private long newBlock(int capacity, long next) throws CoreException {
+		long block= fDatabase.malloc(RECORDS + capacity * Database.PTR_SIZE);
+		fDatabase.putRecPtr(block + NEXT, next);
+		fDatabase.putShort(block + SIZE, (short) 0);
+		fDatabase.putShort(block + CAPACITY, (short) capacity);
+		return block;
+	}
+
+	private void removeFromNode(long node, long record) throws CoreException {
+		final long head= fDatabase.getRecPtr(node + HEAD);
+		for (long block= head; block != 0; block= fDatabase.getRecPtr(block + NEXT)) {
+			final int size= fDatabase.getShort(block + SIZE);
+			for (int i = 0; i < size; i++) {
+				if (fDatabase.getRecPtr(block + RECORDS + i * Database.PTR_SIZE) == record) {
+					// Replace the record with the last one of the head block.
+					final int headSize= fDatabase.getShort(head + SIZE) - 1;
+					final long last= fDatabase.getRecPtr(head + RECORDS + headSize * Database.PTR_SIZE);
+					fDatabase.putRecPtr(block + RECORDS + i * Database.PTR_SIZE, last);
+					if (headSize == 0) {
+						fDatabase.putRecPtr(node + HEAD, fDatabase.getRecPtr(head + NEXT));
+						fDatabase.free(head);
+					} else {
+						fDatabase.putShort(head + SIZE, (short) headSize);
+					}
+					fDatabase.putInt(node + COUNT, fDatabase.getInt(node + COUNT) - 1);
+					return;
+				}
+			}
+		}
+	}
+}
@@ -256,7 +256,7 @@ public class TypeMarshalBuffer implements ITypeMarshalBuffer {
 
 	private void putRecordPointer(long record) {
 		request(Database.PTR_SIZE);
-		Chunk.putRecPtr(record, fBuffer, fPos);
+		Chunk.putRecPtr(record, fLinkage.getDB().getPointerShift(), fBuffer, fPos);
 		fPos+= Database.PTR_SIZE;
 	}
 
@@ -267,7 +267,7 @@ public class TypeMarshalBuffer implements ITypeMarshalBuffer {
 			fPos= fBuffer.length;
 			throw unmarshallingError();
 		}
-		return Chunk.getRecPtr(fBuffer, pos);
+		return Chunk.getRecPtr(fBuffer, pos, fLinkage.getDB().getPointerShift());
 	}
 
 	public void putCharArray(char[] chars) {
@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.dom;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.eclipse.cdt.internal.core.pdom.db.Database;
+import org.eclipse.cdt.internal.core.pdom.db.ShortString;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Cache for the decoded data of the node records of a PDOM, keyed by the record. It keeps the
+ * node type, the parent record, the name and the signature hash of a node, such that repeated
+ * lookups do not need to decode the records from the chunks of the database.
+ * <p>
+ * The cache is bounded by the estimated memory used by its entries and split into segments with
+ * separate locks. Entries are removed when a node is created or deleted at their record, or when
+ * the name of the node changes. Threads reading from a snapshot of the database bypass the cache,
+ * the records may have been modified since the snapshot was opened.
+ */
+public final class BindingRecordCache {
+	private static final int SEGMENTS= 16;
+	/** Estimated size of an entry in bytes, excluding the name. */
+	private static final int ENTRY_SIZE= 96;
+
+	private static final class Entry {
+		final int fNodeType;
+		final long fParentRecord;
+		volatile char[] fName;
+		int fSignatureHash;
+		volatile boolean fHasSignatureHash;
+
+		Entry(int nodeType, long parentRecord) {
+			fNodeType= nodeType;
+			fParentRecord= parentRecord;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class Segment extends LinkedHashMap<Long, Entry> {
+		long fSize;
+		long fMaxSize;
+		long fHits;
+		long fMisses;
+
+		Segment(long maxSize) {
+			super(16, 0.75f, true);
+			fMaxSize= maxSize;
+		}
+
+		Entry add(Long key, Entry entry) {
+			final Entry other= get(key);
+			if (other != null)
+				return other;
+			put(key, entry);
+			fSize+= ENTRY_SIZE;
+			shrink();
+			return entry;
+		}
+
+		void addName(Entry entry, char[] name) {
+			if (entry.fName == null) {
+				entry.fName= name;
+				fSize+= name.length * 2;
+				shrink();
+			}
+		}
+
+		void removeEntry(Long key) {
+			final Entry entry= remove(key);
+			if (entry != null) {
+				fSize-= sizeOf(entry);
+			}
+		}
+
+		private void shrink() {
+			Iterator<Entry> it= values().iterator();
+			while (fSize > fMaxSize && it.hasNext()) {
+				fSize-= sizeOf(it.next());
+				it.remove();
+			}
+		}
+
+		private static long sizeOf(Entry entry) {
+			final char[] name= entry.fName;
+			return ENTRY_SIZE + (name == null ? 0 : name.length * 2);
+		}
+	}
+
+	private final Segment[] fSegments;
+
+	/**
+	 * Creates a cache using at most the given number of bytes.
+	 */
+	public BindingRecordCache(long maxSize) {
+		fSegments= new Segment[SEGMENTS];
+		for (int i = 0; i < fSegments.length; i++) {
+			fSegments[i]= new Segment(maxSize / SEGMENTS);
+		}
+	}
+
+	private Segment getSegment(long record) {
+		int h= (int) (record ^ (record >>> 32));
+		h^= (h >>> 20) ^ (h >>> 12);
+		h^= (h >>> 7) ^ (h >>> 4);
+		return fSegments[h & (SEGMENTS-1)];
+	}
+
+	private Entry getEntry(Database db, long record) throws CoreException {
+		if (db.hasSnapshot())
+			return new Entry(PDOMNode.getNodeType(db, record), PDOMNode.getParentNodeRec(db, record));
+
+		final Long key= record;
+		final Segment segment= getSegment(record);
+		synchronized (segment) {
+			Entry entry= segment.get(key);
+			if (entry != null) {
+				segment.fHits++;
+				return entry;
+			}
+			segment.fMisses++;
+		}
+		final Entry entry= new Entry(PDOMNode.getNodeType(db, record), PDOMNode.getParentNodeRec(db, record));
+		synchronized (segment) {
+			return segment.add(key, entry);
+		}
+	}
+
+	/**
+	 * Returns the node type stored in the given record.
+	 */
+	public int getNodeType(Database db, long record) throws CoreException {
+		return getEntry(db, record).fNodeType;
+	}
+
+	/**
+	 * Returns the record of the parent of the node stored in the given record.
+	 */
+	public long getParentNodeRec(Database db, long record) throws CoreException {
+		return getEntry(db, record).fParentRecord;
+	}
+
+	/**
+	 * Returns the name of the named node stored in the given record.
+	 */
+	public char[] getName(Database db, long record) throws CoreException {
+		final Entry entry= getEntry(db, record);
+		char[] name= entry.fName;
+		if (name == null) {
+			name= PDOMNamedNode.getDBName(db, record).getChars();
+			if (db.hasSnapshot())
+				return name;
+			final Segment segment= getSegment(record);
+			synchronized (segment) {
+				segment.addName(entry, name);
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Returns the signature hash of the given binding.
+	 */
+	public int getSignatureHash(IPDOMOverloader binding, long record) throws CoreException {
+		final Entry entry= getEntry(((PDOMNode) binding).getDB(), record);
+		if (!entry.fHasSignatureHash) {
+			entry.fSignatureHash= binding.getSignatureHash();
+			entry.fHasSignatureHash= true;
+		}
+		return entry.fSignatureHash;
+	}
+
+	/**
+	 * Compares the names stored in the given records, compatible with
+	 * {@link org.eclipse.cdt.internal.core.pdom.db.IString#compareCompatibleWithIgnoreCase(char[])}.
+	 */
+	public int compareNames(Database db, long record1, long record2) throws CoreException {
+		return compareCompatibleWithIgnoreCase(getName(db, record1), getName(db, record2));
+	}
+
+	/**
+	 * Compares the name stored in the given record with a name, compatible with
+	 * {@link org.eclipse.cdt.internal.core.pdom.db.IString#compareCompatibleWithIgnoreCase(char[])}.
+	 */
+	public int compareName(Database db, long record, char[] name) throws CoreException {
+		return compareCompatibleWithIgnoreCase(getName(db, record), name);
+	}
+
+	private static int compareCompatibleWithIgnoreCase(char[] chars1, char[] chars2) {
+		final int n= Math.min(chars1.length, chars2.length);
+		int sensitiveCmp= 0;
+		for (int i = 0; i < n; i++) {
+			final char c1= chars1[i];
+			final char c2= chars2[i];
+			if (c1 != c2) {
+				int cmp= ShortString.compareChars(c1, c2, false); // insensitive
+				if (cmp != 0)
+					return cmp;
+
+				if (sensitiveCmp == 0) {
+					sensitiveCmp= c1 < c2 ? -1 : 1;
+				}
+			}
+		}
+		if (chars1.length != chars2.length)
+			return chars1.length < chars2.length ? -1 : 1;
+		return sensitiveCmp;
+	}
+
+	/**
+	 * Removes the entry for the given record, must be called when the record is modified.
+	 */
+	public void remove(long record) {
+		final Segment segment= getSegment(record);
+		synchronized (segment) {
+			segment.removeEntry(record);
+		}
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public void clear() {
+		for (Segment segment : fSegments) {
+			synchronized (segment) {
+				segment.clear();
+				segment.fSize= 0;
+			}
+		}
+	}
+
+	public long getHits() {
+		long result= 0;
+		for (Segment segment : fSegments) {
+			result+= segment.fHits;
+		}
+		return result;
+	}
+
+	public long getMisses() {
+		long result= 0;
+		for (Segment segment : fSegments) {
+			result+= segment.fMisses;
+		}
+		return result;
+	}
+}
@@ -28,22 +28,22 @@ public class FindBinding {
 	public static class DefaultBindingBTreeComparator implements IBTreeComparator {
 		protected final PDOMLinkage linkage;
 		protected final Database database;
+		protected final BindingRecordCache cache;
 
 		public DefaultBindingBTreeComparator(PDOMLinkage linkage) {
 			this.linkage = linkage;
 			this.database= linkage.getDB();
+			this.cache= linkage.getPDOM().getRecordCache();
 		}
 
 		public int compare(long record1, long record2) throws CoreException {
-			IString nm1 = PDOMNamedNode.getDBName(database, record1);
-			IString nm2 = PDOMNamedNode.getDBName(database, record2);
-			int cmp= nm1.compareCompatibleWithIgnoreCase(nm2);
+			int cmp= cache.compareNames(database, record1, record2);
 			if (cmp == 0) {
 				long t1= PDOMBinding.getLocalToFileRec(database, record1);
 				long t2= PDOMBinding.getLocalToFileRec(database, record2);
 				if (t1 == t2) {
-					t1 = PDOMNode.getNodeType(database, record1);
-					t2 = PDOMNode.getNodeType(database, record2);
+					t1 = cache.getNodeType(database, record1);
+					t2 = cache.getNodeType(database, record2);
 				}
 				cmp= t1 < t2 ? -1 : (t1 > t2 ? 1 : 0);
 			}
@@ -68,8 +68,7 @@ public class FindBinding {
 		// IBTreeVisitor
 		public int compare(long record) throws CoreException {
 			final Database db = fLinkage.getDB();
-			IString nm1 = PDOMNamedNode.getDBName(db, record);
-			int cmp= nm1.compareCompatibleWithIgnoreCase(fName); 
+			int cmp= fLinkage.getPDOM().getRecordCache().compareName(db, record, fName);
 			if (cmp == 0) {
 				long t1= PDOMBinding.getLocalToFileRec(db, record);
 				long t2= fLocalToFile;
@@ -76,8 +76,13 @@ public class PDOMFile implements IIndexFragmentFile {
 	private static final int ENCODING_HASH= 44;
 	private static final int LAST_USING_DIRECTIVE= 48;
 	private static final int FIRST_MACRO_REFERENCE= 52;
+	private static final int INCLUDE_GUARD= 56;
+	private static final int FLAGS= 60;
+	private static final int RAW_CONTENTS_HASH= 61;
 
-	private static final int RECORD_SIZE= 56;
+	private static final int RECORD_SIZE= 69;
+
+	private static final int FLAG_PRAGMA_ONCE= 0x01;
 
 	public static class Comparator implements IBTreeComparator {
 		private Database db;
@@ -227,11 +232,105 @@ public class PDOMFile implements IIndexFragmentFile {
 		setTimestamp(sourceFile.getTimestamp());
 		setEncodingHashcode(sourceFile.getEncodingHashcode());
 		setContentsHash(sourceFile.getContentsHash());
+		setRawContentsHash(sourceFile.getRawContentsHash());
 		setScannerConfigurationHashcode(sourceFile.getScannerConfigurationHashcode());
+		setIncludeGuard(sourceFile.getIncludeGuard());
+		setPragmaOnceSemantics(sourceFile.hasPragmaOnceSemantics());
 
 		sourceFile.delete();
 	}
 
+	/**
+	 * Copies names, macros and includes from a file of another PDOM that is merged into the PDOM
+	 * of this file. The file must not have any content, yet. The bindings referenced by the names
+	 * are adapted to or added to the linkage of this file.
+	 * @param sourceFile the file of the merged PDOM.
+	 * @param includeTargets for each include of the source file, the file in this PDOM it resolves
+	 * to, or <code>null</code> if the include is unresolved.
+	 * @param contexts for each include of the source file, whether it is the context of its target.
+	 * @throws CoreException
+	 */
+	public void addContentsFrom(PDOMFile sourceFile, PDOMFile[] includeTargets, boolean[] contexts)
+			throws CoreException {
+		assert getFirstInclude() == null;
+		assert getFirstMacro() == null;
+		assert getFirstName() == null;
+		final PDOMLinkage linkage= getLinkage();
+
+		// Copy the includes
+		PDOMInclude lastInclude= null;
+		int i= 0;
+		for (PDOMInclude include= sourceFile.getFirstInclude(); include != null; include= include.getNextInIncludes(), i++) {
+			final PDOMFile targetFile= includeTargets[i];
+			PDOMInclude pdomInclude= new PDOMInclude(linkage, include, this, targetFile);
+			if (targetFile != null) {
+				targetFile.addIncludedBy(pdomInclude, contexts[i]);
+			}
+			if (lastInclude == null) {
+				setFirstInclude(pdomInclude);
+			} else {
+				lastInclude.setNextInIncludes(pdomInclude);
+			}
+			lastInclude= pdomInclude;
+		}
+
+		// Copy the macros
+		PDOMMacro lastMacro= null;
+		for (PDOMMacro macro= sourceFile.getFirstMacro(); macro != null; macro= macro.getNextMacro()) {
+			PDOMMacroContainer container= linkage.getMacroContainer(macro.getNameCharArray());
+			PDOMMacro pdomMacro= new PDOMMacro(linkage, container, macro, this);
+			if (lastMacro == null) {
+				setFirstMacro(pdomMacro);
+			} else {
+				lastMacro.setNextMacro(pdomMacro);
+			}
+			lastMacro= pdomMacro;
+		}
+
+		// Copy the names, a caller always precedes the names it encloses.
+		HashMap<Long, PDOMName> nameCache= new HashMap<Long, PDOMName>();
+		PDOMName lastName= null;
+		for (PDOMName name= sourceFile.getFirstName(); name != null; name= name.getNextInFile()) {
+			PDOMBinding binding= linkage.addMergedBinding(name.getBinding(), name.isDefinition());
+			if (binding == null)
+				continue;
+
+			PDOMName caller= nameCache.get(name.getEnclosingDefinitionRecord());
+			PDOMName pdomName= new PDOMName(linkage, name, this, binding, caller);
+			linkage.onMergeName(this, name, pdomName);
+			nameCache.put(name.getRecord(), pdomName);
+			if (lastName == null) {
+				setFirstName(pdomName);
+			} else {
+				lastName.setNextInFile(pdomName);
+			}
+			lastName= pdomName;
+		}
+
+		// Copy the macro references
+		PDOMMacroReferenceName lastMacroName= null;
+		for (PDOMMacroReferenceName name= sourceFile.getFirstMacroReference(); name != null; name= name.getNextInFile()) {
+			PDOMMacroContainer container= linkage.getMacroContainer(name.getContainer().getNameCharArray());
+			PDOMMacroReferenceName macroName= new PDOMMacroReferenceName(linkage, name, this, container);
+			if (lastMacroName == null) {
+				setFirstMacroReference(macroName);
+			} else {
+				lastMacroName.setNextInFile(macroName);
+			}
+			lastMacroName= macroName;
+		}
+
+		linkage.onMergeFile(this, sourceFile);
+
+		setTimestamp(sourceFile.getTimestamp());
+		setEncodingHashcode(sourceFile.getEncodingHashcode());
+		setContentsHash(sourceFile.getContentsHash());
+		setRawContentsHash(sourceFile.getRawContentsHash());
+		setScannerConfigurationHashcode(sourceFile.getScannerConfigurationHashcode());
+		setIncludeGuard(sourceFile.getIncludeGuard());
+		setPragmaOnceSemantics(sourceFile.hasPragmaOnceSemantics());
+	}
+
 	/**
 	 * This method should not be called on PDOMFile objects that are referenced by the file index.
 	 * @param location a new location
@@ -286,6 +385,16 @@ public class PDOMFile implements IIndexFragmentFile {
 		db.putLong(record + CONTENT_HASH, hash);
 	}
 
+	public long getRawContentsHash() throws CoreException {
+		Database db = fLinkage.getDB();
+		return db.getLong(record + RAW_CONTENTS_HASH);
+	}
+
+	public void setRawContentsHash(long hash) throws CoreException {
+		Database db= fLinkage.getDB();
+		db.putLong(record + RAW_CONTENTS_HASH, hash);
+	}
+
 	public int getScannerConfigurationHashcode() throws CoreException {
 		Database db = fLinkage.getDB();
 		return db.getInt(record + SCANNER_CONFIG_HASH);
@@ -306,6 +415,30 @@ public class PDOMFile implements IIndexFragmentFile {
 		db.putInt(record + ENCODING_HASH, hashcode);
 	}
 
+	public char[] getIncludeGuard() throws CoreException {
+		Database db = fLinkage.getDB();
+		long rec = db.getRecPtr(record + INCLUDE_GUARD);
+		return rec != 0 ? db.getString(rec).getChars() : null;
+	}
+
+	public void setIncludeGuard(char[] macroName) throws CoreException {
+		Database db= fLinkage.getDB();
+		long oldRecord = db.getRecPtr(record + INCLUDE_GUARD);
+		if (oldRecord != 0)
+			db.getString(oldRecord).delete();
+		db.putRecPtr(record + INCLUDE_GUARD, macroName != null ? db.newString(macroName).getRecord() : 0);
+	}
+
+	public boolean hasPragmaOnceSemantics() throws CoreException {
+		Database db = fLinkage.getDB();
+		return (db.getByte(record + FLAGS) & FLAG_PRAGMA_ONCE) != 0;
+	}
+
+	public void setPragmaOnceSemantics(boolean value) throws CoreException {
+		Database db= fLinkage.getDB();
+		db.putByte(record + FLAGS, (byte) (value ? FLAG_PRAGMA_ONCE : 0));
+	}
+
 	private PDOMName getFirstName() throws CoreException {
 		long namerec = fLinkage.getDB().getRecPtr(record + FIRST_NAME);
 		return namerec != 0 ? new PDOMName(fLinkage, namerec) : null;
@@ -515,6 +648,8 @@ public class PDOMFile implements IIndexFragmentFile {
 			m.delete();
 		}
 		setFirstMacroReference(null);
+		setIncludeGuard(null);
+		setPragmaOnceSemantics(false);
 
 		setTimestamp(-1);
 	}
@@ -529,6 +664,9 @@ public class PDOMFile implements IIndexFragmentFile {
 		long locRecord = db.getRecPtr(record + LOCATION_REPRESENTATION);
 		if (locRecord != 0)
 			db.getString(locRecord).delete();
+		long guardRecord = db.getRecPtr(record + INCLUDE_GUARD);
+		if (guardRecord != 0)
+			db.getString(guardRecord).delete();
 
 		db.free(record);
 	}
@@ -89,6 +89,32 @@ public class PDOMInclude implements IIndexFragmentInclude {
 		setIncludedBy(containerFile);
 	}
 
+	/**
+	 * Creates a copy of an include of another PDOM, which is merged into the one of the linkage.
+	 */
+	public PDOMInclude(PDOMLinkage linkage, PDOMInclude include, PDOMFile containerFile, PDOMFile targetFile)
+			throws CoreException {
+		this.linkage = linkage;
+		this.record = linkage.getDB().malloc(RECORD_SIZE);
+
+		final Database db = linkage.getDB();
+		db.put3ByteUnsignedInt(record + NODE_OFFSET, include.getNameOffset());
+		db.putShort(record + NODE_LENGTH, (short) include.getNameLength());
+		if (targetFile != null) {
+			db.putRecPtr(record + INCLUDED_FILE, targetFile.getRecord());
+		}
+		int flags= include.getFlag();
+		if ((flags & FLAG_DEDUCIBLE_NAME) != 0 && targetFile != null) {
+			// The target file has the same location, the name remains deducible.
+			db.putInt(record + INCLUDE_NAME_OR_LENGTH, include.getFullName().length());
+		} else {
+			db.putRecPtr(record + INCLUDE_NAME_OR_LENGTH, db.newString(include.getFullName()).getRecord());
+			flags &= ~FLAG_DEDUCIBLE_NAME;
+		}
+		setFlag((byte) flags);
+		setIncludedBy(containerFile);
+	}
+
 	private byte encodeFlags(IASTPreprocessorIncludeStatement include, boolean deducible_name) {
 		byte flags= 0;
 		if (include.isSystemInclude()) {
@@ -46,6 +46,7 @@ import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeComparator;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
 import org.eclipse.cdt.internal.core.pdom.db.IString;
+import org.eclipse.cdt.internal.core.pdom.db.TrigramIndex;
 import org.eclipse.cdt.internal.core.pdom.db.TypeMarshalBuffer;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -62,9 +63,10 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 	private static final int INDEX_OFFSET = PDOMNamedNode.RECORD_SIZE + 8;
 	private static final int NESTED_BINDINGS_INDEX = PDOMNamedNode.RECORD_SIZE + 12;
 	private static final int MACRO_BTREE = PDOMNamedNode.RECORD_SIZE + 16;
+	private static final int NAME_INDEX = PDOMNamedNode.RECORD_SIZE + 20;
 
 	@SuppressWarnings("hiding")
-	protected static final int RECORD_SIZE = PDOMNamedNode.RECORD_SIZE + 20;
+	protected static final int RECORD_SIZE = PDOMNamedNode.RECORD_SIZE + 24;
 	protected static final long[] FILE_LOCAL_REC_DUMMY = new long[]{0};
 
 	// node types
@@ -141,6 +143,14 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 		return new BTree(fDatabase, record + NESTED_BINDINGS_INDEX, getNestedBindingsComparator());
 	}
 
+	/**
+	 * Returns the index of the trigrams of the names of all bindings in this linkage. The index
+	 * is used to find the candidates for searches with regular expressions.
+	 */
+	public TrigramIndex getNameIndex() {
+		return new TrigramIndex(fDatabase, record + NAME_INDEX);
+	}
+
 	@Override
 	public void accept(final IPDOMVisitor visitor) throws CoreException {
 		if (visitor instanceof IBTreeVisitor) {
@@ -180,7 +190,7 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 		if (record == 0) {
 			return null;
 		}
-		final int nodeType= PDOMNode.getNodeType(fDatabase, record);
+		final int nodeType= fPDOM.getRecordCache().getNodeType(fDatabase, record);
 		switch (nodeType) {
 		case LINKAGE:
 			return null;
@@ -202,7 +212,8 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 		}
 		if (inputBinding instanceof PDOMBinding) {
 			PDOMBinding pdomBinding = (PDOMBinding) inputBinding;
-			if (pdomBinding.getPDOM() != getPDOM() && pdomBinding.isFileLocal()) {
+			if (pdomBinding.getPDOM() != getPDOM() && pdomBinding.isFileLocal()
+					&& !isFromMergedPDOM(pdomBinding)) {
 				return true;
 			}
 		}
@@ -222,13 +233,35 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 	public abstract PDOMBinding adaptBinding(IBinding binding) throws CoreException;
 	public abstract PDOMBinding addBinding(IASTName name) throws CoreException;
 
+	/**
+	 * Adds or returns the binding of this linkage for a binding of a PDOM that is merged into the
+	 * one of this linkage. Returns <code>null</code> if the binding cannot be added.
+	 * @param binding a binding of the PDOM that is merged.
+	 * @param isDefinition whether the binding is added on behalf of a definition, in which case an
+	 * existing binding is updated.
+	 */
+	public PDOMBinding addMergedBinding(PDOMBinding binding, boolean isDefinition) throws CoreException {
+		return null;
+	}
+
+	/**
+	 * Returns whether the given binding belongs to the PDOM that is currently merged into the one
+	 * of this linkage. File-local bindings of such a PDOM can be adapted, they become local to the
+	 * corresponding file of this PDOM.
+	 */
+	protected final boolean isFromMergedPDOM(IBinding binding) {
+		return binding instanceof PDOMBinding && fPDOM instanceof WritablePDOM
+				&& ((WritablePDOM) fPDOM).isMergedPDOM(((PDOMBinding) binding).getPDOM());
+	}
+
 	final protected long getLocalToFileRec(PDOMNode parent, IBinding binding, PDOMBinding glob) throws CoreException {
 		long rec= 0;
 		if (parent instanceof PDOMBinding) {
 			rec= ((PDOMBinding) parent).getLocalToFileRec();
 		}
 		if (rec == 0) {
-			PDOMFile file= getLocalToFile(binding, glob);
+			PDOMFile file= isFromMergedPDOM(binding) ?
+					getMergedLocalToFile((PDOMBinding) binding) : getLocalToFile(binding, glob);
 			if (file != null) {
 				rec= file.getRecord();
 			}
@@ -236,6 +269,35 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 		return rec;
 	}
 
+	/**
+	 * Records a binding that has been created for the given one, when the latter is from the PDOM
+	 * that is merged into the one of this linkage.
+	 */
+	protected final void onCreateBinding(IBinding binding, PDOMBinding pdomBinding) {
+		if (isFromMergedPDOM(binding)) {
+			((WritablePDOM) fPDOM).setCreatedByMerge(pdomBinding);
+		}
+	}
+
+	/**
+	 * Returns whether an existing binding needs to be updated with the properties of a binding of
+	 * the PDOM that is merged into the one of this linkage. Bindings that have been created during
+	 * the current merge are copies of the merged ones already. An update would re-create nested
+	 * template parameters, which may be referenced by names copied before.
+	 */
+	protected final boolean shouldUpdateFromMergedBinding(PDOMBinding pdomBinding, boolean isDefinition)
+			throws CoreException {
+		return isDefinition && !pdomBinding.hasDefinition()
+				&& !((WritablePDOM) fPDOM).isCreatedByMerge(pdomBinding);
+	}
+
+	private PDOMFile getMergedLocalToFile(PDOMBinding binding) throws CoreException {
+		PDOMFile file= binding.getLocalToFile();
+		if (file == null)
+			return null;
+		return (PDOMFile) ((WritablePDOM) fPDOM).addFile(getLinkageID(), file.getLocation());
+	}
+
 	protected PDOMFile getLocalToFile(IBinding binding, PDOMBinding glob) throws CoreException {
 		if (fPDOM instanceof WritablePDOM) {
 			final WritablePDOM wpdom= (WritablePDOM) fPDOM;
@@ -299,6 +361,26 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 	public void onDeleteName(PDOMName name) throws CoreException {
 	}
 
+	/**
+	 * Call-back informing the linkage that a name has been copied from a PDOM that is merged
+	 * into the one of this linkage. This is used to do the additional processing done in
+	 * {@link #onCreateName(PDOMFile, IASTName, PDOMName)}.
+	 * @param file the file the name has been added to
+	 * @param sourceName the name of the PDOM that is merged
+	 * @param pdomName the name that was inserted into the linkage
+	 */
+	public void onMergeName(PDOMFile file, PDOMName sourceName, PDOMName pdomName) throws CoreException {
+	}
+
+	/**
+	 * Call-back informing the linkage that the content of a file has been copied from a PDOM that
+	 * is merged into the one of this linkage. Used to copy the using directives of the file.
+	 * @param file the file the content has been copied to
+	 * @param sourceFile the file of the PDOM that is merged
+	 */
+	public void onMergeFile(PDOMFile file, PDOMFile sourceFile) throws CoreException {
+	}
+
 	/**
 	 * Callback informing the linkage that a binding has been added. Used to index nested bindings.
 	 * @param pdomBinding
@@ -311,6 +393,16 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 		}
 	}
 
+	/**
+	 * Callback informing the linkage that a binding has been added. Used to index the names
+	 * of all bindings.
+	 * @param pdomBinding
+	 * @throws CoreException
+	 */
+	protected final void insertIntoNameIndex(PDOMBinding pdomBinding) throws CoreException {
+		getNameIndex().insert(pdomBinding.getNameCharArray(), pdomBinding.getRecord());
+	}
+
 	/**
 	 * Call-back informing the linkage that a binding is about to be removed. Used to index nested bindings.
 	 * @param pdomBinding
@@ -321,6 +413,7 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 		if (pdomBinding.getParentNodeRec() != record) {
 			getNestedBindingsIndex().delete(pdomBinding.getRecord());
 		}
+		getNameIndex().remove(pdomBinding.getNameCharArray(), pdomBinding.getRecord());
 	}
 
 	public ICPPUsingDirective[] getUsingDirectives(PDOMFile file) throws CoreException {
@@ -98,18 +98,41 @@ public class PDOMMacro implements IIndexMacro, IPDOMBinding, IASTFileLocation {
 		this(linkage, container, file, undef.getMacroName());
 	}
 
+	/**
+	 * Creates a copy of a macro of another PDOM, which is merged into the one of the linkage.
+	 */
+	public PDOMMacro(PDOMLinkage linkage, PDOMMacroContainer container, PDOMMacro macro, PDOMFile file)
+			throws CoreException {
+		this(linkage, container, file, macro.getNodeOffset(), macro.getNodeLength());
+
+		final Database db= linkage.getDB();
+		final IString expansion= macro.getExpansionInDB();
+		if (expansion != null) {
+			db.putRecPtr(fRecord + EXPANSION, db.newString(expansion.getChars()).getRecord());
+		}
+		final IString params= macro.getParamListInDB();
+		if (params != null) {
+			db.putRecPtr(fRecord + PARAMETERS, db.newString(params.getChars()).getRecord());
+		}
+	}
+
 	private PDOMMacro(PDOMLinkage linkage, PDOMMacroContainer container, PDOMFile file, IASTName name)
 			throws CoreException {
+		this(linkage, container, file, name.getFileLocation().getNodeOffset(),
+				name.getFileLocation().getNodeLength());
+	}
+
+	private PDOMMacro(PDOMLinkage linkage, PDOMMacroContainer container, PDOMFile file, int nameOffset,
+			int nameLength) throws CoreException {
 		final Database db= linkage.getDB();
 		fLinkage = linkage;
 		fRecord = db.malloc(RECORD_SIZE);
 		fContainer= container;
 
-		final IASTFileLocation fileloc = name.getFileLocation();
 		db.putRecPtr(fRecord + CONTAINER, container.getRecord());
 		db.putRecPtr(fRecord + FILE, file.getRecord());
-		db.putInt(fRecord + NAME_OFFSET, fileloc.getNodeOffset());
-		db.putShort(fRecord + NAME_LENGTH, (short) fileloc.getNodeLength());
+		db.putInt(fRecord + NAME_OFFSET, nameOffset);
+		db.putShort(fRecord + NAME_LENGTH, (short) nameLength);
 
 		container.addDefinition(this);
 	}
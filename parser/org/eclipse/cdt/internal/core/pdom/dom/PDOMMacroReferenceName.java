@@ -60,6 +60,22 @@ public final class PDOMMacroReferenceName implements IIndexFragmentName, IASTFil
 		container.addReference(this);
 	}
 
+	/**
+	 * Creates a copy of a macro reference of another PDOM, which is merged into the one of the linkage.
+	 */
+	public PDOMMacroReferenceName(PDOMLinkage linkage, PDOMMacroReferenceName sourceName, PDOMFile file,
+			PDOMMacroContainer container) throws CoreException {
+		this.linkage = linkage;
+		Database db = linkage.getDB();
+		record = db.malloc(RECORD_SIZE);
+
+		db.putRecPtr(record + CONTAINER_REC_OFFSET, container.getRecord());
+		db.putRecPtr(record + FILE_REC_OFFSET, file.getRecord());
+		db.putInt(record + NODE_OFFSET_OFFSET, sourceName.getNodeOffset());
+		db.putShort(record + NODE_LENGTH_OFFSET, (short) sourceName.getNodeLength());
+		container.addReference(this);
+	}
+
 	public PDOMMacroReferenceName(PDOMLinkage linkage, long nameRecord) {
 		this.linkage = linkage;
 		this.record = nameRecord;
@@ -96,6 +96,39 @@ public final class PDOMName implements IIndexFragmentName, IASTFileLocation {
 		db.putShort(record + NODE_LENGTH_OFFSET, (short) fileloc.getNodeLength());
 	}
 
+	/**
+	 * Creates a copy of a name of another PDOM, which is merged into the one of the linkage.
+	 */
+	public PDOMName(PDOMLinkage linkage, PDOMName sourceName, PDOMFile file, PDOMBinding binding, PDOMName caller)
+			throws CoreException {
+		this.linkage = linkage;
+		Database db = linkage.getDB();
+		record = db.malloc(RECORD_SIZE);
+
+		final int flags= sourceName.getFlags(0xff);
+		db.putByte(record + FLAGS, (byte) flags);
+
+		switch (flags & DECL_DEF_REF_MASK) {
+		case IS_DEFINITION:
+			binding.addDefinition(this);
+			break;
+		case IS_DECLARATION:
+			binding.addDeclaration(this);
+			break;
+		case IS_REFERENCE:
+			binding.addReference(this);
+			break;
+		}
+
+		db.putRecPtr(record + BINDING_REC_OFFSET, binding.getRecord());
+		db.putRecPtr(record + FILE_REC_OFFSET, file.getRecord());
+		if (caller != null) {
+			db.putRecPtr(record + CALLER_REC_OFFSET, caller.getRecord());
+		}
+		db.put3ByteUnsignedInt(record + NODE_OFFSET_OFFSET, sourceName.getNodeOffset());
+		db.putShort(record + NODE_LENGTH_OFFSET, (short) sourceName.getNodeLength());
+	}
+
 	private int getRoleOfName(IASTName name) {
 		if (name.isDefinition()) {
 			return IS_DEFINITION;
@@ -77,7 +77,7 @@ public abstract class PDOMNamedNode extends PDOMNode {
 		if (fName != null)
 			return fName;
 		
-		return fName= getDBName().getChars();
+		return fName= getPDOM().getRecordCache().getName(getDB(), record);
 	}
 	
 	public boolean hasName(char[] name) throws CoreException {
@@ -100,6 +100,7 @@ public abstract class PDOMNamedNode extends PDOMNode {
 			name.delete();
 			final Database db= getDB();
 			db.putRecPtr(record + NAME, db.newString(nameCharArray).getRecord());
+			getPDOM().getRecordCache().remove(record);
 		}
 		fName= nameCharArray;
 	}
@@ -54,6 +54,9 @@ public abstract class PDOMNode implements IInternalPDOMNode {
 		this.fLinkage = linkage;
 
 		record = db.malloc(getRecordSize());
+		if (linkage != null) {
+			linkage.getPDOM().getRecordCache().remove(record);
+		}
 		db.putInt(record + TYPE, getNodeType());
 		
 		cachedParentRecord = parentRec;
@@ -122,11 +125,18 @@ public abstract class PDOMNode implements IInternalPDOMNode {
 		return db.getInt(record + TYPE);
 	}
 	
+	public static long getParentNodeRec(Database db, long record) throws CoreException {
+		return db.getRecPtr(record + PARENT);
+	}
+
 	public long getParentNodeRec() throws CoreException {
 		if (cachedParentRecord != 0) {
 			return cachedParentRecord;
 		}
-		return cachedParentRecord= getDB().getRecPtr(record + PARENT);
+		if (fLinkage == null) {
+			return cachedParentRecord= getParentNodeRec(getDB(), record);
+		}
+		return cachedParentRecord= getPDOM().getRecordCache().getParentNodeRec(getDB(), record);
 	}
 	
 	public PDOMNode getParentNode() throws CoreException {
@@ -169,6 +179,7 @@ public abstract class PDOMNode implements IInternalPDOMNode {
 	 * @throws CoreException 
 	 */
 	public void delete(PDOMLinkage linkage) throws CoreException {
+		getPDOM().getRecordCache().remove(record);
 		getDB().free(record);
 	}
 }
\ No newline at end of file
@@ -94,6 +94,7 @@ class PDOMCLinkage extends PDOMLinkage implements IIndexCBindingConstants {
 				pdomBinding = createBinding(parent, binding, localToFileHolder[0]);
 				if (pdomBinding != null) {
 					getPDOM().putCachedResult(inputBinding, pdomBinding);
+					onCreateBinding(inputBinding, pdomBinding);
 				}
 				return pdomBinding;
 			}
@@ -142,6 +143,7 @@ class PDOMCLinkage extends PDOMLinkage implements IIndexCBindingConstants {
 			pdomBinding.setLocalToFileRec(localToFile);
 			parent.addChild(pdomBinding);
 			insertIntoNestedBindingsIndex(pdomBinding);
+			insertIntoNameIndex(pdomBinding);
 		}
 		return pdomBinding;
 	}
@@ -159,6 +161,18 @@ class PDOMCLinkage extends PDOMLinkage implements IIndexCBindingConstants {
 		return false;
 	}
 
+	@Override
+	public PDOMBinding addMergedBinding(PDOMBinding binding, boolean isDefinition) throws CoreException {
+		PDOMBinding pdomBinding= adaptBinding(binding);
+		if (pdomBinding == null)
+			return addBinding(binding, null);
+
+		if (shouldUpdateFromMergedBinding(pdomBinding, isDefinition)) {
+			pdomBinding.update(this, binding);
+		}
+		return pdomBinding;
+	}
+
 	@Override
 	public PDOMBinding addBinding(IASTName name) throws CoreException {
 		if (name == null)
@@ -208,7 +222,7 @@ class PDOMCLinkage extends PDOMLinkage implements IIndexCBindingConstants {
 	final private PDOMNode getAdaptedParent(IBinding binding) throws CoreException {
 		if (binding instanceof IIndexBinding) {
 			IIndexBinding ib= (IIndexBinding) binding;
-			if (ib.isFileLocal()) {
+			if (ib.isFileLocal() && !isFromMergedPDOM(ib)) {
 				return null;
 			}
 		} 
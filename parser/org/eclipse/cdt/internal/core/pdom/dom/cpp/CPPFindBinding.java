@@ -15,6 +15,7 @@ import org.eclipse.cdt.core.dom.ast.DOMException;
 import org.eclipse.cdt.core.dom.ast.IBinding;
 import org.eclipse.cdt.internal.core.index.IndexCPPSignatureUtil;
 import org.eclipse.cdt.internal.core.pdom.db.BTree;
+import org.eclipse.cdt.internal.core.pdom.dom.BindingRecordCache;
 import org.eclipse.cdt.internal.core.pdom.dom.FindBinding;
 import org.eclipse.cdt.internal.core.pdom.dom.IPDOMOverloader;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMBinding;
@@ -41,8 +42,8 @@ public class CPPFindBinding extends FindBinding {
 				PDOMBinding binding1 = linkage.getBinding(record1);
 				PDOMBinding binding2 = linkage.getBinding(record2);
 				if (binding1 instanceof IPDOMOverloader && binding2 instanceof IPDOMOverloader) {
-					int ty1 = ((IPDOMOverloader) binding1).getSignatureHash();
-					int ty2 = ((IPDOMOverloader) binding2).getSignatureHash();
+					int ty1 = cache.getSignatureHash((IPDOMOverloader) binding1, record1);
+					int ty2 = cache.getSignatureHash((IPDOMOverloader) binding2, record2);
 					cmp = ty1 < ty2 ? -1 : (ty1 > ty2 ? 1 : 0);
 				}
 			}
@@ -63,12 +64,13 @@ public class CPPFindBinding extends FindBinding {
 		public int compare(long record) throws CoreException {
 			int cmp= super.compare(record);
 			if (cmp == 0) {
-				int c1 = PDOMNode.getNodeType(fLinkage.getDB(), record);
+				final BindingRecordCache cache= fLinkage.getPDOM().getRecordCache();
+				int c1 = cache.getNodeType(fLinkage.getDB(), record);
 				int c2= fConstant;
 				if (c1 == c2) {
 					PDOMBinding binding = fLinkage.getBinding(record);
 					if (binding instanceof IPDOMOverloader) {
-						c1 = ((IPDOMOverloader) binding).getSignatureHash();
+						c1 = cache.getSignatureHash((IPDOMOverloader) binding, record);
 						c2= fSigHash;
 					}
 				}
@@ -39,6 +39,7 @@ import org.eclipse.cdt.core.dom.ast.cpp.ICPPASTFunctionDeclarator;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPASTNamespaceDefinition;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPASTQualifiedName;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPASTUsingDirective;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPBase;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPClassScope;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPClassTemplate;
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPClassTemplatePartialSpecialization;
@@ -243,6 +244,24 @@ class PDOMCPPLinkage extends PDOMLinkage implements IIndexCPPBindingConstants {
 		return addBinding(binding, null);
 	}
 
+	@Override
+	public PDOMBinding addMergedBinding(PDOMBinding binding, boolean isDefinition) throws CoreException {
+		PDOMBinding pdomBinding= adaptBinding(binding);
+		if (pdomBinding == null) {
+			pdomBinding= addBinding(binding, null);
+		} else if (!(pdomBinding instanceof ICPPTemplateParameter)
+				&& shouldUpdateFromMergedBinding(pdomBinding, isDefinition)) {
+			pdomBinding.update(this, binding);
+		}
+		if (isDefinition && binding instanceof ICPPClassType) {
+			if (pdomBinding instanceof PDOMCPPClassType || pdomBinding instanceof PDOMCPPClassSpecialization) {
+				addImplicitMethods(pdomBinding, (ICPPClassType) binding);
+			}
+		}
+		handlePostProcesses();
+		return pdomBinding;
+	}
+
 	/**
 	 * Adds or returns existing binding for the given one. If <code>fromName</code> is not <code>null</code>
 	 * then an existing binding is updated with the properties of the name.
@@ -276,6 +295,7 @@ class PDOMCPPLinkage extends PDOMLinkage implements IIndexCPPBindingConstants {
 					pdomBinding = createBinding(parent, binding, fileLocalRec[0]);
 					if (pdomBinding != null) {
 						getPDOM().putCachedResult(inputBinding, pdomBinding);
+						onCreateBinding(inputBinding, pdomBinding);
 						if (inputBinding instanceof CPPClosureType) {
 							addImplicitMethods(pdomBinding, (ICPPClassType) binding);
 						}
@@ -404,6 +424,7 @@ class PDOMCPPLinkage extends PDOMLinkage implements IIndexCPPBindingConstants {
 			if (parent != this && parent2 != this) {
 				insertIntoNestedBindingsIndex(pdomBinding);
 			}
+			insertIntoNameIndex(pdomBinding);
 		}
 		
 		return pdomBinding;
@@ -703,7 +724,7 @@ class PDOMCPPLinkage extends PDOMLinkage implements IIndexCPPBindingConstants {
 		if (binding instanceof IIndexBinding) {
 			IIndexBinding ib= (IIndexBinding) binding;
 			// don't adapt file local bindings from other fragments to this one.
-			if (ib.isFileLocal()) {
+			if (ib.isFileLocal() && !isFromMergedPDOM(ib)) {
 				return null;
 			}
 		} else {
@@ -922,6 +943,82 @@ class PDOMCPPLinkage extends PDOMLinkage implements IIndexCPPBindingConstants {
 		}
 	}
 
+	@Override
+	public void onMergeName(PDOMFile file, PDOMName sourceName, PDOMName pdomName) throws CoreException {
+		super.onMergeName(file, sourceName, pdomName);
+
+		if (sourceName.isBaseSpecifier()) {
+			PDOMName sourceClassName= (PDOMName) sourceName.getEnclosingDefinition();
+			PDOMName derivedClassName= (PDOMName) pdomName.getEnclosingDefinition();
+			if (sourceClassName != null && derivedClassName != null) {
+				PDOMCPPBase sourceBase= findBase(sourceClassName.getBinding(), sourceName);
+				PDOMBinding derivedClassBinding= derivedClassName.getBinding();
+				if (sourceBase != null) {
+					PDOMCPPBase pdomBase= new PDOMCPPBase(this, pdomName, sourceBase.isVirtual(),
+							sourceBase.getVisibility());
+					if (derivedClassBinding instanceof PDOMCPPClassType) {
+						((PDOMCPPClassType) derivedClassBinding).addBase(pdomBase);
+					} else if (derivedClassBinding instanceof PDOMCPPClassSpecialization) {
+						((PDOMCPPClassSpecialization) derivedClassBinding).addBase(pdomBase);
+					} else {
+						pdomBase.delete();
+					}
+				}
+			}
+		} else if (sourceName.isFriendSpecifier()) {
+			PDOMName enclClassName = (PDOMName) pdomName.getEnclosingDefinition();
+			if (enclClassName != null) {
+				PDOMBinding enclClassBinding = enclClassName.getBinding();
+				if (enclClassBinding instanceof PDOMCPPClassType) {
+					((PDOMCPPClassType) enclClassBinding).addFriend(new PDOMCPPFriend(this, pdomName));
+				}
+			}
+		}
+	}
+
+	private PDOMCPPBase findBase(PDOMBinding classBinding, PDOMName specifierName) throws CoreException {
+		if (classBinding instanceof ICPPClassType) {
+			for (ICPPBase base : ((ICPPClassType) classBinding).getBases()) {
+				if (base instanceof PDOMCPPBase) {
+					PDOMName name= ((PDOMCPPBase) base).getBaseClassSpecifierName();
+					if (name != null && name.getRecord() == specifierName.getRecord()) {
+						return (PDOMCPPBase) base;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void onMergeFile(PDOMFile file, PDOMFile sourceFile) throws CoreException {
+		super.onMergeFile(file, sourceFile);
+
+		for (ICPPUsingDirective directive : sourceFile.getUsingDirectives()) {
+			if (!(directive instanceof PDOMCPPUsingDirective))
+				continue;
+			PDOMCPPUsingDirective ud= (PDOMCPPUsingDirective) directive;
+			IScope nominated= ud.getNominatedScope();
+			if (!(nominated instanceof PDOMBinding))
+				continue;
+			PDOMBinding nominatedBinding= addMergedBinding((PDOMBinding) nominated, false);
+			if (nominatedBinding == null)
+				continue;
+
+			PDOMCPPNamespace containerNS= null;
+			IScope container= ud.getContainingScope();
+			if (container instanceof PDOMBinding) {
+				PDOMBinding binding= addMergedBinding((PDOMBinding) container, false);
+				if (!(binding instanceof PDOMCPPNamespace))
+					continue;
+				containerNS= (PDOMCPPNamespace) binding;
+			}
+			PDOMCPPUsingDirective pdomUD= new PDOMCPPUsingDirective(this, file.getLastUsingDirectiveRec(),
+					containerNS, nominatedBinding, ud.getPointOfDeclaration());
+			file.setFirstUsingDirectiveRec(pdomUD.getRecord());
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipse.cdt.internal.core.pdom.dom.PDOMLinkage#getUsingDirectives()
 	 */
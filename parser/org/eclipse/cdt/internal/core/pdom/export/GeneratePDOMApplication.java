@@ -13,6 +13,8 @@ package org.eclipse.cdt.internal.core.pdom.export;
 
 import java.io.File;
 import java.io.PrintStream;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,8 +24,14 @@ import com.ibm.icu.text.MessageFormat;
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.dom.IPDOMIndexerTask;
 import org.eclipse.cdt.core.dom.IPDOMManager;
+import org.eclipse.cdt.core.index.IIndexFileLocation;
+import org.eclipse.cdt.core.index.IIndexLocationConverter;
 import org.eclipse.cdt.core.index.export.ExternalExportProjectProvider;
 import org.eclipse.cdt.core.index.export.IExportProjectProvider;
+import org.eclipse.cdt.core.model.LanguageManager;
+import org.eclipse.cdt.internal.core.index.IndexFileLocation;
+import org.eclipse.cdt.internal.core.pdom.PDOMMerger;
+import org.eclipse.cdt.internal.core.pdom.WritablePDOM;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IExtension;
@@ -49,6 +57,7 @@ public class GeneratePDOMApplication implements IApplication {
 	public static final String OPT_TARGET= "-target"; //$NON-NLS-1$
 	public static final String OPT_QUIET= "-quiet"; //$NON-NLS-1$
 	public static final String OPT_INDEXER_ID= "-indexer"; //$NON-NLS-1$
+	public static final String OPT_MERGE= "-merge"; //$NON-NLS-1$
 
 	/**
 	 * Applications needing to fail in an expected way (without stack dump), should throw
@@ -82,6 +91,10 @@ public class GeneratePDOMApplication implements IApplication {
 		Map<String,List<String>> arguments= CLIUtil.parseToMap(appArgs);
 		output(Messages.GeneratePDOMApplication_Initializing);
 
+		if (arguments.containsKey(OPT_MERGE)) {
+			return merge(arguments);
+		}
+
 		setupCLIProgressProvider();
 
 		String pproviderFQN;
@@ -139,6 +152,50 @@ public class GeneratePDOMApplication implements IApplication {
 		return null;
 	}
 
+	/**
+	 * Merges the index fragments specified with the merge option into the target index. The
+	 * fragments are typically generated in separate processes, each indexing a disjoint set of
+	 * translation units. All of them need to be created with the same location converter and
+	 * the same fragment id. The target index gets the properties of the fragments.
+	 */
+	private Object merge(Map<String,List<String>> arguments) throws CoreException {
+		List<String> fragments= arguments.get(OPT_MERGE);
+		if (fragments.isEmpty()) {
+			fail(MessageFormat.format(Messages.GeneratePDOMApplication_MergeWithoutFragments, new Object[] {OPT_MERGE}));
+		}
+		String target= CLIUtil.getArg(arguments, OPT_TARGET, 1).get(0);
+		for (String fragment : fragments) {
+			if (!new File(fragment).isFile()) {
+				fail(MessageFormat.format(Messages.GeneratePDOMApplication_FragmentNotFound, new Object[] {fragment}));
+			}
+		}
+
+		output(Messages.GeneratePDOMApplication_MergeStarts);
+		IIndexLocationConverter converter= new InternalFormatLocationConverter();
+		WritablePDOM targetPDOM= new WritablePDOM(new File(target), converter,
+				LanguageManager.getInstance().getPDOMLinkageFactoryMappings());
+		try {
+			PDOMMerger merger= new PDOMMerger(targetPDOM);
+			for (String fragment : fragments) {
+				output(MessageFormat.format(Messages.GeneratePDOMApplication_Merging, new Object[] {fragment}));
+				merger.merge(new File(fragment), converter, new NullProgressMonitor());
+			}
+			output(MessageFormat.format(Messages.GeneratePDOMApplication_MergeEnds, new Object[] {
+					merger.getFilesCopied(), merger.getDuplicates(), merger.getConflicts()}));
+
+			targetPDOM.acquireWriteLock(0);
+			try {
+				targetPDOM.close();
+			} finally {
+				targetPDOM.releaseWriteLock();
+			}
+		} catch(InterruptedException ie) {
+			String msg= MessageFormat.format(Messages.GeneratePDOM_GenericGenerationFailed, new Object[] {ie.getMessage()});
+			throw new CoreException(CCorePlugin.createStatus(msg, ie));
+		}
+		return null;
+	}
+
 	private void restoreSystemProperty(String key, String value) {
 		if (value == null) {
 			System.clearProperty(key);
@@ -231,6 +288,27 @@ public class GeneratePDOMApplication implements IApplication {
 		Job.getJobManager().setProgressProvider(pp);
 	}
 
+	/**
+	 * Location converter preserving the internal format of the locations, such that index
+	 * fragments can be merged without knowing the converter they have been created with.
+	 */
+	private static class InternalFormatLocationConverter implements IIndexLocationConverter {
+		private static final String SCHEME= "internal"; //$NON-NLS-1$
+
+		public IIndexFileLocation fromInternalFormat(String raw) {
+			try {
+				return new IndexFileLocation(new URI(SCHEME, raw, null), null);
+			} catch (URISyntaxException e) {
+				return null;
+			}
+		}
+
+		public String toInternalFormat(IIndexFileLocation location) {
+			URI uri= location.getURI();
+			return SCHEME.equals(uri.getScheme()) ? uri.getSchemeSpecificPart() : null;
+		}
+	}
+
 	static class StreamProgressMonitor implements IProgressMonitor {
 		volatile boolean canceled;
 		volatile int totalWork;
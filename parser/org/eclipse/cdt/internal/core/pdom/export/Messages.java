@@ -20,10 +20,15 @@ public class Messages extends NLS {
 	public static String GeneratePDOM_ProjectProviderReturnedNullCProject;
 	public static String GeneratePDOM_Success;
 	public static String GeneratePDOMApplication_CouldNotFindInitializer;
+	public static String GeneratePDOMApplication_FragmentNotFound;
 	public static String GeneratePDOMApplication_GenerationEnds;
 	public static String GeneratePDOMApplication_GenerationStarts;
 	public static String GeneratePDOMApplication_Initializing;
 	public static String GeneratePDOMApplication_InvalidIndexerID;
+	public static String GeneratePDOMApplication_MergeEnds;
+	public static String GeneratePDOMApplication_MergeStarts;
+	public static String GeneratePDOMApplication_MergeWithoutFragments;
+	public static String GeneratePDOMApplication_Merging;
 	public static String GeneratePDOMApplication_UsingDefaultProjectProvider;
 	static {
 		// initialize resource bundle
@@ -16,8 +16,8 @@ import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.BitSet;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.cdt.utils.UNCPathConverter;
 import org.eclipse.core.filesystem.EFS;
@@ -27,7 +27,7 @@ import org.eclipse.core.runtime.CoreException;
 /**
  * A cache for checking whether a file exists. The cache shall be used for a limited amount of time, only (e.g. one 
  * indexer task). It uses as much memory as it needs. To protect against OutOfMemory situations, a soft reference is
- * used.
+ * used. The cache can be used by multiple threads.
  * @since 5.0
  */
 public final class FileExistsCache {
@@ -47,7 +47,7 @@ public final class FileExistsCache {
 
 	public FileExistsCache(boolean caseInsensitive) {
 		fCaseInSensitive= caseInsensitive;
-		fCache= new SoftReference<Map<String,Content>>(new HashMap<String, Content>());	// before running out of memory the entire map will be thrown away.
+		fCache= new SoftReference<Map<String,Content>>(new ConcurrentHashMap<String, Content>());	// before running out of memory the entire map will be thrown away.
 	}
 	
 	public boolean isFile(String path) {
@@ -116,23 +116,24 @@ public final class FileExistsCache {
 		idx *= 2;
 		
 		final BitSet isFileBitset = avail.fIsFile;
-		if (isFileBitset.get(idx))
-			return true;
-		if (isFileBitset.get(idx+1))
-			return false;
+		synchronized (isFileBitset) {
+			if (isFileBitset.get(idx))
+				return true;
+			if (isFileBitset.get(idx+1))
+				return false;
+		}
 		
-		if ((file != null && file.isFile()) || (fileStore != null && !fileStore.fetchInfo().isDirectory())) {
-			isFileBitset.set(idx);
-			return true;
+		final boolean isFile= (file != null && file.isFile()) || (fileStore != null && !fileStore.fetchInfo().isDirectory());
+		synchronized (isFileBitset) {
+			isFileBitset.set(isFile ? idx : idx+1);
 		}
-		isFileBitset.set(idx+1);
-		return false;
+		return isFile;
 	}
 
-	private Map<String, Content> getExistsCache() {
+	private synchronized Map<String, Content> getExistsCache() {
 		Map<String, Content> cache= fCache.get();
 		if (cache == null) {
-			cache= new HashMap<String, Content>();
+			cache= new ConcurrentHashMap<String, Content>();
 			fCache= new SoftReference<Map<String, Content>>(cache); // before running out of memory the entire map will be thrown away.
 		}
 		return cache;
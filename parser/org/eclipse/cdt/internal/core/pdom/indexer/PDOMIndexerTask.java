@@ -11,21 +11,27 @@
  *******************************************************************************/
 package org.eclipse.cdt.internal.core.pdom.indexer;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 
 import com.ibm.icu.text.NumberFormat;
 
 import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.CCorePreferenceConstants;
 import org.eclipse.cdt.core.dom.ILinkage;
 import org.eclipse.cdt.core.dom.IPDOMIndexer;
 import org.eclipse.cdt.core.dom.IPDOMIndexerTask;
+import org.eclipse.cdt.core.index.IIndexFileLocation;
 import org.eclipse.cdt.core.index.IIndexManager;
+import org.eclipse.cdt.core.index.IndexLocationFactory;
 import org.eclipse.cdt.core.model.AbstractLanguage;
 import org.eclipse.cdt.core.model.ICProject;
 import org.eclipse.cdt.core.model.ILanguage;
 import org.eclipse.cdt.core.model.ITranslationUnit;
+import org.eclipse.cdt.core.model.IWorkingCopy;
 import org.eclipse.cdt.core.model.LanguageManager;
 import org.eclipse.cdt.core.parser.IScannerInfo;
 import org.eclipse.cdt.core.parser.IScannerInfoProvider;
@@ -35,7 +41,10 @@ import org.eclipse.cdt.internal.core.index.IWritableIndexManager;
 import org.eclipse.cdt.internal.core.pdom.AbstractIndexerTask;
 import org.eclipse.cdt.internal.core.pdom.ITodoTaskUpdater;
 import org.eclipse.cdt.internal.core.pdom.IndexerProgress;
+import org.eclipse.cdt.internal.core.pdom.PDOM;
+import org.eclipse.cdt.internal.core.pdom.PDOMLock;
 import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
@@ -45,6 +54,7 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.content.IContentType;
+import org.eclipse.core.runtime.preferences.IPreferencesService;
 import org.eclipse.osgi.util.NLS;
 
 /**
@@ -101,6 +111,12 @@ public abstract class PDOMIndexerTask extends AbstractIndexerTask implements IPD
 		}
 		setUpdateFlags(IIndexManager.UPDATE_CHECK_TIMESTAMPS | IIndexManager.UPDATE_CHECK_CONTENTS_HASH);
 		setForceFirstFiles(forceFiles.length);
+		setPriorityFiles(getFilesInEditors(indexer.getProject()));
+		final IPreferencesService prefs= Platform.getPreferencesService();
+		setParserThreadCount(prefs.getInt(CCorePlugin.PLUGIN_ID,
+				CCorePreferenceConstants.INDEXER_PARSER_THREADS, 1, null));
+		setCommitBatch(prefs.getInt(CCorePlugin.PLUGIN_ID, CCorePreferenceConstants.INDEXER_COMMIT_BATCH_SIZE, 1, null),
+				prefs.getLong(CCorePlugin.PLUGIN_ID, CCorePreferenceConstants.INDEXER_COMMIT_BATCH_TIME, 500, null));
 	}
 	
 	private static ITranslationUnit[] concat(ITranslationUnit[] added, ITranslationUnit[] changed) {
@@ -114,6 +130,22 @@ public abstract class PDOMIndexerTask extends AbstractIndexerTask implements IPD
 		return union.toArray(new ITranslationUnit[union.size()]);
 	}
 	
+	/**
+	 * Returns the locations of the files of the project that are open in editors.
+	 */
+	private static IIndexFileLocation[] getFilesInEditors(ICProject project) {
+		List<IIndexFileLocation> result= new ArrayList<IIndexFileLocation>();
+		for (IWorkingCopy wc : CCorePlugin.getSharedWorkingCopies()) {
+			if (project.equals(wc.getCProject())) {
+				IIndexFileLocation ifl= IndexLocationFactory.getIFL(wc);
+				if (ifl != null) {
+					result.add(ifl);
+				}
+			}
+		}
+		return result.toArray(new IIndexFileLocation[result.size()]);
+	}
+
 	public final void setParseUpFront() {
 		setParseUpFront(fIndexer.getFilesToParseUpFront());
 	}
@@ -291,6 +323,34 @@ public abstract class PDOMIndexerTask extends AbstractIndexerTask implements IPD
 					+ fStatistics.fParsingTime + " parser, "    //$NON-NLS-1$
 					+ fStatistics.fResolutionTime + " resolution, "    //$NON-NLS-1$
 					+ fStatistics.fAddToIndexTime + " index update.");    //$NON-NLS-1$
+			if (fStatistics.fPriorityFilesTime >= 0) {
+				System.out.println(ident + " Open editors: "     //$NON-NLS-1$
+						+ fStatistics.fPriorityFilesTime + " until up to date.");    //$NON-NLS-1$
+			}
+			if (getParserThreadCount() > 1) {
+				System.out.println(ident + " Parser threads: "     //$NON-NLS-1$
+						+ getParserThreadCount() + " threads, "    //$NON-NLS-1$
+						+ fStatistics.fParserWaitTime + " waiting for index update, "    //$NON-NLS-1$
+						+ fStatistics.fWriterWaitTime + " index update waiting for parser, "    //$NON-NLS-1$
+						+ (totalTime == 0 ? 0 : info.fCompletedSources * 1000L / totalTime) + " sources/s.");    //$NON-NLS-1$
+			}
+			System.out.println(ident + " Write lock: "     //$NON-NLS-1$
+					+ fStatistics.fWriteLockCount + " acquisitions, "    //$NON-NLS-1$
+					+ fStatistics.fLockHandOffTime + " hand-off, "    //$NON-NLS-1$
+					+ fStatistics.fLockTimeSaved + " saved by batching.");    //$NON-NLS-1$
+			if (index.getWritableFragment() instanceof PDOM) {
+				final PDOMLock.Statistics lockStats= ((PDOM) index.getWritableFragment()).getLockStatistics();
+				System.out.println(ident + " Lock wait: "     //$NON-NLS-1$
+						+ "read " + lockStats.fReadWaitTime    //$NON-NLS-1$
+						+ ", write " + lockStats.fWriteWaitTime + ".");    //$NON-NLS-1$ //$NON-NLS-2$
+				final Database db= ((PDOM) index.getWritableFragment()).getDB();
+				if (db.getSnapshotsOpened() > 0) {
+					System.out.println(ident + " Snapshots: "     //$NON-NLS-1$
+							+ db.getSnapshotsOpened() + " opened, "    //$NON-NLS-1$
+							+ db.getSnapshotsInvalidated() + " invalidated, "    //$NON-NLS-1$
+							+ db.getPeakSnapshotRetainedBytes() / 1024 + "KB retained at peak.");    //$NON-NLS-1$
+				}
+			}
 			System.out.println(ident + " Errors: "    //$NON-NLS-1$
 					+ fStatistics.fErrorCount + " internal, "    //$NON-NLS-1$
 					+ fStatistics.fUnresolvedIncludesCount + " include, "     //$NON-NLS-1$
@@ -309,10 +369,14 @@ public abstract class PDOMIndexerTask extends AbstractIndexerTask implements IPD
 			long hits= index.getCacheHits();
 			long tries= misses + hits;
 			double missPct= tries == 0 ? 0.0 : (double) misses / (double) tries;
+			final ChunkCache cache= ChunkCache.getSharedInstance();
 			System.out.println(ident + " Cache["    //$NON-NLS-1$
-					+ ChunkCache.getSharedInstance().getMaxSize() / 1024 / 1024 + "MB]: " +    //$NON-NLS-1$
+					+ cache.getMaxSize() / 1024 / 1024 + "MB]: " +    //$NON-NLS-1$
 					+ hits + " hits, "      //$NON-NLS-1$
-					+ misses + "(" + nfPercent.format(missPct) + ") misses.");      //$NON-NLS-1$ //$NON-NLS-2$
+					+ misses + "(" + nfPercent.format(missPct) + ") misses, "      //$NON-NLS-1$ //$NON-NLS-2$
+					+ cache.getEvictions() + " evictions, "      //$NON-NLS-1$
+					+ cache.getContentions() + " contended locks, "      //$NON-NLS-1$
+					+ cache.getWaitTime() / 1000000 + " ms waiting.");      //$NON-NLS-1$
 
 			if ("true".equals(System.getProperty("SHOW_COMPRESSED_INDEXER_INFO"))) {    //$NON-NLS-1$ //$NON-NLS-2$
 				Calendar cal = Calendar.getInstance();
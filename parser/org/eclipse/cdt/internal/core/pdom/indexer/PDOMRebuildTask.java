@@ -83,6 +83,35 @@ public class PDOMRebuildTask implements IPDOMIndexerTask {
 		
 		if (fDelegate != null) {
 			fDelegate.run(monitor);
+			if (!monitor.isCanceled()) {
+				try {
+					packIndex(cproject);
+				} catch (CoreException e) {
+					CCorePlugin.log(e);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The b-trees filled by the rebuild are replaced by packed ones, which are smaller and can 
+	 * be searched with fewer chunks read from disk.
+	 */
+	private void packIndex(ICProject project) throws CoreException, InterruptedException {
+		IWritableIndex index= ((IWritableIndexManager) CCorePlugin.getIndexManager()).getWritableIndex(project);
+		if (index == null) 
+			return;
+
+		index.acquireWriteLock(0);
+		try {
+			IWritableIndexFragment wf= index.getWritableFragment();
+			if (wf instanceof WritablePDOM) {
+				((WritablePDOM) wf).packIndexes();
+			}
+		} finally {
+			index.releaseWriteLock(0);
 		}
 	}
 	
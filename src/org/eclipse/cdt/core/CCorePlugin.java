@@ -105,6 +105,12 @@ public class CCorePlugin extends Plugin {
 	 * @since 5.2
 	 */
 	public static final int STATUS_PDOM_TOO_LARGE = 4;
+	/**
+	 * Status code for core exception that is thrown when a snapshot of a pdom is read after it
+	 * has been invalidated.
+	 * @since 5.3
+	 */
+	public static final int STATUS_PDOM_SNAPSHOT_INVALIDATED = 5;
 
 	public static final String PLUGIN_ID = "org.eclipse.cdt.core"; //$NON-NLS-1$
 
@@ -123,6 +123,43 @@ public class CCorePreferenceConstants {
 	 */
 	public static final String DEFAULT_MAX_INDEX_DB_CACHE_SIZE_MB = "64"; //$NON-NLS-1$
 
+	/**
+	 * Number of threads used by the indexer to parse source files in parallel.
+	 * @since 5.3
+	 */
+	public static final String INDEXER_PARSER_THREADS = CCorePlugin.PLUGIN_ID + ".indexerParserThreads"; //$NON-NLS-1$
+
+	/**
+	 * Default number of indexer threads, a single thread parses the files sequentially.
+	 * @since 5.3
+	 */
+	public static final String DEFAULT_INDEXER_PARSER_THREADS = "1"; //$NON-NLS-1$
+
+	/**
+	 * Maximum number of source files the indexer stores in the index with a single acquisition
+	 * of the write lock.
+	 * @since 5.3
+	 */
+	public static final String INDEXER_COMMIT_BATCH_SIZE = CCorePlugin.PLUGIN_ID + ".indexerCommitBatchSize"; //$NON-NLS-1$
+
+	/**
+	 * Default size of the batches stored by the indexer, each source file is stored on its own.
+	 * @since 5.3
+	 */
+	public static final String DEFAULT_INDEXER_COMMIT_BATCH_SIZE = "1"; //$NON-NLS-1$
+
+	/**
+	 * Time in milliseconds the indexer waits for source files to complete a batch.
+	 * @since 5.3
+	 */
+	public static final String INDEXER_COMMIT_BATCH_TIME = CCorePlugin.PLUGIN_ID + ".indexerCommitBatchTime"; //$NON-NLS-1$
+
+	/**
+	 * Default time the indexer waits for source files to complete a batch.
+	 * @since 5.3
+	 */
+	public static final String DEFAULT_INDEXER_COMMIT_BATCH_TIME = "500"; //$NON-NLS-1$
+
 	/**
 	 * Boolean preference controlling whether paths of non-workspace files are stored in index in canonical
 	 * form or not. Canonicalization is performed by calling {@link java.io.File#getCanonicalPath()}.
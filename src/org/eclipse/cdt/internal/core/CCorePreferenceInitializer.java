@@ -46,6 +46,9 @@ public class CCorePreferenceInitializer extends AbstractPreferenceInitializer {
 		defaultOptionsMap.put(CCorePreferenceConstants.CODE_FORMATTER, CCorePreferenceConstants.DEFAULT_CODE_FORMATTER);
 		defaultOptionsMap.put(CCorePreferenceConstants.INDEX_DB_CACHE_SIZE_PCT, CCorePreferenceConstants.DEFAULT_INDEX_DB_CACHE_SIZE_PCT);
 		defaultOptionsMap.put(CCorePreferenceConstants.MAX_INDEX_DB_CACHE_SIZE_MB, CCorePreferenceConstants.DEFAULT_MAX_INDEX_DB_CACHE_SIZE_MB);
+		defaultOptionsMap.put(CCorePreferenceConstants.INDEXER_PARSER_THREADS, CCorePreferenceConstants.DEFAULT_INDEXER_PARSER_THREADS);
+		defaultOptionsMap.put(CCorePreferenceConstants.INDEXER_COMMIT_BATCH_SIZE, CCorePreferenceConstants.DEFAULT_INDEXER_COMMIT_BATCH_SIZE);
+		defaultOptionsMap.put(CCorePreferenceConstants.INDEXER_COMMIT_BATCH_TIME, CCorePreferenceConstants.DEFAULT_INDEXER_COMMIT_BATCH_TIME);
 		defaultOptionsMap.put(CCorePreferenceConstants.WORKSPACE_LANGUAGE_MAPPINGS, CCorePreferenceConstants.DEFAULT_WORKSPACE_LANGUAGE_MAPPINGS);
 		defaultOptionsMap.put(CodeReaderCache.CODE_READER_BUFFER, CodeReaderCache.DEFAULT_CACHE_SIZE_IN_MB_STRING);
 
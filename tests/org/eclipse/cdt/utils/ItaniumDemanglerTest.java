@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.utils;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ItaniumDemangler}, the expected results are the output of c++filt.
+ */
+public class ItaniumDemanglerTest extends TestCase {
+
+	private void check(String mangled, String expected) {
+		assertEquals(mangled, expected, ItaniumDemangler.demangle(mangled));
+	}
+
+	private void checkUnsupported(String mangled) {
+		assertNull(mangled, ItaniumDemangler.demangle(mangled));
+	}
+
+	public void testNotMangled() {
+		assertFalse(ItaniumDemangler.isMangled("main")); //$NON-NLS-1$
+		checkUnsupported("main"); //$NON-NLS-1$
+		checkUnsupported("_main"); //$NON-NLS-1$
+	}
+
+	public void testFunctions() {
+		check("_Z2f6v", "f6()"); //$NON-NLS-1$ //$NON-NLS-2$
+		check("_Z2f1PFiclEMN2ns1AEiMS2_KFiiEPy", //$NON-NLS-1$
+				"f1(int (*)(char, long), int ns::A::*, int (ns::A::*)(int) const, unsigned long long*)"); //$NON-NLS-1$
+		check("_Z2f5PViPKPKiwDsban", //$NON-NLS-1$
+				"f5(int volatile*, int const* const*, wchar_t, char16_t, bool, signed char, __int128)"); //$NON-NLS-1$
+		check("_ZN2ns1A1gEPKcz", "ns::A::g(char const*, ...)"); //$NON-NLS-1$ //$NON-NLS-2$
+		check("_ZNK2ns1A1fEi", "ns::A::f(int) const"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testSpecialMembers() {
+		check("_ZN2ns1AC1Ev", "ns::A::A()"); //$NON-NLS-1$ //$NON-NLS-2$
+		check("_ZN2ns1AC2Ev", "ns::A::A()"); //$NON-NLS-1$ //$NON-NLS-2$
+		check("_ZN2ns1AD1Ev", "ns::A::~A()"); //$NON-NLS-1$ //$NON-NLS-2$
+		check("_ZN2ns1AD2Ev", "ns::A::~A()"); //$NON-NLS-1$ //$NON-NLS-2$
+		check("_ZN2ns1AaSEOS0_", "ns::A::operator=(ns::A&&)"); //$NON-NLS-1$ //$NON-NLS-2$
+		check("_ZNK2ns1AcvbEv", "ns::A::operator bool() const"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testTemplates() {
+		check("_Z1fIiEvT_", "void f<int>(int)"); //$NON-NLS-1$ //$NON-NLS-2$
+		check("_Z2f4IJicdEEvDpT_", "void f4<int, char, double>(int, char, double)"); //$NON-NLS-1$ //$NON-NLS-2$
+		check("_ZN2ns1A1hIdEEvT_", "void ns::A::h<double>(double)"); //$NON-NLS-1$ //$NON-NLS-2$
+		check("_ZN2ns1A1hISt6vectorIiSaIiEEEEvT_", //$NON-NLS-1$
+				"void ns::A::h<std::vector<int, std::allocator<int> > >(std::vector<int, std::allocator<int> >)"); //$NON-NLS-1$
+		check("_ZN1BILi42EE1kEv", "B<42>::k()"); //$NON-NLS-1$ //$NON-NLS-2$
+		check("_ZN1BILin5EE1kEv", "B<-5>::k()"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testSubstitutions() {
+		check("_Z2f3OSt10unique_ptrIiSt14default_deleteIiEESt8functionIFviEE", //$NON-NLS-1$
+				"f3(std::unique_ptr<int, std::default_delete<int> >&&, std::function<void (int)>)"); //$NON-NLS-1$
+		check("_Z2f2RKNSt7__cxx1112basic_stringIcSt11char_traitsIcESaIcEEERSt3mapIS4_St6vectorIiSaIiEESt4lessIS4_ESaISt4pairIS5_SA_EEE", //$NON-NLS-1$
+				"f2(std::__cxx11::basic_string<char, std::char_traits<char>, std::allocator<char> > const&, " + //$NON-NLS-1$
+				"std::map<std::__cxx11::basic_string<char, std::char_traits<char>, std::allocator<char> >, " + //$NON-NLS-1$
+				"std::vector<int, std::allocator<int> >, " + //$NON-NLS-1$
+				"std::less<std::__cxx11::basic_string<char, std::char_traits<char>, std::allocator<char> > >, " + //$NON-NLS-1$
+				"std::allocator<std::pair<std::__cxx11::basic_string<char, std::char_traits<char>, std::allocator<char> > const, " + //$NON-NLS-1$
+				"std::vector<int, std::allocator<int> > > > >&)"); //$NON-NLS-1$
+	}
+
+	public void testVariables() {
+		check("_ZN9__gnu_cxxL21__default_lock_policyE", "__gnu_cxx::__default_lock_policy"); //$NON-NLS-1$ //$NON-NLS-2$
+		check("_ZN6__pstl9execution2v1L9par_unseqE", "__pstl::execution::v1::par_unseq"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testLocalNames() {
+		check("_ZZ2f6vE1s", "f6()::s"); //$NON-NLS-1$ //$NON-NLS-2$
+		check("_ZZ2f6vENKUliE_clEi", "f6()::{lambda(int)#1}::operator()(int) const"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testTruncatedNames() {
+		checkUnsupported("_Z"); //$NON-NLS-1$
+		checkUnsupported("_Z1"); //$NON-NLS-1$
+		checkUnsupported("_ZN"); //$NON-NLS-1$
+		checkUnsupported("_ZNK"); //$NON-NLS-1$
+		checkUnsupported("_ZZ"); //$NON-NLS-1$
+		checkUnsupported("_Z1fPFvPFvPF"); //$NON-NLS-1$
+		checkUnsupported("_Z999999999999f"); //$NON-NLS-1$
+	}
+
+	public void testInvalidSubstitutions() {
+		checkUnsupported("_Z1fS_"); //$NON-NLS-1$
+		checkUnsupported("_ZN1AIiE1fEvS1_"); //$NON-NLS-1$
+		checkUnsupported("_Z1fSZZZZZZ_"); //$NON-NLS-1$
+		checkUnsupported("_Z1fS2147483647_"); //$NON-NLS-1$
+		checkUnsupported("_Z1fSAAAAAAAAAAAA_"); //$NON-NLS-1$
+		checkUnsupported("_Z1fILZZZZZZZZZE"); //$NON-NLS-1$
+	}
+
+	public void testInvalidTemplateParameters() {
+		checkUnsupported("_Z1fIiEvT2147483647_"); //$NON-NLS-1$
+		checkUnsupported("_Z1fIiEvT99999999999999_"); //$NON-NLS-1$
+		checkUnsupported("_Z1fIiEvT0_"); //$NON-NLS-1$
+	}
+
+	public void testCachedFailure() {
+		// Failures are cached, the second lookup must yield the same result.
+		checkUnsupported("_Z1fSZZZZZZ_"); //$NON-NLS-1$
+		checkUnsupported("_Z1fSZZZZZZ_"); //$NON-NLS-1$
+	}
+}
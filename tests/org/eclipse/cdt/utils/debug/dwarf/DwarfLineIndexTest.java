@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.utils.debug.dwarf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.eclipse.cdt.utils.elf.Elf;
+
+/**
+ * Tests for {@link DwarfLineIndex}. The fixtures are the debug sections of an executable
+ * compiled with gcc -g -gdwarf-4 or -gdwarf-5 from /tmp/dwfix/t.c:
+ * <pre>
+ * 1 #include "t.h"
+ * 2
+ * 3 int main(void)
+ * 4 {
+ * 5 	int x = twice(21);
+ * 6 	return x;
+ * 7 }
+ * </pre>
+ * and /tmp/dwfix/t.h:
+ * <pre>
+ * 1 static int twice(int a)
+ * 2 {
+ * 3 	return 2 * a;
+ * 4 }
+ * </pre>
+ * The function twice is located at 0x401000, main at 0x40100e, the code ends at 0x401028.
+ */
+public class DwarfLineIndexTest extends TestCase {
+	private static final String SOURCE= "/tmp/dwfix/t.c"; //$NON-NLS-1$
+	private static final String HEADER= "/tmp/dwfix/t.h"; //$NON-NLS-1$
+
+	private static final String DWARF4=
+			"7f454c4602010100000000000000000002003e00010000000e104000000000004000000000000000f802000000000000" + //$NON-NLS-1$
+			"000000004000380003004000060005000100000004000000000000000000000000004000000000000000400000000000" + //$NON-NLS-1$
+			"e800000000000000e80000000000000000100000000000000100000005000000e8000000000000000010400000000000" + //$NON-NLS-1$
+			"000000000000000000000000000000000000000000000000001000000000000051e57464060000000000000000000000" + //$NON-NLS-1$
+			"000000000000000000000000000000000000000000000000000000000000000008000000000000008d00000004000000" + //$NON-NLS-1$
+			"00000801110000000c742e6300000000000010400000000000280000000000000000000000026e0000000103055d0000" + //$NON-NLS-1$
+			"000e104000000000001a00000000000000019c5d0000000378000105065d00000002916c00040405696e7400050b0000" + //$NON-NLS-1$
+			"0002010c5d00000000104000000000000e00000000000000019c0661000201165d00000002916c0000011101250e130b" + //$NON-NLS-1$
+			"03081b0e1101120710170000022e013f19030e3a0b3b0b390b271949131101120740189642190113000003340003083a" + //$NON-NLS-1$
+			"0b3b0b390b4913021800000424000b0b3e0b03080000052e01030e3a0b3b0b390b271949131101120740189742190000" + //$NON-NLS-1$
+			"06050003083a0b3b0b390b491302180000004f000000040022000000010101fb0e0d0001010101000000010000010074" + //$NON-NLS-1$
+			"2e6300000000742e68000000000004020501000902001040000000000013050b7505015904012e050a830509c905013d" + //$NON-NLS-1$
+			"02020001012f746d702f647766697800747769636500474e55204331372031322e322e30202d6d74756e653d67656e65" + //$NON-NLS-1$
+			"726963202d6d617263683d7838362d3634202d67202d6764776172662d34202d4f30202d666e6f2d6173796e6368726f" + //$NON-NLS-1$
+			"6e6f75732d756e77696e642d7461626c6573006d61696e00002e7368737472746162002e64656275675f696e666f002e" + //$NON-NLS-1$
+			"64656275675f616262726576002e64656275675f6c696e65002e64656275675f73747200000000000000000000000000" + //$NON-NLS-1$
+			"000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000" + //$NON-NLS-1$
+			"00000000000000000b0000000100000000000000000000000000000000000000e8000000000000009100000000000000" + //$NON-NLS-1$
+			"000000000000000001000000000000000000000000000000170000000100000000000000000000000000000000000000" + //$NON-NLS-1$
+			"790100000000000079000000000000000000000000000000010000000000000000000000000000002500000001000000" + //$NON-NLS-1$
+			"00000000000000000000000000000000f201000000000000530000000000000000000000000000000100000000000000" + //$NON-NLS-1$
+			"000000000000000031000000010000003000000000000000000000000000000045020000000000007300000000000000" + //$NON-NLS-1$
+			"000000000000000001000000000000000100000000000000010000000300000000000000000000000000000000000000" + //$NON-NLS-1$
+			"b8020000000000003c00000000000000000000000000000001000000000000000000000000000000"; //$NON-NLS-1$
+
+	private static final String DWARF5=
+			"7f454c4602010100000000000000000002003e00010000000e1040000000000040000000000000001803000000000000" + //$NON-NLS-1$
+			"000000004000380003004000070006000100000004000000000000000000000000004000000000000000400000000000" + //$NON-NLS-1$
+			"e800000000000000e80000000000000000100000000000000100000005000000e8000000000000000010400000000000" + //$NON-NLS-1$
+			"000000000000000000000000000000000000000000000000001000000000000051e57464060000000000000000000000" + //$NON-NLS-1$
+			"000000000000000000000000000000000000000000000000000000000000000008000000000000008e00000005000108" + //$NON-NLS-1$
+			"0000000001060000001d0b00000000000000001040000000000028000000000000000000000002630000000203055e00" + //$NON-NLS-1$
+			"00000e104000000000001a00000000000000019c5e0000000378000205065e00000002916c00040405696e7400050000" + //$NON-NLS-1$
+			"000001010c5e00000000104000000000000e00000000000000019c0661000101165e00000002916c0000011101250e13" + //$NON-NLS-1$
+			"0b031f1b1f1101120710170000022e013f19030e3a0b3b0b390b271949131101120740187c190113000003340003083a" + //$NON-NLS-1$
+			"0b3b0b390b4913021800000424000b0b3e0b03080000052e01030e3a0b3b0b390b271949131101120740187a19000006" + //$NON-NLS-1$
+			"050003083a0b3b0b390b491302180000005c000000050008002f000000010101fb0e0d00010101010000000100000101" + //$NON-NLS-1$
+			"011f010000000002011f020f030b000000000f000000000b000000000501000902001040000000000013050b75050159" + //$NON-NLS-1$
+			"04022e050a830509c905013d0202000101747769636500474e55204331372031322e322e30202d6d74756e653d67656e" + //$NON-NLS-1$
+			"65726963202d6d617263683d7838362d3634202d67202d6764776172662d35202d4f30202d666e6f2d6173796e636872" + //$NON-NLS-1$
+			"6f6e6f75732d756e77696e642d7461626c6573006d61696e002f746d702f647766697800742e6300742e6800002e7368" + //$NON-NLS-1$
+			"737472746162002e64656275675f696e666f002e64656275675f616262726576002e64656275675f6c696e65002e6465" + //$NON-NLS-1$
+			"6275675f737472002e64656275675f6c696e655f73747200000000000000000000000000000000000000000000000000" + //$NON-NLS-1$
+			"000000000000000000000000000000000000000000000000000000000000000000000000000000000b00000001000000" + //$NON-NLS-1$
+			"00000000000000000000000000000000e800000000000000920000000000000000000000000000000100000000000000" + //$NON-NLS-1$
+			"00000000000000001700000001000000000000000000000000000000000000007a010000000000007700000000000000" + //$NON-NLS-1$
+			"000000000000000001000000000000000000000000000000250000000100000000000000000000000000000000000000" + //$NON-NLS-1$
+			"f10100000000000060000000000000000000000000000000010000000000000000000000000000003100000001000000" + //$NON-NLS-1$
+			"300000000000000000000000000000005102000000000000680000000000000000000000000000000100000000000000" + //$NON-NLS-1$
+			"01000000000000003c0000000100000030000000000000000000000000000000b9020000000000001300000000000000" + //$NON-NLS-1$
+			"000000000000000001000000000000000100000000000000010000000300000000000000000000000000000000000000" + //$NON-NLS-1$
+			"cc020000000000004c00000000000000000000000000000001000000000000000000000000000000"; //$NON-NLS-1$
+
+	private File fFile;
+	private Elf fElf;
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (fElf != null) {
+			fElf.dispose();
+			fElf= null;
+		}
+		if (fFile != null) {
+			fFile.delete();
+			fFile= null;
+		}
+		super.tearDown();
+	}
+
+	private DwarfLineIndex createIndex(String hex) throws IOException {
+		final byte[] bytes= new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i]= (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		fFile= File.createTempFile("dwarf", ".dbg"); //$NON-NLS-1$ //$NON-NLS-2$
+		FileOutputStream out= new FileOutputStream(fFile);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		fElf= new Elf(fFile.getAbsolutePath());
+		return DwarfLineIndex.create(fElf);
+	}
+
+	private void checkLocation(DwarfLineIndex index, long address, String file, int line) {
+		final String msg= Long.toHexString(address);
+		assertEquals(msg, file, index.getFileName(address));
+		assertEquals(msg, line, index.getLineNumber(address));
+	}
+
+	private void checkIndex(DwarfLineIndex index) {
+		assertEquals(8, index.getRowCount());
+		String[] fileNames= index.getFileNames();
+		assertEquals(2, fileNames.length);
+		assertEquals(SOURCE, fileNames[0]);
+		assertEquals(HEADER, fileNames[1]);
+
+		checkLocation(index, 0x401000, HEADER, 2);
+		checkLocation(index, 0x401007, HEADER, 3);
+		checkLocation(index, 0x40100b, HEADER, 3);
+		checkLocation(index, 0x40100c, HEADER, 4);
+		checkLocation(index, 0x40100e, SOURCE, 4);
+		checkLocation(index, 0x401016, SOURCE, 5);
+		checkLocation(index, 0x401020, SOURCE, 5);
+		checkLocation(index, 0x401023, SOURCE, 6);
+		checkLocation(index, 0x401026, SOURCE, 7);
+		checkLocation(index, 0x401027, SOURCE, 7);
+	}
+
+	private void checkOutside(DwarfLineIndex index) {
+		checkLocation(index, 0x400fff, null, -1);
+		checkLocation(index, 0x401028, null, -1);
+		checkLocation(index, 0x401100, null, -1);
+	}
+
+	public void testDwarf4() throws Exception {
+		DwarfLineIndex index= createIndex(DWARF4);
+		checkIndex(index);
+		checkOutside(index);
+	}
+
+	public void testDwarf5() throws Exception {
+		DwarfLineIndex index= createIndex(DWARF5);
+		checkIndex(index);
+		checkOutside(index);
+	}
+
+	public void testWriteRead() throws Exception {
+		final byte[] buildID= {1, 2, 3, 4};
+		ByteArrayOutputStream out= new ByteArrayOutputStream();
+		createIndex(DWARF5).write(out, buildID);
+
+		DwarfLineIndex index= DwarfLineIndex.read(new ByteArrayInputStream(out.toByteArray()), buildID);
+		checkIndex(index);
+		checkOutside(index);
+
+		assertNull(DwarfLineIndex.read(new ByteArrayInputStream(out.toByteArray()), new byte[] {1, 2, 3}));
+		assertNull(DwarfLineIndex.read(new ByteArrayInputStream(out.toByteArray()), null));
+	}
+}
@@ -0,0 +1,1157 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Demangler for names mangled according to the Itanium C++ ABI, which is used by gcc and clang.
+ * The output is the one of c++filt. Constructs that are not supported by the demangler are reported
+ * by returning <code>null</code>, clients can use {@link CPPFilt} for such names.
+ * <p>
+ * The results are kept in a bounded cache shared by all clients, the same libraries are typically
+ * referenced by many binaries.
+ *
+ * @noextend This class is not intended to be subclassed by clients.
+ * @noinstantiate This class is not intended to be instantiated by clients.
+ */
+public final class ItaniumDemangler {
+	private static final int CACHE_SIZE= 20000;
+	private static final String FAILED= new String();
+
+	private static final Map<String, String> sCache= new LinkedHashMap<String, String>(1024, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Checks whether the given symbol is mangled according to the Itanium C++ ABI.
+	 */
+	public static boolean isMangled(String symbol) {
+		return symbol.startsWith("_Z"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns the demangled form of the symbol, or <code>null</code> if the symbol is not mangled
+	 * or uses a construct that is not supported.
+	 */
+	public static String demangle(String symbol) {
+		if (!isMangled(symbol))
+			return null;
+
+		String result;
+		synchronized (sCache) {
+			result= sCache.get(symbol);
+		}
+		if (result == null) {
+			try {
+				result= new ItaniumDemangler(symbol).demangle();
+			} catch (UnsupportedNameException e) {
+				result= FAILED;
+			} catch (RuntimeException e) {
+				// A malformed name must not prevent the other symbols from being demangled.
+				result= FAILED;
+			}
+			synchronized (sCache) {
+				sCache.put(symbol, result);
+			}
+		}
+		return result == FAILED ? null : result;
+	}
+
+	private static final class UnsupportedNameException extends Exception {
+		private static final long serialVersionUID= 1L;
+
+		UnsupportedNameException() {
+			super(null, null);
+		}
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+
+	private static final int NAME= 0;
+	private static final int POINTER= 1;
+	private static final int LVALUE_REFERENCE= 2;
+	private static final int RVALUE_REFERENCE= 3;
+	private static final int QUALIFIED= 4;
+	private static final int FUNCTION= 5;
+	private static final int ARRAY= 6;
+	private static final int POINTER_TO_MEMBER= 7;
+	private static final int PACK= 8;
+
+	/**
+	 * Names and types of a mangled name.
+	 */
+	private static final class Node {
+		final int fKind;
+		/** The name, the qualifiers, the dimension of an array or the class of a pointer to member. */
+		String fText;
+		/** The target of pointers, the type of qualified types, array elements and members or the return type. */
+		Node fInner;
+		/** The parameters of a function or the elements of a pack. */
+		List<Node> fList;
+		/** Name of a class, used for the names of its constructors and destructors */
+		String fLastName;
+		boolean fIsTemplate;
+		boolean fIsCtorDtorOrConversion;
+		boolean fIsBuiltin;
+		boolean fIsFunction;
+		/** The cv- and ref-qualifiers of a function or of the function named by a nested name. */
+		String fQualifiers= ""; //$NON-NLS-1$
+
+		Node(int kind, String text, Node inner) {
+			fKind= kind;
+			fText= text;
+			fInner= inner;
+		}
+	}
+
+	private static final Node EMPTY_NAME= new Node(NAME, "", null); //$NON-NLS-1$
+
+	private static final String[] BUILTIN_TYPES= new String[26];
+	private static final String[] D_BUILTIN_TYPES= new String[26];
+	private static final String[] LITERAL_SUFFIXES= new String[26];
+	private static final Map<String, String> OPERATORS= new LinkedHashMap<String, String>();
+	static {
+		String[] builtins= {
+				"a", "signed char", "b", "bool", "c", "char", "d", "double", "e", "long double", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
+				"f", "float", "g", "__float128", "h", "unsigned char", "i", "int", "j", "unsigned int", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
+				"l", "long", "m", "unsigned long", "n", "__int128", "o", "unsigned __int128", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+				"s", "short", "t", "unsigned short", "v", "void", "w", "wchar_t", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+				"x", "long long", "y", "unsigned long long", "z", "..."}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		for (int i = 0; i < builtins.length; i+= 2) {
+			BUILTIN_TYPES[builtins[i].charAt(0) - 'a']= builtins[i + 1];
+		}
+		String[] dBuiltins= {
+				"a", "auto", "c", "decltype(auto)", "d", "decimal64", "e", "decimal128", "f", "decimal32", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
+				"h", "half", "i", "char32_t", "n", "decltype(nullptr)", "s", "char16_t", "u", "char8_t"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
+		for (int i = 0; i < dBuiltins.length; i+= 2) {
+			D_BUILTIN_TYPES[dBuiltins[i].charAt(0) - 'a']= dBuiltins[i + 1];
+		}
+		String[] suffixes= {"i", "", "j", "u", "l", "l", "m", "ul", "x", "ll", "y", "ull"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$
+		for (int i = 0; i < suffixes.length; i+= 2) {
+			LITERAL_SUFFIXES[suffixes[i].charAt(0) - 'a']= suffixes[i + 1];
+		}
+		String[] operators= {
+				"nw", "new", "na", "new[]", "dl", "delete", "da", "delete[]", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+				"ps", "+", "ng", "-", "ad", "&", "de", "*", "co", "~", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
+				"pl", "+", "mi", "-", "ml", "*", "dv", "/", "rm", "%", "an", "&", "or", "|", "eo", "^", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$ //$NON-NLS-13$ //$NON-NLS-14$ //$NON-NLS-15$ //$NON-NLS-16$
+				"aS", "=", "pL", "+=", "mI", "-=", "mL", "*=", "dV", "/=", "rM", "%=", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$
+				"aN", "&=", "oR", "|=", "eO", "^=", "ls", "<<", "rs", ">>", "lS", "<<=", "rS", ">>=", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$ //$NON-NLS-13$ //$NON-NLS-14$
+				"eq", "==", "ne", "!=", "lt", "<", "gt", ">", "le", "<=", "ge", ">=", "ss", "<=>", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$ //$NON-NLS-13$ //$NON-NLS-14$
+				"nt", "!", "aa", "&&", "oo", "||", "pp", "++", "mm", "--", "cm", ",", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$
+				"pm", "->*", "pt", "->", "cl", "()", "ix", "[]", "qu", "?", "aw", "co_await"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$
+		for (int i = 0; i < operators.length; i+= 2) {
+			final String op= operators[i + 1];
+			OPERATORS.put(operators[i], Character.isLetter(op.charAt(0)) ? "operator " + op : "operator" + op); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	private static final String STD_STRING= "std::basic_string<char, std::char_traits<char>, std::allocator<char> >"; //$NON-NLS-1$
+	private static final String STD_ISTREAM= "std::basic_istream<char, std::char_traits<char> >"; //$NON-NLS-1$
+	private static final String STD_OSTREAM= "std::basic_ostream<char, std::char_traits<char> >"; //$NON-NLS-1$
+	private static final String STD_IOSTREAM= "std::basic_iostream<char, std::char_traits<char> >"; //$NON-NLS-1$
+
+	private final String fSymbol;
+	private final int fLength;
+	private int fPos;
+	private final List<Node> fSubstitutions= new ArrayList<Node>();
+	private List<Node> fTemplateArgs;
+	private int fPackIndex= -1;
+	private int fPackSize= -1;
+	private boolean fInConversion;
+	/** Whether the last encoding parsed was the one of a function, and its name. */
+	private boolean fIsFunction;
+	private String fFunctionName;
+
+	private ItaniumDemangler(String symbol) {
+		fSymbol= symbol;
+		fLength= symbol.length();
+	}
+
+	private char peek() {
+		return fPos < fLength ? fSymbol.charAt(fPos) : 0;
+	}
+
+	private char peek(int offset) {
+		final int pos= fPos + offset;
+		return pos < fLength ? fSymbol.charAt(pos) : 0;
+	}
+
+	private void consume(char c) throws UnsupportedNameException {
+		if (peek() != c)
+			throw new UnsupportedNameException();
+		fPos++;
+	}
+
+	private String demangle() throws UnsupportedNameException {
+		fPos= 2;
+		final StringBuilder result= new StringBuilder(parseEncoding(false));
+		// Clones created by the compiler, e.g. '.constprop.0'
+		while (peek() == '.' && (isLower(peek(1)) || isDigit(peek(1)) || peek(1) == '_')) {
+			final int start= fPos;
+			fPos+= 2;
+			while (isLower(peek()) || isDigit(peek()) || peek() == '_') {
+				fPos++;
+			}
+			while (peek() == '.' && isDigit(peek(1))) {
+				fPos+= 2;
+				while (isDigit(peek())) {
+					fPos++;
+				}
+			}
+			result.append(" [clone ").append(fSymbol, start, fPos).append(']'); //$NON-NLS-1$
+		}
+		if (fPos != fLength)
+			throw new UnsupportedNameException();
+		return result.toString();
+	}
+
+	private static boolean isLower(char c) {
+		return c >= 'a' && c <= 'z';
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Parses an encoding, for a function the return type is omitted within local names.
+	 */
+	private String parseEncoding(boolean isLocal) throws UnsupportedNameException {
+		final char c= peek();
+		if (c == 'T' || c == 'G')
+			return parseSpecialName();
+
+		final Node name= parseName(true);
+		final char next= peek();
+		fIsFunction= false;
+		if (next == 0 || next == 'E' || next == '.')
+			return name.fText;
+
+		Node returnType= null;
+		if (name.fIsTemplate && !name.fIsCtorDtorOrConversion) {
+			returnType= parseType();
+		}
+		final List<Node> params= parseParameters();
+		final String function= name.fText + params(params) + name.fQualifiers;
+		fIsFunction= true;
+		fFunctionName= name.fText;
+		if (returnType == null || isLocal)
+			return function;
+		return printWithDeclarator(returnType, function);
+	}
+
+	private List<Node> parseParameters() throws UnsupportedNameException {
+		final List<Node> params= new ArrayList<Node>();
+		while (true) {
+			final char c= peek();
+			if (c == 0 || c == 'E' || c == '.')
+				break;
+			if ((c == 'R' || c == 'O') && peek(1) == 'E')
+				break;
+			params.add(parseType());
+		}
+		if (params.isEmpty())
+			throw new UnsupportedNameException();
+		if (params.size() == 1 && params.get(0).fIsBuiltin && params.get(0).fText.equals("void")) //$NON-NLS-1$
+			return Collections.emptyList();
+		return params;
+	}
+
+	private String parseSpecialName() throws UnsupportedNameException {
+		final char c= peek();
+		final char c2= peek(1);
+		fPos+= 2;
+		if (c == 'T') {
+			switch (c2) {
+			case 'V':
+				return "vtable for " + print(parseType()); //$NON-NLS-1$
+			case 'T':
+				return "VTT for " + print(parseType()); //$NON-NLS-1$
+			case 'I':
+				return "typeinfo for " + print(parseType()); //$NON-NLS-1$
+			case 'S':
+				return "typeinfo name for " + print(parseType()); //$NON-NLS-1$
+			case 'h':
+				fPos--;
+				parseCallOffset();
+				return "non-virtual thunk to " + parseEncoding(false); //$NON-NLS-1$
+			case 'v':
+				fPos--;
+				parseCallOffset();
+				return "virtual thunk to " + parseEncoding(false); //$NON-NLS-1$
+			case 'c':
+				parseCallOffset();
+				parseCallOffset();
+				return "covariant return thunk to " + parseEncoding(false); //$NON-NLS-1$
+			case 'C': {
+				final Node type= parseType();
+				parseNumber();
+				consume('_');
+				final Node base= parseType();
+				return "construction vtable for " + print(base) + "-in-" + print(type); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			case 'H':
+				return "TLS init function for " + parseName(false).fText; //$NON-NLS-1$
+			case 'W':
+				return "TLS wrapper function for " + parseName(false).fText; //$NON-NLS-1$
+			}
+		} else {
+			switch (c2) {
+			case 'V':
+				return "guard variable for " + parseName(false).fText; //$NON-NLS-1$
+			case 'A':
+				return "hidden alias for " + parseEncoding(false); //$NON-NLS-1$
+			case 'T':
+				if (peek() == 't') {
+					fPos++;
+					return "transaction clone for " + parseEncoding(false); //$NON-NLS-1$
+				}
+				if (peek() == 'n') {
+					fPos++;
+					return "non-transaction clone for " + parseEncoding(false); //$NON-NLS-1$
+				}
+				break;
+			}
+		}
+		throw new UnsupportedNameException();
+	}
+
+	private void parseCallOffset() throws UnsupportedNameException {
+		final char kind= peek();
+		fPos++;
+		if (kind == 'h') {
+			parseNumber();
+			consume('_');
+		} else if (kind == 'v') {
+			parseNumber();
+			consume('_');
+			parseNumber();
+			consume('_');
+		} else {
+			throw new UnsupportedNameException();
+		}
+	}
+
+	private String parseNumber() throws UnsupportedNameException {
+		final int start= fPos;
+		if (peek() == 'n') {
+			fPos++;
+		}
+		if (!isDigit(peek()))
+			throw new UnsupportedNameException();
+		while (isDigit(peek())) {
+			fPos++;
+		}
+		if (fSymbol.charAt(start) == 'n')
+			return '-' + fSymbol.substring(start + 1, fPos);
+		return fSymbol.substring(start, fPos);
+	}
+
+	/**
+	 * Parses the optional number of a <code>[number] _</code> sequence, returns -1 when the
+	 * number is missing.
+	 */
+	private int parseSequenceNumber(int radix) throws UnsupportedNameException {
+		int result= -1;
+		while (peek() != '_') {
+			final int digit= Character.digit(peek(), radix);
+			if (digit < 0 || (radix == 36 && isLower(peek())))
+				throw new UnsupportedNameException();
+			if (result > (Integer.MAX_VALUE - digit) / radix)
+				throw new UnsupportedNameException();
+			result= (result < 0 ? 0 : result * radix) + digit;
+			fPos++;
+		}
+		fPos++;
+		return result;
+	}
+
+	private Node parseName(boolean record) throws UnsupportedNameException {
+		final char c= peek();
+		if (c == 'N')
+			return parseNestedName(record);
+		if (c == 'Z')
+			return parseLocalName(record);
+
+		Node name;
+		if (c == 'S') {
+			if (peek(1) == 't') {
+				fPos+= 2;
+				name= parseUnqualifiedName(null);
+				name= qualify(new Node(NAME, "std", null), name); //$NON-NLS-1$
+			} else {
+				name= parseSubstitution(false);
+				if (peek() != 'I')
+					throw new UnsupportedNameException();
+				return template(name, parseTemplateArgs(record));
+			}
+		} else {
+			name= parseUnqualifiedName(null);
+		}
+		if (peek() == 'I') {
+			addSubstitution(name);
+			name= template(name, parseTemplateArgs(record));
+		}
+		return name;
+	}
+
+	private Node parseNestedName(boolean record) throws UnsupportedNameException {
+		consume('N');
+		final String qualifiers= parseFunctionQualifiers();
+		Node name= null;
+		while (true) {
+			final char c= peek();
+			if (c == 'E') {
+				fPos++;
+				break;
+			}
+			switch (c) {
+			case 'S':
+				if (name != null)
+					throw new UnsupportedNameException();
+				if (peek(1) == 't') {
+					fPos+= 2;
+					name= new Node(NAME, "std", null); //$NON-NLS-1$
+				} else {
+					name= parseSubstitution(true);
+				}
+				break;
+			case 'I':
+				if (name == null)
+					throw new UnsupportedNameException();
+				name= template(name, parseTemplateArgs(record));
+				break;
+			case 'T':
+				if (name != null)
+					throw new UnsupportedNameException();
+				name= asName(parseTemplateParam());
+				break;
+			case 'M':
+				// Initializer scope of a lambda.
+				fPos++;
+				continue;
+			case 'D':
+				if (peek(1) == 'T' || peek(1) == 't')
+					throw new UnsupportedNameException();
+				name= qualify(name, parseUnqualifiedName(name));
+				break;
+			case 0:
+				throw new UnsupportedNameException();
+			default:
+				name= qualify(name, parseUnqualifiedName(name));
+				break;
+			}
+			if (c != 'S' && peek() != 'E') {
+				addSubstitution(name);
+			}
+		}
+		if (name == null)
+			throw new UnsupportedNameException();
+		name.fQualifiers= qualifiers;
+		return name;
+	}
+
+	/**
+	 * Parses the cv- and ref-qualifiers of a nested name.
+	 */
+	private String parseFunctionQualifiers() {
+		final String cv= parseCVQualifiers();
+		if (peek() == 'R') {
+			fPos++;
+			return cv + " &"; //$NON-NLS-1$
+		}
+		if (peek() == 'O') {
+			fPos++;
+			return cv + " &&"; //$NON-NLS-1$
+		}
+		return cv;
+	}
+
+	private String parseCVQualifiers() {
+		boolean isRestrict= false, isVolatile= false, isConst= false;
+		if (peek() == 'r') {
+			isRestrict= true;
+			fPos++;
+		}
+		if (peek() == 'V') {
+			isVolatile= true;
+			fPos++;
+		}
+		if (peek() == 'K') {
+			isConst= true;
+			fPos++;
+		}
+		if (!isRestrict && !isVolatile && !isConst)
+			return ""; //$NON-NLS-1$
+		final StringBuilder result= new StringBuilder();
+		if (isConst) {
+			result.append(" const"); //$NON-NLS-1$
+		}
+		if (isVolatile) {
+			result.append(" volatile"); //$NON-NLS-1$
+		}
+		if (isRestrict) {
+			result.append(" restrict"); //$NON-NLS-1$
+		}
+		return result.toString();
+	}
+
+	private Node parseLocalName(boolean record) throws UnsupportedNameException {
+		consume('Z');
+		final String function= parseEncoding(true);
+		consume('E');
+		final Node name;
+		if (peek() == 's') {
+			fPos++;
+			name= new Node(NAME, function + "::string literal", null); //$NON-NLS-1$
+		} else {
+			if (peek() == 'd')
+				throw new UnsupportedNameException();
+			final Node entity= parseName(record);
+			name= new Node(NAME, function + "::" + entity.fText, null); //$NON-NLS-1$
+			name.fLastName= entity.fLastName;
+			name.fIsTemplate= entity.fIsTemplate;
+			name.fIsCtorDtorOrConversion= entity.fIsCtorDtorOrConversion;
+			name.fQualifiers= entity.fQualifiers;
+		}
+		// Discriminator
+		if (peek() == '_') {
+			fPos++;
+			if (peek() == '_') {
+				fPos++;
+				parseNumber();
+				consume('_');
+			} else if (isDigit(peek())) {
+				fPos++;
+			} else {
+				throw new UnsupportedNameException();
+			}
+		}
+		return name;
+	}
+
+	private Node parseUnqualifiedName(Node prefix) throws UnsupportedNameException {
+		final char c= peek();
+		Node name;
+		if (isDigit(c)) {
+			name= parseSourceName();
+		} else if (c == 'L') {
+			// Internal linkage
+			fPos++;
+			name= parseSourceName();
+		} else if (c == 'C' && prefix != null && prefix.fLastName != null) {
+			fPos++;
+			final boolean isInheriting= peek() == 'I';
+			if (isInheriting) {
+				fPos++;
+			}
+			final char kind= peek();
+			if (kind < '1' || kind > '5')
+				throw new UnsupportedNameException();
+			fPos++;
+			if (isInheriting) {
+				parseType();
+			}
+			name= new Node(NAME, prefix.fLastName, null);
+			name.fIsCtorDtorOrConversion= true;
+		} else if (c == 'D' && prefix != null && prefix.fLastName != null && peek(1) >= '0' && peek(1) <= '5') {
+			fPos+= 2;
+			name= new Node(NAME, '~' + prefix.fLastName, null);
+			name.fIsCtorDtorOrConversion= true;
+		} else if (c == 'U') {
+			name= parseUnnamedTypeName(prefix);
+		} else if (isLower(c)) {
+			name= parseOperatorName();
+		} else {
+			throw new UnsupportedNameException();
+		}
+		// ABI tags
+		while (peek() == 'B') {
+			fPos++;
+			name.fText= name.fText + "[abi:" + parseSourceName().fText + ']'; //$NON-NLS-1$
+		}
+		return name;
+	}
+
+	private Node parseSourceName() throws UnsupportedNameException {
+		int length= 0;
+		if (!isDigit(peek()))
+			throw new UnsupportedNameException();
+		while (isDigit(peek())) {
+			length= length * 10 + peek() - '0';
+			fPos++;
+			if (length > fLength)
+				throw new UnsupportedNameException();
+		}
+		if (fPos + length > fLength)
+			throw new UnsupportedNameException();
+		String identifier= fSymbol.substring(fPos, fPos + length);
+		fPos+= length;
+		if (length >= 10 && identifier.startsWith("_GLOBAL_")) { //$NON-NLS-1$
+			final char c= identifier.charAt(8);
+			if ((c == '.' || c == '_' || c == '$') && identifier.charAt(9) == 'N') {
+				identifier= "(anonymous namespace)"; //$NON-NLS-1$
+			}
+		}
+		final Node name= new Node(NAME, identifier, null);
+		name.fLastName= identifier;
+		return name;
+	}
+
+	private Node parseUnnamedTypeName(Node prefix) throws UnsupportedNameException {
+		final char kind= peek(1);
+		fPos+= 2;
+		final String text;
+		if (kind == 't') {
+			text= "{unnamed type#" + (parseSequenceNumber(10) + 2) + '}'; //$NON-NLS-1$
+		} else if (kind == 'l') {
+			final List<Node> params= parseParameters();
+			consume('E');
+			text= "{lambda" + params(params) + '#' + (parseSequenceNumber(10) + 2) + '}'; //$NON-NLS-1$
+		} else {
+			throw new UnsupportedNameException();
+		}
+		final Node name= new Node(NAME, text, null);
+		// Constructors of unnamed types are named after the enclosing class.
+		name.fLastName= prefix != null && prefix.fLastName != null ? prefix.fLastName : text;
+		return name;
+	}
+
+	private Node parseOperatorName() throws UnsupportedNameException {
+		final char c2= peek(1);
+		final String code= fSymbol.substring(fPos, Math.min(fPos + 2, fLength));
+		fPos+= 2;
+		final Node name;
+		if (code.equals("cv")) { //$NON-NLS-1$
+			final boolean inConversion= fInConversion;
+			fInConversion= true;
+			try {
+				name= new Node(NAME, "operator " + print(parseType()), null); //$NON-NLS-1$
+			} finally {
+				fInConversion= inConversion;
+			}
+			name.fIsCtorDtorOrConversion= true;
+			return name;
+		}
+		if (code.equals("li")) { //$NON-NLS-1$
+			return new Node(NAME, "operator\"\" " + parseSourceName().fText, null); //$NON-NLS-1$
+		}
+		final String op= OPERATORS.get(code);
+		if (op == null || c2 == 0)
+			throw new UnsupportedNameException();
+		return new Node(NAME, op, null);
+	}
+
+	private Node parseSubstitution(boolean isPrefix) throws UnsupportedNameException {
+		consume('S');
+		final char c= peek();
+		if (isLower(c)) {
+			fPos++;
+			final boolean verbose= isPrefix && (peek() == 'C' || peek() == 'D');
+			String text, lastName;
+			switch (c) {
+			case 'a':
+				text= "std::allocator"; //$NON-NLS-1$
+				lastName= "allocator"; //$NON-NLS-1$
+				break;
+			case 'b':
+				text= "std::basic_string"; //$NON-NLS-1$
+				lastName= "basic_string"; //$NON-NLS-1$
+				break;
+			case 's':
+				text= STD_STRING;
+				lastName= verbose ? "basic_string" : "string"; //$NON-NLS-1$ //$NON-NLS-2$
+				break;
+			case 'i':
+				text= STD_ISTREAM;
+				lastName= verbose ? "basic_istream" : "istream"; //$NON-NLS-1$ //$NON-NLS-2$
+				break;
+			case 'o':
+				text= STD_OSTREAM;
+				lastName= verbose ? "basic_ostream" : "ostream"; //$NON-NLS-1$ //$NON-NLS-2$
+				break;
+			case 'd':
+				text= STD_IOSTREAM;
+				lastName= verbose ? "basic_iostream" : "iostream"; //$NON-NLS-1$ //$NON-NLS-2$
+				break;
+			default:
+				throw new UnsupportedNameException();
+			}
+			final Node name= new Node(NAME, text, null);
+			name.fLastName= lastName;
+			return name;
+		}
+		final int index= parseSequenceNumber(36) + 1;
+		if (index < 0 || index >= fSubstitutions.size())
+			throw new UnsupportedNameException();
+		return fSubstitutions.get(index);
+	}
+
+	private void addSubstitution(Node node) {
+		fSubstitutions.add(node);
+	}
+
+	private Node parseTemplateParam() throws UnsupportedNameException {
+		consume('T');
+		final int index= parseSequenceNumber(10) + 1;
+		if (fInConversion || fTemplateArgs == null || index < 0 || index >= fTemplateArgs.size())
+			throw new UnsupportedNameException();
+		final Node arg= fTemplateArgs.get(index);
+		if (arg.fKind == PACK && fPackIndex >= 0) {
+			fPackSize= arg.fList.size();
+			return fPackIndex < fPackSize ? arg.fList.get(fPackIndex) : EMPTY_NAME;
+		}
+		return arg;
+	}
+
+	private List<Node> parseTemplateArgs(boolean record) throws UnsupportedNameException {
+		consume('I');
+		final List<Node> args= new ArrayList<Node>();
+		while (peek() != 'E') {
+			args.add(parseTemplateArg());
+		}
+		fPos++;
+		if (record) {
+			fTemplateArgs= args;
+		}
+		return args;
+	}
+
+	private Node parseTemplateArg() throws UnsupportedNameException {
+		switch (peek()) {
+		case 'L':
+			return parseLiteral();
+		case 'X': {
+			fPos++;
+			final Node result= parseExpression();
+			consume('E');
+			return result;
+		}
+		case 'J': {
+			fPos++;
+			final Node pack= new Node(PACK, null, null);
+			pack.fList= new ArrayList<Node>();
+			while (peek() != 'E') {
+				pack.fList.add(parseTemplateArg());
+			}
+			fPos++;
+			return pack;
+		}
+		case 0:
+			throw new UnsupportedNameException();
+		}
+		return parseType();
+	}
+
+	/**
+	 * Only template parameters, literals and addresses of external names are supported.
+	 */
+	private Node parseExpression() throws UnsupportedNameException {
+		switch (peek()) {
+		case 'L':
+			return parseLiteral();
+		case 'T':
+			return parseTemplateParam();
+		case 'a':
+			if (peek(1) == 'd' && peek(2) == 'L') {
+				fPos+= 2;
+				final boolean isQualified= peek(1) == 'Z' ? peek(2) == 'N' : peek(3) == 'N';
+				final Node operand= parseLiteral();
+				final String text;
+				if (!operand.fIsFunction) {
+					text= '&' + operand.fText;
+				} else if (isQualified) {
+					// Pointer to member function
+					text= '&' + fFunctionName;
+				} else {
+					text= "&(" + operand.fText + ')'; //$NON-NLS-1$
+				}
+				return new Node(NAME, text, null);
+			}
+			break;
+		}
+		throw new UnsupportedNameException();
+	}
+
+	private Node parseLiteral() throws UnsupportedNameException {
+		consume('L');
+		final String text;
+		boolean isFunction= false;
+		if (peek() == 'Z' || (peek() == '_' && peek(1) == 'Z')) {
+			fPos+= peek() == 'Z' ? 1 : 2;
+			text= parseEncoding(false);
+			isFunction= fIsFunction;
+		} else {
+			final char c= peek();
+			final Node type= parseType();
+			final String value= parseNumber();
+			if (type.fIsBuiltin && c == 'b' && (value.equals("0") || value.equals("1"))) { //$NON-NLS-1$ //$NON-NLS-2$
+				text= value.equals("0") ? "false" : "true"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			} else if (type.fIsBuiltin && isLower(c) && LITERAL_SUFFIXES[c - 'a'] != null) {
+				text= value + LITERAL_SUFFIXES[c - 'a'];
+			} else {
+				text= '(' + print(type) + ')' + value;
+			}
+		}
+		consume('E');
+		final Node literal= new Node(NAME, text, null);
+		literal.fIsFunction= isFunction;
+		return literal;
+	}
+
+	private Node parseType() throws UnsupportedNameException {
+		final char c= peek();
+		Node type;
+		switch (c) {
+		case 'r':
+		case 'V':
+		case 'K': {
+			final String qualifiers= parseCVQualifiers();
+			if (peek() == 'F') {
+				// The qualifiers of a member function, the unqualified function type is not a substitution candidate.
+				type= parseFunctionType();
+				type.fQualifiers= qualifiers + type.fQualifiers;
+			} else {
+				type= new Node(QUALIFIED, qualifiers, parseType());
+			}
+			break;
+		}
+		case 'U': {
+			fPos++;
+			final String qualifier= parseSourceName().fText;
+			if (peek() == 'I')
+				throw new UnsupportedNameException();
+			type= new Node(QUALIFIED, ' ' + qualifier, parseType());
+			break;
+		}
+		case 'P':
+			fPos++;
+			type= new Node(POINTER, null, parseType());
+			break;
+		case 'R':
+		case 'O': {
+			fPos++;
+			final Node inner= parseType();
+			int kind= c == 'R' ? LVALUE_REFERENCE : RVALUE_REFERENCE;
+			if (inner.fKind == LVALUE_REFERENCE || inner.fKind == RVALUE_REFERENCE) {
+				// Reference collapsing
+				type= new Node(kind == LVALUE_REFERENCE ? LVALUE_REFERENCE : inner.fKind, null, inner.fInner);
+			} else {
+				type= new Node(kind, null, inner);
+			}
+			break;
+		}
+		case 'F':
+			type= parseFunctionType();
+			break;
+		case 'A': {
+			fPos++;
+			String dimension= ""; //$NON-NLS-1$
+			if (peek() == 'T') {
+				dimension= print(parseTemplateParam());
+			} else if (peek() != '_') {
+				dimension= parseNumber();
+			}
+			consume('_');
+			type= new Node(ARRAY, dimension, parseType());
+			break;
+		}
+		case 'M': {
+			fPos++;
+			final Node cls= parseType();
+			type= new Node(POINTER_TO_MEMBER, print(cls), parseType());
+			break;
+		}
+		case 'T':
+			type= parseTemplateParam();
+			if (peek() == 'I') {
+				addSubstitution(type);
+				type= template(asName(type), parseTemplateArgs(false));
+			}
+			break;
+		case 'S':
+			if (peek(1) == 't') {
+				type= parseName(false);
+				break;
+			}
+			type= parseSubstitution(false);
+			if (peek() != 'I')
+				return type;
+			type= template(type, parseTemplateArgs(false));
+			break;
+		case 'D':
+			type= parseDType();
+			if (type.fIsBuiltin)
+				return type;
+			break;
+		case 'u':
+			fPos++;
+			type= parseSourceName();
+			break;
+		case 'N':
+		case 'Z':
+			type= parseName(false);
+			break;
+		default:
+			if (isDigit(c)) {
+				type= parseName(false);
+				break;
+			}
+			if (isLower(c) && BUILTIN_TYPES[c - 'a'] != null) {
+				fPos++;
+				return builtin(BUILTIN_TYPES[c - 'a']);
+			}
+			throw new UnsupportedNameException();
+		}
+		addSubstitution(type);
+		return type;
+	}
+
+	private Node parseFunctionType() throws UnsupportedNameException {
+		consume('F');
+		if (peek() == 'Y') {
+			fPos++;
+		}
+		final Node type= new Node(FUNCTION, null, parseType());
+		type.fList= parseParameters();
+		if (peek() == 'R') {
+			fPos++;
+			type.fQualifiers= " &"; //$NON-NLS-1$
+		} else if (peek() == 'O') {
+			fPos++;
+			type.fQualifiers= " &&"; //$NON-NLS-1$
+		}
+		consume('E');
+		return type;
+	}
+
+	private Node parseDType() throws UnsupportedNameException {
+		final char c= peek(1);
+		if (c == 'p')
+			return parsePackExpansion();
+		if (c == 'F') {
+			fPos+= 2;
+			final String bits= parseNumber();
+			consume('_');
+			return builtin("_Float" + bits); //$NON-NLS-1$
+		}
+		if (isLower(c) && D_BUILTIN_TYPES[c - 'a'] != null) {
+			fPos+= 2;
+			return builtin(D_BUILTIN_TYPES[c - 'a']);
+		}
+		throw new UnsupportedNameException();
+	}
+
+	/**
+	 * Expands a pack expansion by parsing the pattern for each element of the pack.
+	 */
+	private Node parsePackExpansion() throws UnsupportedNameException {
+		fPos+= 2;
+		final int start= fPos;
+		final int substitutions= fSubstitutions.size();
+		final int packIndex= fPackIndex;
+		final int packSize= fPackSize;
+		try {
+			fPackIndex= 0;
+			fPackSize= -1;
+			final Node first= parseType();
+			final int size= fPackSize;
+			if (size < 0)
+				return new Node(NAME, print(first) + "...", null); //$NON-NLS-1$
+
+			final Node pack= new Node(PACK, null, null);
+			pack.fList= new ArrayList<Node>(size);
+			if (size > 0) {
+				pack.fList.add(first);
+			}
+			final int end= fPos;
+			for (int i = 1; i < size; i++) {
+				fPos= start;
+				while (fSubstitutions.size() > substitutions) {
+					fSubstitutions.remove(fSubstitutions.size() - 1);
+				}
+				fPackIndex= i;
+				pack.fList.add(parseType());
+			}
+			fPos= end;
+			return pack;
+		} finally {
+			fPackIndex= packIndex;
+			fPackSize= packSize;
+		}
+	}
+
+	private static Node builtin(String name) {
+		final Node type= new Node(NAME, name, null);
+		type.fIsBuiltin= true;
+		return type;
+	}
+
+	private static Node asName(Node node) {
+		if (node.fKind == NAME)
+			return node;
+		return new Node(NAME, print(node), null);
+	}
+
+	private static Node qualify(Node prefix, Node name) {
+		if (prefix == null)
+			return name;
+		final Node result= new Node(NAME, prefix.fText + "::" + name.fText, null); //$NON-NLS-1$
+		result.fLastName= name.fLastName;
+		result.fIsCtorDtorOrConversion= name.fIsCtorDtorOrConversion;
+		return result;
+	}
+
+	private static Node template(Node name, List<Node> args) {
+		final StringBuilder text= new StringBuilder(name.fText);
+		if (text.charAt(text.length() - 1) == '<') {
+			text.append(' ');
+		}
+		text.append('<');
+		appendList(text, args);
+		if (text.charAt(text.length() - 1) == '>') {
+			text.append(' ');
+		}
+		text.append('>');
+		final Node result= new Node(NAME, text.toString(), null);
+		result.fLastName= name.fLastName;
+		result.fIsCtorDtorOrConversion= name.fIsCtorDtorOrConversion;
+		result.fIsTemplate= true;
+		return result;
+	}
+
+	private static String params(List<Node> params) {
+		final StringBuilder text= new StringBuilder();
+		text.append('(');
+		appendList(text, params);
+		text.append(')');
+		return text.toString();
+	}
+
+	private static void appendList(StringBuilder text, List<Node> list) {
+		boolean first= true;
+		for (Node node : list) {
+			if (node.fKind == PACK) {
+				if (node.fList.isEmpty())
+					continue;
+			}
+			if (!first) {
+				text.append(", "); //$NON-NLS-1$
+			}
+			first= false;
+			if (node.fKind == PACK) {
+				appendList(text, node.fList);
+			} else {
+				text.append(print(node));
+			}
+		}
+	}
+
+	private static String print(Node node) {
+		return print(node, ""); //$NON-NLS-1$
+	}
+
+	/**
+	 * Prints a type with the given declarator, such that pointers to functions and arrays come
+	 * out in the syntax of C.
+	 */
+	private static String print(Node node, String declarator) {
+		switch (node.fKind) {
+		case NAME:
+			return node.fText + declarator;
+		case POINTER:
+			return printIndirection(node.fInner, '*' + declarator);
+		case LVALUE_REFERENCE:
+			return printIndirection(node.fInner, '&' + declarator);
+		case RVALUE_REFERENCE:
+			return printIndirection(node.fInner, "&&" + declarator); //$NON-NLS-1$
+		case QUALIFIED:
+			return print(node.fInner, node.fText + declarator);
+		case FUNCTION:
+			return printWithDeclarator(node.fInner, declarator + params(node.fList) + node.fQualifiers);
+		case ARRAY: {
+			final StringBuilder dimensions= new StringBuilder(declarator);
+			if (declarator.length() > 0) {
+				dimensions.append(' ');
+			}
+			Node element= node;
+			while (element.fKind == ARRAY) {
+				dimensions.append('[').append(element.fText).append(']');
+				element= element.fInner;
+			}
+			return printWithDeclarator(element, dimensions.toString());
+		}
+		case POINTER_TO_MEMBER: {
+			final String member= node.fText + "::*" + declarator; //$NON-NLS-1$
+			if (node.fInner.fKind == FUNCTION)
+				return print(node.fInner, '(' + member + ')');
+			return print(node.fInner, ' ' + member);
+		}
+		case PACK: {
+			final StringBuilder text= new StringBuilder();
+			appendList(text, node.fList);
+			return text.toString();
+		}
+		}
+		return ""; //$NON-NLS-1$
+	}
+
+	/**
+	 * Prints the return type of a function or the element type of an array together with the
+	 * declarator.
+	 */
+	private static String printWithDeclarator(Node type, String declarator) {
+		if (isDeclaratorNested(type))
+			return print(type, declarator);
+		return print(type) + ' ' + declarator;
+	}
+
+	/**
+	 * Checks whether a declarator needs to be placed inside of the given type, which is the case
+	 * for pointers to functions and arrays.
+	 */
+	private static boolean isDeclaratorNested(Node type) {
+		while (true) {
+			switch (type.fKind) {
+			case POINTER:
+			case LVALUE_REFERENCE:
+			case RVALUE_REFERENCE:
+			case QUALIFIED:
+				type= type.fInner;
+				break;
+			case POINTER_TO_MEMBER:
+				return type.fInner.fKind == FUNCTION;
+			case FUNCTION:
+			case ARRAY:
+				return true;
+			default:
+				return false;
+			}
+		}
+	}
+
+	private static String printIndirection(Node target, String declarator) {
+		if (target.fKind == FUNCTION || target.fKind == ARRAY)
+			return print(target, '(' + declarator + ')');
+		return print(target, declarator);
+	}
+}
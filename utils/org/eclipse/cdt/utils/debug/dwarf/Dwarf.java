@@ -12,12 +12,22 @@
 package org.eclipse.cdt.utils.debug.dwarf;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Array;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.utils.coff.PE;
@@ -63,7 +73,20 @@ public class Dwarf {
 			DWARF_DEBUG_WEAKNAMES,
 			DWARF_DEBUG_MACINFO };
 
+	/**
+	 * Maximum number of threads decoding compilation units during a full parse, can be changed via
+	 * the system property <code>org.eclipse.cdt.utils.dwarf.threads</code>. A value of <code>1</code>
+	 * disables concurrent decoding.
+	 */
+	private static final int DECODER_THREADS = Integer.getInteger("org.eclipse.cdt.utils.dwarf.threads", //$NON-NLS-1$
+			Math.min(4, Runtime.getRuntime().availableProcessors())).intValue();
+	private static final int BATCH_SIZE = 256;
+	private static final int BATCHES_AHEAD = 4;
+	private static final List<DebugInfoEntry> END_OF_UNIT = new ArrayList<DebugInfoEntry>(0);
+
 	class CompilationUnitHeader {
+		/* offset of the unit in .debug_info */
+		int offset;
 		int length;
 		short version;
 		int abbreviationOffset;
@@ -149,6 +172,18 @@ public class Dwarf {
 		}
 	}
 
+	/**
+	 * An entry of .debug_info decoded ahead of its processing.
+	 */
+	class DebugInfoEntry {
+		AbbreviationEntry entry;
+		List<AttributeValue> attributes;
+		DebugInfoEntry(AbbreviationEntry e, List<AttributeValue> a) {
+			entry = e;
+			attributes = a;
+		}
+	}
+
 	class CompileUnit {
 		long lowPC;
 		long highPC;
@@ -168,6 +203,15 @@ public class Dwarf {
 
 	CompileUnit currentCU;
 
+	/* The compilation units of .debug_info, found by a scan of the unit headers. */
+	private CompilationUnitHeader[] compilationUnits;
+
+	/* The address ranges of .debug_aranges sorted by their start, with the indexes of their compilation units. */
+	private long[] rangeStarts;
+	private long[] rangeEnds;
+	private long[] rangeMaxEnds;
+	private int[] rangeUnits;
+
 	boolean printEnabled = true;
 	
 	public Dwarf(String file) throws IOException {
@@ -273,25 +317,24 @@ public class Dwarf {
 		}
 	}
 
-	// FIXME:This is wrong, for unsigned.
 	long read_8_bytes(byte[] bytes) throws IndexOutOfBoundsException {
 
 		if (isLE) {
-			return (((bytes[7] & 0xff) << 56)
-				| ((bytes[6] & 0xff) << 48)
-				| ((bytes[5] & 0xff) << 40)
-				| ((bytes[4] & 0xff) << 32)
-				| ((bytes[3] & 0xff) << 24)
+			return (((long) (bytes[7] & 0xff) << 56)
+				| ((long) (bytes[6] & 0xff) << 48)
+				| ((long) (bytes[5] & 0xff) << 40)
+				| ((long) (bytes[4] & 0xff) << 32)
+				| ((long) (bytes[3] & 0xff) << 24)
 				| ((bytes[2] & 0xff) << 16)
 				| ((bytes[1] & 0xff) << 8)
 				| (bytes[0] & 0xff));
 		}
 
-		return (((bytes[0] & 0xff) << 56)
-			| ((bytes[1] & 0xff) << 48)
-			| ((bytes[2] & 0xff) << 40)
-			| ((bytes[3] & 0xff) << 32)
-			| ((bytes[4] & 0xff) << 24)
+		return (((long) (bytes[0] & 0xff) << 56)
+			| ((long) (bytes[1] & 0xff) << 48)
+			| ((long) (bytes[2] & 0xff) << 40)
+			| ((long) (bytes[3] & 0xff) << 32)
+			| ((long) (bytes[4] & 0xff) << 24)
 			| ((bytes[5] & 0xff) << 16)
 			| ((bytes[6] & 0xff) << 8)
 			| (bytes[7] & 0xff));
@@ -362,76 +405,437 @@ public class Dwarf {
 		parseDebugInfo(requestor);
 	}
 
+	/**
+	 * Returns the number of compilation units in .debug_info. The units are found by a scan of
+	 * their headers, the entries are decoded only when a unit is parsed.
+	 * @since 5.3
+	 */
+	public int getCompilationUnitCount() {
+		return getCompilationUnitHeaders().length;
+	}
+
+	/**
+	 * Parses the entries of a single compilation unit.
+	 * @param index the index of the unit, between <code>0</code> and {@link #getCompilationUnitCount()}.
+	 * @since 5.3
+	 */
+	public void parseCompilationUnit(IDebugEntryRequestor requestor, int index) {
+		CompilationUnitHeader header = getCompilationUnitHeaders()[index];
+		currentCU = null;
+		try {
+			parseCompilationUnit(requestor, header);
+		} catch (IOException e) {
+			CCorePlugin.log(e);
+		}
+		endCompilationUnit(requestor);
+	}
+
+	/**
+	 * Returns the indexes of the compilation units with code in the given range of addresses,
+	 * in ascending order. The units are looked up in .debug_aranges, units not described there
+	 * are not found.
+	 * @param lowAddress the first address of the range
+	 * @param highAddress the address following the range
+	 * @since 5.3
+	 */
+	public int[] findCompilationUnits(long lowAddress, long highAddress) {
+		readAddressRanges();
+		BitSet units = new BitSet();
+		// The ranges starting before the end of the given range.
+		int low = 0, high = rangeStarts.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (DwarfLineIndex.compareUnsigned(rangeStarts[mid], highAddress) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		for (int i = low - 1; i >= 0 && DwarfLineIndex.compareUnsigned(rangeMaxEnds[i], lowAddress) > 0; i--) {
+			if (DwarfLineIndex.compareUnsigned(rangeEnds[i], lowAddress) > 0) {
+				units.set(rangeUnits[i]);
+			}
+		}
+		int[] result = new int[units.cardinality()];
+		int j = 0;
+		for (int unit = units.nextSetBit(0); unit >= 0; unit = units.nextSetBit(unit + 1)) {
+			result[j++] = unit;
+		}
+		return result;
+	}
+
+	/**
+	 * Parses the compilation units with code in the given range of addresses, as found by
+	 * {@link #findCompilationUnits(long, long)}.
+	 * @param lowAddress the first address of the range
+	 * @param highAddress the address following the range
+	 * @since 5.3
+	 */
+	public void parse(IDebugEntryRequestor requestor, long lowAddress, long highAddress) {
+		CompilationUnitHeader[] units = getCompilationUnitHeaders();
+		currentCU = null;
+		try {
+			for (int index : findCompilationUnits(lowAddress, highAddress)) {
+				parseCompilationUnit(requestor, units[index]);
+			}
+		} catch (IOException e) {
+			CCorePlugin.log(e);
+		}
+		endCompilationUnit(requestor);
+	}
+
 	void parseDebugInfo(IDebugEntryRequestor requestor) {
-		ByteBuffer data = dwarfSections.get(DWARF_DEBUG_INFO);
-		if (data != null) {
-			try {
-				while (data.hasRemaining()) {
-					CompilationUnitHeader header = new CompilationUnitHeader();
-					header.length = read_4_bytes(data);
-					header.version = read_2_bytes(data);
-					header.abbreviationOffset = read_4_bytes(data);
-					header.addressSize = data.get();
-
-					if (printEnabled) {
-						System.out.println("Compilation Unit @ " + Long.toHexString(data.position())); //$NON-NLS-1$
-						System.out.println(header);
-					}
+		CompilationUnitHeader[] units = getCompilationUnitHeaders();
+		currentCU = null;
+		try {
+			if (DECODER_THREADS < 2 || units.length < 2) {
+				for (CompilationUnitHeader header : units) {
+					parseCompilationUnit(requestor, header);
+				}
+			} else {
+				parseCompilationUnits(requestor, units);
+			}
+		} catch (InterruptedIOException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			CCorePlugin.log(e);
+		}
+		endCompilationUnit(requestor);
+	}
 
-					// read the abbrev section.
+	/**
+	 * Parses only the first entry of each compilation unit, which describes the unit itself.
+	 */
+	void parseCompilationUnitEntries(IDebugEntryRequestor requestor) {
+		currentCU = null;
+		try {
+			for (CompilationUnitHeader header : getCompilationUnitHeaders()) {
+				ByteBuffer in = getEntries(header);
+				if (in != null && in.hasRemaining()) {
 					Map<Long, AbbreviationEntry> abbrevs = parseDebugAbbreviation(header);
-					// Note "length+4" is the total size in bytes of the CU data.
-					ByteBuffer entryBuffer = data.slice();
-					entryBuffer.limit(header.length + 4 - 11);
-					parseDebugInfoEntry(requestor, entryBuffer, abbrevs, header);
-
-					data.position(data.position() + header.length + 4 - 11);
-					
-					if (printEnabled)
-						System.out.println();
+					AbbreviationEntry entry = abbrevs.get(Long.valueOf(read_unsigned_leb128(in)));
+					if (entry != null) {
+						processDebugInfoEntry(requestor, entry, readAttributes(entry, in, header));
+					}
+				}
+			}
+		} catch (IOException e) {
+			CCorePlugin.log(e);
+		}
+		endCompilationUnit(requestor);
+	}
+
+	/**
+	 * Notifies the requestor about the end of the compilation unit entered last.
+	 */
+	private void endCompilationUnit(IDebugEntryRequestor requestor) {
+		if (currentCU != null && requestor != null) {
+			requestor.exitCompilationUnit(currentCU.highPC);
+		}
+		currentCU = null;
+	}
+
+	/**
+	 * Scans the headers of the compilation units in .debug_info, the entries of the units
+	 * are skipped.
+	 */
+	synchronized CompilationUnitHeader[] getCompilationUnitHeaders() {
+		if (compilationUnits == null) {
+			List<CompilationUnitHeader> units = new ArrayList<CompilationUnitHeader>();
+			ByteBuffer info = dwarfSections.get(DWARF_DEBUG_INFO);
+			if (info != null) {
+				ByteBuffer data = info.duplicate();
+				int offset = 0;
+				try {
+					while (offset + 11 <= data.limit()) {
+						data.position(offset);
+						CompilationUnitHeader header = new CompilationUnitHeader();
+						header.offset = offset;
+						header.length = read_4_bytes(data);
+						header.version = read_2_bytes(data);
+						header.abbreviationOffset = read_4_bytes(data);
+						header.addressSize = data.get();
+						// 64-bit DWARF is not supported.
+						if (header.length < 7 || header.length > data.limit() - offset - 4) {
+							break;
+						}
+						units.add(header);
+						offset += header.length + 4;
+					}
+				} catch (IOException e) {
+					CCorePlugin.log(e);
+				}
+			}
+			compilationUnits = units.toArray(new CompilationUnitHeader[units.size()]);
+		}
+		return compilationUnits;
+	}
+
+	/**
+	 * Reads the address ranges of the compilation units from .debug_aranges.
+	 */
+	private synchronized void readAddressRanges() {
+		if (rangeStarts != null) {
+			return;
+		}
+		CompilationUnitHeader[] units = getCompilationUnitHeaders();
+		List<long[]> ranges = new ArrayList<long[]>();
+		ByteBuffer aranges = dwarfSections.get(DWARF_DEBUG_ARANGES);
+		if (aranges != null) {
+			ByteBuffer data = aranges.duplicate();
+			int offset = 0;
+			try {
+				while (offset + 12 <= data.limit()) {
+					data.position(offset);
+					int length = read_4_bytes(data);
+					if (length < 8 || length > data.limit() - offset - 4) {
+						break;
+					}
+					int next = offset + 4 + length;
+					read_2_bytes(data); // version
+					int unit = findCompilationUnit(units, read_4_bytes(data));
+					int addressSize = data.get();
+					int segmentSize = data.get();
+					if (unit >= 0 && segmentSize == 0 && (addressSize == 4 || addressSize == 8)) {
+						// The tuples are aligned to their size, relative to the start of the set.
+						int tupleSize = 2 * addressSize;
+						int pos = offset + (12 + tupleSize - 1) / tupleSize * tupleSize;
+						for (; pos + tupleSize <= next; pos += tupleSize) {
+							data.position(pos);
+							long start = readAddress(data, addressSize);
+							long size = readAddress(data, addressSize);
+							if (start == 0 && size == 0) {
+								break;
+							}
+							if (size != 0) {
+								ranges.add(new long[] {start, start + size, unit});
+							}
+						}
+					}
+					offset = next;
 				}
 			} catch (IOException e) {
-				e.printStackTrace();
+				CCorePlugin.log(e);
+			}
+		}
+
+		long[][] sorted = ranges.toArray(new long[ranges.size()][]);
+		Arrays.sort(sorted, new Comparator<long[]>() {
+			public int compare(long[] o1, long[] o2) {
+				return DwarfLineIndex.compareUnsigned(o1[0], o2[0]);
 			}
+		});
+		rangeStarts = new long[sorted.length];
+		rangeEnds = new long[sorted.length];
+		rangeMaxEnds = new long[sorted.length];
+		rangeUnits = new int[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			rangeStarts[i] = sorted[i][0];
+			rangeEnds[i] = sorted[i][1];
+			rangeUnits[i] = (int) sorted[i][2];
+			rangeMaxEnds[i] = i > 0 && DwarfLineIndex.compareUnsigned(rangeMaxEnds[i - 1], rangeEnds[i]) > 0
+				? rangeMaxEnds[i - 1] : rangeEnds[i];
 		}
 	}
 
+	private long readAddress(ByteBuffer in, int addressSize) throws IOException {
+		return addressSize == 4 ? read_4_bytes(in) & 0xffffffffL : read_8_bytes(in);
+	}
+
+	/**
+	 * Returns the index of the compilation unit at the given offset of .debug_info, or -1.
+	 */
+	private static int findCompilationUnit(CompilationUnitHeader[] units, int offset) {
+		int low = 0, high = units.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (units[mid].offset < offset) {
+				low = mid + 1;
+			} else if (units[mid].offset > offset) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the entries of the compilation unit, or <code>null</code> for an unsupported version
+	 * of DWARF.
+	 */
+	private ByteBuffer getEntries(CompilationUnitHeader header) {
+		if (header.version < 2 || header.version > 4) {
+			return null;
+		}
+		ByteBuffer data = dwarfSections.get(DWARF_DEBUG_INFO).duplicate();
+		data.position(header.offset + 11);
+		// Note "length+4" is the total size in bytes of the CU data.
+		ByteBuffer entryBuffer = data.slice();
+		entryBuffer.limit(header.length + 4 - 11);
+		return entryBuffer;
+	}
+
+	private void parseCompilationUnit(IDebugEntryRequestor requestor, CompilationUnitHeader header) throws IOException {
+		if (printEnabled) {
+			System.out.println("Compilation Unit @ " + Long.toHexString(header.offset + 11)); //$NON-NLS-1$
+			System.out.println(header);
+		}
+		ByteBuffer entryBuffer = getEntries(header);
+		if (entryBuffer != null) {
+			// read the abbrev section.
+			Map<Long, AbbreviationEntry> abbrevs = parseDebugAbbreviation(header);
+			parseDebugInfoEntry(requestor, entryBuffer, abbrevs, header);
+		}
+		if (printEnabled)
+			System.out.println();
+	}
+
+	/**
+	 * Decodes the compilation units on several threads, the entries are processed in the calling
+	 * thread in the order of the units. The decoded entries are handed over in small batches, such
+	 * that only few of them are kept in memory.
+	 */
+	private void parseCompilationUnits(IDebugEntryRequestor requestor, CompilationUnitHeader[] units) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(DECODER_THREADS, new ThreadFactory() {
+			private int count;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "DWARF Decoder " + (++count)); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		LinkedList<UnitDecoder> pending = new LinkedList<UnitDecoder>();
+		int next = 0;
+		try {
+			for (CompilationUnitHeader header : units) {
+				// The units are started in order, one more than there are threads is queued.
+				for (; next < units.length && pending.size() <= DECODER_THREADS; next++) {
+					UnitDecoder decoder = new UnitDecoder(units[next]);
+					executor.execute(decoder);
+					pending.add(decoder);
+				}
+				UnitDecoder decoder = pending.removeFirst();
+				if (printEnabled) {
+					System.out.println("Compilation Unit @ " + Long.toHexString(header.offset + 11)); //$NON-NLS-1$
+					System.out.println(header);
+				}
+				List<DebugInfoEntry> batch;
+				while ((batch = decoder.batches.take()) != END_OF_UNIT) {
+					for (DebugInfoEntry entry : batch) {
+						processDebugInfoEntry(requestor, entry.entry, entry.attributes);
+					}
+				}
+				if (decoder.error instanceof IOException)
+					throw (IOException) decoder.error;
+				if (decoder.error instanceof RuntimeException)
+					throw (RuntimeException) decoder.error;
+				if (decoder.error instanceof Error)
+					throw (Error) decoder.error;
+				if (printEnabled)
+					System.out.println();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		} finally {
+			// Interrupts decoders waiting for their units to be processed.
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Decodes the entries of a compilation unit without processing them, runs in a thread of the
+	 * pool of a full parse.
+	 */
+	private class UnitDecoder implements Runnable {
+		final CompilationUnitHeader header;
+		final BlockingQueue<List<DebugInfoEntry>> batches = new ArrayBlockingQueue<List<DebugInfoEntry>>(BATCHES_AHEAD);
+		volatile Throwable error;
+
+		UnitDecoder(CompilationUnitHeader h) {
+			header = h;
+		}
+
+		public void run() {
+			try {
+				try {
+					ByteBuffer in = getEntries(header);
+					if (in != null) {
+						Map<Long, AbbreviationEntry> abbrevs = parseDebugAbbreviation(header);
+						List<DebugInfoEntry> batch = new ArrayList<DebugInfoEntry>(BATCH_SIZE);
+						while (in.remaining() > 0) {
+							long code = read_unsigned_leb128(in);
+							AbbreviationEntry entry = abbrevs.get(Long.valueOf(code));
+							if (entry != null) {
+								batch.add(new DebugInfoEntry(entry, readAttributes(entry, in, header)));
+								if (batch.size() == BATCH_SIZE) {
+									batches.put(batch);
+									batch = new ArrayList<DebugInfoEntry>(BATCH_SIZE);
+								}
+							}
+						}
+						if (!batch.isEmpty()) {
+							batches.put(batch);
+						}
+					}
+				} catch (IOException e) {
+					error = e;
+				} catch (RuntimeException e) {
+					error = e;
+				} catch (Error e) {
+					error = e;
+				}
+				batches.put(END_OF_UNIT);
+			} catch (InterruptedException e) {
+				// The parse has been aborted.
+			}
+		}
+	}
+
+	/**
+	 * Returns the abbreviations at the offset given by the header, the abbreviations of each
+	 * offset are decoded once. May be called from any thread.
+	 */
 	Map<Long, AbbreviationEntry> parseDebugAbbreviation(CompilationUnitHeader header) throws IOException {
 		Integer key = new Integer(header.abbreviationOffset);
-		Map<Long, AbbreviationEntry> abbrevs = abbreviationMaps.get(key);
-		if (abbrevs == null) {
-			abbrevs = new HashMap<Long, AbbreviationEntry>();
-			abbreviationMaps.put(key, abbrevs);
-			ByteBuffer data = dwarfSections.get(DWARF_DEBUG_ABBREV);
-			if (data != null) {
-				data.position(header.abbreviationOffset);
-				while (data.remaining() > 0) {
-					long code = read_unsigned_leb128(data);
-					if (code == 0) {
-						break;
-					}
-					long tag = read_unsigned_leb128(data);
-					byte hasChildren = data.get();
-					AbbreviationEntry entry = new AbbreviationEntry(code, tag, hasChildren);
-
-					//System.out.println("\tAbrev Entry: " + code + " " + Long.toHexString(entry.tag) + " " + entry.hasChildren);
-
-					// attributes
-					long name = 0;
-					long form = 0;
-					do {
-						name = read_unsigned_leb128(data);
-						form = read_unsigned_leb128(data);
-						if (name != 0) {
-							entry.attributes.add(new Attribute(name, form));
+		synchronized (abbreviationMaps) {
+			Map<Long, AbbreviationEntry> abbrevs = abbreviationMaps.get(key);
+			if (abbrevs == null) {
+				abbrevs = new HashMap<Long, AbbreviationEntry>();
+				abbreviationMaps.put(key, abbrevs);
+				ByteBuffer data = dwarfSections.get(DWARF_DEBUG_ABBREV);
+				if (data != null) {
+					data = data.duplicate();
+					data.position(header.abbreviationOffset);
+					while (data.remaining() > 0) {
+						long code = read_unsigned_leb128(data);
+						if (code == 0) {
+							break;
 						}
-						//System.out.println("\t\t " + Long.toHexString(name) + " " + Long.toHexString(value));
-					} while (name != 0 && form != 0);
-					abbrevs.put(new Long(code), entry);
+						long tag = read_unsigned_leb128(data);
+						byte hasChildren = data.get();
+						AbbreviationEntry entry = new AbbreviationEntry(code, tag, hasChildren);
+
+						//System.out.println("\tAbrev Entry: " + code + " " + Long.toHexString(entry.tag) + " " + entry.hasChildren);
+
+						// attributes
+						long name = 0;
+						long form = 0;
+						do {
+							name = read_unsigned_leb128(data);
+							form = read_unsigned_leb128(data);
+							if (name != 0) {
+								entry.attributes.add(new Attribute(name, form));
+							}
+							//System.out.println("\t\t " + Long.toHexString(name) + " " + Long.toHexString(value));
+						} while (name != 0 && form != 0);
+						abbrevs.put(Long.valueOf(code), entry);
+					}
 				}
 			}
+			return abbrevs;
 		}
-		return abbrevs;
 	}
 
 	void parseDebugInfoEntry(IDebugEntryRequestor requestor, ByteBuffer in, Map<Long, AbbreviationEntry> abbrevs, CompilationUnitHeader header)
@@ -440,22 +844,26 @@ public class Dwarf {
 			long code = read_unsigned_leb128(in);
 			AbbreviationEntry entry = abbrevs.get(new Long(code));
 			if (entry != null) {
-				int len = entry.attributes.size();
-				List<AttributeValue> list = new ArrayList<AttributeValue>(len);
-				try {
-					for (int i = 0; i < len; i++) {
-						Attribute attr = entry.attributes.get(i);
-						Object obj = readAttribute((int) attr.form, in, header);
-						list.add(new AttributeValue(attr, obj));
-					}
-				} catch (IOException e) {
-					//break;
-				}
-				processDebugInfoEntry(requestor, entry, list);
+				processDebugInfoEntry(requestor, entry, readAttributes(entry, in, header));
 			}
 		}
 	}
 
+	List<AttributeValue> readAttributes(AbbreviationEntry entry, ByteBuffer in, CompilationUnitHeader header) {
+		int len = entry.attributes.size();
+		List<AttributeValue> list = new ArrayList<AttributeValue>(len);
+		try {
+			for (int i = 0; i < len; i++) {
+				Attribute attr = entry.attributes.get(i);
+				Object obj = readAttribute((int) attr.form, in, header);
+				list.add(new AttributeValue(attr, obj));
+			}
+		} catch (IOException e) {
+			//break;
+		}
+		return list;
+	}
+
 	Object readAttribute(int form, ByteBuffer in, CompilationUnitHeader header) throws IOException {
 		Object obj = null;
 		switch (form) {
@@ -551,10 +959,10 @@ public class Dwarf {
 					} else if (offset < 0 || offset > data.capacity()) {
 						obj = new String();
 					} else {
+						// Absolute reads, the section is shared by the threads decoding units.
 						StringBuffer sb = new StringBuffer();
-						data.position(offset);
-						while (data.hasRemaining()) {
-							byte c = data.get();
+						for (int i = offset; i < data.limit(); i++) {
+							byte c = data.get(i);
 							if (c == 0) {
 								break;
 							}
@@ -591,6 +999,27 @@ public class Dwarf {
 					return readAttribute(f, in, header);
 				}
 
+			case DwarfConstants.DW_FORM_sec_offset :
+				obj = Integer.valueOf(read_4_bytes(in));
+				break;
+
+			case DwarfConstants.DW_FORM_exprloc :
+				{
+					int size = (int) read_unsigned_leb128(in);
+					byte[] bytes = new byte[size];
+					in.get(bytes);
+					obj = bytes;
+				}
+				break;
+
+			case DwarfConstants.DW_FORM_flag_present :
+				obj = Byte.valueOf((byte) 1);
+				break;
+
+			case DwarfConstants.DW_FORM_ref_sig8 :
+				obj = Long.valueOf(read_8_bytes(in));
+				break;
+
 			default :
 				break;
 		}
@@ -604,76 +1033,76 @@ public class Dwarf {
 		if (printEnabled)
 			System.out.println("Abbrev Number " + entry.code); //$NON-NLS-1$
 		
-		for (int i = 0; i < len; i++) {
-			AttributeValue av = list.get(i);
-			if (printEnabled)
-				System.out.println(av);
-			// We are only interrested in certain tags.
-			switch (tag) {
-				case DwarfConstants.DW_TAG_array_type :
-					break;
-				case DwarfConstants.DW_TAG_class_type :
-					break;
-				case DwarfConstants.DW_TAG_enumeration_type :
-					break;
-				case DwarfConstants.DW_TAG_formal_parameter :
-					break;
-				case DwarfConstants.DW_TAG_lexical_block :
-					break;
-				case DwarfConstants.DW_TAG_member :
-					break;
-				case DwarfConstants.DW_TAG_pointer_type :
-					break;
-				case DwarfConstants.DW_TAG_reference_type :
-					break;
-				case DwarfConstants.DW_TAG_compile_unit :
-					processCompileUnit(requestor, list);
-					break;
-				case DwarfConstants.DW_TAG_structure_type :
-					break;
-				case DwarfConstants.DW_TAG_subroutine_type :
-					break;
-				case DwarfConstants.DW_TAG_typedef :
-					break;
-				case DwarfConstants.DW_TAG_union_type :
-					break;
-				case DwarfConstants.DW_TAG_unspecified_parameters :
-					break;
-				case DwarfConstants.DW_TAG_inheritance :
-					break;
-				case DwarfConstants.DW_TAG_ptr_to_member_type :
-					break;
-				case DwarfConstants.DW_TAG_with_stmt :
-					break;
-				case DwarfConstants.DW_TAG_base_type :
-					break;
-				case DwarfConstants.DW_TAG_catch_block :
-					break;
-				case DwarfConstants.DW_TAG_const_type :
-					break;
-				case DwarfConstants.DW_TAG_enumerator :
-					break;
-				case DwarfConstants.DW_TAG_file_type :
-					break;
-				case DwarfConstants.DW_TAG_friend :
-					break;
-				case DwarfConstants.DW_TAG_subprogram :
-					processSubProgram(requestor, list);
-					break;
-				case DwarfConstants.DW_TAG_template_type_param :
-					break;
-				case DwarfConstants.DW_TAG_template_value_param :
-					break;
-				case DwarfConstants.DW_TAG_thrown_type :
-					break;
-				case DwarfConstants.DW_TAG_try_block :
-					break;
-				case DwarfConstants.DW_TAG_variable :
-					break;
-				case DwarfConstants.DW_TAG_volatile_type :
-					break;
+		if (printEnabled) {
+			for (int i = 0; i < len; i++) {
+				System.out.println(list.get(i));
 			}
 		}
+		// We are only interrested in certain tags.
+		switch (tag) {
+			case DwarfConstants.DW_TAG_array_type :
+				break;
+			case DwarfConstants.DW_TAG_class_type :
+				break;
+			case DwarfConstants.DW_TAG_enumeration_type :
+				break;
+			case DwarfConstants.DW_TAG_formal_parameter :
+				break;
+			case DwarfConstants.DW_TAG_lexical_block :
+				break;
+			case DwarfConstants.DW_TAG_member :
+				break;
+			case DwarfConstants.DW_TAG_pointer_type :
+				break;
+			case DwarfConstants.DW_TAG_reference_type :
+				break;
+			case DwarfConstants.DW_TAG_compile_unit :
+				processCompileUnit(requestor, list);
+				break;
+			case DwarfConstants.DW_TAG_structure_type :
+				break;
+			case DwarfConstants.DW_TAG_subroutine_type :
+				break;
+			case DwarfConstants.DW_TAG_typedef :
+				break;
+			case DwarfConstants.DW_TAG_union_type :
+				break;
+			case DwarfConstants.DW_TAG_unspecified_parameters :
+				break;
+			case DwarfConstants.DW_TAG_inheritance :
+				break;
+			case DwarfConstants.DW_TAG_ptr_to_member_type :
+				break;
+			case DwarfConstants.DW_TAG_with_stmt :
+				break;
+			case DwarfConstants.DW_TAG_base_type :
+				break;
+			case DwarfConstants.DW_TAG_catch_block :
+				break;
+			case DwarfConstants.DW_TAG_const_type :
+				break;
+			case DwarfConstants.DW_TAG_enumerator :
+				break;
+			case DwarfConstants.DW_TAG_file_type :
+				break;
+			case DwarfConstants.DW_TAG_friend :
+				break;
+			case DwarfConstants.DW_TAG_subprogram :
+				processSubProgram(requestor, list);
+				break;
+			case DwarfConstants.DW_TAG_template_type_param :
+				break;
+			case DwarfConstants.DW_TAG_template_value_param :
+				break;
+			case DwarfConstants.DW_TAG_thrown_type :
+				break;
+			case DwarfConstants.DW_TAG_try_block :
+				break;
+			case DwarfConstants.DW_TAG_variable :
+				break;
+			case DwarfConstants.DW_TAG_volatile_type :
+				break;
+		}
 	}
 
 	Long readAddress(ByteBuffer in, CompilationUnitHeader header) throws IOException {
@@ -700,6 +1129,7 @@ public class Dwarf {
 		long highPC = 0;
 		String funcName = ""; //$NON-NLS-1$
 		boolean isExtern = false;
+		boolean highPCIsOffset = false;
 
 		for (int i = 0; i < list.size(); i++) {
 			AttributeValue av = list.get(i);
@@ -712,6 +1142,7 @@ public class Dwarf {
 
 					case DwarfConstants.DW_AT_high_pc:
 						highPC = ((Number)av.value).longValue();
+						highPCIsOffset = isConstantForm(av.attribute.form);
 						break;
 
 					case DwarfConstants.DW_AT_name:
@@ -725,6 +1156,9 @@ public class Dwarf {
 			} catch (ClassCastException e) {
 			}
 		}
+		if (highPCIsOffset) {
+			highPC += lowPC;
+		}
 		requestor.enterFunction(funcName, new DebugUnknownType(""), isExtern, lowPC); //$NON-NLS-1$
 		requestor.exitFunction(highPC);
 	}
@@ -734,6 +1168,7 @@ public class Dwarf {
 			requestor.exitCompilationUnit(currentCU.highPC);
 		}
 		currentCU = new CompileUnit();
+		boolean highPCIsOffset = false;
 		for (int i = 0; i < list.size(); i++) {
 			AttributeValue av = list.get(i);
 			try {
@@ -745,6 +1180,7 @@ public class Dwarf {
 			
 					case DwarfConstants.DW_AT_high_pc:
 						currentCU.highPC = ((Number)av.value).longValue();
+						highPCIsOffset = isConstantForm(av.attribute.form);
 						break;
 
 					case DwarfConstants.DW_AT_name:
@@ -776,9 +1212,28 @@ public class Dwarf {
 			} catch (ClassCastException e) {
 			}
 		}
+		if (highPCIsOffset) {
+			currentCU.highPC += currentCU.lowPC;
+		}
 		requestor.enterCompilationUnit(currentCU.name, currentCU.lowPC);
 	}
 
+	/**
+	 * Since DWARF 4 the high pc can be given by a constant, which is the offset to the low pc.
+	 */
+	static boolean isConstantForm(long form) {
+		switch ((int) form) {
+			case DwarfConstants.DW_FORM_data1 :
+			case DwarfConstants.DW_FORM_data2 :
+			case DwarfConstants.DW_FORM_data4 :
+			case DwarfConstants.DW_FORM_data8 :
+			case DwarfConstants.DW_FORM_sdata :
+			case DwarfConstants.DW_FORM_udata :
+				return true;
+		}
+		return false;
+	}
+
 	public static void main(String[] args) {
 		try {
 			DebugSymsRequestor symreq = new DebugSymsRequestor();				
@@ -0,0 +1,1050 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Markus Schorn - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.utils.debug.dwarf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.utils.elf.Elf;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * Index from addresses to source locations of a binary, computed from the line number
+ * information in the .debug_line section. The index stores the rows of all line number
+ * programs sorted by address in primitive arrays, a lookup is a binary search.
+ * <p>
+ * Indexes can be stored on disk. For binaries with a build-id {@link #getIndex(Elf)} keeps them
+ * in the state location of the plug-in, such that they are computed once per build of a binary.
+ * The cache is limited in size, the indexes used least recently are removed first.
+ */
+public class DwarfLineIndex {
+	private static final int CACHE_MAGIC= 0x4344544c;	// 'CDTL'
+	private static final int CACHE_VERSION= 1;
+	private static final String CACHE_FOLDER= "dwarfLineIndex"; //$NON-NLS-1$
+	private static final String CACHE_EXTENSION= ".lines"; //$NON-NLS-1$
+	/** When the cached indexes exceed this size, the least recently used ones are deleted */
+	private static final long MAX_CACHE_SIZE= 64L * 1024 * 1024;
+	private static final String BUILD_ID_SECTION= ".note.gnu.build-id"; //$NON-NLS-1$
+	private static final int NT_GNU_BUILD_ID= 3;
+
+	/** Addresses past the line of a row are not searched for a line number, see {@link #getLineNumber(long)} */
+	private static final int MAX_LINE_SEARCH_DISTANCE= 20;
+
+	private final long[] fAddresses;
+	private final int[] fFiles;	// -1 for the end of a sequence
+	private final int[] fLines;
+	private final String[] fFileNames;
+
+	DwarfLineIndex(long[] addresses, int[] files, int[] lines, String[] fileNames) {
+		fAddresses= addresses;
+		fFiles= files;
+		fLines= lines;
+		fFileNames= fileNames;
+	}
+
+	/**
+	 * Computes the index for the given binary. When it does not contain line number information
+	 * the index is empty.
+	 */
+	public static DwarfLineIndex create(Elf elf) throws IOException {
+		return new DwarfLineIndexBuilder(elf).build();
+	}
+
+	/**
+	 * Returns the index for the given binary, it is read from the cache in the state location
+	 * of the plug-in, if possible. Indexes are cached for binaries with a build-id, only.
+	 */
+	public static DwarfLineIndex getIndex(Elf elf) throws IOException {
+		final byte[] buildID= getBuildID(elf);
+		final File cacheFile= buildID != null ? getCacheFile(buildID) : null;
+		if (cacheFile != null && cacheFile.isFile()) {
+			try {
+				InputStream in= new FileInputStream(cacheFile);
+				try {
+					final DwarfLineIndex index= read(in, buildID);
+					if (index != null) {
+						// The modification time tracks the last use of the index.
+						cacheFile.setLastModified(System.currentTimeMillis());
+						return index;
+					}
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				// Recompute the index.
+			}
+		}
+
+		final DwarfLineIndex index= create(elf);
+		if (cacheFile != null) {
+			try {
+				cacheFile.getParentFile().mkdirs();
+				File tmp= new File(cacheFile.getPath() + ".tmp"); //$NON-NLS-1$
+				OutputStream out= new FileOutputStream(tmp);
+				try {
+					index.write(out, buildID);
+				} finally {
+					out.close();
+				}
+				cacheFile.delete();
+				if (!tmp.renameTo(cacheFile)) {
+					tmp.delete();
+				}
+				trimCache(cacheFile);
+			} catch (IOException e) {
+				CCorePlugin.log(e);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Deletes the least recently used indexes from the cache folder until the cache does no
+	 * longer exceed {@link #MAX_CACHE_SIZE}. The index just written is kept.
+	 */
+	private static void trimCache(File keep) {
+		final File[] files= keep.getParentFile().listFiles();
+		if (files == null)
+			return;
+		final List<File> cached= new ArrayList<File>(files.length);
+		final Map<File, Long> lastUsed= new HashMap<File, Long>();
+		long size= 0;
+		for (File file : files) {
+			if (file.getName().endsWith(CACHE_EXTENSION) && !file.equals(keep)) {
+				cached.add(file);
+				lastUsed.put(file, file.lastModified());
+			}
+			size+= file.length();
+		}
+		if (size <= MAX_CACHE_SIZE)
+			return;
+
+		Collections.sort(cached, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				return lastUsed.get(f1).compareTo(lastUsed.get(f2));
+			}
+		});
+		for (File file : cached) {
+			if (size <= MAX_CACHE_SIZE)
+				break;
+			final long length= file.length();
+			if (file.delete()) {
+				size-= length;
+			}
+		}
+	}
+
+	private static File getCacheFile(byte[] buildID) {
+		final CCorePlugin plugin= CCorePlugin.getDefault();
+		if (plugin == null)
+			return null;
+		StringBuilder name= new StringBuilder();
+		for (byte b : buildID) {
+			name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		name.append(CACHE_EXTENSION);
+		return plugin.getStateLocation().append(CACHE_FOLDER).append(name.toString()).toFile();
+	}
+
+	/**
+	 * Returns the build-id of the binary stored in the section .note.gnu.build-id, or
+	 * <code>null</code> if the binary does not have one.
+	 */
+	public static byte[] getBuildID(Elf elf) throws IOException {
+		final Elf.Section section= elf.getSectionByName(BUILD_ID_SECTION);
+		if (section == null)
+			return null;
+
+		final ByteBuffer note= ByteBuffer.wrap(section.loadSectionData());
+		note.order(isLittleEndian(elf) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		while (note.remaining() >= 12) {
+			final int nameSize= note.getInt();
+			final int descSize= note.getInt();
+			final int type= note.getInt();
+			final int descStart= note.position() + ((nameSize + 3) & ~3);
+			if (nameSize < 0 || descSize <= 0 || descStart + descSize > note.limit())
+				return null;
+			if (type == NT_GNU_BUILD_ID) {
+				byte[] result= new byte[descSize];
+				note.position(descStart);
+				note.get(result);
+				return result;
+			}
+			note.position(descStart + ((descSize + 3) & ~3));
+		}
+		return null;
+	}
+
+	static boolean isLittleEndian(Elf elf) throws IOException {
+		return elf.getELFhdr().e_ident[Elf.ELFhdr.EI_DATA] == Elf.ELFhdr.ELFDATA2LSB;
+	}
+
+	/**
+	 * Returns the name of the source file for the given address, or <code>null</code>
+	 * if there is no line number information for the address.
+	 */
+	public String getFileName(long address) {
+		final int row= findRow(address);
+		if (row < 0)
+			return null;
+		return fFileNames[fFiles[row]];
+	}
+
+	/**
+	 * Returns the line number for the given address, or <code>-1</code> if there is no
+	 * line number information for the address. Like addr2line based lookups, the method looks
+	 * at the subsequent rows when the address is mapped to line 0.
+	 */
+	public int getLineNumber(long address) {
+		int row= findRow(address);
+		if (row < 0)
+			return -1;
+		final long limit= address + MAX_LINE_SEARCH_DISTANCE;
+		while (fLines[row] == 0) {
+			row++;
+			if (row >= fAddresses.length || fFiles[row] < 0 || compareUnsigned(fAddresses[row], limit) > 0)
+				return -1;
+		}
+		return fLines[row];
+	}
+
+	/**
+	 * Returns the row for the address or -1.
+	 */
+	private int findRow(long address) {
+		int low= 0;
+		int high= fAddresses.length - 1;
+		while (low <= high) {
+			final int mid= (low + high) >>> 1;
+			if (compareUnsigned(fAddresses[mid], address) <= 0) {
+				low= mid + 1;
+			} else {
+				high= mid - 1;
+			}
+		}
+		// high is the last row with an address less than or equal to the given one.
+		if (high < 0 || fFiles[high] < 0)
+			return -1;
+		return high;
+	}
+
+	static int compareUnsigned(long a, long b) {
+		a^= Long.MIN_VALUE;
+		b^= Long.MIN_VALUE;
+		return a < b ? -1 : (a == b ? 0 : 1);
+	}
+
+	/**
+	 * Returns the number of rows in the index, including the ones marking the end of a sequence
+	 * of addresses.
+	 */
+	public int getRowCount() {
+		return fAddresses.length;
+	}
+
+	/**
+	 * Returns the names of all source files referenced by the index.
+	 */
+	public String[] getFileNames() {
+		return fFileNames.clone();
+	}
+
+	/**
+	 * Writes the index to the given stream, the stream is not closed.
+	 * @param buildID the build-id of the binary, or <code>null</code>.
+	 */
+	public void write(OutputStream stream, byte[] buildID) throws IOException {
+		DataOutputStream out= new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(CACHE_MAGIC);
+		out.writeInt(CACHE_VERSION);
+		writeBytes(out, buildID);
+		out.writeInt(fFileNames.length);
+		for (String fileName : fFileNames) {
+			out.writeUTF(fileName);
+		}
+		out.writeInt(fAddresses.length);
+		for (int i = 0; i < fAddresses.length; i++) {
+			out.writeLong(fAddresses[i]);
+			out.writeInt(fFiles[i]);
+			out.writeInt(fLines[i]);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reads an index written by {@link #write(OutputStream, byte[])}, the stream is not closed.
+	 * Returns <code>null</code> when the index was written for a binary with a different build-id
+	 * or in an unsupported format.
+	 */
+	public static DwarfLineIndex read(InputStream stream, byte[] buildID) throws IOException {
+		DataInputStream in= new DataInputStream(new BufferedInputStream(stream));
+		if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION)
+			return null;
+		if (!Arrays.equals(readBytes(in), buildID))
+			return null;
+
+		final String[] fileNames= new String[in.readInt()];
+		for (int i = 0; i < fileNames.length; i++) {
+			fileNames[i]= in.readUTF();
+		}
+		final int rows= in.readInt();
+		final long[] addresses= new long[rows];
+		final int[] files= new int[rows];
+		final int[] lines= new int[rows];
+		for (int i = 0; i < rows; i++) {
+			addresses[i]= in.readLong();
+			files[i]= in.readInt();
+			lines[i]= in.readInt();
+			if (files[i] >= fileNames.length)
+				throw new IOException("Corrupted line index"); //$NON-NLS-1$
+		}
+		return new DwarfLineIndex(addresses, files, lines, fileNames);
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		if (bytes == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		final int length= in.readInt();
+		if (length < 0)
+			return null;
+		byte[] result= new byte[length];
+		in.readFully(result);
+		return result;
+	}
+
+	/**
+	 * Reads the line number programs of a binary, the rows of each sequence are collected and
+	 * finally sorted by address.
+	 */
+	private static final class DwarfLineIndexBuilder extends Dwarf {
+		private static final String DWARF_DEBUG_LINE_STR= ".debug_line_str"; //$NON-NLS-1$
+
+		// Forms and constants of DWARF 5 not defined in DwarfConstants.
+		private static final int DW_FORM_strx= 0x1a;
+		private static final int DW_FORM_data16= 0x1e;
+		private static final int DW_FORM_line_strp= 0x1f;
+		private static final int DW_FORM_strx1= 0x25;
+		private static final int DW_FORM_strx2= 0x26;
+		private static final int DW_FORM_strx3= 0x27;
+		private static final int DW_FORM_strx4= 0x28;
+		private static final int DW_LNE_set_discriminator= 4;
+		private static final int DW_LNS_set_isa= 12;
+		private static final int DW_LNCT_path= 1;
+		private static final int DW_LNCT_directory_index= 2;
+
+		private Map<Long, String> fCompDirs;
+		private List<String> fFileNames;
+		private Map<String, Integer> fFileIndexes;
+		private List<long[]> fSequenceAddresses;
+		private List<int[]> fSequenceRows;	// pairs of file and line
+		// Rows of the current sequence.
+		private long[] fAddresses;
+		private int[] fRows;	// pairs of file and line
+		private int fRowCount;
+
+		DwarfLineIndexBuilder(Elf elf) throws IOException {
+			super(elf);
+		}
+
+		@Override
+		public void init(Elf exe) throws IOException {
+			isLE= isLittleEndian(exe);
+			printEnabled= false;
+			for (Elf.Section section : exe.getSections()) {
+				final String name= section.toString();
+				if (name.equals(DWARF_DEBUG_LINE) || name.equals(DWARF_DEBUG_INFO) || name.equals(DWARF_DEBUG_ABBREV)
+						|| name.equals(DWARF_DEBUG_STR) || name.equals(DWARF_DEBUG_LINE_STR)) {
+					dwarfSections.put(name, section.mapSectionData());
+				}
+			}
+		}
+
+		DwarfLineIndex build() throws IOException {
+			fFileNames= new ArrayList<String>();
+			fFileIndexes= new HashMap<String, Integer>();
+			fSequenceAddresses= new ArrayList<long[]>();
+			fSequenceRows= new ArrayList<int[]>();
+			fAddresses= new long[64];
+			fRows= new int[128];
+
+			final ByteBuffer lines= dwarfSections.get(DWARF_DEBUG_LINE);
+			if (lines != null) {
+				fCompDirs= readCompilationDirectories();
+				final ByteBuffer data= order(lines);
+				int offset= 0;
+				while (offset + 4 <= data.limit()) {
+					offset= readLineProgram(data, offset);
+				}
+			}
+			return createIndex();
+		}
+
+		private ByteBuffer order(ByteBuffer buffer) {
+			final ByteBuffer result= buffer.duplicate();
+			result.order(isLE ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+			result.clear();
+			return result;
+		}
+
+		/**
+		 * Reads the compilation directories of the compilation units of DWARF 2 to 4 from
+		 * .debug_info, only the first entry of each unit is examined. The directories are
+		 * stored with the offsets of the line number programs.
+		 */
+		private Map<Long, String> readCompilationDirectories() throws IOException {
+			final Map<Long, String> result= new HashMap<Long, String>();
+			final ByteBuffer info= dwarfSections.get(DWARF_DEBUG_INFO);
+			if (info == null)
+				return result;
+
+			final ByteBuffer data= order(info);
+			int offset= 0;
+			while (offset + 11 <= data.limit()) {
+				data.position(offset);
+				final long length= data.getInt() & 0xffffffffL;
+				if (length == 0xffffffffL || length < 7)
+					break; // 64-bit DWARF is not supported.
+				final int next= (int) Math.min(data.limit(), offset + 4 + length);
+				final short version= data.getShort();
+				if (version >= 2 && version <= 4) {
+					try {
+						readCompilationDirectory(data, next, version, result);
+					} catch (RuntimeException e) {
+						// Malformed unit, continue with the next one.
+					}
+				}
+				offset= next;
+			}
+			return result;
+		}
+
+		private void readCompilationDirectory(ByteBuffer data, int end, short version, Map<Long, String> result)
+				throws IOException {
+			CompilationUnitHeader header= new CompilationUnitHeader();
+			header.version= version;
+			header.abbreviationOffset= data.getInt();
+			header.addressSize= data.get();
+			final ByteBuffer in= data.duplicate().order(data.order());
+			in.limit(end);
+			final long code= readULEB128(in);
+			final AbbreviationEntry entry= parseDebugAbbreviation(header).get(Long.valueOf(code));
+			if (entry == null || entry.tag != DwarfConstants.DW_TAG_compile_unit)
+				return;
+
+			long stmtList= -1;
+			String compDir= null;
+			for (Attribute attr : entry.attributes) {
+				final int form= (int) attr.form;
+				if (attr.name == DwarfConstants.DW_AT_stmt_list) {
+					stmtList= readOffset(in, form);
+				} else if (attr.name == DwarfConstants.DW_AT_comp_dir) {
+					compDir= readString(in, form);
+				} else {
+					skipAttribute(in, form, header.addressSize);
+				}
+				if (stmtList >= 0 && compDir != null)
+					break;
+			}
+			if (stmtList >= 0 && compDir != null) {
+				result.put(Long.valueOf(stmtList), compDir);
+			}
+		}
+
+		private long readOffset(ByteBuffer in, int form) throws IOException {
+			switch (form) {
+			case DwarfConstants.DW_FORM_data4:
+			case DwarfConstants.DW_FORM_sec_offset:
+				return in.getInt() & 0xffffffffL;
+			case DwarfConstants.DW_FORM_data8:
+				return in.getLong();
+			}
+			throw new IOException("Unsupported form for offset: " + form); //$NON-NLS-1$
+		}
+
+		private String readString(ByteBuffer in, int form) throws IOException {
+			switch (form) {
+			case DwarfConstants.DW_FORM_string:
+				return readCString(in, in.position(), true);
+			case DwarfConstants.DW_FORM_strp:
+				return readSectionString(DWARF_DEBUG_STR, in.getInt() & 0xffffffffL);
+			case DW_FORM_line_strp:
+				return readSectionString(DWARF_DEBUG_LINE_STR, in.getInt() & 0xffffffffL);
+			}
+			throw new IOException("Unsupported form for string: " + form); //$NON-NLS-1$
+		}
+
+		private String readSectionString(String sectionName, long offset) {
+			final ByteBuffer section= dwarfSections.get(sectionName);
+			if (section == null || offset >= section.limit())
+				return ""; //$NON-NLS-1$
+			return readCString(section, (int) offset, false);
+		}
+
+		/**
+		 * Reads a null-terminated string, the position of the buffer is advanced if requested.
+		 */
+		private static String readCString(ByteBuffer in, int offset, boolean advance) {
+			int end= offset;
+			while (end < in.limit() && in.get(end) != 0) {
+				end++;
+			}
+			byte[] bytes= new byte[end - offset];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i]= in.get(offset + i);
+			}
+			if (advance) {
+				in.position(Math.min(end + 1, in.limit()));
+			}
+			try {
+				return new String(bytes, "UTF-8"); //$NON-NLS-1$
+			} catch (java.io.UnsupportedEncodingException e) {
+				return new String(bytes);
+			}
+		}
+
+		private static void skipAttribute(ByteBuffer in, int form, int addressSize) throws IOException {
+			switch (form) {
+			case DwarfConstants.DW_FORM_addr:
+				skip(in, addressSize);
+				break;
+			case DwarfConstants.DW_FORM_flag_present:
+				break;
+			case DwarfConstants.DW_FORM_data1:
+			case DwarfConstants.DW_FORM_ref1:
+			case DwarfConstants.DW_FORM_flag:
+			case DW_FORM_strx1:
+				skip(in, 1);
+				break;
+			case DwarfConstants.DW_FORM_data2:
+			case DwarfConstants.DW_FORM_ref2:
+			case DW_FORM_strx2:
+				skip(in, 2);
+				break;
+			case DW_FORM_strx3:
+				skip(in, 3);
+				break;
+			case DwarfConstants.DW_FORM_data4:
+			case DwarfConstants.DW_FORM_ref4:
+			case DwarfConstants.DW_FORM_strp:
+			case DwarfConstants.DW_FORM_ref_addr:
+			case DwarfConstants.DW_FORM_sec_offset:
+			case DW_FORM_line_strp:
+			case DW_FORM_strx4:
+				skip(in, 4);
+				break;
+			case DwarfConstants.DW_FORM_data8:
+			case DwarfConstants.DW_FORM_ref8:
+			case DwarfConstants.DW_FORM_ref_sig8:
+				skip(in, 8);
+				break;
+			case DW_FORM_data16:
+				skip(in, 16);
+				break;
+			case DwarfConstants.DW_FORM_sdata:
+			case DwarfConstants.DW_FORM_udata:
+			case DwarfConstants.DW_FORM_ref_udata:
+			case DW_FORM_strx:
+				readULEB128(in);
+				break;
+			case DwarfConstants.DW_FORM_string:
+				readCString(in, in.position(), true);
+				break;
+			case DwarfConstants.DW_FORM_block:
+			case DwarfConstants.DW_FORM_exprloc:
+				skip(in, (int) readULEB128(in));
+				break;
+			case DwarfConstants.DW_FORM_block1:
+				skip(in, in.get() & 0xff);
+				break;
+			case DwarfConstants.DW_FORM_block2:
+				skip(in, in.getShort() & 0xffff);
+				break;
+			case DwarfConstants.DW_FORM_block4:
+				skip(in, in.getInt());
+				break;
+			case DwarfConstants.DW_FORM_indirect:
+				skipAttribute(in, (int) readULEB128(in), addressSize);
+				break;
+			default:
+				throw new IOException("Unsupported form: " + form); //$NON-NLS-1$
+			}
+		}
+
+		private static void skip(ByteBuffer in, int bytes) {
+			in.position(in.position() + bytes);
+		}
+
+		private static long readULEB128(ByteBuffer in) {
+			long result= 0;
+			int shift= 0;
+			while (true) {
+				final byte b= in.get();
+				if (shift < 64) {
+					result|= (long) (b & 0x7f) << shift;
+				}
+				if ((b & 0x80) == 0)
+					return result;
+				shift+= 7;
+			}
+		}
+
+		private static long readSLEB128(ByteBuffer in) {
+			long result= 0;
+			int shift= 0;
+			byte b;
+			do {
+				b= in.get();
+				if (shift < 64) {
+					result|= (long) (b & 0x7f) << shift;
+				}
+				shift+= 7;
+			} while ((b & 0x80) != 0);
+			if (shift < 64 && (b & 0x40) != 0) {
+				result|= -1L << shift;
+			}
+			return result;
+		}
+
+		/**
+		 * Reads the line number program at the given offset and returns the offset of the next
+		 * one.
+		 */
+		private int readLineProgram(ByteBuffer data, int offset) throws IOException {
+			data.position(offset);
+			final long unitLength= data.getInt() & 0xffffffffL;
+			if (unitLength == 0xffffffffL)
+				return data.limit(); // 64-bit DWARF is not supported.
+			final int end= (int) Math.min(data.limit(), data.position() + unitLength);
+			final ByteBuffer in= data.duplicate().order(data.order());
+			in.limit(end);
+			try {
+				decodeLineProgram(in, offset);
+			} catch (RuntimeException e) {
+				// Malformed program, the rows of the incomplete sequence are dropped.
+			}
+			return end;
+		}
+
+		private void decodeLineProgram(ByteBuffer in, int offset) throws IOException {
+			final int version= in.getShort();
+			if (version < 2 || version > 5)
+				return;
+
+			int addressSize= 0;
+			if (version >= 5) {
+				addressSize= in.get();
+				in.get();	// segment selector size
+			}
+			final long headerLength= in.getInt() & 0xffffffffL;
+			final int programStart= (int) (in.position() + headerLength);
+			final int minInstructionLength= in.get() & 0xff;
+			if (version >= 4) {
+				in.get();	// maximum operations per instruction, VLIW is not supported.
+			}
+			final boolean defaultIsStmt= in.get() != 0;
+			final int lineBase= in.get();
+			final int lineRange= in.get() & 0xff;
+			final int opcodeBase= in.get() & 0xff;
+			final int[] opcodeLengths= new int[opcodeBase];
+			for (int i = 1; i < opcodeBase; i++) {
+				opcodeLengths[i]= in.get() & 0xff;
+			}
+			if (lineRange == 0)
+				return;
+
+			final List<Integer> files= new ArrayList<Integer>();
+			final List<String> dirs= new ArrayList<String>();
+			if (version >= 5) {
+				readEntries(in, dirs, null, null);
+				readEntries(in, null, dirs, files);
+			} else {
+				final String compDir= fCompDirs.get(Long.valueOf(offset));
+				dirs.add(compDir != null ? compDir : ""); //$NON-NLS-1$
+				while (true) {
+					final String dir= readCString(in, in.position(), true);
+					if (dir.length() == 0)
+						break;
+					dirs.add(dir);
+				}
+				files.add(Integer.valueOf(-1));	// file numbers start with 1
+				while (true) {
+					final String name= readCString(in, in.position(), true);
+					if (name.length() == 0)
+						break;
+					final int dir= (int) readULEB128(in);
+					readULEB128(in);	// modification time
+					readULEB128(in);	// length
+					files.add(Integer.valueOf(addFile(dirs, dir, name)));
+				}
+			}
+
+			in.position(programStart);
+			long address= 0;
+			int file= 1;
+			int line= 1;
+			boolean isStmt= defaultIsStmt;
+			startSequence();
+			while (in.hasRemaining()) {
+				final int opcode= in.get() & 0xff;
+				if (opcode >= opcodeBase) {
+					final int adjusted= opcode - opcodeBase;
+					address+= (adjusted / lineRange) * minInstructionLength;
+					line+= lineBase + adjusted % lineRange;
+					addRow(address, getFile(files, file), line);
+					continue;
+				}
+				switch (opcode) {
+				case 0: {
+					final int length= (int) readULEB128(in);
+					final int next= in.position() + length;
+					final int extended= length > 0 ? in.get() & 0xff : 0;
+					switch (extended) {
+					case DwarfConstants.DW_LNE_end_sequence:
+						addRow(address, -1, 0);
+						endSequence();
+						address= 0;
+						file= 1;
+						line= 1;
+						isStmt= defaultIsStmt;
+						startSequence();
+						break;
+					case DwarfConstants.DW_LNE_set_address:
+						address= readAddress(in, addressSize > 0 ? addressSize : length - 1);
+						break;
+					case DwarfConstants.DW_LNE_define_file: {
+						final String name= readCString(in, in.position(), true);
+						final int dir= (int) readULEB128(in);
+						files.add(Integer.valueOf(addFile(dirs, dir, name)));
+						break;
+					}
+					case DW_LNE_set_discriminator:
+					default:
+						break;
+					}
+					in.position(next);
+					break;
+				}
+				case DwarfConstants.DW_LNS_copy:
+					addRow(address, getFile(files, file), line);
+					break;
+				case DwarfConstants.DW_LNS_advance_pc:
+					address+= readULEB128(in) * minInstructionLength;
+					break;
+				case DwarfConstants.DW_LNS_advance_line:
+					line+= (int) readSLEB128(in);
+					break;
+				case DwarfConstants.DW_LNS_set_file:
+					file= (int) readULEB128(in);
+					break;
+				case DwarfConstants.DW_LNS_set_column:
+					readULEB128(in);
+					break;
+				case DwarfConstants.DW_LNS_negate_stmt:
+					isStmt= !isStmt;
+					break;
+				case DwarfConstants.DW_LNS_set_basic_block:
+				case DwarfConstants.DW_LNS_set_prologue_end:
+				case DwarfConstants.DW_LNS_set_epilog_begin:
+					break;
+				case DwarfConstants.DW_LNS_const_add_pc:
+					address+= ((255 - opcodeBase) / lineRange) * minInstructionLength;
+					break;
+				case DwarfConstants.DW_LNS_fixed_advance_pc:
+					address+= in.getShort() & 0xffff;
+					break;
+				case DW_LNS_set_isa:
+					readULEB128(in);
+					break;
+				default:
+					for (int i = 0; i < opcodeLengths[opcode]; i++) {
+						readULEB128(in);
+					}
+					break;
+				}
+			}
+			// Rows not terminated by an end of sequence are dropped.
+			fRowCount= 0;
+		}
+
+		/**
+		 * Reads the directory or file name entries of a DWARF 5 line number program header.
+		 */
+		private void readEntries(ByteBuffer in, List<String> dirsOut, List<String> dirs, List<Integer> filesOut)
+				throws IOException {
+			final int formatCount= in.get() & 0xff;
+			final int[] contentTypes= new int[formatCount];
+			final int[] forms= new int[formatCount];
+			for (int i = 0; i < formatCount; i++) {
+				contentTypes[i]= (int) readULEB128(in);
+				forms[i]= (int) readULEB128(in);
+			}
+			final long count= readULEB128(in);
+			for (long j = 0; j < count; j++) {
+				String path= ""; //$NON-NLS-1$
+				int dir= 0;
+				for (int i = 0; i < formatCount; i++) {
+					switch (contentTypes[i]) {
+					case DW_LNCT_path:
+						path= readString(in, forms[i]);
+						break;
+					case DW_LNCT_directory_index:
+						dir= (int) readUnsigned(in, forms[i]);
+						break;
+					default:
+						skipAttribute(in, forms[i], 0);
+						break;
+					}
+				}
+				if (dirsOut != null) {
+					if (j > 0 && !new Path(path).isAbsolute() && !dirsOut.isEmpty()) {
+						path= new Path(dirsOut.get(0)).append(path).toString();
+					}
+					dirsOut.add(path);
+				} else {
+					filesOut.add(Integer.valueOf(addFile(dirs, dir, path)));
+				}
+			}
+		}
+
+		private static long readUnsigned(ByteBuffer in, int form) throws IOException {
+			switch (form) {
+			case DwarfConstants.DW_FORM_data1:
+				return in.get() & 0xff;
+			case DwarfConstants.DW_FORM_data2:
+				return in.getShort() & 0xffff;
+			case DwarfConstants.DW_FORM_data4:
+				return in.getInt() & 0xffffffffL;
+			case DwarfConstants.DW_FORM_udata:
+				return readULEB128(in);
+			}
+			throw new IOException("Unsupported form for index: " + form); //$NON-NLS-1$
+		}
+
+		private static long readAddress(ByteBuffer in, int size) {
+			switch (size) {
+			case 2:
+				return in.getShort() & 0xffff;
+			case 4:
+				return in.getInt() & 0xffffffffL;
+			case 8:
+				return in.getLong();
+			}
+			return 0;
+		}
+
+		/**
+		 * Returns the index of the file in the table of file names, the name of the file is
+		 * combined with the directory in the way addr2line does.
+		 */
+		private int addFile(List<String> dirs, int dir, String name) {
+			IPath path= new Path(name);
+			if (!path.isAbsolute() && dir >= 0 && dir < dirs.size()) {
+				final String dirName= dirs.get(dir);
+				if (dirName.length() > 0) {
+					IPath dirPath= new Path(dirName);
+					if (!dirPath.isAbsolute() && dir > 0 && dirs.get(0).length() > 0) {
+						dirPath= new Path(dirs.get(0)).append(dirPath);
+					}
+					path= dirPath.append(path);
+				}
+			}
+			final String fileName= path.toString();
+			Integer index= fFileIndexes.get(fileName);
+			if (index == null) {
+				index= Integer.valueOf(fFileNames.size());
+				fFileNames.add(fileName);
+				fFileIndexes.put(fileName, index);
+			}
+			return index.intValue();
+		}
+
+		private static int getFile(List<Integer> files, int file) {
+			if (file < 0 || file >= files.size())
+				return -1;
+			return files.get(file).intValue();
+		}
+
+		private void startSequence() {
+			fRowCount= 0;
+		}
+
+		private void addRow(long address, int file, int line) {
+			if (fRowCount == fAddresses.length) {
+				long[] addresses= new long[fRowCount * 2];
+				System.arraycopy(fAddresses, 0, addresses, 0, fRowCount);
+				fAddresses= addresses;
+				int[] rows= new int[fRowCount * 4];
+				System.arraycopy(fRows, 0, rows, 0, fRowCount * 2);
+				fRows= rows;
+			}
+			if (file < 0 && line != 0) {
+				file= -2;	// row without a valid file
+			}
+			fAddresses[fRowCount]= address;
+			fRows[2 * fRowCount]= file;
+			fRows[2 * fRowCount + 1]= line;
+			fRowCount++;
+		}
+
+		private void endSequence() {
+			// Rows at the end address of the sequence do not cover any code.
+			final int last= fRowCount - 1;
+			while (fRowCount > 1 && fAddresses[fRowCount - 2] == fAddresses[last]) {
+				fRowCount--;
+			}
+			fAddresses[fRowCount - 1]= fAddresses[last];
+			fRows[2 * fRowCount - 2]= fRows[2 * last];
+			fRows[2 * fRowCount - 1]= fRows[2 * last + 1];
+
+			// Sequences without any row for code are of no interest.
+			if (fRowCount > 1) {
+				long[] addresses= new long[fRowCount];
+				System.arraycopy(fAddresses, 0, addresses, 0, fRowCount);
+				int[] rows= new int[fRowCount * 2];
+				System.arraycopy(fRows, 0, rows, 0, fRowCount * 2);
+				fSequenceAddresses.add(addresses);
+				fSequenceRows.add(rows);
+			}
+			fRowCount= 0;
+		}
+
+		/**
+		 * Concatenates the sequences sorted by their start address. The rows of a sequence are
+		 * ordered by address, so the result is sorted unless sequences overlap. Then the rows
+		 * are sorted with a stable sort, rows ending a sequence come first among the ones with
+		 * equal addresses.
+		 */
+		private DwarfLineIndex createIndex() {
+			final int sequenceCount= fSequenceAddresses.size();
+			final Integer[] order= new Integer[sequenceCount];
+			int total= 0;
+			for (int i = 0; i < sequenceCount; i++) {
+				order[i]= Integer.valueOf(i);
+				total+= fSequenceAddresses.get(i).length;
+			}
+			Arrays.sort(order, new java.util.Comparator<Integer>() {
+				public int compare(Integer o1, Integer o2) {
+					return compareUnsigned(fSequenceAddresses.get(o1.intValue())[0],
+							fSequenceAddresses.get(o2.intValue())[0]);
+				}
+			});
+
+			long[] addresses= new long[total];
+			int[] files= new int[total];
+			int[] lines= new int[total];
+			int n= 0;
+			for (Integer seq : order) {
+				final long[] seqAddresses= fSequenceAddresses.get(seq.intValue());
+				final int[] seqRows= fSequenceRows.get(seq.intValue());
+				for (int i = 0; i < seqAddresses.length; i++) {
+					addresses[n]= seqAddresses[i];
+					files[n]= seqRows[2 * i];
+					lines[n]= seqRows[2 * i + 1];
+					n++;
+				}
+			}
+			fSequenceAddresses= null;
+			fSequenceRows= null;
+
+			if (!isSorted(addresses, files)) {
+				int[] perm= new int[total];
+				for (int i = 0; i < total; i++) {
+					perm[i]= i;
+				}
+				mergeSort(perm, new int[total], 0, total, addresses, files);
+				long[] sortedAddresses= new long[total];
+				int[] sortedFiles= new int[total];
+				int[] sortedLines= new int[total];
+				for (int i = 0; i < total; i++) {
+					sortedAddresses[i]= addresses[perm[i]];
+					sortedFiles[i]= files[perm[i]];
+					sortedLines[i]= lines[perm[i]];
+				}
+				addresses= sortedAddresses;
+				files= sortedFiles;
+				lines= sortedLines;
+			}
+			// Rows without a valid file behave like the end of a sequence.
+			for (int i = 0; i < total; i++) {
+				if (files[i] < 0) {
+					files[i]= -1;
+				}
+			}
+			return new DwarfLineIndex(addresses, files, lines, fFileNames.toArray(new String[fFileNames.size()]));
+		}
+
+		private static int compareRows(long[] addresses, int[] files, int i, int j) {
+			final int cmp= compareUnsigned(addresses[i], addresses[j]);
+			if (cmp != 0)
+				return cmp;
+			final boolean end1= files[i] == -1;
+			final boolean end2= files[j] == -1;
+			if (end1 != end2)
+				return end1 ? -1 : 1;
+			return 0;
+		}
+
+		private static boolean isSorted(long[] addresses, int[] files) {
+			for (int i = 1; i < addresses.length; i++) {
+				if (compareRows(addresses, files, i - 1, i) > 0)
+					return false;
+			}
+			return true;
+		}
+
+		private static void mergeSort(int[] perm, int[] tmp, int from, int to, long[] addresses, int[] files) {
+			if (to - from < 2)
+				return;
+			final int mid= (from + to) >>> 1;
+			mergeSort(perm, tmp, from, mid, addresses, files);
+			mergeSort(perm, tmp, mid, to, addresses, files);
+			if (compareRows(addresses, files, perm[mid - 1], perm[mid]) <= 0)
+				return;
+			System.arraycopy(perm, from, tmp, from, to - from);
+			int i= from, j= mid, k= from;
+			while (i < mid && j < to) {
+				perm[k++]= compareRows(addresses, files, tmp[j], tmp[i]) < 0 ? tmp[j++] : tmp[i++];
+			}
+			while (i < mid) {
+				perm[k++]= tmp[i++];
+			}
+			while (j < to) {
+				perm[k++]= tmp[j++];
+			}
+		}
+	}
+}
@@ -380,9 +380,9 @@ public class DwarfReader extends Dwarf implements ISymbolReader {
 	 * The file names are stored in member "m_fileCollection".
 	 */
 	private void getSourceFilesFromDebugInfoSection() {
-		// This will parse the data in .debug_info section which
-		// will call this->processCompileUnit() to get source files.
-		parse(null);
+		// This will parse the first entry of each compilation unit in .debug_info
+		// section which will call this->processCompileUnit() to get source files.
+		parseCompilationUnitEntries(null);
 	}
 
 	private void addSourceFile(String dir, String name)
@@ -13,7 +13,9 @@ package org.eclipse.cdt.utils.elf;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -49,6 +51,8 @@ public class Elf {
 	private Section symtab_sym;
 	private Symbol[] dynsym_symbols;
 	private Section dynsym_sym;
+	private SymbolTable symtab_table;
+	private SymbolTable dynsym_table;
 	private boolean sections_mapped; // Have sections been mapped? Used to clean up properly in Elf.Dispose.
 
 	protected String EMPTY_STRING = ""; //$NON-NLS-1$
@@ -446,6 +450,7 @@ public class Elf {
 		public short st_shndx;
 
 		private String name = null;
+		private SymbolTable table;
 
 		private final Section sym_section;
 
@@ -476,6 +481,10 @@ public class Elf {
 		@Override
 		public String toString() {
 			if (name == null) {
+				if (table != null) {
+					name = table.getString(st_name & 0xffffffffL);
+					return name;
+				}
 				try {
 					Section sections[] = getSections();
 					Section symstr = sections[(int)sym_section.sh_link];
@@ -489,6 +498,216 @@ public class Elf {
 
 	}
 
+	/**
+	 * The symbols of a symbol table section, kept in arrays of primitives. The section and its string
+	 * table are read in one piece, the names and the {@link Symbol} objects are created on demand.
+	 * As for {@link Elf#getSymbols()} the symbols are sorted by their values and symbols with an
+	 * <code>st_info</code> of zero are omitted.
+	 * @since 5.3
+	 */
+	public class SymbolTable {
+		private final Section section;
+		private final ByteBuffer strings;
+		private final long[] values;
+		private final long[] sizes;
+		private final int[] names;
+		private final byte[] infos;
+		private final byte[] others;
+		private final short[] sectionIndexes;
+
+		SymbolTable(Section section, ByteBuffer data, ByteBuffer strings) throws IOException {
+			this.section = section;
+			this.strings = strings;
+
+			int entrySize;
+			boolean is64;
+			switch (ehdr.e_ident[ELFhdr.EI_CLASS]) {
+				case ELFhdr.ELFCLASS32 :
+					is64 = false;
+					entrySize = 16;
+					break;
+				case ELFhdr.ELFCLASS64 :
+					is64 = true;
+					entrySize = 24;
+					break;
+				case ELFhdr.ELFCLASSNONE :
+				default :
+					throw new IOException("Unknown ELF class " + ehdr.e_ident[ELFhdr.EI_CLASS]); //$NON-NLS-1$
+			}
+			if (section != null && section.sh_entsize >= entrySize) {
+				entrySize = (int) section.sh_entsize;
+			}
+			int count = data == null ? 0 : data.limit() / entrySize;
+			long[] v = new long[count];
+			long[] s = new long[count];
+			int[] n = new int[count];
+			byte[] info = new byte[count];
+			byte[] other = new byte[count];
+			short[] shndx = new short[count];
+			int j = 0;
+			for (int i = 0; i < count; i++) {
+				int offset = i * entrySize;
+				byte st_info;
+				if (is64) {
+					st_info = data.get(offset + 4);
+					if (st_info == 0)
+						continue;
+					n[j] = data.getInt(offset);
+					other[j] = data.get(offset + 5);
+					shndx[j] = data.getShort(offset + 6);
+					v[j] = data.getLong(offset + 8);
+					s[j] = data.getLong(offset + 16);
+				} else {
+					st_info = data.get(offset + 12);
+					if (st_info == 0)
+						continue;
+					n[j] = data.getInt(offset);
+					v[j] = data.getInt(offset + 4) & 0xffffffffL;
+					s[j] = data.getInt(offset + 8) & 0xffffffffL;
+					other[j] = data.get(offset + 13);
+					shndx[j] = data.getShort(offset + 14);
+				}
+				info[j++] = st_info;
+			}
+
+			int[] order = sortByValue(v, j);
+			values = new long[j];
+			sizes = new long[j];
+			names = new int[j];
+			infos = new byte[j];
+			others = new byte[j];
+			sectionIndexes = new short[j];
+			for (int i = 0; i < j; i++) {
+				int k = order == null ? i : order[i];
+				values[i] = v[k];
+				sizes[i] = s[k];
+				names[i] = n[k];
+				infos[i] = info[k];
+				others[i] = other[k];
+				sectionIndexes[i] = shndx[k];
+			}
+		}
+
+		/**
+		 * Returns the symbol table section, or <code>null</code> for an empty table of a binary
+		 * without such section.
+		 */
+		public Section getSection() {
+			return section;
+		}
+
+		public int getSymbolCount() {
+			return values.length;
+		}
+
+		/**
+		 * Returns the value of a symbol, to be interpreted as unsigned.
+		 */
+		public long getValue(int index) {
+			return values[index];
+		}
+
+		/**
+		 * Returns the size of a symbol, to be interpreted as unsigned.
+		 */
+		public long getSize(int index) {
+			return sizes[index];
+		}
+
+		public int getType(int index) {
+			return infos[index] & 0xf;
+		}
+
+		public int getBind(int index) {
+			return (infos[index] >> 4) & 0xf;
+		}
+
+		/**
+		 * Returns the section index of a symbol, with the sign extension of {@link Symbol#st_shndx}.
+		 */
+		public short getSectionIndex(int index) {
+			return sectionIndexes[index];
+		}
+
+		public String getName(int index) {
+			return getString(names[index] & 0xffffffffL);
+		}
+
+		private String getString(long offset) {
+			if (strings == null || offset >= strings.limit())
+				return EMPTY_STRING;
+			int start = (int) offset;
+			int end = start;
+			while (end < strings.limit() && strings.get(end) != 0)
+				end++;
+			byte[] bytes = new byte[end - start];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = strings.get(start + i);
+			}
+			try {
+				return new String(bytes, "UTF-8"); //$NON-NLS-1$
+			} catch (UnsupportedEncodingException e) {
+				return new String(bytes);
+			}
+		}
+
+		/**
+		 * Creates the symbol object for the symbol with the given index.
+		 */
+		public Symbol getSymbol(int index) {
+			Symbol symbol = new Symbol(section);
+			symbol.table = this;
+			symbol.st_name = names[index];
+			symbol.st_value = createAddress(values[index]);
+			symbol.st_size = sizes[index];
+			symbol.st_info = infos[index];
+			symbol.st_other = others[index];
+			symbol.st_shndx = sectionIndexes[index];
+			return symbol;
+		}
+
+		/**
+		 * Creates the symbol objects for all symbols of the table.
+		 */
+		public Symbol[] getSymbols() {
+			Symbol[] result = new Symbol[values.length];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = getSymbol(i);
+			}
+			return result;
+		}
+
+		/**
+		 * Returns the index of the last symbol with a value less or equal to the given address,
+		 * or <code>-1</code>.
+		 */
+		public int findSymbol(long address) {
+			int low = 0;
+			int high = values.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (compareUnsigned(values[mid], address) <= 0) {
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
+			}
+			return low - 1;
+		}
+
+		private IAddress createAddress(long value) {
+			if (ehdr.e_ident[ELFhdr.EI_CLASS] == ELFhdr.ELFCLASS32) {
+				return new Addr32(value);
+			}
+			byte[] bytes = new byte[8];
+			for (int i = 7; i >= 0; i--) {
+				bytes[i] = (byte) value;
+				value >>>= 8;
+			}
+			return new Addr64(bytes);
+		}
+	}
+
 	/**
 	 * We have to implement a separate compararator since when we do the binary
 	 * search down below we are using a Long and a Symbol object and the Long
@@ -1074,52 +1293,101 @@ public class Elf {
 		return sections;
 	}
 
-	private Symbol[] loadSymbolsBySection(Section section) throws IOException {
-		int numSyms = 1;
-		if (section.sh_entsize != 0) {
-			numSyms = (int)section.sh_size / (int)section.sh_entsize;
+	/**
+	 * Returns the symbols of the first section of the given type, {@link Section#SHT_SYMTAB} or
+	 * {@link Section#SHT_DYNSYM}. The table is empty when there is no such section.
+	 * @since 5.3
+	 */
+	public SymbolTable getSymbolTable(int type) throws IOException {
+		if (type == Section.SHT_SYMTAB && symtab_table != null)
+			return symtab_table;
+		if (type == Section.SHT_DYNSYM && dynsym_table != null)
+			return dynsym_table;
+
+		Section[] section = getSections(type);
+		SymbolTable table;
+		if (section.length > 0) {
+			Section strtab = null;
+			if (section[0].sh_link > 0 && section[0].sh_link < sections.length) {
+				strtab = sections[(int) section[0].sh_link];
+			}
+			table = new SymbolTable(section[0], readSection(section[0]), readSection(strtab));
+		} else {
+			table = new SymbolTable(null, null, null);
 		}
-		ArrayList<Symbol> symList = new ArrayList<Symbol>(numSyms);
-		long offset = section.sh_offset;
-		for (int c = 0; c < numSyms; offset += section.sh_entsize, c++) {
-			efile.seek(offset);
-			Symbol symbol = new Symbol(section);
-			switch (ehdr.e_ident[ELFhdr.EI_CLASS]) {
-				case ELFhdr.ELFCLASS32 : {
-					byte[] addrArray = new byte[ELF32_ADDR_SIZE];
+		if (type == Section.SHT_SYMTAB)
+			symtab_table = table;
+		else if (type == Section.SHT_DYNSYM)
+			dynsym_table = table;
+		return table;
+	}
 
-					symbol.st_name = efile.readIntE();
-					efile.readFullyE(addrArray);
-					symbol.st_value = new Addr32(addrArray);
-					symbol.st_size = efile.readIntE();
-					symbol.st_info = efile.readByte();
-					symbol.st_other = efile.readByte();
-					symbol.st_shndx = efile.readShortE();
-				}
-					break;
-				case ELFhdr.ELFCLASS64 : {
-					byte[] addrArray = new byte[ELF64_ADDR_SIZE];
+	/**
+	 * Reads the contents of a section with a single read.
+	 */
+	private ByteBuffer readSection(Section section) throws IOException {
+		if (section == null || section.sh_type == Section.SHT_NOBITS || section.sh_size <= 0)
+			return null;
+		if (section.sh_size > Integer.MAX_VALUE)
+			throw new IOException("Section " + section + " is too large"); //$NON-NLS-1$ //$NON-NLS-2$
+		byte[] data = new byte[(int) section.sh_size];
+		efile.seek(section.sh_offset);
+		efile.readFully(data);
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		buffer.order(ehdr.e_ident[ELFhdr.EI_DATA] == ELFhdr.ELFDATA2LSB ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		return buffer;
+	}
 
-					symbol.st_name = efile.readIntE();
-					symbol.st_info = efile.readByte();
-					symbol.st_other = efile.readByte();
-					symbol.st_shndx = efile.readShortE();
-					efile.readFullyE(addrArray);
-					symbol.st_value = new Addr64(addrArray);
-					symbol.st_size = readUnsignedLong(efile);
+	/**
+	 * Returns the permutation that sorts the first <code>length</code> values as unsigned numbers,
+	 * or <code>null</code> if they are sorted already. The sort is stable.
+	 */
+	private static int[] sortByValue(long[] values, int length) {
+		boolean sorted = true;
+		for (int i = 1; i < length; i++) {
+			if (compareUnsigned(values[i - 1], values[i]) > 0) {
+				sorted = false;
+				break;
+			}
+		}
+		if (sorted)
+			return null;
+
+		int[] order = new int[length];
+		for (int i = 0; i < length; i++) {
+			order[i] = i;
+		}
+		mergeSort(values, order.clone(), order, 0, length);
+		return order;
+	}
+
+	private static void mergeSort(long[] values, int[] src, int[] dest, int low, int high) {
+		if (high - low < 7) {
+			for (int i = low; i < high; i++) {
+				for (int j = i; j > low && compareUnsigned(values[dest[j - 1]], values[dest[j]]) > 0; j--) {
+					int tmp = dest[j];
+					dest[j] = dest[j - 1];
+					dest[j - 1] = tmp;
 				}
-					break;
-				case ELFhdr.ELFCLASSNONE :
-				default :
-					throw new IOException("Unknown ELF class " + ehdr.e_ident[ELFhdr.EI_CLASS]); //$NON-NLS-1$
 			}
-			if (symbol.st_info == 0)
-				continue;
-			symList.add(symbol);
+			return;
+		}
+		int mid = (low + high) >>> 1;
+		mergeSort(values, dest, src, low, mid);
+		mergeSort(values, dest, src, mid, high);
+		for (int i = low, p = low, q = mid; i < high; i++) {
+			if (q >= high || (p < mid && compareUnsigned(values[src[p]], values[src[q]]) <= 0)) {
+				dest[i] = src[p++];
+			} else {
+				dest[i] = src[q++];
+			}
 		}
-		Symbol[] results = symList.toArray(new Symbol[0]);
-		Arrays.sort(results);
-		return results;
+	}
+
+	private static int compareUnsigned(long a, long b) {
+		a += Long.MIN_VALUE;
+		b += Long.MIN_VALUE;
+		return a < b ? -1 : (a == b ? 0 : 1);
 	}
 
 	public void loadSymbols() throws IOException {
@@ -1127,7 +1395,7 @@ public class Elf {
 			Section section[] = getSections(Section.SHT_SYMTAB);
 			if (section.length > 0) {
 				symtab_sym = section[0];
-				symtab_symbols = loadSymbolsBySection(section[0]);
+				symtab_symbols = getSymbolTable(Section.SHT_SYMTAB).getSymbols();
 			} else {
 				symtab_sym = null;
 				symtab_symbols = new Symbol[0];
@@ -1136,7 +1404,7 @@ public class Elf {
 			section = getSections(Section.SHT_DYNSYM);
 			if (section.length > 0) {
 				dynsym_sym = section[0];
-				dynsym_symbols = loadSymbolsBySection(section[0]);
+				dynsym_symbols = getSymbolTable(Section.SHT_DYNSYM).getSymbols();
 			} else {
 				dynsym_sym = null;
 				dynsym_symbols = new Symbol[0];
@@ -26,8 +26,8 @@ import org.eclipse.cdt.utils.elf.Elf.Symbol;
 public class ElfHelper {
 
 	private Elf elf;
-	private Elf.Symbol[] dynsyms;
-	private Elf.Symbol[] symbols;
+	private Elf.SymbolTable dynsyms;
+	private Elf.SymbolTable symbols;
 	private Elf.Section[] sections;
 	private Elf.Dynamic[] dynamics;
 
@@ -54,17 +54,41 @@ public class ElfHelper {
 
 	private void loadSymbols() throws IOException {
 		if (symbols == null) {
-			elf.loadSymbols();
-			symbols = elf.getSymtabSymbols();
-			dynsyms = elf.getDynamicSymbols();
+			// The symbol objects are created only for the symbols returned to the caller.
+			symbols = elf.getSymbolTable(Elf.Section.SHT_SYMTAB);
+			dynsyms = elf.getSymbolTable(Elf.Section.SHT_DYNSYM);
 
-			if (symbols.length <= 0)
+			if (symbols.getSymbolCount() <= 0)
 				symbols = dynsyms;
-			if (dynsyms.length <= 0)
+			if (dynsyms.getSymbolCount() <= 0)
 				dynsyms = symbols;
 		}
 	}
 
+	/**
+	 * Collects the symbols of the given type. Symbols with a processor specific section index
+	 * are accepted when they have a name, others when their section is defined (or undefined).
+	 */
+	private Elf.Symbol[] getSymbols(Elf.SymbolTable table, int type, boolean global, boolean defined) {
+		Vector<Symbol> v = new Vector<Symbol>();
+		for (int i = 0; i < table.getSymbolCount(); i++) {
+			if (table.getType(i) == type && (!global || table.getBind(i) == Elf.Symbol.STB_GLOBAL)) {
+				int idx = table.getSectionIndex(i);
+				if (idx < Elf.Symbol.SHN_HIPROC && idx > Elf.Symbol.SHN_LOPROC) {
+					String name = table.getName(i);
+					if (name != null && name.trim().length() > 0)
+						v.add(table.getSymbol(i));
+				} else if (idx >= 0 && idx < sections.length
+						&& (sections[idx].sh_type != Elf.Section.SHT_NULL) == defined) {
+					v.add(table.getSymbol(i));
+				}
+			}
+		}
+
+		Elf.Symbol[] ret = v.toArray(new Elf.Symbol[v.size()]);
+		return ret;
+	}
+
 	private void loadSections() throws IOException {
 		if (sections == null)
 			sections = elf.getSections();
@@ -127,49 +151,17 @@ public class ElfHelper {
 	}
 
 	public Elf.Symbol[] getExternalFunctions() throws IOException {
-		Vector<Symbol> v = new Vector<Symbol>();
-
 		loadSymbols();
 		loadSections();
 
-		for (int i = 0; i < dynsyms.length; i++) {
-			if (dynsyms[i].st_bind() == Elf.Symbol.STB_GLOBAL && dynsyms[i].st_type() == Elf.Symbol.STT_FUNC) {
-				int idx = dynsyms[i].st_shndx;
-				if (idx < Elf.Symbol.SHN_HIPROC && idx > Elf.Symbol.SHN_LOPROC) {
-					String name = dynsyms[i].toString();
-					if (name != null && name.trim().length() > 0)
-						v.add(dynsyms[i]);
-				} else if (idx >= 0 && sections[idx].sh_type == Elf.Section.SHT_NULL) {
-					v.add(dynsyms[i]);
-				}
-			}
-		}
-
-		Elf.Symbol[] ret = v.toArray(new Elf.Symbol[v.size()]);
-		return ret;
+		return getSymbols(dynsyms, Elf.Symbol.STT_FUNC, true, false);
 	}
 
 	public Elf.Symbol[] getExternalObjects() throws IOException {
-		Vector<Symbol> v = new Vector<Symbol>();
-
 		loadSymbols();
 		loadSections();
 
-		for (int i = 0; i < dynsyms.length; i++) {
-			if (dynsyms[i].st_bind() == Elf.Symbol.STB_GLOBAL && dynsyms[i].st_type() == Elf.Symbol.STT_OBJECT) {
-				int idx = dynsyms[i].st_shndx;
-				if (idx < Elf.Symbol.SHN_HIPROC && idx > Elf.Symbol.SHN_LOPROC) {
-					String name = dynsyms[i].toString();
-					if (name != null && name.trim().length() > 0)
-						v.add(dynsyms[i]);
-				} else if (idx >= 0 && sections[idx].sh_type == Elf.Section.SHT_NULL) {
-					v.add(dynsyms[i]);
-				}
-			}
-		}
-
-		Elf.Symbol[] ret = v.toArray(new Elf.Symbol[v.size()]);
-		return ret;
+		return getSymbols(dynsyms, Elf.Symbol.STT_OBJECT, true, false);
 	}
 
 	public Elf.Symbol[] getUndefined() throws IOException {
@@ -177,9 +169,9 @@ public class ElfHelper {
 
 		loadSymbols();
 
-		for (int i = 0; i < dynsyms.length; i++) {
-			if (dynsyms[i].st_shndx == Elf.Symbol.SHN_UNDEF)
-				v.add(dynsyms[i]);
+		for (int i = 0; i < dynsyms.getSymbolCount(); i++) {
+			if (dynsyms.getSectionIndex(i) == Elf.Symbol.SHN_UNDEF)
+				v.add(dynsyms.getSymbol(i));
 		}
 
 		Elf.Symbol[] ret = v.toArray(new Elf.Symbol[v.size()]);
@@ -187,49 +179,17 @@ public class ElfHelper {
 	}
 
 	public Elf.Symbol[] getLocalFunctions() throws IOException {
-		Vector<Symbol> v = new Vector<Symbol>();
-
 		loadSymbols();
 		loadSections();
 
-		for (int i = 0; i < symbols.length; i++) {
-			if ( symbols[i].st_type() == Elf.Symbol.STT_FUNC) {
-				int idx = symbols[i].st_shndx;
-				if (idx < Elf.Symbol.SHN_HIPROC && idx > Elf.Symbol.SHN_LOPROC) {
-					String name = symbols[i].toString();
-					if (name != null && name.trim().length() > 0)
-						v.add(symbols[i]);
-				} else if (idx >= 0 && sections[idx].sh_type != Elf.Section.SHT_NULL) {
-					v.add(symbols[i]);
-				}
-			}
-		}
-
-		Elf.Symbol[] ret = v.toArray(new Elf.Symbol[v.size()]);
-		return ret;
+		return getSymbols(symbols, Elf.Symbol.STT_FUNC, false, true);
 	}
 
 	public Elf.Symbol[] getLocalObjects() throws IOException {
-		Vector<Symbol> v = new Vector<Symbol>();
-
 		loadSymbols();
 		loadSections();
 
-		for (int i = 0; i < symbols.length; i++) {
-			if ( symbols[i].st_type() == Elf.Symbol.STT_OBJECT) {
-				int idx = symbols[i].st_shndx;
-				if (idx < Elf.Symbol.SHN_HIPROC && idx > Elf.Symbol.SHN_LOPROC) {
-					String name = symbols[i].toString();
-					if (name != null && name.trim().length() > 0)
-						v.add(symbols[i]);
-				} else if (idx >= 0 && sections[idx].sh_type != Elf.Section.SHT_NULL) {
-					v.add(symbols[i]);
-				}
-			}
-		}
-
-		Elf.Symbol[] ret = v.toArray(new Elf.Symbol[v.size()]);
-		return ret;
+		return getSymbols(symbols, Elf.Symbol.STT_OBJECT, false, true);
 	}
 
 	public Elf.Symbol[] getCommonObjects() throws IOException {
@@ -238,11 +198,11 @@ public class ElfHelper {
 		loadSymbols();
 		loadSections();
 
-		for (int i = 0; i < symbols.length; i++) {
-			if (symbols[i].st_bind() == Elf.Symbol.STB_GLOBAL && symbols[i].st_type() == Elf.Symbol.STT_OBJECT) {
-				int idx = symbols[i].st_shndx;
+		for (int i = 0; i < symbols.getSymbolCount(); i++) {
+			if (symbols.getBind(i) == Elf.Symbol.STB_GLOBAL && symbols.getType(i) == Elf.Symbol.STT_OBJECT) {
+				int idx = symbols.getSectionIndex(i);
 				if (idx == Elf.Symbol.SHN_COMMON) {
-					v.add(symbols[i]);
+					v.add(symbols.getSymbol(i));
 				}
 			}
 		}
@@ -13,6 +13,7 @@ package org.eclipse.cdt.utils.elf.parser;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
 import java.util.List;
 
 import org.eclipse.cdt.core.IAddress;
@@ -20,9 +21,11 @@ import org.eclipse.cdt.core.IBinaryParser;
 import org.eclipse.cdt.utils.Addr2line;
 import org.eclipse.cdt.utils.CPPFilt;
 import org.eclipse.cdt.utils.IGnuToolFactory;
+import org.eclipse.cdt.utils.ItaniumDemangler;
 import org.eclipse.cdt.utils.Objdump;
 import org.eclipse.cdt.utils.Symbol;
 import org.eclipse.cdt.utils.AR.ARHeader;
+import org.eclipse.cdt.utils.debug.dwarf.DwarfLineIndex;
 import org.eclipse.cdt.utils.elf.Elf;
 import org.eclipse.cdt.utils.elf.ElfHelper;
 import org.eclipse.core.runtime.IPath;
@@ -36,6 +39,10 @@ public class GNUElfBinaryObject extends ElfBinaryObject {
 	private Addr2line autoDisposeAddr2line;
 	private Addr2line symbolLoadingAddr2line;
 	private CPPFilt symbolLoadingCPPFilt;
+	private boolean symbolLoadingCPPFiltCreated;
+	private DwarfLineIndex symbolLoadingLineIndex;
+	private SoftReference<DwarfLineIndex> lineIndexReference;
+	private boolean hasNoLineIndex;
 	long starttime;
 	
 	/**
@@ -103,6 +110,50 @@ public class GNUElfBinaryObject extends ElfBinaryObject {
 		return null;
 	}
  
+	/**
+	 * Returns the index of the line number information of the binary, or <code>null</code> when
+	 * the binary does not contain DWARF line number information.
+	 */
+	synchronized DwarfLineIndex getLineIndex() {
+		if (hasNoLineIndex)
+			return null;
+		DwarfLineIndex index = lineIndexReference != null ? lineIndexReference.get() : null;
+		if (index == null) {
+			ElfHelper helper = null;
+			try {
+				helper = getElfHelper();
+				index = getLineIndex(helper.getElf());
+			} catch (IOException e) {
+				// Use addr2line
+			} finally {
+				if (helper != null) {
+					helper.dispose();
+				}
+			}
+		}
+		return index;
+	}
+
+	private synchronized DwarfLineIndex getLineIndex(Elf elf) {
+		if (hasNoLineIndex)
+			return null;
+		DwarfLineIndex index = lineIndexReference != null ? lineIndexReference.get() : null;
+		if (index == null) {
+			try {
+				index = DwarfLineIndex.getIndex(elf);
+			} catch (IOException e) {
+				index = null;
+			}
+			if (index == null || index.getRowCount() == 0) {
+				// Binaries without line number information in DWARF format are handled by addr2line.
+				hasNoLineIndex = true;
+				return null;
+			}
+			lineIndexReference = new SoftReference<DwarfLineIndex>(index);
+		}
+		return index;
+	}
+
 	protected CPPFilt getCPPFilt() {
 		IGnuToolFactory factory = (IGnuToolFactory)getBinaryParser().getAdapter(IGnuToolFactory.class);
 		if (factory != null) {
@@ -148,9 +199,12 @@ public class GNUElfBinaryObject extends ElfBinaryObject {
 	 */
 	@Override
 	protected void loadSymbols(ElfHelper helper) throws IOException {
-		symbolLoadingAddr2line = getAddr2line(false);
-		symbolLoadingCPPFilt = getCPPFilt();
+		symbolLoadingLineIndex = getLineIndex(helper.getElf());
+		if (symbolLoadingLineIndex == null) {
+			symbolLoadingAddr2line = getAddr2line(false);
+		}
 		super.loadSymbols(helper);
+		symbolLoadingLineIndex = null;
 		if (symbolLoadingAddr2line != null) {
 			symbolLoadingAddr2line.dispose();
 			symbolLoadingAddr2line = null;
@@ -159,6 +213,34 @@ public class GNUElfBinaryObject extends ElfBinaryObject {
 			symbolLoadingCPPFilt.dispose();
 			symbolLoadingCPPFilt =  null;
 		}
+		symbolLoadingCPPFiltCreated = false;
+	}
+
+	/**
+	 * Demangles the name of a symbol in process, c++filt is started only for the names
+	 * the demangler does not support.
+	 */
+	private String demangle(String name) {
+		String demangled = ItaniumDemangler.demangle(name);
+		if (demangled != null) {
+			return demangled;
+		}
+		if (!ItaniumDemangler.isMangled(name)) {
+			return name;
+		}
+		if (!symbolLoadingCPPFiltCreated) {
+			symbolLoadingCPPFiltCreated = true;
+			symbolLoadingCPPFilt = getCPPFilt();
+		}
+		if (symbolLoadingCPPFilt != null) {
+			try {
+				return symbolLoadingCPPFilt.getFunction(name);
+			} catch (IOException e1) {
+				symbolLoadingCPPFilt.dispose();
+				symbolLoadingCPPFilt = null;
+			}
+		}
+		return name;
 	}
 	
 	/*
@@ -170,18 +252,17 @@ public class GNUElfBinaryObject extends ElfBinaryObject {
 	@Override
 	protected void addSymbols(Elf.Symbol[] array, int type, List<Symbol> list) {
 		for (org.eclipse.cdt.utils.elf.Elf.Symbol element : array) {
-			String name = element.toString();
-			if (symbolLoadingCPPFilt != null) {
-				try {
-					name = symbolLoadingCPPFilt.getFunction(name);
-				} catch (IOException e1) {
-					symbolLoadingCPPFilt.dispose();
-					symbolLoadingCPPFilt = null;
-				}
-			}
+			String name = demangle(element.toString());
 			IAddress addr = element.st_value;
 			long size = element.st_size;
-			if (symbolLoadingAddr2line != null) {
+			if (symbolLoadingLineIndex != null) {
+				long value = addr.getValue().longValue();
+				String filename = symbolLoadingLineIndex.getFileName(value);
+				IPath file = filename != null ? new Path(filename) : Path.EMPTY;
+				int startLine = symbolLoadingLineIndex.getLineNumber(value);
+				int endLine = symbolLoadingLineIndex.getLineNumber(value + size - 1);
+				list.add(new GNUSymbol(this, name, type, addr, size, file, startLine, endLine));
+			} else if (symbolLoadingAddr2line != null) {
 				try {
 					String filename = symbolLoadingAddr2line.getFileName(addr);
 					// Addr2line returns the funny "??" when it can not find
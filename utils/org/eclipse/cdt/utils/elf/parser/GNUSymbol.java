@@ -15,6 +15,7 @@ import java.io.IOException;
 import org.eclipse.cdt.core.IAddress;
 import org.eclipse.cdt.utils.Addr2line;
 import org.eclipse.cdt.utils.Symbol;
+import org.eclipse.cdt.utils.debug.dwarf.DwarfLineIndex;
 import org.eclipse.core.runtime.IPath;
 
 public class GNUSymbol extends Symbol {
@@ -33,6 +34,10 @@ public class GNUSymbol extends Symbol {
 	@Override
 	public int getLineNumber(long offset) {
 		int line = -1;
+		DwarfLineIndex index = ((GNUElfBinaryObject)binary).getLineIndex();
+		if (index != null) {
+			return index.getLineNumber(getAddress().getValue().longValue() + offset);
+		}
 		Addr2line addr2line = ((GNUElfBinaryObject)binary).getAddr2line(true);
 		if (addr2line != null) {
 			try {
@@ -23,6 +23,7 @@ import java.util.Set;
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.ISymbolReader;
 import org.eclipse.cdt.utils.CPPFilt;
+import org.eclipse.cdt.utils.ItaniumDemangler;
 import org.eclipse.cdt.utils.debug.stabs.StabsReader;
 import org.eclipse.cdt.utils.debug.stabs.StabConstant;
 
@@ -765,6 +766,12 @@ public class MachO64 {
 		private String cppFilt(String in) {
             if (cppFiltEnabled) {
 				try {
+					if (in.startsWith("__Z")) { //$NON-NLS-1$
+						String demangled = ItaniumDemangler.demangle(in.substring(1));
+						if (demangled != null) {
+							return demangled;
+						}
+					}
 					if (in.indexOf("__") != -1 || in.indexOf("_._") != -1) { //$NON-NLS-1$ //$NON-NLS-2$
 						if (cppFilt == null) {
 							cppFilt = new CPPFilt();
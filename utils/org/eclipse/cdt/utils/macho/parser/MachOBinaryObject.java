@@ -29,6 +29,7 @@ import org.eclipse.cdt.utils.Addr32;
 import org.eclipse.cdt.utils.Addr32Factory;
 import org.eclipse.cdt.utils.BinaryObjectAdapter;
 import org.eclipse.cdt.utils.CPPFilt;
+import org.eclipse.cdt.utils.ItaniumDemangler;
 import org.eclipse.cdt.utils.Symbol;
 import org.eclipse.cdt.utils.macho.AR;
 import org.eclipse.cdt.utils.macho.MachO;
@@ -52,6 +53,8 @@ public class MachOBinaryObject extends BinaryObjectAdapter {
 	protected String[] needed;
 	protected long timeStamp;
 	private static final String[] NO_NEEDED = new String[0];
+	private CPPFilt symbolLoadingCPPFilt;
+	private boolean symbolLoadingCPPFiltCreated;
 
 	
 	/**
@@ -248,22 +251,22 @@ public class MachOBinaryObject extends BinaryObjectAdapter {
 	}
 
 	protected ISymbol[] loadSymbols(MachOHelper helper) throws IOException {
-		CPPFilt cppfilt =  null;
 		try {
 			ArrayList<Symbol> list = new ArrayList<Symbol>();
 			// Hack should be remove when Elf is clean
 			helper.getMachO().setCppFilter(false);
-			cppfilt = getCPPFilt();
 			//TODO we can probably optimize this further in MachOHelper
-			addSymbols(helper.getExternalFunctions(), ISymbol.FUNCTION, cppfilt, list);
-			addSymbols(helper.getLocalFunctions(), ISymbol.FUNCTION, cppfilt, list);
-			addSymbols(helper.getExternalObjects(), ISymbol.VARIABLE, cppfilt, list);
-			addSymbols(helper.getLocalObjects(), ISymbol.VARIABLE, cppfilt, list);
+			addSymbols(helper.getExternalFunctions(), ISymbol.FUNCTION, list);
+			addSymbols(helper.getLocalFunctions(), ISymbol.FUNCTION, list);
+			addSymbols(helper.getExternalObjects(), ISymbol.VARIABLE, list);
+			addSymbols(helper.getLocalObjects(), ISymbol.VARIABLE, list);
 			return list.toArray(new ISymbol[list.size()]);
 		} finally {
-			if (cppfilt != null) {
-				cppfilt.dispose();
+			if (symbolLoadingCPPFilt != null) {
+				symbolLoadingCPPFilt.dispose();
+				symbolLoadingCPPFilt = null;
 			}
+			symbolLoadingCPPFiltCreated = false;
 		}
 	}
 
@@ -272,16 +275,37 @@ public class MachOBinaryObject extends BinaryObjectAdapter {
 		return parser.getCPPFilt();
 	}
 
-	private void addSymbols(MachO.Symbol[] array, int type, CPPFilt cppfilt, List<Symbol> list) {
-		for (org.eclipse.cdt.utils.macho.MachO.Symbol element : array) {
-			String name = element.toString();
-			if (cppfilt != null) {
-				try {
-					name = cppfilt.getFunction(name);
-				} catch (IOException e1) {
-					cppfilt = null;
-				}
+	/**
+	 * Demangles the name of a symbol in process, c++filt is started only for the names
+	 * the demangler does not support.
+	 */
+	private String demangle(String name) {
+		// The names carry the additional underscore of the Mach-O symbols.
+		if (!name.startsWith("__Z")) { //$NON-NLS-1$
+			return name;
+		}
+		String demangled = ItaniumDemangler.demangle(name.substring(1));
+		if (demangled != null) {
+			return demangled;
+		}
+		if (!symbolLoadingCPPFiltCreated) {
+			symbolLoadingCPPFiltCreated = true;
+			symbolLoadingCPPFilt = getCPPFilt();
+		}
+		if (symbolLoadingCPPFilt != null) {
+			try {
+				return symbolLoadingCPPFilt.getFunction(name);
+			} catch (IOException e1) {
+				symbolLoadingCPPFilt.dispose();
+				symbolLoadingCPPFilt = null;
 			}
+		}
+		return name;
+	}
+
+	private void addSymbols(MachO.Symbol[] array, int type, List<Symbol> list) {
+		for (org.eclipse.cdt.utils.macho.MachO.Symbol element : array) {
+			String name = demangle(element.toString());
 			long addr = element.n_value;
 			int size = 0;
 			String filename = element.getFilename();
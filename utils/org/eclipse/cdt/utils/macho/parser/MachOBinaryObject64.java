@@ -32,6 +32,7 @@ import org.eclipse.cdt.utils.Addr64;
 import org.eclipse.cdt.utils.Addr64Factory;
 import org.eclipse.cdt.utils.BinaryObjectAdapter;
 import org.eclipse.cdt.utils.CPPFilt;
+import org.eclipse.cdt.utils.ItaniumDemangler;
 import org.eclipse.cdt.utils.Symbol;
 import org.eclipse.cdt.utils.macho.AR;
 import org.eclipse.cdt.utils.macho.MachO64;
@@ -55,6 +56,8 @@ public class MachOBinaryObject64 extends BinaryObjectAdapter {
 	protected long timeStamp;
 	protected boolean is64 = false;
 	private static final String[] NO_NEEDED = new String[0];
+	private CPPFilt symbolLoadingCPPFilt;
+	private boolean symbolLoadingCPPFiltCreated;
 
 	
 	/**
@@ -259,22 +262,22 @@ public class MachOBinaryObject64 extends BinaryObjectAdapter {
 	}
 
 	protected ISymbol[] loadSymbols(MachOHelper64 helper) throws IOException {
-		CPPFilt cppfilt =  null;
 		try {
 			ArrayList<Symbol> list = new ArrayList<Symbol>();
 			// Hack should be remove when Elf is clean
 			helper.getMachO().setCppFilter(false);
-			cppfilt = getCPPFilt();
 			//TODO we can probably optimize this further in MachOHelper64
-			addSymbols(helper.getExternalFunctions(), ISymbol.FUNCTION, cppfilt, list);
-			addSymbols(helper.getLocalFunctions(), ISymbol.FUNCTION, cppfilt, list);
-			addSymbols(helper.getExternalObjects(), ISymbol.VARIABLE, cppfilt, list);
-			addSymbols(helper.getLocalObjects(), ISymbol.VARIABLE, cppfilt, list);
+			addSymbols(helper.getExternalFunctions(), ISymbol.FUNCTION, list);
+			addSymbols(helper.getLocalFunctions(), ISymbol.FUNCTION, list);
+			addSymbols(helper.getExternalObjects(), ISymbol.VARIABLE, list);
+			addSymbols(helper.getLocalObjects(), ISymbol.VARIABLE, list);
 			return list.toArray(new ISymbol[list.size()]);
 		} finally {
-			if (cppfilt != null) {
-				cppfilt.dispose();
+			if (symbolLoadingCPPFilt != null) {
+				symbolLoadingCPPFilt.dispose();
+				symbolLoadingCPPFilt = null;
 			}
+			symbolLoadingCPPFiltCreated = false;
 		}
 	}
 
@@ -283,16 +286,37 @@ public class MachOBinaryObject64 extends BinaryObjectAdapter {
 		return parser.getCPPFilt();
 	}
 
-	private void addSymbols(MachO64.Symbol[] array, int type, CPPFilt cppfilt, List<Symbol> list) {
-		for (MachO64.Symbol element : array) {
-			String name = element.toString();
-			if (cppfilt != null) {
-				try {
-					name = cppfilt.getFunction(name);
-				} catch (IOException e1) {
-					cppfilt = null;
-				}
+	/**
+	 * Demangles the name of a symbol in process, c++filt is started only for the names
+	 * the demangler does not support.
+	 */
+	private String demangle(String name) {
+		// The names carry the additional underscore of the Mach-O symbols.
+		if (!name.startsWith("__Z")) { //$NON-NLS-1$
+			return name;
+		}
+		String demangled = ItaniumDemangler.demangle(name.substring(1));
+		if (demangled != null) {
+			return demangled;
+		}
+		if (!symbolLoadingCPPFiltCreated) {
+			symbolLoadingCPPFiltCreated = true;
+			symbolLoadingCPPFilt = getCPPFilt();
+		}
+		if (symbolLoadingCPPFilt != null) {
+			try {
+				return symbolLoadingCPPFilt.getFunction(name);
+			} catch (IOException e1) {
+				symbolLoadingCPPFilt.dispose();
+				symbolLoadingCPPFilt = null;
 			}
+		}
+		return name;
+	}
+
+	private void addSymbols(MachO64.Symbol[] array, int type, List<Symbol> list) {
+		for (MachO64.Symbol element : array) {
+			String name = demangle(element.toString());
 			long addr = element.n_value;
 			int size = 0;
 			String filename = element.getFilename();